@@ -16,6 +16,7 @@
 
 package com.codeabovelab.dm.balancer.web;
 
+import com.codeabovelab.dm.balancer.web.proxy.HedgePolicy;
 import com.codeabovelab.dm.balancer.web.proxy.ProxyController;
 import com.codeabovelab.dm.balancer.web.proxy.RibbonConfiguration;
 import com.codeabovelab.dm.gateway.proxy.common.BalancerConfiguration;
@@ -44,8 +45,8 @@ public class Application extends SpringBootServletInitializer {
     }
 
     @Bean
-    public Servlet dispatcherServlet(HttpProxy httpProxy, SpringClientFactory springClientFactory) {
-        return new ProxyController(httpProxy, springClientFactory);
+    public Servlet dispatcherServlet(HttpProxy httpProxy, SpringClientFactory springClientFactory, HedgePolicy hedgePolicy) {
+        return new ProxyController(httpProxy, springClientFactory, hedgePolicy);
     }
 
 }
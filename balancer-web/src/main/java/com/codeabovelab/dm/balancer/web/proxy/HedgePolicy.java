@@ -0,0 +1,201 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.balancer.web.proxy;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Policy of hedged requests. Delay of hedge is a percentile of latency of route (first segment of request path),
+ * and count of hedges is limited by global budget: each request adds {@link #setBudgetRatio(double)} to budget,
+ * and each hedge take one from it. <p/>
+ * Properties are loaded with prefix 'balancer.hedge', hedging is disabled by default.
+ */
+public class HedgePolicy {
+
+    private static final int WINDOW = 256;
+    /**
+     * Percentile is recalculated after this count of samples.
+     */
+    private static final int RECALC = 32;
+    private static final int MAX_ROUTES = 1024;
+    /**
+     * Budget is stored in fixed point form.
+     */
+    private static final long ONE = 1000;
+
+    private final class Route {
+        /**
+         * Guarded by this.
+         */
+        private final long[] samples = new long[WINDOW];
+        private long count;
+        private volatile long delay = -1;
+
+        synchronized void record(long latency) {
+            samples[(int) (count % WINDOW)] = latency;
+            count++;
+            if(count >= minSamples && count % RECALC == 0) {
+                int size = (int) Math.min(count, WINDOW);
+                long[] sorted = Arrays.copyOf(samples, size);
+                Arrays.sort(sorted);
+                int index = (int) Math.min(size - 1, Math.ceil(size * percentile / 100) - 1);
+                delay = Math.max(minDelay, sorted[Math.max(0, index)]);
+            }
+        }
+    }
+
+    private final ConcurrentMap<String, Route> routes = new ConcurrentHashMap<>();
+    private final AtomicLong budget = new AtomicLong();
+    private boolean enabled;
+    private double percentile = 95;
+    private long minDelay = 5;
+    private int minSamples = 64;
+    private double budgetRatio = 0.05;
+    private int maxBudget = 100;
+
+    /**
+     * Delay before hedge request.
+     * @param path request path
+     * @return delay in milliseconds or -1 when request must not be hedged
+     */
+    public long getDelay(String path) {
+        if(!enabled) {
+            return -1;
+        }
+        Route route = routes.get(toRoute(path));
+        return route == null ? -1 : route.delay;
+    }
+
+    /**
+     * Record latency of request.
+     * @param path request path
+     * @param latency latency in milliseconds
+     */
+    public void record(String path, long latency) {
+        if(!enabled) {
+            return;
+        }
+        String key = toRoute(path);
+        Route route = routes.get(key);
+        if(route == null) {
+            if(routes.size() >= MAX_ROUTES) {
+                // protection from huge count of distinct paths
+                return;
+            }
+            route = routes.computeIfAbsent(key, k -> new Route());
+        }
+        route.record(latency);
+        long max = maxBudget * ONE;
+        long add = (long) (budgetRatio * ONE);
+        budget.getAndUpdate(v -> Math.min(max, v + add));
+    }
+
+    /**
+     * Take hedge from budget.
+     * @return true if hedge is allowed
+     */
+    public boolean tryHedge() {
+        while(true) {
+            long v = budget.get();
+            if(v < ONE) {
+                return false;
+            }
+            if(budget.compareAndSet(v, v - ONE)) {
+                return true;
+            }
+        }
+    }
+
+    private static String toRoute(String path) {
+        if(path == null) {
+            return "";
+        }
+        int end = path.indexOf('/', 1);
+        return end < 0 ? path : path.substring(0, end);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public double getPercentile() {
+        return percentile;
+    }
+
+    /**
+     * Percentile of route latency which is used as hedge delay. Default 95.
+     * @param percentile
+     */
+    public void setPercentile(double percentile) {
+        this.percentile = percentile;
+    }
+
+    public long getMinDelay() {
+        return minDelay;
+    }
+
+    /**
+     * Minimal delay of hedge in milliseconds. Default 5.
+     * @param minDelay
+     */
+    public void setMinDelay(long minDelay) {
+        this.minDelay = minDelay;
+    }
+
+    public int getMinSamples() {
+        return minSamples;
+    }
+
+    /**
+     * Count of requests of route before its requests can be hedged. Default 64.
+     * @param minSamples
+     */
+    public void setMinSamples(int minSamples) {
+        this.minSamples = minSamples;
+    }
+
+    public double getBudgetRatio() {
+        return budgetRatio;
+    }
+
+    /**
+     * Part of requests which can be hedged. Default 0.05.
+     * @param budgetRatio
+     */
+    public void setBudgetRatio(double budgetRatio) {
+        this.budgetRatio = budgetRatio;
+    }
+
+    public int getMaxBudget() {
+        return maxBudget;
+    }
+
+    /**
+     * Max count of hedges which can be accumulated in budget. Default 100.
+     * @param maxBudget
+     */
+    public void setMaxBudget(int maxBudget) {
+        this.maxBudget = maxBudget;
+    }
+}
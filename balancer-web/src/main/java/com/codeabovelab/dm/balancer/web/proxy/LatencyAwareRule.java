@@ -0,0 +1,311 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.balancer.web.proxy;
+
+import com.netflix.client.config.IClientConfig;
+import com.netflix.loadbalancer.AbstractLoadBalancerRule;
+import com.netflix.loadbalancer.ILoadBalancer;
+import com.netflix.loadbalancer.Server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rule which keeps decaying average (EWMA) of latency and count of in-flight requests for each server, and
+ * choose better (by latency * (inFlight + 1)) of two random servers. New and reinstated servers do not have
+ * latency, so until first successful request they are estimated with median latency of other servers. <p/>
+ * Servers whose error rate is above {@link #setMaxErrorRate(double)} or whose latency is
+ * {@link #setLatencyFactor(double)} times above median latency are ejected for {@link #setEjectionTime(long)},
+ * repeated ejection is longer. No more than half of servers can be ejected at once. <p/>
+ * Rule need feedback about requests, therefore caller must wrap each request into {@link #start(Server)}
+ * and {@link Call#end(boolean)}, or {@link Call#cancel()} for request which is aborted by hedging.
+ */
+public class LatencyAwareRule extends AbstractLoadBalancerRule {
+
+    /**
+     * Handle of started request.
+     */
+    public final class Call {
+        private final Backend backend;
+        private final long start = System.nanoTime();
+
+        private Call(Backend backend) {
+            this.backend = backend;
+        }
+
+        /**
+         * Must be called once at end of request.
+         * @param success false when request failed with error or 5xx status
+         */
+        public void end(boolean success) {
+            backend.end(System.nanoTime() - start, success);
+        }
+
+        /**
+         * Must be called once instead of {@link #end(boolean)} when request is aborted, because other
+         * (hedged) request is won.
+         */
+        public void cancel() {
+            backend.cancel(System.nanoTime() - start);
+        }
+    }
+
+    private final class Backend {
+        private final String id;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        /**
+         * Guarded by this.
+         */
+        private double latency;
+        /**
+         * Has latency from at least one successful request.
+         */
+        private boolean measured;
+        private double errorRate;
+        private long lastUpdate;
+        private int samples;
+        private int ejections;
+        private volatile long ejectedUntil;
+
+        Backend(String id) {
+            this.id = id;
+        }
+
+        synchronized void end(long time, boolean success) {
+            inFlight.decrementAndGet();
+            long now = System.nanoTime();
+            double w = lastUpdate == 0 ? 0 : Math.exp(-(double) (now - lastUpdate) / decayTime);
+            lastUpdate = now;
+            // failed request may be very fast, so we does not use it latency
+            if(success) {
+                latency = measured ? latency * w + time * (1 - w) : time;
+                measured = true;
+            }
+            errorRate = errorRate * w + (success ? 0 : 1) * (1 - w);
+            samples++;
+        }
+
+        synchronized void cancel(long time) {
+            inFlight.decrementAndGet();
+            // aborted request is not an error, but its time is a lower bound of latency
+            if(measured && time <= latency) {
+                return;
+            }
+            long now = System.nanoTime();
+            double w = lastUpdate == 0 ? 0 : Math.exp(-(double) (now - lastUpdate) / decayTime);
+            latency = measured ? latency * w + time * (1 - w) : time;
+            measured = true;
+        }
+
+        /**
+         * @return latency or 0 when server has no successful requests
+         */
+        synchronized double getLatency() {
+            return measured ? latency : 0;
+        }
+
+        synchronized double getErrorRate() {
+            return samples < minSamples ? 0 : errorRate;
+        }
+
+        double getCost() {
+            double latency;
+            synchronized (this) {
+                // zero cost of unknown server cause that all requests go to it
+                latency = measured ? this.latency : medianLatency;
+            }
+            // when nothing is measured we compare only count of in-flight requests
+            return Math.max(latency, 1) * (inFlight.get() + 1);
+        }
+
+        boolean isEjected(long now) {
+            return ejectedUntil - now > 0;
+        }
+
+        synchronized void eject(long now) {
+            ejections = Math.min(ejections + 1, MAX_EJECTION_MULTIPLIER);
+            ejectedUntil = now + TimeUnit.MILLISECONDS.toNanos(ejectionTime) * ejections;
+            // server returns with clean statistics, otherwise it will be ejected again
+            errorRate = 0;
+            latency = 0;
+            measured = false;
+            samples = 0;
+        }
+
+        synchronized void healthy() {
+            if(samples >= minSamples) {
+                ejections = 0;
+            }
+        }
+    }
+
+    private static final int MAX_EJECTION_MULTIPLIER = 8;
+    private final ConcurrentMap<String, Backend> backends = new ConcurrentHashMap<>();
+    private volatile double decayTime = TimeUnit.SECONDS.toNanos(10);
+    private volatile double maxErrorRate = 0.5;
+    private volatile double latencyFactor = 5;
+    private volatile long ejectionTime = 30_000;
+    private volatile int minSamples = 10;
+    private volatile long lastOutlierCheck;
+    private volatile double medianLatency;
+
+    @Override
+    public void initWithNiwsConfig(IClientConfig clientConfig) {
+        // it has no standard properties
+    }
+
+    @Override
+    public Server choose(Object key) {
+        ILoadBalancer lb = getLoadBalancer();
+        if(lb == null) {
+            return null;
+        }
+        List<Server> servers = lb.getReachableServers();
+        if(servers.isEmpty()) {
+            return null;
+        }
+        long now = System.nanoTime();
+        checkOutliers(servers, now);
+        List<Server> available = new ArrayList<>(servers.size());
+        for(Server server: servers) {
+            if(!getBackend(server).isEjected(now)) {
+                available.add(server);
+            }
+        }
+        if(available.isEmpty()) {
+            available = servers;
+        }
+        int size = available.size();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Server first = available.get(random.nextInt(size));
+        if(size == 1) {
+            return first;
+        }
+        int i = random.nextInt(size - 1);
+        Server second = available.get(available.get(i) == first ? size - 1 : i);
+        return getBackend(first).getCost() <= getBackend(second).getCost() ? first : second;
+    }
+
+    /**
+     * Register start of request to server.
+     * @param server server
+     * @return handle which must be ended
+     */
+    public Call start(Server server) {
+        Backend backend = getBackend(server);
+        backend.inFlight.incrementAndGet();
+        return new Call(backend);
+    }
+
+    private Backend getBackend(Server server) {
+        return backends.computeIfAbsent(server.getId(), Backend::new);
+    }
+
+    private void checkOutliers(List<Server> servers, long now) {
+        // check is cheap, but we do not need to do it on each request
+        if(now - lastOutlierCheck < TimeUnit.SECONDS.toNanos(1)) {
+            return;
+        }
+        lastOutlierCheck = now;
+        int count = servers.size();
+        Backend[] list = new Backend[count];
+        double[] latencies = new double[count];
+        int ejected = 0;
+        for(int i = 0; i < count; ++i) {
+            Backend backend = getBackend(servers.get(i));
+            list[i] = backend;
+            latencies[i] = backend.getLatency();
+            if(backend.isEjected(now)) {
+                ejected++;
+            }
+        }
+        // servers without successful requests must not decrease median
+        double[] sorted = Arrays.stream(latencies).filter(l -> l > 0).sorted().toArray();
+        double median = sorted.length == 0 ? 0 : sorted[sorted.length / 2];
+        medianLatency = median;
+        for(int i = 0; i < count; ++i) {
+            Backend backend = list[i];
+            if(backend.isEjected(now)) {
+                continue;
+            }
+            boolean outlier = backend.getErrorRate() > maxErrorRate ||
+              count > 2 && median > 0 && latencies[i] > median * latencyFactor;
+            if(!outlier) {
+                backend.healthy();
+                continue;
+            }
+            if((ejected + 1) * 2 > count) {
+                // we must not eject most of servers
+                continue;
+            }
+            backend.eject(now);
+            ejected++;
+        }
+        // forget removed servers
+        if(backends.size() > count * 2) {
+            List<String> ids = new ArrayList<>(count);
+            servers.forEach(s -> ids.add(s.getId()));
+            backends.keySet().retainAll(ids);
+        }
+    }
+
+    /**
+     * Time in milliseconds after which weight of latency sample decay in e times. Default 10 seconds.
+     * @param decayTime
+     */
+    public void setDecayTime(long decayTime) {
+        this.decayTime = TimeUnit.MILLISECONDS.toNanos(decayTime);
+    }
+
+    /**
+     * Rate of failed requests (from 0 to 1) above which server is ejected. Default 0.5.
+     * @param maxErrorRate
+     */
+    public void setMaxErrorRate(double maxErrorRate) {
+        this.maxErrorRate = maxErrorRate;
+    }
+
+    /**
+     * Server which latency is greater than median latency multiplied on this factor is ejected. Default 5.
+     * @param latencyFactor
+     */
+    public void setLatencyFactor(double latencyFactor) {
+        this.latencyFactor = latencyFactor;
+    }
+
+    /**
+     * Time in milliseconds of first ejection, next ejections are longer. Default 30 seconds.
+     * @param ejectionTime
+     */
+    public void setEjectionTime(long ejectionTime) {
+        this.ejectionTime = ejectionTime;
+    }
+
+    /**
+     * Count of requests which is required to evaluate error rate of server. Default 10.
+     * @param minSamples
+     */
+    public void setMinSamples(int minSamples) {
+        this.minSamples = minSamples;
+    }
+}
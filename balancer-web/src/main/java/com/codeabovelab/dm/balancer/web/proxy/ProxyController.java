@@ -19,7 +19,10 @@ package com.codeabovelab.dm.balancer.web.proxy;
 import com.codeabovelab.dm.gateway.proxy.common.HttpProxy;
 import com.codeabovelab.dm.gateway.proxy.common.HttpProxyContext;
 import com.netflix.client.config.IClientConfig;
+import com.netflix.loadbalancer.BaseLoadBalancer;
 import com.netflix.loadbalancer.ILoadBalancer;
+import com.netflix.loadbalancer.IRule;
+import com.netflix.loadbalancer.Server;
 import com.netflix.loadbalancer.reactive.LoadBalancerCommand;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -36,7 +39,10 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.codeabovelab.dm.balancer.web.proxy.RibbonConfiguration.SERVICEID;
 
@@ -49,6 +55,12 @@ public class ProxyController extends GenericServlet {
     private static final Logger LOG = LoggerFactory.getLogger(ProxyController.class);
     private final HttpProxy httpProxy;
     private final LoadBalancerCommand.Builder<Object> commandBuilder;
+    /**
+     * Not null when balancer use rule which need feedback.
+     */
+    private final LatencyAwareRule latencyAwareRule;
+    private final HedgePolicy hedgePolicy;
+    private final ILoadBalancer loadBalancer;
 
     /**
      * Ribbon requires not empty result from loadBalancerClient.execute for gathering correct statistics
@@ -57,13 +69,16 @@ public class ProxyController extends GenericServlet {
 
 
     @Autowired
-    public ProxyController(HttpProxy httpProxy, SpringClientFactory springClientFactory) {
+    public ProxyController(HttpProxy httpProxy, SpringClientFactory springClientFactory, HedgePolicy hedgePolicy) {
         this.httpProxy = httpProxy;
+        this.hedgePolicy = hedgePolicy;
 
         RibbonLoadBalancerContext context = springClientFactory.getLoadBalancerContext(SERVICEID);
         IClientConfig clientConfig = springClientFactory.getClientConfig(SERVICEID);
         ILoadBalancer loadBalancer = springClientFactory.getLoadBalancer(SERVICEID);
         HttpClientLoadBalancerErrorHandler requestSpecificRetryHandler = getRequestSpecificRetryHandler(clientConfig);
+        this.latencyAwareRule = getLatencyAwareRule(loadBalancer);
+        this.loadBalancer = loadBalancer;
 
         this.commandBuilder = LoadBalancerCommand.builder()
                 .withRetryHandler(requestSpecificRetryHandler)
@@ -89,15 +104,34 @@ public class ProxyController extends GenericServlet {
          */
         commandBuilder.build().submit(instance -> {
             try {
-                final URI uri = new URI("http", null, instance.getHost(), instance.getPort(), request.getRequestURI(), null, null);
-                if (LOG.isDebugEnabled()) {
-                    LOG.debug("send request to {}", uri.toString());
+                final String uid = Long.toUnsignedString(random.nextLong(), 16) /*TODO Vitaly see history and remove this comment*/;
+                final HttpProxyContext proxyContext = createContext(request, response, instance, uid);
+                final String path = request.getRequestURI();
+                final long hedgeDelay = hedgePolicy.getDelay(path);
+                final long begin = System.currentTimeMillis();
+                LatencyAwareRule.Call call = null;
+                boolean success = false;
+                try {
+                    if (hedgeDelay < 0) {
+                        call = latencyAwareRule == null ? null : latencyAwareRule.start(instance);
+                        httpProxy.service(proxyContext);
+                    } else {
+                        // each attempt is accounted to its own server
+                        final Map<HttpProxyContext, Server> targets = new ConcurrentHashMap<>(4);
+                        targets.put(proxyContext, instance);
+                        httpProxy.service(proxyContext, hedgeDelay,
+                          () -> createHedgeContext(request, response, instance, uid, targets),
+                          latencyAwareRule == null ? null : ctx -> startAttempt(targets.get(ctx)));
+                    }
+                    success = response.getStatus() < HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+                } finally {
+                    if(call != null) {
+                        call.end(success);
+                    }
+                }
+                if (success) {
+                    hedgePolicy.record(path, System.currentTimeMillis() - begin);
                 }
-                final HttpProxyContext proxyContext = new HttpProxyContext(request,
-                        response,
-                        uri,
-                        Long.toUnsignedString(random.nextLong(), 16) /*TODO Vitaly see history and remove this comment*/);
-                httpProxy.service(proxyContext);
                 return STUB;
             } catch (Exception e) {
                 return Observable.error(e);
@@ -105,6 +139,68 @@ public class ProxyController extends GenericServlet {
         }).toBlocking().single();
     }
 
+    private HttpProxyContext createContext(HttpServletRequest request, HttpServletResponse response,
+                                           Server instance, String uid) throws URISyntaxException {
+        final URI uri = new URI("http", null, instance.getHost(), instance.getPort(), request.getRequestURI(), null, null);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("send request to {}", uri.toString());
+        }
+        return new HttpProxyContext(request, response, uri, uid);
+    }
+
+    /**
+     * Choose other server for hedged request.
+     * @return context or null when hedge is not allowed by budget or there is no other server
+     */
+    private HttpProxyContext createHedgeContext(HttpServletRequest request, HttpServletResponse response,
+                                                Server primary, String uid, Map<HttpProxyContext, Server> targets) {
+        if (!hedgePolicy.tryHedge()) {
+            return null;
+        }
+        // balancer may give same server, so we make some attempts
+        for (int i = 0; i < 3; ++i) {
+            Server server = loadBalancer.chooseServer(null);
+            if (server == null) {
+                break;
+            }
+            if (server.equals(primary)) {
+                continue;
+            }
+            try {
+                HttpProxyContext context = createContext(request, response, server, uid);
+                targets.put(context, server);
+                return context;
+            } catch (URISyntaxException e) {
+                LOG.error("can't create hedge request to {}", server, e);
+                break;
+            }
+        }
+        return null;
+    }
+
+    private HttpProxy.AttemptListener startAttempt(Server server) {
+        final LatencyAwareRule.Call call = latencyAwareRule.start(server);
+        return new HttpProxy.AttemptListener() {
+            @Override
+            public void onEnd(boolean success) {
+                call.end(success);
+            }
+
+            @Override
+            public void onCancel() {
+                call.cancel();
+            }
+        };
+    }
+
+    private static LatencyAwareRule getLatencyAwareRule(ILoadBalancer loadBalancer) {
+        if(!(loadBalancer instanceof BaseLoadBalancer)) {
+            return null;
+        }
+        IRule rule = ((BaseLoadBalancer) loadBalancer).getRule();
+        return rule instanceof LatencyAwareRule ? (LatencyAwareRule) rule : null;
+    }
+
     public HttpClientLoadBalancerErrorHandler getRequestSpecificRetryHandler(
             IClientConfig config) {
         return new HttpClientLoadBalancerErrorHandler(config);
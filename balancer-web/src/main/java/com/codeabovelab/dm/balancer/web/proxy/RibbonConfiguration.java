@@ -19,6 +19,7 @@ package com.codeabovelab.dm.balancer.web.proxy;
 import com.netflix.client.config.DefaultClientConfigImpl;
 import com.netflix.client.config.IClientConfig;
 import com.netflix.loadbalancer.*;
+import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -42,6 +43,17 @@ public class RibbonConfiguration {
     }
 
 
+    /**
+     * Loads properties with prefix: balancer.hedge
+     * @return
+     */
+    @Bean
+    @ConfigurationProperties("balancer.hedge")
+    public HedgePolicy hedgePolicy() {
+        return new HedgePolicy();
+    }
+
+
     /**
      * A rule that skips servers with "tripped" circuit breaker and picks the
      * server with lowest concurrent requests.
@@ -84,6 +96,19 @@ public class RibbonConfiguration {
         return rule;
     }
 
+    /**
+     * Rule which choose better of two random servers by decaying average of latency and count of in-flight requests,
+     * it also temporarily ejects servers with high error rate or latency. It need feedback from {@link ProxyController}.
+     * @see LatencyAwareRule
+     */
+    @Bean
+    @Profile("latencyAwareRule")
+    public IRule latencyAwareRule(IClientConfig config) {
+        LatencyAwareRule rule = new LatencyAwareRule();
+        rule.initWithNiwsConfig(config);
+        return rule;
+    }
+
     /**
      * Rule that use the average/percentile response times
      * to assign dynamic "weights" per Server which is then used in
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.codeabovelab.dm.balancer.web.proxy;
+
+import com.netflix.loadbalancer.ILoadBalancer;
+import com.netflix.loadbalancer.Server;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class LatencyAwareRuleTest {
+
+    private final Server fast = new Server("fast", 80);
+    private final Server slow = new Server("slow", 80);
+    private final Server other = new Server("other", 80);
+    private final List<Server> servers = new ArrayList<>();
+    private final LatencyAwareRule rule = new LatencyAwareRule();
+
+    @Before
+    public void before() {
+        ILoadBalancer lb = mock(ILoadBalancer.class);
+        when(lb.getReachableServers()).thenReturn(servers);
+        rule.setLoadBalancer(lb);
+        rule.setMinSamples(5);
+        rule.setEjectionTime(500);
+    }
+
+    @Test
+    public void testSelection() throws Exception {
+        servers.addAll(Arrays.asList(fast, slow));
+        for(int i = 0; i < 5; ++i) {
+            request(fast, 1, true);
+            request(slow, 10, true);
+        }
+        assertEquals(1000, count(fast, 1000));
+
+        // in-flight requests increase cost of server
+        List<LatencyAwareRule.Call> calls = new ArrayList<>();
+        for(int i = 0; i < 100; ++i) {
+            calls.add(rule.start(fast));
+        }
+        assertEquals(1000, count(slow, 1000));
+        calls.forEach(c -> c.end(true));
+    }
+
+    @Test
+    public void testNewServer() throws Exception {
+        servers.addAll(Arrays.asList(fast, slow));
+        for(int i = 0; i < 5; ++i) {
+            request(fast, 1, true);
+            request(slow, 2, true);
+        }
+        // first check of outliers calculate median latency
+        rule.choose(null);
+        servers.add(other);
+        // server without latency is estimated by median, so it does not take all requests
+        List<LatencyAwareRule.Call> calls = new ArrayList<>();
+        for(int i = 0; i < 3; ++i) {
+            calls.add(rule.start(other));
+        }
+        assertEquals(0, count(other, 1000));
+        // failed requests does not give latency, so server is still estimated by median
+        calls.forEach(c -> c.end(false));
+        assertTrue(count(other, 1000) > 0);
+    }
+
+    @Test
+    public void testEjection() throws Exception {
+        servers.addAll(Arrays.asList(fast, slow, other));
+        for(int i = 0; i < 5; ++i) {
+            request(fast, 1, true);
+            request(slow, 2, true);
+            request(other, 0, false);
+        }
+        // first call eject server with errors
+        assertEquals(0, count(other, 1000));
+        Thread.sleep(600);
+        // reinstated server does not have statistics, and it must not take all requests
+        List<LatencyAwareRule.Call> calls = new ArrayList<>();
+        for(int i = 0; i < 3; ++i) {
+            calls.add(rule.start(other));
+        }
+        assertEquals(0, count(other, 1000));
+        // failed requests does not give latency, so server is still estimated by median
+        calls.forEach(c -> c.end(false));
+        assertTrue(count(other, 1000) > 0);
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        rule.setDecayTime(10);
+        servers.addAll(Arrays.asList(fast, slow));
+        for(int i = 0; i < 5; ++i) {
+            request(fast, 5, true);
+            request(slow, 1, true);
+        }
+        assertEquals(1000, count(slow, 1000));
+        // requests which are aborted after hedge is won, give lower bound of latency
+        for(int i = 0; i < 5; ++i) {
+            LatencyAwareRule.Call call = rule.start(slow);
+            Thread.sleep(30);
+            call.cancel();
+        }
+        assertEquals(1000, count(fast, 1000));
+    }
+
+    private void request(Server server, long time, boolean success) throws InterruptedException {
+        LatencyAwareRule.Call call = rule.start(server);
+        if(time > 0) {
+            Thread.sleep(time);
+        }
+        call.end(success);
+    }
+
+    private int count(Server server, int requests) {
+        int count = 0;
+        for(int i = 0; i < requests; ++i) {
+            if(rule.choose(null) == server) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -54,8 +54,6 @@ public class HealthCheckContainerTasklet {
     @JobParam(JP_HEALTH_CHECK_TIMEOUT)
     private long timeout;
 
-    private final int tries = 3;
-
     public boolean execute(ProcessedContainer item) {
         if(!enabled) {
             return true;
@@ -65,11 +63,8 @@ public class HealthCheckContainerTasklet {
         if(timeout < 0) {
             timeout = defaultTimeout;
         }
-        boolean healthy = false;
-        long tryTimeout = timeout / tries;
-        for(int i = 0; i < tries && !healthy; ++i) {
-            healthy = check(item, tryTimeout);
-        }
+        // service retries probe until healthy result or timeout, and return cached result when it healthy
+        boolean healthy = check(item, timeout);
         context.fire("Health check result \"{0}\" is {1} (id:{2})", item.getName(), healthy ? "good" : "bad", id);
         return healthy;
     }
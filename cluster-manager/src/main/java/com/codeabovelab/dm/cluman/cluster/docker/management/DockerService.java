@@ -26,6 +26,7 @@ import com.codeabovelab.dm.cluman.model.DockerContainer;
 import com.codeabovelab.dm.cluman.model.DockerServiceInfo;
 import com.codeabovelab.dm.cluman.model.ImageDescriptor;
 import com.codeabovelab.dm.common.cache.DefineCache;
+import com.codeabovelab.dm.platform.configuration.CacheConfiguration;
 import org.springframework.cache.annotation.Cacheable;
 
 import java.util.List;
@@ -83,7 +84,8 @@ public interface DockerService {
      * @return container or null if not found
      */
     @Cacheable(CACHE_CONTAINER_DETAILS)
-    @DefineCache(expireAfterWrite = 30_000L, invalidator = DockerCacheInvalidator.class)
+    @DefineCache(expireAfterWrite = 30_000L, invalidator = DockerCacheInvalidator.class,
+      cacheManager = CacheConfiguration.LAYERED_CACHE_MANAGER)
     ContainerDetails getContainer(String id);
 
     /**
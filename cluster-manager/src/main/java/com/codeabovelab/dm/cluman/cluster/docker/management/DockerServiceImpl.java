@@ -53,6 +53,7 @@ import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -83,6 +84,10 @@ public class DockerServiceImpl implements DockerService {
          * At this interceptor you may modify building of {@link DockerServiceInfo}
          */
         private Consumer<DockerServiceInfo.Builder> infoInterceptor;
+        /**
+         * Executor for background refresh of info, when it null info is loaded on caller thread.
+         */
+        private Executor infoExecutor;
 
         public Builder node(String node) {
             setNode(node);
@@ -119,6 +124,11 @@ public class DockerServiceImpl implements DockerService {
             return this;
         }
 
+        public Builder infoExecutor(Executor infoExecutor) {
+            setInfoExecutor(infoExecutor);
+            return this;
+        }
+
         public DockerServiceImpl build() {
             return new DockerServiceImpl(this);
         }
@@ -161,8 +171,13 @@ public class DockerServiceImpl implements DockerService {
         this.infoInterceptor = b.infoInterceptor;
 
         this.maxTimeout = Math.max(TimeUnit.SECONDS.toMillis(clusterConfig.getDockerTimeout()), FAST_TIMEOUT * 10);
+        long cacheTimeAfterWrite = TimeUnit.SECONDS.toMillis(this.clusterConfig.getCacheTimeAfterWrite());
         this.infoCache = SingleValueCache.builder(this::getInfoForCache)
-                .timeAfterWrite(TimeUnit.SECONDS, this.clusterConfig.getCacheTimeAfterWrite())
+                .timeAfterWrite(TimeUnit.MILLISECONDS, cacheTimeAfterWrite)
+                // refresh info ahead of expiration, so callers usually do not wait for network call
+                .refreshAfterWrite(TimeUnit.MILLISECONDS, cacheTimeAfterWrite * 3 / 4)
+                .refreshExecutor(b.infoExecutor)
+                .loadTimeout(TimeUnit.MILLISECONDS, this.maxTimeout)
                 .build();
     }
 
@@ -49,7 +49,11 @@ class SearchIndex implements SupportSearch, AutoCloseable {
         this.service = service;
         this.registryName = this.service.getConfig().getName();
         this.ses = scheduledExecutorService;
-        this.cache = SingleValueCache.builder(this::load).timeAfterWrite(TimeUnit.MILLISECONDS, getTimeout()).build();
+        this.cache = SingleValueCache.builder(this::load)
+          .timeAfterWrite(TimeUnit.MILLISECONDS, getTimeout())
+          // when executor is present, search use old index while new one is loading
+          .refreshExecutor(this.ses)
+          .build();
     }
 
     private Map<String, ImageInfo> load() {
@@ -150,8 +154,7 @@ class SearchIndex implements SupportSearch, AutoCloseable {
 
     public void init() {
         if(ses != null) {
-            //TODO we must return old cache when update in progress
-            this.future = ses.scheduleWithFixedDelay(() -> cache.get(), 1000L, getTimeout(), TimeUnit.MILLISECONDS);
+            this.future = ses.scheduleWithFixedDelay(cache::refresh, 1000L, getTimeout(), TimeUnit.MILLISECONDS);
         }
     }
 
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.cluster.registry;
+
+import com.codeabovelab.dm.cluman.model.ImageDescriptor;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Load descriptors of many image tags from registry. Tags are fetched concurrently, but no more than
+ * 'dm.registry.tagDetails.threads' requests at once. Concurrent callers which request same tag share one request.
+ */
+@Slf4j
+@Component
+public class TagDetailsResolver implements DisposableBean {
+
+    private final ConcurrentMap<String, CompletableFuture<ImageDescriptor>> inFlight = new ConcurrentHashMap<>();
+    private final ExecutorService executor;
+    private final long timeout;
+
+    @Autowired
+    public TagDetailsResolver(@Value("${dm.registry.tagDetails.threads:8}") int threads,
+                              @Value("${dm.registry.tagDetails.timeout:60000}") long timeout) {
+        this.timeout = timeout;
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<>(), new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat(getClass().getSimpleName() + "-%d")
+          .build());
+        executor.allowCoreThreadTimeOut(true);
+        this.executor = executor;
+    }
+
+    /**
+     * Load descriptors of specified tags.
+     * @param registry registry
+     * @param name image name without registry
+     * @param tags tags
+     * @return map with tag as key in order of tags, value is null when image is not found,
+     * tags which are failed is absent
+     */
+    public Map<String, ImageDescriptor> resolve(RegistryService registry, String name, Collection<String> tags) {
+        Map<String, CompletableFuture<ImageDescriptor>> futures = new LinkedHashMap<>();
+        for(String tag: tags) {
+            futures.put(tag, load(registry, name, tag));
+        }
+        long deadline = System.currentTimeMillis() + timeout;
+        Map<String, ImageDescriptor> result = new LinkedHashMap<>();
+        for(Map.Entry<String, CompletableFuture<ImageDescriptor>> e: futures.entrySet()) {
+            String tag = e.getKey();
+            try {
+                ImageDescriptor image = e.getValue().get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                result.put(tag, image);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException | TimeoutException ex) {
+                Throwable cause = ex instanceof ExecutionException ? ex.getCause() : ex;
+                log.error("can't download image {} / {} : {}, cause: {}", registry, name, tag, cause.toString());
+            }
+        }
+        return result;
+    }
+
+    private CompletableFuture<ImageDescriptor> load(RegistryService registry, String name, String tag) {
+        String key = registry.getConfig().getName() + "/" + name + ":" + tag;
+        CompletableFuture<ImageDescriptor> future = inFlight.get(key);
+        if(future != null) {
+            return future;
+        }
+        CompletableFuture<ImageDescriptor> created = new CompletableFuture<>();
+        future = inFlight.putIfAbsent(key, created);
+        if(future != null) {
+            return future;
+        }
+        executor.execute(() -> {
+            try {
+                created.complete(registry.getImage(name, tag));
+            } catch (Throwable e) {
+                created.completeExceptionally(e);
+            } finally {
+                inFlight.remove(key, created);
+            }
+        });
+        return created;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        executor.shutdownNow();
+    }
+}
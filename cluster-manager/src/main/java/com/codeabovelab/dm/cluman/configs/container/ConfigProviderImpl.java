@@ -18,7 +18,7 @@ package com.codeabovelab.dm.cluman.configs.container;
 
 import com.codeabovelab.dm.cluman.model.ImageDescriptor;
 import com.codeabovelab.dm.cluman.model.ContainerSource;
-import com.codeabovelab.dm.common.utils.pojo.PojoUtils;
+import com.codeabovelab.dm.common.utils.pojo.PojoClass;
 import com.codeabovelab.dm.common.utils.pojo.Property;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -59,7 +59,7 @@ public class ConfigProviderImpl implements ConfigProvider {
         List<ContainerSource> configs = context.getArgList();
         configs.add(original);
         ContainerSource result = new ContainerSource();
-        Map<String, Property> load = PojoUtils.load(ContainerSource.class);
+        Map<String, Property> load = PojoClass.of(ContainerSource.class).getProperties();
         for (ContainerSource srcConfig : configs) {
             forConfig(result, load, srcConfig);
         }
@@ -18,7 +18,9 @@ package com.codeabovelab.dm.cluman.ds.clusters;
 
 import com.codeabovelab.dm.cluman.security.AclModifier;
 import com.codeabovelab.dm.cluman.security.SecuredType;
+import com.codeabovelab.dm.cluman.ds.nodes.NodeRegistration;
 import com.codeabovelab.dm.cluman.ds.nodes.NodeStorage;
+import com.codeabovelab.dm.cluman.model.NodeInfo;
 import com.codeabovelab.dm.cluman.model.NodesGroup;
 import com.codeabovelab.dm.common.security.SecurityUtils;
 import com.codeabovelab.dm.common.security.TenantPrincipalSid;
@@ -126,6 +128,21 @@ abstract class AbstractNodesGroup<T extends AbstractNodesGroup<T, C>, C extends
         return storage;
     }
 
+    /**
+     * Test that node belongs to this group.
+     * @param nr node registration
+     * @return true when node is member of group
+     */
+    abstract boolean isMember(NodeRegistration nr);
+
+    /**
+     * Info of group members, it use membership index instead of testing each node.
+     * @return sorted collection of nodes
+     */
+    protected Collection<NodeInfo> getMembers() {
+        return getNodeStorage().getNodes(storage.getMembershipIndex().getNodes(this));
+    }
+
     @Override
     public String getName() {
         return name;
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ds.clusters;
+
+import com.codeabovelab.dm.cluman.cluster.docker.management.argument.GetImagesArg;
+import com.codeabovelab.dm.cluman.cluster.docker.model.EventType;
+import com.codeabovelab.dm.cluman.cluster.docker.model.ImageItem;
+import com.codeabovelab.dm.cluman.model.DiscoveryStorage;
+import com.codeabovelab.dm.cluman.model.DockerLogEvent;
+import com.codeabovelab.dm.cluman.model.NodesGroup;
+import com.codeabovelab.dm.common.mb.Subscriptions;
+import com.google.common.collect.ImmutableList;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Index of images downloaded to nodes of cluster. Images of cluster are loaded at first access, after that they are
+ * reloaded only when image event of cluster is appeared, or index entry is older than 'dm.images.index.maxAge'
+ * (it cover lost events). Concurrent callers of one cluster wait for single load.
+ */
+@Component
+public class ClusterImagesIndex {
+
+    private static final class Entry {
+        /**
+         * Guarded by this.
+         */
+        private List<ImageItem> images;
+        private long loaded;
+        private volatile boolean dirty;
+    }
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+    private final long maxAge;
+
+    @Autowired
+    public ClusterImagesIndex(@Qualifier(DockerLogEvent.BUS) Subscriptions<DockerLogEvent> dockerLogSubs,
+                              @Value("${dm.images.index.maxAge:300000}") long maxAge) {
+        this.maxAge = maxAge;
+        dockerLogSubs.subscribe(this::onDockerLogEvent);
+    }
+
+    /**
+     * Images of all nodes of group.
+     * @param group group, usually real cluster or orphans
+     * @return immutable list of images
+     */
+    public List<ImageItem> getImages(NodesGroup group) {
+        Entry entry = entries.computeIfAbsent(group.getName(), k -> new Entry());
+        synchronized (entry) {
+            long now = System.currentTimeMillis();
+            if(entry.images == null || entry.dirty || now - entry.loaded > maxAge) {
+                // reset flag before loading, so event which appeared while loading is not lost
+                entry.dirty = false;
+                entry.images = ImmutableList.copyOf(group.getDocker().getImages(GetImagesArg.ALL));
+                entry.loaded = now;
+            }
+            return entry.images;
+        }
+    }
+
+    /**
+     * Drop images of group, they will be reloaded at next access.
+     * @param group name of group
+     */
+    public void invalidate(String group) {
+        Entry entry = entries.get(group);
+        if(entry != null) {
+            entry.dirty = true;
+        }
+    }
+
+    private void onDockerLogEvent(DockerLogEvent e) {
+        if(e.getType() != EventType.IMAGE) {
+            return;
+        }
+        String cluster = e.getCluster();
+        // node without cluster is orphan
+        invalidate(cluster == null ? DiscoveryStorage.GROUP_ID_ORPHANS : cluster);
+    }
+}
@@ -32,6 +32,7 @@ import com.codeabovelab.dm.common.kv.mapping.KvMapAdapter;
 import com.codeabovelab.dm.common.kv.mapping.KvMapLocalEvent;
 import com.codeabovelab.dm.common.kv.mapping.KvMapperFactory;
 import com.codeabovelab.dm.common.mb.MessageBus;
+import com.codeabovelab.dm.common.mb.Subscriptions;
 import com.codeabovelab.dm.common.security.Action;
 import com.codeabovelab.dm.common.security.Authorities;
 import com.codeabovelab.dm.common.security.TenantGrantedAuthoritySid;
@@ -68,6 +69,7 @@ public class DiscoveryStorageImpl implements DiscoveryStorage {
     private final FilterFactory filterFactory;
     private final AccessContextFactory aclContextFactory;
     private final MessageBus<NodesGroupEvent> messageBus;
+    private final NodeMembershipIndex membershipIndex;
 
     @Autowired
     public DiscoveryStorageImpl(KvMapperFactory kvmf,
@@ -75,12 +77,15 @@ public class DiscoveryStorageImpl implements DiscoveryStorage {
                                 DockerServices dockerServices,
                                 NodeStorage nodeStorage,
                                 AccessContextFactory aclContextFactory,
-                                @Qualifier(NodesGroupEvent.BUS) MessageBus<NodesGroupEvent> messageBus) {
+                                @Qualifier(NodesGroupEvent.BUS) MessageBus<NodesGroupEvent> messageBus,
+                                @Qualifier(NodeEvent.BUS) Subscriptions<NodeEvent> nodeSubs) {
         this.kvmf = kvmf;
         this.services = dockerServices;
         this.nodeStorage = nodeStorage;
         this.messageBus = messageBus;
         this.aclContextFactory = aclContextFactory;
+        this.membershipIndex = new NodeMembershipIndex(nodeStorage);
+        nodeSubs.subscribe(membershipIndex::onNodeEvent);
         KeyValueStorage storage = kvmf.getStorage();
         this.filterFactory = filterFactory;
         this.prefix = storage.getPrefix() + "/clusters/";
@@ -92,12 +97,16 @@ public class DiscoveryStorageImpl implements DiscoveryStorage {
               String key = e.getKey();
               switch (e.getAction()) {
                   case DELETE:
+                      membershipIndex.invalidate(key);
+                      membershipIndex.invalidateVirtual();
                       fireGroupEvent(key, StandardActions.DELETE);
                       break;
                   case CREATE:
+                      membershipIndex.invalidateVirtual();
                       fireGroupEvent(key, StandardActions.CREATE);
                       break;
                   case UPDATE:
+                      membershipIndex.invalidate(key);
                       fireGroupEvent(key, StandardActions.UPDATE);
               }
           })
@@ -150,6 +159,10 @@ public class DiscoveryStorageImpl implements DiscoveryStorage {
         return nodeStorage;
     }
 
+    NodeMembershipIndex getMembershipIndex() {
+        return membershipIndex;
+    }
+
     @Override
     public NodesGroup getClusterForNode(String nodeId, String clusterId) {
         NodesGroup cluster = findNodeCluster(nodeId);
@@ -234,14 +247,15 @@ public class DiscoveryStorageImpl implements DiscoveryStorage {
 
     private NodesGroup findNodeCluster(String nodeId) {
         //we need resolve real cluster or orphans otherwise
-        NodesGroup candidate = clusters.get(GROUP_ID_ORPHANS);
-        for (NodesGroup cluster : clusters.values()) {
-            if ((candidate == null || (isVirtual(candidate) && !isVirtual(cluster))) &&
-                  cluster.hasNode(nodeId)) {
-                candidate = cluster;
+        NodeInfo ni = nodeStorage.getNodeInfo(nodeId);
+        String clusterId = ni == null ? null : ni.getCluster();
+        if (clusterId != null) {
+            NodesGroup cluster = clusters.get(clusterId);
+            if (cluster != null && !isVirtual(cluster) && cluster.hasNode(nodeId)) {
+                return cluster;
             }
         }
-        return candidate;
+        return clusters.get(GROUP_ID_ORPHANS);
     }
 
     private boolean isVirtual(NodesGroup cluster) {
@@ -276,6 +290,8 @@ public class DiscoveryStorageImpl implements DiscoveryStorage {
     private void deleteGroup(String clusterId) {
         aclContextFactory.getContext().assertGranted(SecuredType.CLUSTER.id(clusterId), Action.DELETE);
         clusters.remove(clusterId);
+        membershipIndex.invalidate(clusterId);
+        membershipIndex.invalidateVirtual();
         log.error("Delete '{}' cluster.", clusterId);
     }
 
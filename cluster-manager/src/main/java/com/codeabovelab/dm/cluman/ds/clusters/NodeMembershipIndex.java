@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ds.clusters;
+
+import com.codeabovelab.dm.cluman.ds.nodes.NodeRegistration;
+import com.codeabovelab.dm.cluman.ds.nodes.NodeStorage;
+import com.codeabovelab.dm.cluman.model.NodeEvent;
+import com.codeabovelab.dm.cluman.model.NodeInfo;
+import com.codeabovelab.dm.cluman.model.StandardActions;
+import com.codeabovelab.dm.cluman.security.TempAuth;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Index of group members. Membership of group is evaluated at first access, after that it is updated from node
+ * events, when only changed node is tested by group. Note that index is eventually consistent, because node events
+ * are delivered asynchronously.
+ */
+final class NodeMembershipIndex {
+
+    private static final class Member {
+        private final AbstractNodesGroup<?, ?> group;
+        /**
+         * Guarded by this.
+         */
+        private final Set<String> nodes = new HashSet<>();
+        private boolean ready;
+
+        Member(AbstractNodesGroup<?, ?> group) {
+            this.group = group;
+        }
+    }
+
+    private final NodeStorage nodeStorage;
+    private final ConcurrentMap<String, Member> members = new ConcurrentHashMap<>();
+
+    NodeMembershipIndex(NodeStorage nodeStorage) {
+        this.nodeStorage = nodeStorage;
+    }
+
+    /**
+     * Names of nodes which belong to group.
+     * @param group group
+     * @return immutable set of node names
+     */
+    Set<String> getNodes(AbstractNodesGroup<?, ?> group) {
+        Member member = members.compute(group.getName(), (k, old) -> old != null && old.group == group ? old : new Member(group));
+        synchronized (member) {
+            if(!member.ready) {
+                try (TempAuth ta = TempAuth.asSystem()) {
+                    for(NodeInfo node : nodeStorage.getNodes(group::isMember)) {
+                        member.nodes.add(node.getName());
+                    }
+                }
+                member.ready = true;
+            }
+            return ImmutableSet.copyOf(member.nodes);
+        }
+    }
+
+    void onNodeEvent(NodeEvent event) {
+        String node = event.getNode().getName();
+        try (TempAuth ta = TempAuth.asSystem()) {
+            NodeRegistration nr = null;
+            if(!StandardActions.DELETE.equals(event.getAction())) {
+                nr = nodeStorage.getNodeRegistration(node);
+            }
+            for(Member member : members.values()) {
+                synchronized (member) {
+                    if(!member.ready) {
+                        // it will see actual state of node at first access
+                        continue;
+                    }
+                    if(nr != null && member.group.isMember(nr)) {
+                        member.nodes.add(node);
+                    } else {
+                        member.nodes.remove(node);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Drop membership of group, it will be reevaluated at next access.
+     * @param group name of group
+     */
+    void invalidate(String group) {
+        members.remove(group);
+    }
+
+    /**
+     * Drop membership of all virtual groups, because its filters may depend on set of clusters.
+     */
+    void invalidateVirtual() {
+        members.values().removeIf(m -> m.group instanceof NodesGroupImpl);
+    }
+}
@@ -19,6 +19,7 @@ package com.codeabovelab.dm.cluman.ds.clusters;
 import com.codeabovelab.dm.cluman.cluster.docker.management.DockerService;
 import com.codeabovelab.dm.cluman.cluster.filter.Filter;
 import com.codeabovelab.dm.cluman.cluster.filter.FilterFactory;
+import com.codeabovelab.dm.cluman.ds.nodes.NodeRegistration;
 import com.codeabovelab.dm.cluman.ds.swarm.DockerServices;
 import com.codeabovelab.dm.cluman.model.Node;
 import com.codeabovelab.dm.cluman.model.NodeInfo;
@@ -41,7 +42,7 @@ class NodesGroupImpl extends AbstractNodesGroup<NodesGroupImpl, DefaultNodesGrou
 
     private final DockerServices dockerServices;
     private final VirtualDockerService service;
-    private Filter predicate;
+    private volatile Filter predicate;
     private final FilterFactory filterFactory;
 
     @Builder
@@ -82,7 +83,12 @@ class NodesGroupImpl extends AbstractNodesGroup<NodesGroupImpl, DefaultNodesGrou
     }
 
     private Collection<NodeInfo> getNodesInternal() {
-        return getNodeStorage().getNodes(predicate);
+        return getMembers();
+    }
+
+    @Override
+    boolean isMember(NodeRegistration nr) {
+        return predicate.test(nr);
     }
 
     @Override
@@ -106,6 +112,7 @@ class NodesGroupImpl extends AbstractNodesGroup<NodesGroupImpl, DefaultNodesGrou
             this.config.setNodeFilter(nodeFilter);
             this.predicate = filterFactory.createFilter(nodeFilter);
         }
+        getDiscoveryStorage().getMembershipIndex().invalidate(getName());
     }
 
     @Override
@@ -69,7 +69,12 @@ public final class RealCluster extends AbstractNodesGroup<RealCluster, SwarmNode
     }
 
     private Collection<NodeInfo> getNodesInfo() {
-        return getNodeStorage().getNodes(this::isFromSameCluster);
+        return getMembers();
+    }
+
+    @Override
+    boolean isMember(NodeRegistration nr) {
+        return isFromSameCluster(nr);
     }
 
     private boolean isFromSameCluster(NodeRegistration nr) {
@@ -34,21 +34,27 @@ import com.codeabovelab.dm.cluman.model.ContainerSource;
 import com.codeabovelab.dm.cluman.model.ImageDescriptor;
 import com.codeabovelab.dm.cluman.model.NodeInfo;
 import com.codeabovelab.dm.cluman.model.NodeRegistry;
+import com.codeabovelab.dm.cluman.security.TempAuth;
 import com.codeabovelab.dm.cluman.source.ContainerSourceFactory;
 import com.codeabovelab.dm.cluman.utils.ContainerUtils;
 import com.codeabovelab.dm.cluman.validate.ExtendedAssert;
 import com.codeabovelab.dm.common.utils.Consumers;
 import com.google.common.base.MoreObjects;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.StringUtils;
 
+import javax.annotation.PreDestroy;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.function.Consumer;
 
 import static com.codeabovelab.dm.cluman.cluster.docker.management.DockerUtils.SCALABLE;
@@ -70,6 +76,11 @@ public class ContainerManager {
          */
         final DockerService dockerService;
         private String name;
+        /**
+         * Name which is reserved before creation, it used only for first attempt, because it may be taken
+         * by container which was not visible at reservation.
+         */
+        private String nameHint;
 
         CreateContainerContext(CreateContainerArg arg, DockerService service) {
             this.arg = arg;
@@ -102,6 +113,7 @@ public class ContainerManager {
 
     private static final Logger LOG = LoggerFactory.getLogger(DockerServiceImpl.class);
     private static final int CREATE_CONTAINER_TRIES = 3;
+    private static final int SCALE_PARALLELISM = 8;
     private final DockerServiceRegistry dockerServiceRegistry;
     private final NodeRegistry nodeRegistry;
     private final ConfigProvider configProvider;
@@ -109,6 +121,17 @@ public class ContainerManager {
     private final ContainerStorage containerStorage;
     private final NetworkManager networkManager;
     private final ContainerSourceFactory containerSourceFactory;
+    private final ExecutorService scaleExecutor = createScaleExecutor();
+
+    private static ExecutorService createScaleExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(SCALE_PARALLELISM, SCALE_PARALLELISM,
+          60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat(ContainerManager.class.getSimpleName() + "-scale-%d")
+          .build());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
 
     /**
      * Create container by image information (image name, tag) also can be specified optional params <p/>
@@ -205,35 +228,84 @@ public class ContainerManager {
      * @return
      */
     public ServiceCallResult scale(String clusterId, Integer scaleFactor, String id) {
+        return scale(clusterId, scaleFactor, id, r -> LOG.info("Scale instance of {}: {}", id, r));
+    }
+
+    /**
+     * Create specified count of instances of container. Names of instances are reserved in one batch, then
+     * instances are created (with new name when reserved is already taken) and started concurrently (no more than {@link #SCALE_PARALLELISM} at once).
+     * @param clusterId cluster
+     * @param scaleFactor count of new instances, default 1
+     * @param id id of source container
+     * @param onResult consumer of result of each instance, it called as instance is finished, calls are serialized
+     * @return result, it has error code when creation of any instance was failed
+     */
+    public ServiceCallResult scale(String clusterId, Integer scaleFactor, String id,
+                                   Consumer<CreateAndStartContainerResult> onResult) {
         DockerService docker = getDockerForCluster(clusterId);
         ContainerDetails container = docker.getContainer(id);
         ExtendedAssert.notFound(container, "Can not find container: " + id);
         String scalable = container.getConfig().getLabels().get(SCALABLE);
-        if (scalable == null || "true".equals(scalable)) {
-            int scale = scaleFactor == null ? 1 : scaleFactor;
-            for (int i = 0; i < scale; i++) {
-                ContainerSource nc = new ContainerSource();
-                containerSourceFactory.toSource(container, nc);
-                nc.setCluster(clusterId);
-                nc.setNode(null);
-                nc.setName(null);
-                nc.setHostname(null);
-                nc.setDomainname(null);
-                SwarmUtils.clearLabels(nc.getLabels());
-                CreateContainerArg arg = CreateContainerArg.builder().container(nc).build();
-                CreateContainerContext cc = new CreateContainerContext(arg, docker);
-                CreateAndStartContainerResult containerInternal = createContainerInternal(cc);
-                if (containerInternal.getCode() == ResultCode.ERROR) {
-                    return containerInternal;
+        if (scalable != null && !"true".equals(scalable)) {
+            return new ServiceCallResult()
+                    .code(ResultCode.ERROR)
+                    .message("Image not scalable " + container.getConfig().getImage());
+        }
+        int scale = scaleFactor == null ? 1 : scaleFactor;
+        List<String> names = containersNameService.calculateNames(CalcNameArg.builder()
+                .allocate(true)
+                .imageName(container.getConfig().getImage())
+                .dockerService(docker).build(), scale);
+        List<CompletableFuture<CreateAndStartContainerResult>> futures = new ArrayList<>(scale);
+        // threads of executor does not have security context, so we pass credentials of caller
+        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
+        for (String name : names) {
+            ContainerSource nc = new ContainerSource();
+            containerSourceFactory.toSource(container, nc);
+            nc.setCluster(clusterId);
+            nc.setNode(null);
+            nc.setName(null);
+            nc.setHostname(null);
+            nc.setDomainname(null);
+            SwarmUtils.clearLabels(nc.getLabels());
+            CreateContainerArg arg = CreateContainerArg.builder().container(nc).build();
+            CreateContainerContext cc = new CreateContainerContext(arg, docker);
+            cc.nameHint = name;
+            futures.add(CompletableFuture.supplyAsync(() -> {
+                try (TempAuth ta = auth == null ? null : TempAuth.open(auth)) {
+                    CreateAndStartContainerResult res = createContainerInternal(cc);
+                    synchronized (onResult) {
+                        onResult.accept(res);
+                    }
+                    return res;
                 }
+            }, scaleExecutor));
+        }
+        int created = 0;
+        CreateAndStartContainerResult failed = null;
+        for (CompletableFuture<CreateAndStartContainerResult> future : futures) {
+            // createContainerInternal does not throw exceptions
+            CreateAndStartContainerResult res = future.join();
+            if (res.getCode() == ResultCode.ERROR) {
+                if (failed == null) {
+                    failed = res;
+                }
+            } else {
+                created++;
             }
-            return new ServiceCallResult()
-                    .code(ResultCode.OK).message("Created " + scale + " instances");
-        } else {
+        }
+        if (failed != null) {
             return new ServiceCallResult()
                     .code(ResultCode.ERROR)
-                    .message("Image not scalable " + container.getConfig().getImage());
+                    .message("Created " + created + " of " + scale + " instances, first error: " + failed.getMessage());
         }
+        return new ServiceCallResult()
+                .code(ResultCode.OK).message("Created " + scale + " instances");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        scaleExecutor.shutdown();
     }
 
     private CreateContainerResponse doCreation(CreateContainerContext cc) {
@@ -264,11 +336,17 @@ public class ContainerManager {
         LOG.info("Env: {}", env);
         ProcessEvent.watch(cc.watcher, "Environment: {0}", env);
 
-        String name = containersNameService.calculateName(CalcNameArg.builder()
-                .allocate(true)
-                .containerName(result.getName())
-                .imageName(imageName)
-                .dockerService(dockerService).build());
+        String name;
+        if (!StringUtils.hasText(result.getName()) && cc.nameHint != null) {
+            name = cc.nameHint;
+            cc.nameHint = null;
+        } else {
+            name = containersNameService.calculateName(CalcNameArg.builder()
+                    .allocate(true)
+                    .containerName(result.getName())
+                    .imageName(imageName)
+                    .dockerService(dockerService).build());
+        }
         cc.setName(name);
         ProcessEvent.watch(cc.watcher, "Calculated name of the container: {0}", name);
         LOG.info("Calculated name of the container {}", name);
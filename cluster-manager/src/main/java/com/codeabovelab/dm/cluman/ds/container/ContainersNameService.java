@@ -55,32 +55,49 @@ public class ContainersNameService {
      * @param calcNameArg - all needed data
      */
     public String calculateName(CalcNameArg calcNameArg) {
-
-        String name = internalProcess(calcNameArg);
-        if (calcNameArg.isAllocate()) { storeRecentName(name); }
+        String name = calculateNames(calcNameArg, 1).get(0);
         LOG.info("name of container: {}", name);
         return name;
     }
 
-    private String internalProcess(CalcNameArg calcNameArg) {
+    /**
+     * Calculates specified count of unique names by one request of existed names. It used for batch creation
+     * of containers, when names allocated one by one concurrent creation can give same names.
+     * @param calcNameArg - all needed data, 'containerName' is allowed only when count is 1
+     * @param count - count of names
+     * @return list of names
+     */
+    public List<String> calculateNames(CalcNameArg calcNameArg, int count) {
         if (org.springframework.util.StringUtils.hasText(calcNameArg.getContainerName())) {
-            return calcNameArg.getContainerName();
+            if(count != 1) {
+                throw new IllegalArgumentException("Can not calculate " + count + " names for explicit name: " +
+                  calcNameArg.getContainerName());
+            }
+            String name = calcNameArg.getContainerName();
+            if (calcNameArg.isAllocate()) { storeRecentName(name); }
+            return Collections.singletonList(name);
         }
         String applicationName = ContainerUtils.getApplicationName(calcNameArg.getImageName()).toLowerCase();
-
         LOG.info("applicationName {}", applicationName);
-
-        int last = getMaxNumber(applicationName, calcNameArg.getDockerService());
-        if (last == -1) {
-            return applicationName;
+        List<String> names = new ArrayList<>(count);
+        // request to docker is done out of lock, names which is allocated concurrently are taken from recent names
+        Collection<String> existed = containerNames.apply(calcNameArg.getDockerService());
+        // we must not give same names to concurrent callers, therefore calculation and allocation is atomic
+        synchronized (recentNames) {
+            int next = getMaxNumber(applicationName, existed) + 1;
+            for(int i = 0; i < count; ++i, ++next) {
+                String name = next == 0 ? applicationName : applicationName + "-" + next;
+                names.add(name);
+                if (calcNameArg.isAllocate()) { storeRecentName(name); }
+            }
         }
-        return applicationName + "-" + (last + 1);
+        return names;
     }
 
-    private int getMaxNumber(String applicationName, DockerService dockerService) {
+    private int getMaxNumber(String applicationName, Collection<String> existed) {
         int last = -1;
         Set<String> names = new HashSet<>();
-        names.addAll(containerNames.apply(dockerService));
+        names.addAll(existed);
         names.addAll(getRecentNames());
         for (String name: names) {
             if (!(name.startsWith(applicationName))) {
@@ -16,25 +16,26 @@
 
 package com.codeabovelab.dm.cluman.ds.kv.etcd;
 
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
 import com.codeabovelab.dm.common.kv.*;
 import com.codeabovelab.dm.common.mb.*;
 import com.codeabovelab.dm.common.utils.Throwables;
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.extern.slf4j.Slf4j;
 import mousio.etcd4j.EtcdClient;
 import mousio.etcd4j.promises.EtcdResponsePromise;
 import mousio.etcd4j.requests.EtcdKeyDeleteRequest;
-import mousio.etcd4j.requests.EtcdKeyGetRequest;
+import mousio.etcd4j.requests.EtcdKeyRequest;
 import mousio.etcd4j.requests.EtcdKeyPutRequest;
 import mousio.etcd4j.responses.EtcdException;
 import mousio.etcd4j.responses.EtcdKeysResponse;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -42,75 +43,75 @@ public class EtcdClientWrapper implements KeyValueStorage {
     private static final int KEY_NOT_FOUND = 100;
     private static final int NOT_A_FILE = 102;
     private static final int KEY_ALREADY_EXISTS = 105;
-    private final Logger logger = LoggerFactory.getLogger(getClass());
     private final EtcdClient etcd;
     private final String prefix;
     private final MessageBus<KvStorageEvent> bus;
-    private final ExecutorService executor;
+    private final EtcdWatcher watcher;
+    private final KvRequestWindow window = new KvRequestWindow(64);
+    private final AsyncKeyValueStorage async = new EtcdAsync();
+    /**
+     * Index of last write of this client, reads from mirror wait until it is applied.
+     */
+    private final LongAccumulator lastWrite = new LongAccumulator(Math::max, 0);
+    private final boolean mirrorReads;
+    private volatile MetricRegistry metricRegistry;
+    private volatile String metricPrefix;
 
     public EtcdClientWrapper(EtcdClient etcd, String prefix) {
+        this(etcd, prefix, null, 0);
+    }
+
+    /**
+     * When snapshot file is specified, reads are served from restored state of watcher after it catch up storage,
+     * so maps are loaded at start without requests to etcd.
+     * @param etcd client
+     * @param prefix prefix of keys
+     * @param snapshotFile file for local snapshot of storage or null
+     * @param snapshotInterval interval of snapshot saving in milliseconds
+     */
+    public EtcdClientWrapper(EtcdClient etcd, String prefix, Path snapshotFile, long snapshotInterval) {
         this.etcd = etcd;
         this.prefix = prefix;
         //possibly we need to create better id ob bus
         this.bus = MessageBusImpl.builder(KvStorageEvent.class, (s) -> new ConditionalMessageBusWrapper<>(s, KvStorageEvent::getKey, KvUtils::predicate))
           .id(getClass().getName())
           .build();
-        this.executor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
-          .setNameFormat(getClass().getName() + "-bus-%d")
-          .setDaemon(true)
-          .build());
-        eventWhirligig(-1);
+        // we partition events by '/prefix/<map>/<item>' so events of one item are ordered
+        KvEventDispatcher dispatcher = new KvEventDispatcher(getClass().getName() + "-bus", 4, 3, bus::accept);
+        KvSnapshotStore store = snapshotFile == null ? null : new KvSnapshotStore(snapshotFile);
+        this.watcher = new EtcdWatcher(etcd, dispatcher, store, snapshotInterval);
+        this.mirrorReads = store != null;
+        this.watcher.start();
     }
 
+    EtcdWatcher getWatcher() {
+        return watcher;
+    }
 
+    /**
+     * Register gauges of watcher and request window, they are removed at {@link #close()}.
+     * @param registry registry
+     * @param prefix prefix of metrics names
+     */
+    void register(MetricRegistry registry, String prefix) {
+        this.metricRegistry = registry;
+        this.metricPrefix = prefix;
+        watcher.register(registry, MetricRegistry.name(prefix, "watch"));
+        register(registry, MetricRegistry.name(prefix, "requests", "inFlight"), window::getInFlight);
+        register(registry, MetricRegistry.name(prefix, "requests", "queued"), window::getQueued);
+    }
 
-    private void eventWhirligig(final long index) {
-        try {
-            // getAll() - not working
-            EtcdKeyGetRequest req = this.etcd.get("").recursive();
-            if(index > 0) {
-                req.waitForChange(index);
-            } else {
-                req.waitForChange();
-            }
-            EtcdResponsePromise<EtcdKeysResponse> promise = req.send();
-            final boolean debug = log.isDebugEnabled();
-            promise.addListener(rp -> {
-                try {
-                    EtcdKeysResponse r = rp.get();
-                    //immediate subscribe for next events
-                    eventWhirligig(r.node.modifiedIndex + 1);
-                    //in future we must to remove this logging, but not now
-                    if(debug) {
-                        log.debug("{} {}={} (ttl:{}) {}", r.etcdIndex, r.node.key, r.node.value, r.node.ttl, r.action);
-                    }
+    private static <T> void register(MetricRegistry registry, String name, Gauge<T> gauge) {
+        registry.remove(name);
+        registry.register(name, gauge);
+    }
 
-                    KvStorageEvent.Crud action = null;
-                    switch (r.action) {
-                        case compareAndDelete:
-                        case delete:
-                        case expire:
-                            action = KvStorageEvent.Crud.DELETE;
-                            break;
-                        case create:
-                            action = KvStorageEvent.Crud.CREATE;
-                            break;
-                        case compareAndSwap:
-                        case set:
-                        case update:
-                            action = KvStorageEvent.Crud.UPDATE;
-                            break;
-                    }
-                    if(action != null) {
-                        KvStorageEvent e = new KvStorageEvent(r.node.modifiedIndex, r.node.key, r.node.value, r.node.ttl, action);
-                        this.executor.submit(() -> bus.accept(e));
-                    }
-                } catch (Exception e) {
-                    logger.error("Error when process event response", e);
-                }
-            });
-        } catch (Exception e) {
-            logger.error("Error when process events", e);
+    public void close() {
+        watcher.close();
+        MetricRegistry registry = this.metricRegistry;
+        if(registry != null) {
+            String prefix = this.metricPrefix + ".";
+            registry.removeMatching((name, metric) -> name.startsWith(prefix));
         }
     }
 
@@ -127,8 +128,34 @@ public class EtcdClientWrapper implements KeyValueStorage {
         return KvNode.leaf(e.index, null);
     }
 
+    private KvNode onWrite(KvNode node) {
+        if(node != null) {
+            lastWrite.accumulate(node.getIndex());
+        }
+        return node;
+    }
+
+    /**
+     * @return mirror when it can serve reads, otherwise null
+     */
+    private KvMirror mirror() {
+        if(!mirrorReads || !watcher.isCurrent(lastWrite.get())) {
+            return null;
+        }
+        return watcher.getMirror();
+    }
+
+    private static String mirrorKey(String key) {
+        String res = key.startsWith("/") ? key : "/" + key;
+        return res.endsWith("/") ? res.substring(0, res.length() - 1) : res;
+    }
+
     @Override
     public KvNode get(String key) {
+        KvMirror mirror = mirror();
+        if(mirror != null) {
+            return mirror.get(mirrorKey(key));
+        }
         try {
             EtcdResponsePromise<EtcdKeysResponse> send = etcd.get(key).send();
             EtcdKeysResponse resp = send.get();
@@ -150,7 +177,7 @@ public class EtcdClientWrapper implements KeyValueStorage {
             EtcdResponsePromise<EtcdKeysResponse> send = etcd.put(key, value).send();
             EtcdKeysResponse resp = send.get();
             log.debug("set value {} for key {}", resp.node.value, resp.node.key);
-            return toNode(resp);
+            return onWrite(toNode(resp));
         } catch (Exception e) {
             throw Throwables.asRuntime(e);
         }
@@ -164,7 +191,7 @@ public class EtcdClientWrapper implements KeyValueStorage {
             EtcdResponsePromise<EtcdKeysResponse> send = req.send();
             EtcdKeysResponse resp = send.get();
             log.debug("set value {} for key {}, ops {}", resp.node.value, resp.node.key, ops);
-            return toNode(resp);
+            return onWrite(toNode(resp));
         } catch (Exception e) {
             throw Throwables.asRuntime(e);
         }
@@ -180,7 +207,7 @@ public class EtcdClientWrapper implements KeyValueStorage {
             EtcdResponsePromise<EtcdKeysResponse> send = req.send();
             EtcdKeysResponse resp = send.get();
             log.debug("deleted key {}", resp.node.key);
-            return toNode(resp);
+            return onWrite(toNode(resp));
         } catch (Exception e) {
             throw Throwables.asRuntime(e);
         }
@@ -225,7 +252,7 @@ public class EtcdClientWrapper implements KeyValueStorage {
             EtcdResponsePromise<EtcdKeysResponse> send = req.send();
             EtcdKeysResponse resp = send.get();
             log.debug("make dir at key {}", resp.node.key);
-            return toNode(resp);
+            return onWrite(toNode(resp));
         } catch (EtcdException e) {
             if(e.errorCode == NOT_A_FILE /* not a file */ || e.errorCode == KEY_ALREADY_EXISTS) {
                 // https://github.com/coreos/etcd/issues/169
@@ -233,7 +260,7 @@ public class EtcdClientWrapper implements KeyValueStorage {
                 if(ops.isFailIfExists()) {
                     throw new RuntimeException(key + " already exists.", e);
                 }
-                return toNode(e);
+                return onWrite(toNode(e));
             } else {
                 throw Throwables.asRuntime(e);
             }
@@ -253,12 +280,12 @@ public class EtcdClientWrapper implements KeyValueStorage {
             EtcdResponsePromise<EtcdKeysResponse> send = req.send();
             EtcdKeysResponse resp = send.get();
             log.debug("deleted key {}", resp.node.key);
-            return toNode(resp);
+            return onWrite(toNode(resp));
         } catch (EtcdException e) {
             if(e.errorCode != KEY_NOT_FOUND || ops.isFailIfAbsent()) {
                 throw Throwables.asRuntime(e);
             }
-            return toNode(e);
+            return onWrite(toNode(e));
         } catch (Exception e) {
             throw Throwables.asRuntime(e);
         }
@@ -266,6 +293,10 @@ public class EtcdClientWrapper implements KeyValueStorage {
 
     @Override
     public List<String> list(String key) {
+        KvMirror mirror = mirror();
+        if(mirror != null) {
+            return mirror.list(mirrorKey(key));
+        }
         try {
             EtcdResponsePromise<EtcdKeysResponse> send = etcd.getDir(key).send();
             EtcdKeysResponse r = send.get();
@@ -282,6 +313,10 @@ public class EtcdClientWrapper implements KeyValueStorage {
 
     @Override
     public Map<String, String> map(String key) {
+        KvMirror mirror = mirror();
+        if(mirror != null) {
+            return mirror.map(mirrorKey(key));
+        }
         try {
             EtcdResponsePromise<EtcdKeysResponse> send = etcd.get(key).recursive().send();
             EtcdKeysResponse r = send.get();
@@ -307,4 +342,110 @@ public class EtcdClientWrapper implements KeyValueStorage {
     public String getPrefix() {
         return prefix;
     }
+
+    /**
+     * Async variant of this storage, it send up to 64 requests simultaneously.
+     * @return async storage
+     */
+    @Override
+    public AsyncKeyValueStorage async() {
+        return async;
+    }
+
+    private <T> CompletableFuture<T> sendAsync(EtcdKeyRequest req,
+                                               Function<EtcdKeysResponse, T> onResponse,
+                                               Function<EtcdException, T> onError) {
+        return window.submit(() -> {
+            CompletableFuture<T> cf = new CompletableFuture<>();
+            EtcdResponsePromise<EtcdKeysResponse> promise;
+            try {
+                promise = req.send();
+            } catch (Exception e) {
+                cf.completeExceptionally(e);
+                return cf;
+            }
+            promise.addListener(rp -> {
+                try {
+                    Throwable ex = rp.getException();
+                    if(ex == null) {
+                        cf.complete(onResponse.apply(rp.getNow()));
+                    } else if(ex instanceof EtcdException) {
+                        cf.complete(onError.apply((EtcdException) ex));
+                    } else {
+                        cf.completeExceptionally(ex);
+                    }
+                } catch (Exception e) {
+                    cf.completeExceptionally(e);
+                }
+            });
+            return cf;
+        });
+    }
+
+    private static <T> T rethrow(EtcdException e) {
+        throw Throwables.asRuntime(e);
+    }
+
+    private class EtcdAsync implements AsyncKeyValueStorage {
+
+        @Override
+        public CompletableFuture<KvNode> get(String key) {
+            KvMirror mirror = mirror();
+            if(mirror != null) {
+                return CompletableFuture.completedFuture(mirror.get(mirrorKey(key)));
+            }
+            return sendAsync(etcd.get(key), EtcdClientWrapper.this::toNode, e -> {
+                if (e.errorCode != KEY_NOT_FOUND) {
+                    log.error("Error during fetching key", e);
+                }
+                return null;
+            });
+        }
+
+        @Override
+        public CompletableFuture<KvNode> set(String key, String value, WriteOptions ops) {
+            EtcdKeyPutRequest req = etcd.put(key, value);
+            fillPutReq(ops, req);
+            return sendAsync(req, r -> onWrite(toNode(r)), EtcdClientWrapper::rethrow);
+        }
+
+        @Override
+        public CompletableFuture<KvNode> delete(String key, WriteOptions ops) {
+            EtcdKeyDeleteRequest req = etcd.delete(key);
+            fillDeleteReq(ops, req);
+            return sendAsync(req, r -> onWrite(toNode(r)), EtcdClientWrapper::rethrow);
+        }
+
+        @Override
+        public CompletableFuture<List<String>> list(String key) {
+            KvMirror mirror = mirror();
+            if(mirror != null) {
+                return CompletableFuture.completedFuture(mirror.list(mirrorKey(key)));
+            }
+            return sendAsync(etcd.getDir(key),
+              r -> r.node.nodes.stream().map(n -> n.key).collect(Collectors.toList()),
+              e -> {
+                  if(e.getErrorCode() == KEY_NOT_FOUND) {
+                      return null;
+                  }
+                  throw Throwables.asRuntime(e);
+              });
+        }
+
+        @Override
+        public CompletableFuture<Map<String, String>> map(String key) {
+            KvMirror mirror = mirror();
+            if(mirror != null) {
+                return CompletableFuture.completedFuture(mirror.map(mirrorKey(key)));
+            }
+            return sendAsync(etcd.get(key).recursive(),
+              r -> r.node.nodes.stream().collect(Collectors.toMap((n) -> n.key, (n) -> n.value)),
+              e -> {
+                  if (e.errorCode != KEY_NOT_FOUND) {
+                      log.error("Error during fetching key", e);
+                  }
+                  return null;
+              });
+        }
+    }
 }
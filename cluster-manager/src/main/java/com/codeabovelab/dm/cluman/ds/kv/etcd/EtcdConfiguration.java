@@ -16,14 +16,25 @@
 
 package com.codeabovelab.dm.cluman.ds.kv.etcd;
 
+import com.codahale.metrics.MetricRegistry;
 import com.codeabovelab.dm.cluman.ds.swarm.SwarmDiscoveryUrlFunction;
+import com.codeabovelab.dm.common.cache.CacheInvalidation;
+import com.codeabovelab.dm.common.mb.MessageBus;
+import com.codeabovelab.dm.platform.cache.KvCacheInvalidationBridge;
+import com.codeabovelab.dm.platform.cache.LayeredCacheManager;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 import mousio.etcd4j.EtcdClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
 
 import java.net.URI;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -41,6 +52,20 @@ public class EtcdConfiguration {
     @Value("${dm.kv.prefix:/cluman}")
     private String prefix;
 
+    /**
+     * File of local snapshot of storage, empty value (default) disable snapshot. Snapshot contains values of all keys
+     * (including secrets) without encryption, so file is created readable only by its owner. When it enabled
+     * reads are served from watched state of storage.
+     */
+    @Value("${dm.kv.etcd.snapshot.location:}")
+    private String snapshotLocation;
+
+    @Value("${dm.kv.etcd.snapshot.interval:300000}")
+    private long snapshotInterval;
+
+    @Autowired(required = false)
+    private MetricRegistry metricRegistry;
+
     @Bean
     public EtcdClientWrapper client() {
         List<URI> uris = new ArrayList<>();
@@ -49,10 +74,25 @@ public class EtcdConfiguration {
         }
         log.info("About to connect to etcd: {}", (Object)etcdUrls);
         EtcdClient etcd = new EtcdClient(uris.toArray(new URI[uris.size()]));
-        EtcdClientWrapper etcdClientWrapper = new EtcdClientWrapper(etcd, prefix.trim());
+        Path snapshotFile = StringUtils.hasText(snapshotLocation) ? Paths.get(snapshotLocation.trim()) : null;
+        EtcdClientWrapper etcdClientWrapper = new EtcdClientWrapper(etcd, prefix.trim(), snapshotFile, snapshotInterval);
+        if(metricRegistry != null) {
+            etcdClientWrapper.register(metricRegistry, "etcd");
+        }
         return etcdClientWrapper;
     }
 
+    /**
+     * Send evictions of layered caches to other instances.
+     */
+    @Bean
+    KvCacheInvalidationBridge kvCacheInvalidationBridge(EtcdClientWrapper storage,
+                                                        LayeredCacheManager cacheManager,
+                                                        @Qualifier(CacheInvalidation.BUS) MessageBus<CacheInvalidation> bus,
+                                                        ObjectMapper objectMapper) {
+        return new KvCacheInvalidationBridge(storage, bus, objectMapper, cacheManager.getOrigin());
+    }
+
     @Bean
     SwarmDiscoveryUrlFunction swarmDiscoveryUrlFunction(EtcdConfiguration etcdConfiguration) {
         return new SwarmDiscoveryUrlFunction.Etcd(Arrays.stream(etcdUrls)
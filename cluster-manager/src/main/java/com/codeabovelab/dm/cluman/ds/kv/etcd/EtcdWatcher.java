@@ -0,0 +1,402 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ds.kv.etcd;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codeabovelab.dm.common.kv.KvNode;
+import com.codeabovelab.dm.common.kv.KvStorageEvent;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import mousio.client.promises.ResponsePromise;
+import mousio.etcd4j.EtcdClient;
+import mousio.etcd4j.responses.EtcdErrorCode;
+import mousio.etcd4j.responses.EtcdException;
+import mousio.etcd4j.responses.EtcdKeysResponse;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Recursive watch of etcd storage. It load snapshot of storage at start and then watch changes from snapshot index.
+ * When watch fail it retried from same index, and when etcd report that events history after index was cleared
+ * watcher load new snapshot and dispatch difference with previous state as synthetic events. <p/>
+ * When {@link KvSnapshotStore} is specified, watcher periodically save its state to disk and at next start
+ * restore it and watch changes from its index, instead of loading of full snapshot. The restored state may serve
+ * reads as soon as watch catch up etcd index which was actual at start, see {@link #isCurrent(long)}.
+ */
+@Slf4j
+class EtcdWatcher implements AutoCloseable {
+    private static final long MIN_BACKOFF = 500;
+    private static final long MAX_BACKOFF = 30_000;
+
+    private final EtcdClient etcd;
+    private final KvEventDispatcher dispatcher;
+    private final KvMirror mirror = new KvMirror();
+    private final ScheduledExecutorService scheduler;
+    private final LongAdder events = new LongAdder();
+    private final LongAdder resyncs = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private volatile long index;
+    private volatile long etcdIndex;
+    private volatile long backoff;
+    private volatile boolean initialized;
+    /**
+     * False when watch is failed and state may miss changes.
+     */
+    private volatile boolean watching;
+    /**
+     * Index of etcd at restore of snapshot, state is not current until it reach this index.
+     */
+    private volatile long restoredEtcdIndex;
+    private volatile boolean closed;
+    private volatile String clusterId;
+    private final KvSnapshotStore store;
+    private final long snapshotInterval;
+    private volatile long savedIndex;
+
+    /**
+     * @param etcd client
+     * @param dispatcher dispatcher of events
+     * @param store store of snapshots or null
+     * @param snapshotInterval interval of snapshot saving in milliseconds, zero disable periodic saving
+     */
+    EtcdWatcher(EtcdClient etcd, KvEventDispatcher dispatcher, KvSnapshotStore store, long snapshotInterval) {
+        this.etcd = etcd;
+        this.dispatcher = dispatcher;
+        this.store = store;
+        this.snapshotInterval = snapshotInterval;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+          .setNameFormat(getClass().getName() + "-%d")
+          .setDaemon(true)
+          .build());
+    }
+
+    void start() {
+        scheduler.execute(() -> {
+            if(!restore()) {
+                resync();
+            }
+        });
+        if(store != null && snapshotInterval > 0) {
+            scheduler.scheduleWithFixedDelay(this::saveSnapshot, snapshotInterval, snapshotInterval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private boolean restore() {
+        if(store == null) {
+            return false;
+        }
+        try {
+            KvSnapshot snapshot = store.load();
+            if(snapshot == null) {
+                return false;
+            }
+            // check that storage is not replaced by another
+            EtcdKeysResponse r = etcd.get("").send().get();
+            String actualClusterId = r.etcdClusterId;
+            if(snapshot.getClusterId() != null && actualClusterId != null && !snapshot.getClusterId().equals(actualClusterId)) {
+                log.warn("Skip {} from {} because it made for another cluster: {}", snapshot, store.getFile(), actualClusterId);
+                return false;
+            }
+            final long snapshotIndex = snapshot.getIndex();
+            if(r.etcdIndex != null && r.etcdIndex < snapshotIndex) {
+                log.warn("Skip {} from {} because it newer than storage index: {}", snapshot, store.getFile(), r.etcdIndex);
+                return false;
+            }
+            this.clusterId = actualClusterId;
+            mirror.reset(snapshot.getNodes(), snapshotIndex);
+            initialized = true;
+            this.savedIndex = snapshotIndex;
+            this.index = snapshotIndex;
+            updateEtcdIndex(snapshotIndex);
+            if(r.etcdIndex != null) {
+                updateEtcdIndex(r.etcdIndex);
+                this.restoredEtcdIndex = r.etcdIndex;
+            }
+            this.watching = true;
+            log.info("Restore {} from {}, watch changes after it.", snapshot, store.getFile());
+            // if history after this index is cleared, watch cause resync
+            watch(snapshotIndex + 1);
+            return true;
+        } catch (Exception e) {
+            log.warn("Can not restore snapshot from {}, load full state.", store.getFile(), e);
+            return false;
+        }
+    }
+
+    private void saveSnapshot() {
+        if(store == null || !initialized) {
+            return;
+        }
+        KvSnapshot snapshot = mirror.snapshot();
+        if(snapshot.getIndex() == savedIndex) {
+            return;
+        }
+        try {
+            store.save(snapshot.withClusterId(clusterId));
+            this.savedIndex = snapshot.getIndex();
+            log.debug("Save {} to {}", snapshot, store.getFile());
+        } catch (Exception e) {
+            log.error("Can not save snapshot to {}", store.getFile(), e);
+        }
+    }
+
+    private void resync() {
+        if(closed) {
+            return;
+        }
+        try {
+            EtcdKeysResponse r = etcd.get("").recursive().send().get();
+            if(r.etcdClusterId != null) {
+                this.clusterId = r.etcdClusterId;
+            }
+            Map<String, KvNode> snapshot = new HashMap<>();
+            long snapshotIndex = flatten(r.node, snapshot);
+            if(r.etcdIndex != null) {
+                snapshotIndex = Math.max(snapshotIndex, r.etcdIndex);
+            }
+            if(!initialized) {
+                mirror.reset(snapshot, snapshotIndex);
+                initialized = true;
+            } else {
+                List<KvStorageEvent> diff = mirror.resync(snapshot, snapshotIndex);
+                resyncs.increment();
+                log.warn("Storage resynced at index {}, {} skipped changes found.", snapshotIndex, diff.size());
+                diff.forEach(dispatcher::dispatch);
+            }
+            this.index = snapshotIndex;
+            updateEtcdIndex(snapshotIndex);
+            this.backoff = 0;
+            this.watching = true;
+            watch(snapshotIndex + 1);
+        } catch (Exception e) {
+            errors.increment();
+            long delay = nextBackoff();
+            log.error("Can not load snapshot of storage, retry after {} ms.", delay, e);
+            scheduler.schedule(this::resync, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private long flatten(EtcdKeysResponse.EtcdNode node, Map<String, KvNode> snapshot) {
+        long max = 0;
+        if(node.nodes == null) {
+            return max;
+        }
+        for(EtcdKeysResponse.EtcdNode child : node.nodes) {
+            max = Math.max(max, child.modifiedIndex);
+            snapshot.put(child.key, toNode(child));
+            if(child.dir) {
+                max = Math.max(max, flatten(child, snapshot));
+            }
+        }
+        return max;
+    }
+
+    private static KvNode toNode(EtcdKeysResponse.EtcdNode node) {
+        return node.dir ? KvNode.dir(node.modifiedIndex) : KvNode.leaf(node.modifiedIndex, node.value);
+    }
+
+    private void watch(final long waitIndex) {
+        if(closed) {
+            return;
+        }
+        try {
+            etcd.get("").recursive().waitForChange(waitIndex).send()
+              .addListener(rp -> onResponse(rp, waitIndex));
+        } catch (Exception e) {
+            onError(waitIndex, e);
+        }
+    }
+
+    private void onResponse(ResponsePromise<EtcdKeysResponse> rp, long waitIndex) {
+        Throwable ex = rp.getException();
+        if(ex != null) {
+            if(ex instanceof EtcdException && ((EtcdException) ex).isErrorCode(EtcdErrorCode.EventIndexCleared)) {
+                this.watching = false;
+                log.warn("Events after {} is cleared from etcd history, resync storage.", waitIndex);
+                scheduler.execute(this::resync);
+            } else if(ex instanceof TimeoutException) {
+                // no changes during timeout
+                this.watching = true;
+                watch(waitIndex);
+            } else {
+                onError(waitIndex, ex);
+            }
+            return;
+        }
+        this.backoff = 0;
+        this.watching = true;
+        EtcdKeysResponse r = rp.getNow();
+        final long modifiedIndex = r.node.modifiedIndex;
+        //immediate subscribe for next events
+        watch(Math.max(waitIndex, modifiedIndex + 1));
+        if(r.etcdIndex != null) {
+            updateEtcdIndex(r.etcdIndex);
+        }
+        updateEtcdIndex(modifiedIndex);
+        if(modifiedIndex < waitIndex) {
+            // event which we already see
+            return;
+        }
+        this.index = modifiedIndex;
+        try {
+            onEvent(r);
+        } catch (Exception e) {
+            log.error("Error when process event response", e);
+        }
+    }
+
+    private void onEvent(EtcdKeysResponse r) {
+        //in future we must to remove this logging, but not now
+        if(log.isDebugEnabled()) {
+            log.debug("{} {}={} (ttl:{}) {}", r.etcdIndex, r.node.key, r.node.value, r.node.ttl, r.action);
+        }
+        KvStorageEvent.Crud action = null;
+        switch (r.action) {
+            case compareAndDelete:
+            case delete:
+            case expire:
+                action = KvStorageEvent.Crud.DELETE;
+                break;
+            case create:
+                action = KvStorageEvent.Crud.CREATE;
+                break;
+            case compareAndSwap:
+            case set:
+            case update:
+                action = KvStorageEvent.Crud.UPDATE;
+                break;
+        }
+        if(action == null) {
+            return;
+        }
+        mirror.apply(r.node.key, toNode(r.node), action, r.node.modifiedIndex);
+        long ttl = r.node.ttl == null ? 0 : r.node.ttl;
+        KvStorageEvent e = new KvStorageEvent(r.node.modifiedIndex, r.node.key, r.node.value, ttl, action);
+        events.increment();
+        dispatcher.dispatch(e);
+    }
+
+    private void onError(long waitIndex, Throwable e) {
+        this.watching = false;
+        errors.increment();
+        long delay = nextBackoff();
+        log.warn("Watch at {} failed, retry after {} ms: {}", waitIndex, delay, e.toString());
+        if(!closed) {
+            scheduler.schedule(() -> watch(waitIndex), delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private long nextBackoff() {
+        long delay = Math.min(MAX_BACKOFF, Math.max(MIN_BACKOFF, backoff * 2));
+        this.backoff = delay;
+        return delay;
+    }
+
+    private synchronized void updateEtcdIndex(long index) {
+        if(index > this.etcdIndex) {
+            this.etcdIndex = index;
+        }
+    }
+
+    /**
+     * Check that state contains all changes up to specified index and watch is not failed, so state can serve reads.
+     * Note that changes of other clients are visible with same delay as events.
+     * @param minIndex index of change which must be applied, usually last write of this client
+     * @return true when state is up to date
+     */
+    boolean isCurrent(long minIndex) {
+        return initialized && watching && !closed && mirror.getIndex() >= Math.max(minIndex, restoredEtcdIndex);
+    }
+
+    /**
+     * @return last known state of storage, check {@link #isCurrent(long)} before reading it
+     */
+    KvMirror getMirror() {
+        return mirror;
+    }
+
+    /**
+     * @return index of last received change
+     */
+    long getIndex() {
+        return index;
+    }
+
+    /**
+     * @return max index of etcd which is known by watcher
+     */
+    long getEtcdIndex() {
+        return etcdIndex;
+    }
+
+    /**
+     * @return difference between known etcd index and index of last received change
+     */
+    long getLag() {
+        return Math.max(0, etcdIndex - index);
+    }
+
+    /**
+     * @return count of events which wait for dispatching
+     */
+    int getQueued() {
+        return dispatcher.getQueued();
+    }
+
+    long getEvents() {
+        return events.sum();
+    }
+
+    long getResyncs() {
+        return resyncs.sum();
+    }
+
+    long getErrors() {
+        return errors.sum();
+    }
+
+    void register(MetricRegistry registry, String prefix) {
+        register(registry, prefix, "index", this::getIndex);
+        register(registry, prefix, "lag", this::getLag);
+        register(registry, prefix, "queued", this::getQueued);
+        register(registry, prefix, "events", this::getEvents);
+        register(registry, prefix, "resyncs", this::getResyncs);
+        register(registry, prefix, "errors", this::getErrors);
+    }
+
+    private static <T> void register(MetricRegistry registry, String base, String name, Gauge<T> gauge) {
+        String fullName = MetricRegistry.name(base, name);
+        registry.remove(fullName);
+        registry.register(fullName, gauge);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        scheduler.shutdownNow();
+        saveSnapshot();
+        dispatcher.close();
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ds.kv.etcd;
+
+import com.codeabovelab.dm.common.kv.KvStorageEvent;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.util.Assert;
+
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Dispatch events to consumer in pool of single thread workers. Events are partitioned by first path
+ * components of key, therefore events of one key (and all keys with same first components) are delivered
+ * in order of dispatching.
+ */
+@Slf4j
+class KvEventDispatcher implements AutoCloseable {
+
+    private final ThreadPoolExecutor[] workers;
+    private final int depth;
+    private final Consumer<KvStorageEvent> consumer;
+
+    /**
+     * @param name prefix of threads names
+     * @param partitions count of workers
+     * @param depth count of path components which is used for choose worker
+     * @param consumer consumer of events
+     */
+    KvEventDispatcher(String name, int partitions, int depth, Consumer<KvStorageEvent> consumer) {
+        Assert.isTrue(partitions > 0, "partitions must be greater than zero");
+        Assert.isTrue(depth > 0, "depth must be greater than zero");
+        Assert.notNull(consumer, "consumer is null");
+        this.depth = depth;
+        this.consumer = consumer;
+        ThreadFactory tf = new ThreadFactoryBuilder()
+          .setNameFormat(name + "-%d")
+          .setDaemon(true)
+          .build();
+        this.workers = new ThreadPoolExecutor[partitions];
+        for(int i = 0; i < partitions; ++i) {
+            this.workers[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), tf);
+        }
+    }
+
+    void dispatch(KvStorageEvent e) {
+        ThreadPoolExecutor worker = workers[partition(e.getKey())];
+        worker.execute(() -> {
+            try {
+                consumer.accept(e);
+            } catch (Exception ex) {
+                log.error("Can not dispatch event: {}", e, ex);
+            }
+        });
+    }
+
+    int partition(String key) {
+        if(workers.length == 1) {
+            return 0;
+        }
+        int end = key.length();
+        int components = 0;
+        for(int i = 1; i < key.length(); ++i) {
+            if(key.charAt(i) == '/' && ++components == depth) {
+                end = i;
+                break;
+            }
+        }
+        int hash = key.substring(0, end).hashCode();
+        return (hash & Integer.MAX_VALUE) % workers.length;
+    }
+
+    /**
+     * @return count of events which wait for dispatching
+     */
+    int getQueued() {
+        int sum = 0;
+        for(ThreadPoolExecutor worker : workers) {
+            sum += worker.getQueue().size();
+        }
+        return sum;
+    }
+
+    @Override
+    public void close() {
+        for(ThreadPoolExecutor worker : workers) {
+            worker.shutdown();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ds.kv.etcd;
+
+import com.codeabovelab.dm.common.kv.KvNode;
+import com.codeabovelab.dm.common.kv.KvStorageEvent;
+
+import java.util.*;
+
+/**
+ * Last known state of storage nodes (keys and dirs). It used for find changes which was skipped by watch, when
+ * watch lost its position, and emit them as synthetic events. Also it can serve reads when it is up to date,
+ * see {@link EtcdWatcher#isCurrent(long)}. <p/>
+ * Thread safe.
+ */
+class KvMirror {
+    private final NavigableMap<String, KvNode> nodes = new TreeMap<>();
+    private long index;
+
+    /**
+     * Apply change observed by watch.
+     * @param key key of node
+     * @param node node, ignored for DELETE
+     * @param action action
+     * @param index index of change
+     */
+    synchronized void apply(String key, KvNode node, KvStorageEvent.Crud action, long index) {
+        this.index = Math.max(this.index, index);
+        if(action == KvStorageEvent.Crud.DELETE) {
+            nodes.remove(key);
+            // delete of dir also remove all its children
+            nodes.subMap(key + "/", true, key + "0", false).clear();
+            return;
+        }
+        if(action == KvStorageEvent.Crud.CREATE || action == KvStorageEvent.Crud.UPDATE) {
+            nodes.put(key, node);
+        }
+    }
+
+    /**
+     * Replace state by snapshot without any events.
+     * @param snapshot map of key to node
+     * @param index index of snapshot
+     */
+    synchronized void reset(Map<String, KvNode> snapshot, long index) {
+        nodes.clear();
+        nodes.putAll(snapshot);
+        this.index = index;
+    }
+
+    /**
+     * Replace state by snapshot and return events which describe difference between old and new state. Deletes
+     * are placed first, children before parents, then creates and updates with parents before children.
+     * @param snapshot map of key to node
+     * @param index index of snapshot
+     * @return list of synthetic events
+     */
+    synchronized List<KvStorageEvent> resync(Map<String, KvNode> snapshot, long index) {
+        List<KvStorageEvent> events = new ArrayList<>();
+        for(Map.Entry<String, KvNode> e : nodes.descendingMap().entrySet()) {
+            String key = e.getKey();
+            if(!snapshot.containsKey(key)) {
+                KvNode old = e.getValue();
+                events.add(new KvStorageEvent(old.getIndex(), key, null, 0, KvStorageEvent.Crud.DELETE));
+            }
+        }
+        for(Map.Entry<String, KvNode> e : new TreeMap<>(snapshot).entrySet()) {
+            String key = e.getKey();
+            KvNode node = e.getValue();
+            KvNode old = nodes.get(key);
+            KvStorageEvent.Crud action;
+            if(old == null) {
+                action = KvStorageEvent.Crud.CREATE;
+            } else if(old.getIndex() != node.getIndex() || !Objects.equals(old.getValue(), node.getValue())) {
+                action = KvStorageEvent.Crud.UPDATE;
+            } else {
+                continue;
+            }
+            events.add(new KvStorageEvent(node.getIndex(), key, node.getValue(), 0, action));
+        }
+        reset(snapshot, index);
+        return events;
+    }
+
+    /**
+     * @param key key of node
+     * @return node or null when absent
+     */
+    synchronized KvNode get(String key) {
+        return nodes.get(key);
+    }
+
+    /**
+     * Like etcd get of dir, it gives keys of direct children.
+     * @param key key of dir
+     * @return keys of children or null when dir is absent
+     */
+    synchronized List<String> list(String key) {
+        Map<String, KvNode> children = children(key);
+        return children == null ? null : new ArrayList<>(children.keySet());
+    }
+
+    /**
+     * Like etcd recursive get of dir, it gives values of direct children, dirs have null values.
+     * @param key key of dir
+     * @return map of key to value or null when dir is absent
+     */
+    synchronized Map<String, String> map(String key) {
+        Map<String, KvNode> children = children(key);
+        if(children == null) {
+            return null;
+        }
+        Map<String, String> map = new LinkedHashMap<>();
+        children.forEach((k, v) -> map.put(k, v.getValue()));
+        return map;
+    }
+
+    private Map<String, KvNode> children(String key) {
+        // root is not stored as node
+        if(!key.isEmpty() && !nodes.containsKey(key)) {
+            return null;
+        }
+        Map<String, KvNode> children = new LinkedHashMap<>();
+        int childStart = key.length() + 1;
+        for(Map.Entry<String, KvNode> e : nodes.subMap(key + "/", true, key + "0", false).entrySet()) {
+            String child = e.getKey();
+            if(child.indexOf('/', childStart) < 0) {
+                children.put(child, e.getValue());
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Consistent copy of state.
+     * @return snapshot
+     */
+    synchronized KvSnapshot snapshot() {
+        return new KvSnapshot(index, new HashMap<>(nodes), null);
+    }
+
+    /**
+     * @return index of last applied change or snapshot
+     */
+    synchronized long getIndex() {
+        return index;
+    }
+
+    synchronized int size() {
+        return nodes.size();
+    }
+}
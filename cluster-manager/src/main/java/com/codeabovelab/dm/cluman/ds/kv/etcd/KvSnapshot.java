@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ds.kv.etcd;
+
+import com.codeabovelab.dm.common.kv.KvNode;
+import com.google.common.collect.ImmutableMap;
+
+import java.util.Map;
+
+/**
+ * Immutable state of storage at specified index.
+ */
+final class KvSnapshot {
+    private final long index;
+    private final Map<String, KvNode> nodes;
+    private final String clusterId;
+
+    KvSnapshot(long index, Map<String, KvNode> nodes, String clusterId) {
+        this.index = index;
+        this.nodes = ImmutableMap.copyOf(nodes);
+        this.clusterId = clusterId;
+    }
+
+    long getIndex() {
+        return index;
+    }
+
+    Map<String, KvNode> getNodes() {
+        return nodes;
+    }
+
+    /**
+     * @return id of etcd cluster or null when it unknown
+     */
+    String getClusterId() {
+        return clusterId;
+    }
+
+    KvSnapshot withClusterId(String clusterId) {
+        return new KvSnapshot(index, nodes, clusterId);
+    }
+
+    @Override
+    public String toString() {
+        return "KvSnapshot{" +
+          "index=" + index +
+          ", nodes=" + nodes.size() +
+          ", clusterId='" + clusterId + '\'' +
+          '}';
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ds.kv.etcd;
+
+import com.codeabovelab.dm.common.kv.KvNode;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Store {@link KvSnapshot} in local file. File is replaced atomically, so it always contains full snapshot. <p/>
+ * Snapshot is a plain copy of storage, therefore on POSIX file systems the file and its directory are accessible
+ * only by owner.
+ */
+@Slf4j
+class KvSnapshotStore {
+    private static final int MAGIC = 0x4b76536e;
+    private static final int VERSION = 1;
+    private static final Set<PosixFilePermission> DIR_PERMISSIONS = PosixFilePermissions.fromString("rwx------");
+    private static final Set<PosixFilePermission> FILE_PERMISSIONS = PosixFilePermissions.fromString("rw-------");
+    private final Path file;
+
+    KvSnapshotStore(Path file) {
+        this.file = file;
+    }
+
+    Path getFile() {
+        return file;
+    }
+
+    void save(KvSnapshot snapshot) throws IOException {
+        Path dir = file.toAbsolutePath().getParent();
+        boolean posix = dir.getFileSystem().supportedFileAttributeViews().contains("posix");
+        if(!Files.exists(dir)) {
+            if(posix) {
+                Files.createDirectories(dir, PosixFilePermissions.asFileAttribute(DIR_PERMISSIONS));
+            } else {
+                Files.createDirectories(dir);
+            }
+        }
+        FileAttribute<?>[] attrs = posix ? new FileAttribute<?>[]{PosixFilePermissions.asFileAttribute(FILE_PERMISSIONS)}
+          : new FileAttribute<?>[0];
+        Path tmp = Files.createTempFile(dir, file.getFileName().toString(), ".tmp", attrs);
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(tmp))))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(snapshot.getIndex());
+                writeString(out, snapshot.getClusterId());
+                Map<String, KvNode> nodes = snapshot.getNodes();
+                out.writeInt(nodes.size());
+                for(Map.Entry<String, KvNode> e : nodes.entrySet()) {
+                    KvNode node = e.getValue();
+                    writeString(out, e.getKey());
+                    out.writeLong(node.getIndex());
+                    out.writeBoolean(node.isDirectory());
+                    writeString(out, node.getValue());
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Load snapshot from file.
+     * @return snapshot or null when file is absent or has unsupported version
+     * @throws IOException on read errors
+     */
+    KvSnapshot load() throws IOException {
+        if(!Files.exists(file)) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+            if(in.readInt() != MAGIC) {
+                throw new IOException("Invalid snapshot file: " + file);
+            }
+            int version = in.readInt();
+            if(version != VERSION) {
+                log.warn("Skip snapshot {} with unsupported version {}", file, version);
+                return null;
+            }
+            long index = in.readLong();
+            String clusterId = readString(in);
+            int size = in.readInt();
+            Map<String, KvNode> nodes = new HashMap<>(size);
+            for(int i = 0; i < size; ++i) {
+                String key = readString(in);
+                long nodeIndex = in.readLong();
+                boolean dir = in.readBoolean();
+                String value = readString(in);
+                nodes.put(key, dir ? KvNode.dir(nodeIndex) : KvNode.leaf(nodeIndex, value));
+            }
+            return new KvSnapshot(index, nodes, clusterId);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String str) throws IOException {
+        if(str == null) {
+            out.writeInt(-1);
+            return;
+        }
+        // we do not use writeUTF because it limited by 64k
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if(len < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[len];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
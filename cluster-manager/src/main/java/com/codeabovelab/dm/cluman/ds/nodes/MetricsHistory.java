@@ -0,0 +1,265 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ds.nodes;
+
+import com.codeabovelab.dm.cluman.model.NodeMetrics;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * Fixed size time series of node metrics. It keeps raw samples and 1-minute and 10-minute rollups (min/max/avg)
+ * in preallocated ring buffers of primitives, so memory does not depend on uptime. <p/>
+ * Thread safe.
+ */
+public final class MetricsHistory {
+
+    public enum Metric {
+        SYS_CPU_LOAD(NodeMetrics::getSysCpuLoad),
+        SYS_MEM_USED(NodeMetrics::getSysMemUsed),
+        SYS_MEM_AVAIL(NodeMetrics::getSysMemAvail),
+        SWARM_MEM_RESERVED(NodeMetrics::getSwarmMemReserved),
+        SWARM_CPUS_RESERVED(NodeMetrics::getSwarmCpusReserved);
+
+        private final Function<NodeMetrics, Number> getter;
+
+        Metric(Function<NodeMetrics, Number> getter) {
+            this.getter = getter;
+        }
+
+        float get(NodeMetrics nm) {
+            Number number = getter.apply(nm);
+            return number == null ? Float.NaN : number.floatValue();
+        }
+    }
+
+    public enum Resolution {
+        RAW(0), MINUTE(60_000L), TEN_MINUTES(600_000L);
+
+        private final long step;
+
+        Resolution(long step) {
+            this.step = step;
+        }
+
+        /**
+         * Length of rollup bucket.
+         * @return length in milliseconds or 0 for raw samples
+         */
+        public long getStep() {
+            return step;
+        }
+    }
+
+    /**
+     * Receiver of query results, it allow to iterate over samples without allocation.
+     */
+    @FunctionalInterface
+    public interface Consumer {
+        /**
+         * Accept sample.
+         * @param time time of sample or start of rollup bucket
+         * @param min min value, for raw samples it equals to value
+         * @param max max value, for raw samples it equals to value
+         * @param avg average value, for raw samples it equals to value
+         */
+        void accept(long time, float min, float max, float avg);
+    }
+
+    public static final int DEFAULT_RAW_CAPACITY = 720;
+    public static final int DEFAULT_MINUTE_CAPACITY = 360;
+    public static final int DEFAULT_TEN_MINUTES_CAPACITY = 432;
+    private static final Metric[] METRICS = Metric.values();
+
+    /**
+     * Ring of samples, values of all metrics for one slot are placed sequentially.
+     */
+    private static final class Ring {
+        private final long[] time;
+        private final float[] min;
+        private final float[] max;
+        private final float[] avg;
+        private int head;
+        private int size;
+
+        Ring(int capacity, boolean rollup) {
+            this.time = new long[capacity];
+            this.avg = new float[capacity * METRICS.length];
+            // raw samples has equal min, max & avg, so we do not need to store it thrice
+            this.min = rollup ? new float[this.avg.length] : this.avg;
+            this.max = rollup ? new float[this.avg.length] : this.avg;
+        }
+
+        int add(long time) {
+            int slot = head;
+            this.time[slot] = time;
+            head = (head + 1) % this.time.length;
+            if(size < this.time.length) {
+                size++;
+            }
+            return slot;
+        }
+
+        int query(Metric metric, long from, long to, Consumer consumer) {
+            int count = 0;
+            int capacity = time.length;
+            int first = (head - size + capacity) % capacity;
+            for(int i = 0; i < size; ++i) {
+                int slot = (first + i) % capacity;
+                long t = time[slot];
+                if(t < from || t > to) {
+                    continue;
+                }
+                int idx = slot * METRICS.length + metric.ordinal();
+                float v = avg[idx];
+                if(Float.isNaN(v)) {
+                    continue;
+                }
+                consumer.accept(t, min[idx], max[idx], v);
+                count++;
+            }
+            return count;
+        }
+    }
+
+    /**
+     * Accumulator of the current (not completed) rollup bucket.
+     */
+    private static final class Bucket {
+        private final long step;
+        private final Ring ring;
+        private final float[] min = new float[METRICS.length];
+        private final float[] max = new float[METRICS.length];
+        private final double[] sum = new double[METRICS.length];
+        private final int[] count = new int[METRICS.length];
+        private long start = -1;
+
+        Bucket(long step, Ring ring) {
+            this.step = step;
+            this.ring = ring;
+            reset();
+        }
+
+        void add(long time, Metric metric, float value) {
+            long bucketStart = time - time % step;
+            if(bucketStart != start) {
+                flush();
+                start = bucketStart;
+            }
+            if(Float.isNaN(value)) {
+                return;
+            }
+            int i = metric.ordinal();
+            min[i] = Math.min(min[i], value);
+            max[i] = Math.max(max[i], value);
+            sum[i] += value;
+            count[i]++;
+        }
+
+        private void flush() {
+            if(start < 0) {
+                return;
+            }
+            int slot = ring.add(start);
+            int offset = slot * METRICS.length;
+            for(int i = 0; i < METRICS.length; ++i) {
+                int c = count[i];
+                ring.min[offset + i] = c == 0 ? Float.NaN : min[i];
+                ring.max[offset + i] = c == 0 ? Float.NaN : max[i];
+                ring.avg[offset + i] = c == 0 ? Float.NaN : (float) (sum[i] / c);
+            }
+            reset();
+        }
+
+        private void reset() {
+            Arrays.fill(min, Float.POSITIVE_INFINITY);
+            Arrays.fill(max, Float.NEGATIVE_INFINITY);
+            Arrays.fill(sum, 0d);
+            Arrays.fill(count, 0);
+        }
+
+        int query(Metric metric, long from, long to, Consumer consumer) {
+            int i = metric.ordinal();
+            int c = count[i];
+            if(c == 0 || start < from || start > to) {
+                return 0;
+            }
+            consumer.accept(start, min[i], max[i], (float) (sum[i] / c));
+            return 1;
+        }
+    }
+
+    private final Ring raw;
+    private final Ring minute;
+    private final Ring tenMinutes;
+    private final Bucket minuteBucket;
+    private final Bucket tenMinutesBucket;
+    private long lastTime = Long.MIN_VALUE;
+
+    public MetricsHistory() {
+        this(DEFAULT_RAW_CAPACITY, DEFAULT_MINUTE_CAPACITY, DEFAULT_TEN_MINUTES_CAPACITY);
+    }
+
+    public MetricsHistory(int rawCapacity, int minuteCapacity, int tenMinutesCapacity) {
+        this.raw = new Ring(rawCapacity, false);
+        this.minute = new Ring(minuteCapacity, true);
+        this.tenMinutes = new Ring(tenMinutesCapacity, true);
+        this.minuteBucket = new Bucket(Resolution.MINUTE.getStep(), minute);
+        this.tenMinutesBucket = new Bucket(Resolution.TEN_MINUTES.getStep(), tenMinutes);
+    }
+
+    /**
+     * Add sample. Samples which are older than last added sample are ignored.
+     * @param time time of sample in milliseconds
+     * @param nm metrics
+     */
+    public synchronized void add(long time, NodeMetrics nm) {
+        if(time < lastTime) {
+            return;
+        }
+        lastTime = time;
+        int offset = raw.add(time) * METRICS.length;
+        for(Metric metric : METRICS) {
+            float value = metric.get(nm);
+            raw.avg[offset + metric.ordinal()] = value;
+            minuteBucket.add(time, metric, value);
+            tenMinutesBucket.add(time, metric, value);
+        }
+    }
+
+    /**
+     * Iterate over samples in specified range in order of time. Rollups include current not completed bucket.
+     * @param metric metric
+     * @param resolution resolution
+     * @param from start of range inclusive, in milliseconds
+     * @param to end of range inclusive, in milliseconds
+     * @param consumer receiver of samples
+     * @return count of samples passed to consumer
+     */
+    public synchronized int query(Metric metric, Resolution resolution, long from, long to, Consumer consumer) {
+        switch (resolution) {
+            case RAW:
+                return raw.query(metric, from, to, consumer);
+            case MINUTE:
+                return minute.query(metric, from, to, consumer) + minuteBucket.query(metric, from, to, consumer);
+            case TEN_MINUTES:
+                return tenMinutes.query(metric, from, to, consumer) + tenMinutesBucket.query(metric, from, to, consumer);
+            default:
+                throw new IllegalArgumentException("Unsupported resolution: " + resolution);
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ds.nodes;
+
+import lombok.Data;
+import org.springframework.util.Assert;
+
+import java.util.Arrays;
+
+/**
+ * Result of query to {@link MetricsHistory}, samples are stored in columns.
+ */
+@Data
+public class MetricsRange {
+
+    private static final int MAX_BUCKETS = 10_000;
+
+    /**
+     * Collect samples of one node in order of arrival.
+     */
+    public static Builder builder(MetricsHistory.Metric metric, MetricsHistory.Resolution resolution) {
+        return new Builder(metric, resolution, false, 0, 0);
+    }
+
+    /**
+     * Collect samples of many nodes into buckets aligned by step of resolution. Min and max of bucket
+     * are calculated from all samples, avg - is average of samples avg.
+     */
+    public static Builder aligned(MetricsHistory.Metric metric, MetricsHistory.Resolution resolution, long from, long to) {
+        long step = resolution.getStep();
+        Assert.isTrue(step > 0, "Aligned range does not support " + resolution + " resolution.");
+        Assert.isTrue(from <= to, "Invalid range: " + from + " - " + to);
+        Assert.isTrue((to - from) / step < MAX_BUCKETS, "Too many buckets in range: " + from + " - " + to);
+        return new Builder(metric, resolution, true, from - from % step, to);
+    }
+
+    public static final class Builder implements MetricsHistory.Consumer {
+        private final MetricsHistory.Metric metric;
+        private final MetricsHistory.Resolution resolution;
+        private final boolean aligned;
+        private final long from;
+        private long[] time;
+        private float[] min;
+        private float[] max;
+        private float[] avg;
+        private int[] count;
+        private int size;
+
+        private Builder(MetricsHistory.Metric metric, MetricsHistory.Resolution resolution,
+                        boolean aligned, long from, long to) {
+            this.metric = metric;
+            this.resolution = resolution;
+            long step = resolution.getStep();
+            this.aligned = aligned;
+            this.from = from;
+            int capacity = aligned ? (int) ((to - from) / step + 1) : 64;
+            this.time = new long[capacity];
+            this.min = new float[capacity];
+            this.max = new float[capacity];
+            this.avg = new float[capacity];
+            if(aligned) {
+                this.count = new int[capacity];
+                for(int i = 0; i < capacity; ++i) {
+                    this.time[i] = from + i * step;
+                }
+            }
+        }
+
+        public MetricsHistory.Metric getMetric() {
+            return metric;
+        }
+
+        public MetricsHistory.Resolution getResolution() {
+            return resolution;
+        }
+
+        @Override
+        public void accept(long time, float min, float max, float avg) {
+            if(aligned) {
+                int i = (int) ((time - from) / resolution.getStep());
+                if(i < 0 || i >= count.length) {
+                    return;
+                }
+                int c = count[i]++;
+                this.min[i] = c == 0 ? min : Math.min(this.min[i], min);
+                this.max[i] = c == 0 ? max : Math.max(this.max[i], max);
+                this.avg[i] += avg;
+                return;
+            }
+            if(size == this.time.length) {
+                int capacity = size * 2;
+                this.time = Arrays.copyOf(this.time, capacity);
+                this.min = Arrays.copyOf(this.min, capacity);
+                this.max = Arrays.copyOf(this.max, capacity);
+                this.avg = Arrays.copyOf(this.avg, capacity);
+            }
+            this.time[size] = time;
+            this.min[size] = min;
+            this.max[size] = max;
+            this.avg[size] = avg;
+            size++;
+        }
+
+        public MetricsRange build() {
+            return new MetricsRange(this);
+        }
+    }
+
+    private final MetricsHistory.Metric metric;
+    private final MetricsHistory.Resolution resolution;
+    private final long[] time;
+    private final float[] min;
+    private final float[] max;
+    private final float[] avg;
+
+    private MetricsRange(Builder b) {
+        this.metric = b.metric;
+        this.resolution = b.resolution;
+        if(!b.aligned) {
+            this.time = Arrays.copyOf(b.time, b.size);
+            this.min = Arrays.copyOf(b.min, b.size);
+            this.max = Arrays.copyOf(b.max, b.size);
+            this.avg = Arrays.copyOf(b.avg, b.size);
+            return;
+        }
+        // skip empty buckets
+        int size = 0;
+        for(int c : b.count) {
+            if(c > 0) {
+                size++;
+            }
+        }
+        this.time = new long[size];
+        this.min = new float[size];
+        this.max = new float[size];
+        this.avg = new float[size];
+        int j = 0;
+        for(int i = 0; i < b.count.length; ++i) {
+            int c = b.count[i];
+            if(c == 0) {
+                continue;
+            }
+            this.time[j] = b.time[i];
+            this.min[j] = b.min[i];
+            this.max[j] = b.max[i];
+            this.avg[j] = b.avg[i] / c;
+            j++;
+        }
+    }
+}
@@ -27,5 +27,10 @@ public interface NodeRegistration {
     NodeInfo getNodeInfo();
     Subscriptions<NodeHealthEvent> getHealthSubscriptions();
 
+    /**
+     * History of node metrics, it contains only values received since start of this instance.
+     */
+    MetricsHistory getMetricsHistory();
+
     ObjectIdentity getOid();
 }
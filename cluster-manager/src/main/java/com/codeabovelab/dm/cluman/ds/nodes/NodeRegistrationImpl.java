@@ -25,6 +25,7 @@ import com.codeabovelab.dm.common.security.Action;
 import org.springframework.security.acls.model.ObjectIdentity;
 
 import java.util.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 /**
@@ -42,9 +43,19 @@ class NodeRegistrationImpl implements NodeRegistration {
 
     private volatile long endTime;
     private final MessageBus<NodeHealthEvent> healthBus;
+    private final MetricsHistory metricsHistory = new MetricsHistory();
     private volatile int ttl;
     private final NodeUpdateHandler nuh;
     private final ObjectIdentity oid;
+    /**
+     * Durable part of node info (which is saved in KV-storage) has been changed, but not saved yet.
+     */
+    private volatile boolean durableChanged;
+    private volatile long flushTime;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private final AtomicBoolean expiryScheduled = new AtomicBoolean();
+    private volatile String swarmRegistration;
+    private volatile long swarmRegistrationTime;
 
     NodeRegistrationImpl(PersistentBusFactory pbf, NodeInfo nodeInfo, NodeUpdateHandler nuh) {
         String name = nodeInfo.getName();
@@ -78,11 +89,85 @@ class NodeRegistrationImpl implements NodeRegistration {
         return this.ttl;
     }
 
+    /**
+     * @return time in ms before node will be offline, negative when node is already offline
+     */
+    long getTimeToExpiry() {
+        return endTime - System.currentTimeMillis();
+    }
+
+    boolean isDurableChanged() {
+        return durableChanged;
+    }
+
+    long getFlushTime() {
+        return flushTime;
+    }
+
+    /**
+     * Mark that flush of node is scheduled.
+     * @return false when flush is already scheduled
+     */
+    boolean scheduleFlush() {
+        return flushScheduled.compareAndSet(false, true);
+    }
+
+    /**
+     * Invoked by scheduled flush, before check of changes.
+     */
+    void onScheduledFlush() {
+        flushScheduled.set(false);
+    }
+
+    /**
+     * Mark that expiry check of node is scheduled.
+     * @return false when check is already scheduled
+     */
+    boolean scheduleExpiry() {
+        return expiryScheduled.compareAndSet(false, true);
+    }
+
+    /**
+     * Invoked by scheduled expiry check, when node is expired.
+     */
+    void onExpiryCheck() {
+        expiryScheduled.set(false);
+    }
+
+    /**
+     * Mark that durable part is saved. Must be invoked before saving, so changes made during saving will not be lost.
+     */
+    void onFlush() {
+        this.durableChanged = false;
+        this.flushTime = System.currentTimeMillis();
+    }
+
+    /**
+     * Check that swarm registration with specified key must be updated. Note that registration has ttl, therefore
+     * it must be updated before half of ttl elapsed.
+     * @param key key of registration
+     * @return true when registration need update
+     */
+    boolean isSwarmRegistrationOutdated(String key) {
+        long ttlMs = this.ttl * 1000L;
+        return !Objects.equals(key, swarmRegistration) || System.currentTimeMillis() - swarmRegistrationTime > ttlMs / 2;
+    }
+
+    void onSwarmRegistration(String key) {
+        this.swarmRegistration = key;
+        this.swarmRegistrationTime = System.currentTimeMillis();
+    }
+
     @Override
     public Subscriptions<NodeHealthEvent> getHealthSubscriptions() {
         return this.healthBus.asSubscriptions();
     }
 
+    @Override
+    public MetricsHistory getMetricsHistory() {
+        return metricsHistory;
+    }
+
     private boolean isOn() {
         long now = System.currentTimeMillis();
         return now <= endTime;
@@ -121,7 +206,7 @@ class NodeRegistrationImpl implements NodeRegistration {
             cluster = this.builder.getCluster();
             cache = null;
         }
-        this.healthBus.accept(new NodeHealthEvent(this.name, cluster, nmnew));
+        fireHealth(cluster, nmnew);
         return nmnew;
     }
 
@@ -145,7 +230,15 @@ class NodeRegistrationImpl implements NodeRegistration {
             oldni = getNodeInfo();
             NodeMetrics oldMetrics = this.builder.getHealth();
             boolean on = this.builder.isOn();
+            String oldAddress = this.builder.getAddress();
+            String oldCluster = this.builder.getCluster();
+            Map<String, String> oldLabels = new HashMap<>(this.builder.getLabels());
             modifier.accept(this.builder);
+            if(!Objects.equals(oldAddress, this.builder.getAddress()) ||
+              !Objects.equals(oldCluster, this.builder.getCluster()) ||
+              !oldLabels.equals(this.builder.getLabels())) {
+                this.durableChanged = true;
+            }
             NodeMetrics newMetrics = this.builder.getHealth();
             if(!Objects.equals(oldMetrics, newMetrics)) {
                 nmnew = newMetrics;
@@ -159,16 +252,22 @@ class NodeRegistrationImpl implements NodeRegistration {
             fireNodeChanged(StandardActions.UPDATE, ni);
         }
         if(nmnew != null) {
-            this.healthBus.accept(new NodeHealthEvent(this.name, cluster, nmnew));
+            fireHealth(cluster, nmnew);
         }
     }
 
+    private void fireHealth(String cluster, NodeMetrics nm) {
+        this.metricsHistory.add(System.currentTimeMillis(), nm);
+        this.healthBus.accept(new NodeHealthEvent(this.name, cluster, nm));
+    }
+
     public void setCluster(String cluster) {
         NodeInfoImpl ni = null;
         synchronized (lock) {
             String oldCluster = this.builder.getCluster();
             if(!Objects.equals(oldCluster, cluster)) {
                 this.builder.setCluster(cluster);
+                this.durableChanged = true;
                 cache = null;
                 ni = getNodeInfo();
             }
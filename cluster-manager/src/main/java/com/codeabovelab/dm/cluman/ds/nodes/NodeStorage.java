@@ -32,23 +32,30 @@ import com.codeabovelab.dm.common.security.Action;
 import com.codeabovelab.dm.common.validate.ValidityException;
 import com.codeabovelab.dm.common.mb.MessageBus;
 import com.codeabovelab.dm.cluman.security.TempAuth;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.netty.util.HashedWheelTimer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
-import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Predicate;
 
 /**
- * Simple wrapper around InstanceStorage for save node info
+ * Simple wrapper around InstanceStorage for save node info. <p/>
+ * Liveness and metrics of node are kept only in memory, KV-storage contains durable part of node info
+ * (address, cluster and labels), which is saved only when changed, but no more than once per
+ * {@link #setMaxFlushInterval(long) interval}.
  */
 @ReConfigurable
 @Component
@@ -61,6 +68,11 @@ public class NodeStorage implements NodeInfoProvider {
     private final String nodesPrefix;
     private final PersistentBusFactory persistentBusFactory;
     private final ExecutorService executorService;
+    /**
+     * Timer for node expiration and deferred saving, it has one second precision.
+     */
+    private final HashedWheelTimer timer;
+    private volatile long maxFlushInterval = 10_000L;
 
     @Autowired
     public NodeStorage(KvMapperFactory kvmf,
@@ -85,6 +97,10 @@ public class NodeStorage implements NodeInfoProvider {
           .mapper(kvmf)
           .build();
         this.executorService = executorService;
+        this.timer = new HashedWheelTimer(new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat(getClass().getSimpleName() + "-timer-%d")
+          .build(), 1, TimeUnit.SECONDS, 512);
 
         dockerBus.asSubscriptions().subscribe(this::onDockerServiceEvent);
     }
@@ -94,6 +110,25 @@ public class NodeStorage implements NodeInfoProvider {
         nodes.load();
     }
 
+    @PreDestroy
+    public void shutdown() {
+        timer.stop();
+    }
+
+    public long getMaxFlushInterval() {
+        return maxFlushInterval;
+    }
+
+    /**
+     * Min interval between saving of durable node info, updated from agent, into KV-storage. Changes made
+     * during this interval are coalesced.
+     * @param maxFlushInterval interval in milliseconds
+     */
+    @Value("${dm.nodes.maxFlushInterval:10000}")
+    public void setMaxFlushInterval(long maxFlushInterval) {
+        this.maxFlushInterval = maxFlushInterval;
+    }
+
     private void onKVEvent(KvMapEvent<NodeRegistrationImpl> e) {
         String key = e.getKey();
         KvStorageEvent.Crud action = e.getAction();
@@ -143,11 +178,46 @@ public class NodeStorage implements NodeInfoProvider {
         }
     }
 
-    @Scheduled(fixedDelay = 60_000L)
-    private void checkNodes() {
-        // periodically check online status of nodes
-        for(NodeRegistrationImpl nr: nodes.values()) {
-            nr.getNodeInfo();
+    private void scheduleExpiry(NodeRegistrationImpl nr) {
+        if(nr.scheduleExpiry()) {
+            timer.newTimeout(t -> checkExpiry(nr), Math.max(0, nr.getTimeToExpiry()), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void checkExpiry(NodeRegistrationImpl nr) {
+        long left = nr.getTimeToExpiry();
+        if(left >= 0) {
+            // node was updated after scheduling, so we wait remaining time
+            timer.newTimeout(t -> checkExpiry(nr), left, TimeUnit.MILLISECONDS);
+            return;
+        }
+        nr.onExpiryCheck();
+        // it fire 'offline' event when status changed
+        nr.getNodeInfo();
+        if(nr.getTimeToExpiry() >= 0) {
+            // node is updated concurrently
+            scheduleExpiry(nr);
+        }
+    }
+
+    private void scheduleFlush(NodeRegistrationImpl nr) {
+        long wait = nr.getFlushTime() + maxFlushInterval - System.currentTimeMillis();
+        if(wait <= 0) {
+            save(nr);
+            return;
+        }
+        if(nr.scheduleFlush()) {
+            timer.newTimeout(t -> this.executorService.execute(() -> {
+                nr.onScheduledFlush();
+                if(!nr.isDurableChanged()) {
+                    return;
+                }
+                try (TempAuth auth = TempAuth.asSystem()) {
+                    save(nr);
+                } catch (Exception e) {
+                    log.error("Can not save node {}", nr.getName(), e);
+                }
+            }), wait, TimeUnit.MILLISECONDS);
         }
     }
 
@@ -220,17 +290,22 @@ public class NodeStorage implements NodeInfoProvider {
 
         NodeRegistrationImpl nr = getOrCreateNodeRegistration(node.getName());
         nr.update(ttl);// important that it must be before other update methods
+        scheduleExpiry(nr);
         nr.updateNodeInfo(b -> {
             b.address(node.getAddress());
             b.labels(node.getLabels());
             b.mergeHealth(node.getHealth());
         });
-        updateSwarmRegistration(nr);
-        save(nr);
+        updateSwarmRegistration(nr, false);
+        // usually only metrics is changed, which is not saved
+        if(nr.isDurableChanged()) {
+            scheduleFlush(nr);
+        }
     }
 
     private void save(NodeRegistrationImpl nr) {
         Assert.notNull(nr, "NodeRegistrationImpl is null");
+        nr.onFlush();
         // we use copy of node info, for data consistency
         nodes.flush(nr.getName());
     }
@@ -248,7 +323,7 @@ public class NodeStorage implements NodeInfoProvider {
             nr.setCluster(cluster);
             save(nr);
         }
-        updateSwarmRegistration(nr);
+        updateSwarmRegistration(nr, true);
         if(StringUtils.hasText(oldCluster) && !oldCluster.equals(cluster)) {
             //it optional but reduce time when node appear in two clusters in same time
             try {
@@ -259,7 +334,7 @@ public class NodeStorage implements NodeInfoProvider {
         }
     }
 
-    private void updateSwarmRegistration(NodeRegistrationImpl nr) {
+    private void updateSwarmRegistration(NodeRegistrationImpl nr, boolean force) {
         NodeInfo ni = nr.getNodeInfo();
         String cluster = ni.getCluster();
         if(!StringUtils.hasText(cluster)) {
@@ -268,10 +343,15 @@ public class NodeStorage implements NodeInfoProvider {
         Assert.doesNotContain(cluster, "/", "Bad cluster name: " + cluster);
         checkAccess(nr, Action.UPDATE);
         String address = ni.getAddress();
+        String key = getDiscoveryKey(cluster, address);
+        if(!force && !nr.isSwarmRegistrationOutdated(key)) {
+            return;
+        }
         try {
-            kvmf.getStorage().set(getDiscoveryKey(cluster, address),
+            kvmf.getStorage().set(key,
               address,
               WriteOptions.builder().ttl(nr.getTtl()).build());
+            nr.onSwarmRegistration(key);
         } catch (Exception e) {
             log.error("Can not update swarm registration: of node {} from cluster {}", address, cluster, e);
         }
@@ -297,7 +377,19 @@ public class NodeStorage implements NodeInfoProvider {
      * @return
      */
     public Collection<NodeInfo> getNodes(Predicate<? super NodeRegistration> predicate) {
-        Set<String> keys = listNodeNames();
+        return getNodes(listNodeNames(), predicate);
+    }
+
+    /**
+     * Info of specified nodes, absent or not readable nodes are skipped.
+     * @param names names of nodes
+     * @return sorted collection of nodes
+     */
+    public Collection<NodeInfo> getNodes(Collection<String> names) {
+        return getNodes(names, (nr) -> true);
+    }
+
+    private Collection<NodeInfo> getNodes(Collection<String> keys, Predicate<? super NodeRegistration> predicate) {
         AccessContext ac = AccessContextFactory.getLocalContext();
         List<NodeInfo> nodeList = new ArrayList<>(keys.size());
         for (String key : keys) {
@@ -312,6 +404,50 @@ public class NodeStorage implements NodeInfoProvider {
         return nodeList;
     }
 
+    /**
+     * Query history of node metrics.
+     * @param nodeId name of node
+     * @param metric metric
+     * @param resolution resolution
+     * @param from start of range in milliseconds
+     * @param to end of range in milliseconds
+     * @return range or null when node is absent
+     */
+    public MetricsRange getNodeMetrics(String nodeId, MetricsHistory.Metric metric, MetricsHistory.Resolution resolution,
+                                       long from, long to) {
+        NodeRegistration nr = getNodeRegistration(nodeId);
+        if(nr == null) {
+            return null;
+        }
+        MetricsRange.Builder b = MetricsRange.builder(metric, resolution);
+        nr.getMetricsHistory().query(metric, resolution, from, to, b);
+        return b.build();
+    }
+
+    /**
+     * Query history of metrics of all readable nodes of cluster, aggregated into buckets of resolution. Raw
+     * resolution is not supported.
+     * @param cluster name of cluster
+     * @param metric metric
+     * @param resolution resolution
+     * @param from start of range in milliseconds
+     * @param to end of range in milliseconds
+     * @return range, it may be empty
+     */
+    public MetricsRange getClusterMetrics(String cluster, MetricsHistory.Metric metric, MetricsHistory.Resolution resolution,
+                                          long from, long to) {
+        MetricsRange.Builder b = MetricsRange.aligned(metric, resolution, from, to);
+        AccessContext ac = AccessContextFactory.getLocalContext();
+        for (String key : listNodeNames()) {
+            NodeRegistrationImpl nr = getNodeRegistrationInternal(key);
+            if (nr == null || !Objects.equals(cluster, nr.getNodeInfo().getCluster()) || !ac.isGranted(nr.getOid(), Action.READ)) {
+                continue;
+            }
+            nr.getMetricsHistory().query(metric, resolution, from, to, b);
+        }
+        return b.build();
+    }
+
     private Set<String> listNodeNames() {
         return nodes.list();
     }
@@ -368,6 +504,8 @@ public class NodeStorage implements NodeInfoProvider {
                     b.from(ni);
                     b.health(om);
                 });
+                // value is loaded from storage, so it is not need to save
+                source.onFlush();
             }
             return source;
         }
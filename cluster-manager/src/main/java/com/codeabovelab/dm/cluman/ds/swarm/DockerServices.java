@@ -16,6 +16,7 @@
 
 package com.codeabovelab.dm.cluman.ds.swarm;
 
+import com.codahale.metrics.MetricRegistry;
 import com.codeabovelab.dm.cluman.cluster.docker.ClusterConfig;
 import com.codeabovelab.dm.cluman.cluster.docker.ClusterConfigImpl;
 import com.codeabovelab.dm.cluman.cluster.docker.HttpAuthInterceptor;
@@ -43,7 +44,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.http.client.AsyncClientHttpRequestFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
@@ -69,6 +69,8 @@ public class DockerServices implements DockerServiceRegistry, NodeRegistry {
     private final ScheduledExecutorService scheduledExecutorService;
     private final ScheduledExecutorService scheduledExecutor;
     private final ExecutorService executor;
+    private final ExecutorService infoExecutor;
+    private final NettyRequestFactory httpRequestFactory;
     private final SwarmProcesses swarmProcesses;
     private final NodeInfoProvider nodeInfoProvider;
     private final MessageBus<DockerLogEvent> dockerEventMessageBus;
@@ -77,6 +79,7 @@ public class DockerServices implements DockerServiceRegistry, NodeRegistry {
     private final MessageBus<DockerServiceEvent> dockerServiceEventMessageBus;
     private final AccessContextFactory aclContextFactory;
     private final Map<String, ScheduledFuture> watchingFutures = new ConcurrentHashMap<>();
+    private final InfoRefresher infoRefresher;
 
     @Autowired
     public DockerServices(DockerServicesConfig configuration,
@@ -115,13 +118,28 @@ public class DockerServices implements DockerServiceRegistry, NodeRegistry {
           .setDaemon(true)
           .setNameFormat(classPrefix + "-executor-%d")
           .build());
+        // each service run no more than one info refresh at time, so count of threads is limited by count of services
+        this.infoExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat(classPrefix + "-info-%d")
+          .build());
+        // all services share one factory, so connections to same host are pooled and reused
+        this.httpRequestFactory = new NettyRequestFactory();
+        this.httpRequestFactory.setMaxConnectionsPerHost(configuration.getMaxConnectionsPerHost());
+        this.httpRequestFactory.setIdleTimeout(configuration.getConnectionIdleTimeout());
         scheduledExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
                 .setDaemon(true)
                 .setNameFormat(classPrefix + "-scheduled-%d")
                 .build());
-        scheduledExecutor.scheduleWithFixedDelay(this::updateInfo,
-                configuration.getRefreshInfoSeconds(),
+        infoRefresher = new InfoRefresher(this.clusters::values, scheduledExecutor,
+                configuration.getRefreshInfoThreads(),
+                TimeUnit.SECONDS.toMillis(configuration.getRefreshInfoSeconds()),
+                TimeUnit.SECONDS.toMillis(configuration.getRefreshInfoMaxSeconds()),
+                configuration.getRefreshInfoTimeout());
+        // refresher itself decides which service must be refreshed, so we tick often
+        scheduledExecutor.scheduleWithFixedDelay(infoRefresher::tick,
                 configuration.getRefreshInfoSeconds(),
+                1,
                 TimeUnit.SECONDS);
         scheduledExecutorService = Executors.newScheduledThreadPool(dockerMonitoringConfig.getCountOfThreads(), new ThreadFactoryBuilder()
                 .setDaemon(true)
@@ -130,21 +148,12 @@ public class DockerServices implements DockerServiceRegistry, NodeRegistry {
         dockerServiceEventMessageBus.asSubscriptions().subscribe(this::serviceListener);
     }
 
-    private void updateInfo() {
-        // we call get info for periodically updating info cache,
-        //  it need for actual info about nodes health, that we can only obtain trough swarm service
-        try (TempAuth ta = TempAuth.asSystem()) {
-            for (DockerService service : this.clusters.values()) {
-                try {
-                    service.getInfo();
-                } catch (Exception e) {
-                    log.error("While getInfo on {} ", service.getId(), e);
-                }
-            }
-        }
+    @Autowired(required = false)
+    public void setMetricRegistry(MetricRegistry metricRegistry) {
+        // read side statistics of all docker responses, it show count of streams which consumer does not keep up
+        this.httpRequestFactory.getStatistics().register(metricRegistry, "docker.http.streams");
     }
 
-
     /**
      * @see DockerService#getId()
      * @param id
@@ -316,6 +325,7 @@ public class DockerServices implements DockerServiceRegistry, NodeRegistry {
         b.setRestTemplate(createNewRestTemplate());
         b.setEventConsumer(this::dockerEventConsumer);
         b.setNodeInfoProvider(nodeInfoProvider);
+        b.setInfoExecutor(this::executeInfoRefresh);
         if (dockerConsumer != null) {
             dockerConsumer.accept(b);
         }
@@ -324,6 +334,15 @@ public class DockerServices implements DockerServiceRegistry, NodeRegistry {
         return ds;
     }
 
+    private void executeInfoRefresh(Runnable runnable) {
+        // info is cached for all users, so we load it with system privileges
+        infoExecutor.execute(() -> {
+            try(TempAuth auth = TempAuth.asSystem()) {
+                runnable.run();
+            }
+        });
+    }
+
     private void dockerEventConsumer(DockerServiceEvent dockerServiceEvent) {
         executor.execute(() -> {
             try(TempAuth auth = TempAuth.asSystem()) {
@@ -379,8 +398,7 @@ public class DockerServices implements DockerServiceRegistry, NodeRegistry {
 
     private AsyncRestTemplate createNewRestTemplate() {
         // we use async client because usual client does not allow to interruption in some cases
-        AsyncClientHttpRequestFactory factory = new NettyRequestFactory();
-        final AsyncRestTemplate restTemplate = new AsyncRestTemplate(factory);
+        final AsyncRestTemplate restTemplate = new AsyncRestTemplate(httpRequestFactory);
         restTemplate.setInterceptors(Collections.singletonList(new HttpAuthInterceptor(registryRepository)));
         return restTemplate;
     }
@@ -393,7 +411,10 @@ public class DockerServices implements DockerServiceRegistry, NodeRegistry {
     @PreDestroy
     public void shutdown() {
         scheduledExecutor.shutdown();
+        infoRefresher.close();
         scheduledExecutorService.shutdown();
+        infoExecutor.shutdown();
+        httpRequestFactory.destroy();
     }
 
     public DockerService securityWrapper(DockerService dockerService) {
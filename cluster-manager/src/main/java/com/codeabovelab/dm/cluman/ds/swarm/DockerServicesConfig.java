@@ -27,4 +27,24 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 public class DockerServicesConfig {
     private final long cacheTimeout = 60_000;
     private final long refreshInfoSeconds = 10;
+    /**
+     * Max interval of info refresh, it used for services which info is not changed or which is unavailable.
+     */
+    private long refreshInfoMaxSeconds = 60;
+    /**
+     * Max count of concurrent info refreshes.
+     */
+    private int refreshInfoThreads = 8;
+    /**
+     * Time in milliseconds after that info refresh of service is interrupted.
+     */
+    private long refreshInfoTimeout = 30_000;
+    /**
+     * Max count of kept alive connections to one docker service.
+     */
+    private int maxConnectionsPerHost = 64;
+    /**
+     * Time in milliseconds after that unused connection to docker service is closed.
+     */
+    private long connectionIdleTimeout = 60_000;
 }
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ds.swarm;
+
+import com.codeabovelab.dm.cluman.cluster.docker.management.DockerService;
+import com.codeabovelab.dm.cluman.model.DockerServiceInfo;
+import com.codeabovelab.dm.cluman.model.NodeInfo;
+import com.codeabovelab.dm.cluman.model.NodeMetrics;
+import com.codeabovelab.dm.cluman.security.TempAuth;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Periodically refresh info of docker services. Services are refreshed concurrently by limited count of threads,
+ * and each call is interrupted after deadline, so one unreachable service does not delay refresh of others. <p/>
+ * Interval of refresh is adaptive: it grows twice (up to max interval) while info of service is not changed or
+ * service is failed, and is reset to base interval when info is changed. Only stable part of info is compared,
+ * because metrics of nodes are changed at each call. Note that service itself fires event only when its info
+ * is changed.
+ */
+class InfoRefresher implements AutoCloseable {
+
+    private static final class State {
+        private long interval;
+        private long nextTime;
+        private List<Object> lastView;
+        /**
+         * Accessed only from scheduler thread.
+         */
+        private Future<?> future;
+
+        State(long interval) {
+            this.interval = interval;
+        }
+
+        synchronized void onResult(DockerServiceInfo info, long baseInterval, long maxInterval) {
+            List<Object> view = info == null ? null : stableView(info);
+            if(view != null && !view.equals(lastView)) {
+                lastView = view;
+                interval = baseInterval;
+            } else {
+                interval = Math.min(interval * 2, maxInterval);
+            }
+            nextTime = System.currentTimeMillis() + interval;
+        }
+
+        synchronized boolean isDue(long now) {
+            return nextTime <= now && (future == null || future.isDone());
+        }
+
+        synchronized long getInterval() {
+            return interval;
+        }
+    }
+
+    /**
+     * Part of info which is changed only when state of service is changed: counts, nodes and its health.
+     * @param info info
+     * @return list of values
+     */
+    static List<Object> stableView(DockerServiceInfo info) {
+        List<Object> view = new ArrayList<>();
+        Collections.addAll(view, info.getContainers(), info.getOffContainers(), info.getImages(),
+          info.getNodeCount(), info.getOffNodeCount());
+        List<NodeInfo> nodes = info.getNodeList();
+        if(nodes != null) {
+            for(NodeInfo node: nodes) {
+                NodeMetrics health = node.getHealth();
+                Collections.addAll(view, node.getName(), node.isOn(),
+                  health == null ? null : health.getHealthy(),
+                  health == null ? null : health.getState());
+            }
+        }
+        return view;
+    }
+
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final ConcurrentMap<String, State> states = new ConcurrentHashMap<>();
+    private final Supplier<Collection<DockerService>> services;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService executor;
+    private final long baseInterval;
+    private final long maxInterval;
+    private final long timeout;
+
+    /**
+     * @param services supplier of services which must be refreshed
+     * @param scheduler executor for ticks, it must be single threaded
+     * @param threads max count of concurrent refreshes
+     * @param baseInterval interval of refresh in milliseconds
+     * @param maxInterval max interval of refresh in milliseconds
+     * @param timeout deadline of single refresh in milliseconds
+     */
+    InfoRefresher(Supplier<Collection<DockerService>> services, ScheduledExecutorService scheduler, int threads,
+                  long baseInterval, long maxInterval, long timeout) {
+        this.services = services;
+        this.scheduler = scheduler;
+        this.baseInterval = baseInterval;
+        this.maxInterval = Math.max(baseInterval, maxInterval);
+        this.timeout = timeout;
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+          new LinkedBlockingQueue<>(), new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat(getClass().getSimpleName() + "-%d")
+          .build());
+        executor.allowCoreThreadTimeOut(true);
+        this.executor = executor;
+    }
+
+    /**
+     * Start refresh of due services, it does not wait for end of refresh.
+     */
+    void tick() {
+        try {
+            long now = System.currentTimeMillis();
+            Set<String> ids = new HashSet<>();
+            for(DockerService service: services.get()) {
+                String id = service.getId();
+                ids.add(id);
+                State state = states.computeIfAbsent(id, k -> new State(baseInterval));
+                if(!state.isDue(now)) {
+                    continue;
+                }
+                Future<?> future = executor.submit(() -> refresh(service, state));
+                synchronized (state) {
+                    state.future = future;
+                }
+                scheduler.schedule(() -> {
+                    if(future.cancel(true)) {
+                        log.warn("Refresh info of {} is not completed in {} ms", id, timeout);
+                    }
+                }, timeout, TimeUnit.MILLISECONDS);
+            }
+            states.keySet().retainAll(ids);
+        } catch (Exception e) {
+            log.error("Can not refresh info", e);
+        }
+    }
+
+    private void refresh(DockerService service, State state) {
+        DockerServiceInfo info = null;
+        try (TempAuth ta = TempAuth.asSystem()) {
+            // we call get info for periodically updating info cache,
+            //  it need for actual info about nodes health, that we can only obtain trough swarm service
+            info = service.getInfo();
+        } catch (Exception e) {
+            if(Thread.currentThread().isInterrupted()) {
+                return;
+            }
+            log.error("While getInfo on {} ", service.getId(), e);
+        } finally {
+            state.onResult(info, baseInterval, maxInterval);
+        }
+    }
+
+    /**
+     * Current refresh interval of service.
+     * @param id id of service
+     * @return interval in milliseconds or -1 when service is unknown
+     */
+    long getInterval(String id) {
+        State state = states.get(id);
+        return state == null ? -1 : state.getInterval();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -18,7 +18,7 @@ package com.codeabovelab.dm.cluman.job;
 
 import com.codeabovelab.dm.common.utils.pojo.FieldProperty;
 import com.codeabovelab.dm.common.utils.pojo.MethodsProperty;
-import com.codeabovelab.dm.common.utils.pojo.PojoUtils;
+import com.codeabovelab.dm.common.utils.pojo.PojoClass;
 import com.codeabovelab.dm.common.utils.pojo.Property;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
@@ -33,7 +33,6 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  */
@@ -129,7 +128,12 @@ final class JobBeanIntrospector {
         }
     }
 
-    private static final ConcurrentHashMap<Class<?>, Metadata> map = new ConcurrentHashMap<>();
+    private static final ClassValue<Metadata> map = new ClassValue<Metadata>() {
+        @Override
+        protected Metadata computeValue(Class<?> type) {
+            return createMetadata(type);
+        }
+    };
 
     private JobBeanIntrospector() {
     }
@@ -141,7 +145,7 @@ final class JobBeanIntrospector {
         if(!hasJobMetadata) {
             return null;
         }
-        return map.computeIfAbsent(clazz, JobBeanIntrospector::createMetadata);
+        return map.get(clazz);
     }
 
     private static Metadata createMetadata(Class<?> clazz) {
@@ -162,15 +166,16 @@ final class JobBeanIntrospector {
             metadataMap.put(name, new PropertyMetadata(name, field, ann.required(), ann.in(), ann.out()));
         });
 
-        Map<String, MethodsProperty.Builder> methodProps = PojoUtils.loadMethodPropertyBuilders(clazz);
-        for(MethodsProperty.Builder builder: methodProps.values()) {
-            Method setter = builder.getSetter();
+        // properties are shared with other users, so its accessors are created only once
+        for(Property property: PojoClass.of(clazz).getProperties().values()) {
+            MethodsProperty mp = (MethodsProperty) property;
+            Method setter = mp.getSetter();
             if(setter != null && processDeps(deps, setter)) {
                 continue;
             }
 
             JobParam ann = null;
-            Method getter = builder.getGetter();
+            Method getter = mp.getGetter();
             if(getter != null) {
                 ann = getter.getAnnotation(JobParam.class);
             }
@@ -181,8 +186,8 @@ final class JobBeanIntrospector {
             if(ann == null) {
                 continue;
             }
-            String name = getName(builder.getName(), ann);
-            PropertyMetadata m = new PropertyMetadata(name, builder.build(), ann.required());
+            String name = getName(mp.getName(), ann);
+            PropertyMetadata m = new PropertyMetadata(name, mp, ann.required());
             metadataMap.put(m.getName(), m);
         }
         return new Metadata(clazz, metadataMap, deps);
@@ -34,5 +34,17 @@ public class MailConfiguration {
     @ConfigurationProperties("dm.mail")
     public static class MailProperties {
         private String from;
+        /**
+         * Time in milliseconds while notifications are collected into single mail.
+         */
+        private long window = 30_000;
+        /**
+         * Max count of notifications in outbox, oldest notifications are dropped when it is exceeded.
+         */
+        private int outboxSize = 10_000;
+        /**
+         * Max count of attempts to send notification.
+         */
+        private int maxAttempts = 5;
     }
 }
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.mail;
+
+import com.codeabovelab.dm.cluman.model.Severity;
+import lombok.Data;
+
+/**
+ * Notification about single event to single recipient, it is stored in {@link MailOutbox} until it was sent. <p/>
+ * It contains already printed event, because event objects may be not serializable.
+ */
+@Data
+public class MailNotification {
+    private String email;
+    private String templateUri;
+    private String eventSource;
+    private Severity severity;
+    private String text;
+    private long time;
+    /**
+     * Count of failed attempts of sending.
+     */
+    private int attempts;
+}
@@ -30,8 +30,6 @@ import com.codeabovelab.dm.cluman.ui.HttpException;
 import com.codeabovelab.dm.cluman.validate.ExtendedAssert;
 import com.codeabovelab.dm.common.mb.SmartConsumer;
 import com.codeabovelab.dm.common.mb.Subscriptions;
-import com.codeabovelab.dm.mail.dto.*;
-import com.codeabovelab.dm.mail.service.SendMailWithTemplateService;
 import com.google.common.collect.ImmutableMap;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -56,8 +54,7 @@ public class MailNotificationsService {
     private static final String DEFAULT_TEMPLATE = "res:eventAlert";
     private final Map<String, MailSubscription> subs = new ConcurrentHashMap<>();
     private final Map<String, Source<?>> sources;
-    private final SendMailWithTemplateService sendMailService;
-    private final String from;
+    private final MailOutbox outbox;
 
     private class Source<T> {
         private final String id;
@@ -95,15 +92,13 @@ public class MailNotificationsService {
     private KvClassMapper<MailSubscription.Builder> classMapper;
 
     @Autowired
-    public MailNotificationsService(MailConfiguration.MailProperties props,
-                                    KvMapperFactory kvMapperFactory,
+    public MailNotificationsService(KvMapperFactory kvMapperFactory,
                                     ObjectPrinterFactory objectPrinterFactory,
-                                    SendMailWithTemplateService sendMailService,
+                                    MailOutbox outbox,
                                     Map<String, Subscriptions<?>> sources) {
         this.objectPrinterFactory = objectPrinterFactory;
         this.kvMapperFactory = kvMapperFactory;
-        this.from = props.getFrom();
-        this.sendMailService = sendMailService;
+        this.outbox = outbox;
         ImmutableMap.Builder<String, Source<?>> b = ImmutableMap.builder();
         sources.forEach((k, v) -> b.put(k, new Source<>(k, v)));
         this.sources = b.build();
@@ -141,29 +136,23 @@ public class MailNotificationsService {
           sub.getSeverity().compareTo(severity) > 0) {
             return;
         }
-        //TODO cache, and also disable processing on errors, for prevent hangs
         String templateUri = sub.getTemplate();
         if(!StringUtils.hasText(templateUri)) {
             templateUri = DEFAULT_TEMPLATE;
         }
         List<String> emails = sub.getEmailRecipients();
-        Object var = objectPrinterFactory.printer(ev);
+        // event is printed once, and then persisted in outbox as text
+        String text = String.valueOf(objectPrinterFactory.printer(ev));
+        long time = System.currentTimeMillis();
         for(String email: emails) {
-            MailSourceImpl.Builder msb = MailSourceImpl.builder();
-            msb.templateUri(templateUri)
-              .addVariable("to", email)
-              .addVariable("event", ev)
-              .addVariable("eventText", var)
-              .addVariable("eventSource", eventSource)
-              .addVariable("severity", severity)
-              .addVariable("from", from);
-            sendMailService.send(msb.build(), msr -> {
-                if(msr.getStatus() == MailStatus.UNKNOWN_FAIL) {
-                    log.error("Sent notification to {} is failed with error {} ", email, msr.getError());
-                } else {
-                    log.info("Sent notification to {} with result {} ", email, msr);
-                }
-            });
+            MailNotification mn = new MailNotification();
+            mn.setEmail(email);
+            mn.setTemplateUri(templateUri);
+            mn.setEventSource(eventSource);
+            mn.setSeverity(severity);
+            mn.setText(text);
+            mn.setTime(time);
+            outbox.add(mn);
         }
     }
 
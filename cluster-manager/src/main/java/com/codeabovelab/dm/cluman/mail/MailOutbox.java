@@ -0,0 +1,255 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.mail;
+
+import com.codeabovelab.dm.cluman.model.Severity;
+import com.codeabovelab.dm.common.fc.FbJacksonAdapter;
+import com.codeabovelab.dm.common.fc.FbQueue;
+import com.codeabovelab.dm.common.fc.FbStorage;
+import com.codeabovelab.dm.mail.dto.MailSendResult;
+import com.codeabovelab.dm.mail.dto.MailSourceImpl;
+import com.codeabovelab.dm.mail.dto.MailStatus;
+import com.codeabovelab.dm.mail.service.SendMailWithTemplateService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * File backed outbox of mail notifications. Notifications are collected during 'dm.mail.window' and then
+ * notifications of each recipient (and template) are sent as single mail. Failed notifications are returned into
+ * outbox and recipient is delayed with exponential backoff, notification is dropped after 'dm.mail.maxAttempts'. <p/>
+ * Outbox is limited by 'dm.mail.outboxSize', so event storm produces limited count of mails and does not consume
+ * all memory. <p/>
+ * Notifications are removed from outbox only after result of sending is received and failed notifications are
+ * returned, therefore crash may cause duplicated mails, but not loss of notifications. Only exception is a
+ * sending which takes more than {@link #SEND_TIMEOUT}, its notifications are removed from outbox before result.
+ */
+@Slf4j
+@Component
+public class MailOutbox implements DisposableBean {
+
+    static final String QUEUE_ID = "mail-outbox";
+    /**
+     * Max count of events which text is included into single mail.
+     */
+    private static final int MAX_EVENTS_IN_MAIL = 50;
+    private static final int MAX_BACKOFF_SHIFT = 6;
+    /**
+     * Time in milliseconds which flush wait for results of sending.
+     */
+    static final long SEND_TIMEOUT = TimeUnit.MINUTES.toMillis(1);
+
+    private static final class Backoff {
+        private final int failures;
+        private final long nextTime;
+
+        Backoff(int failures, long nextTime) {
+            this.failures = failures;
+            this.nextTime = nextTime;
+        }
+    }
+
+    private final FbQueue<MailNotification> queue;
+    private final SendMailWithTemplateService sendMailService;
+    private final ScheduledExecutorService scheduler;
+    private final ConcurrentMap<String, Backoff> backoffs = new ConcurrentHashMap<>();
+    private final String from;
+    private final long window;
+    private final int maxAttempts;
+    private volatile boolean closed;
+
+    @Autowired
+    public MailOutbox(MailConfiguration.MailProperties props,
+                      ObjectMapper objectMapper,
+                      FbStorage fbStorage,
+                      SendMailWithTemplateService sendMailService) {
+        this.sendMailService = sendMailService;
+        this.from = props.getFrom();
+        this.window = props.getWindow();
+        this.maxAttempts = props.getMaxAttempts();
+        this.queue = FbQueue.builder(new FbJacksonAdapter<>(objectMapper, MailNotification.class))
+          .id(QUEUE_ID)
+          .storage(fbStorage)
+          .maxSize(props.getOutboxSize())
+          .build();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat(getClass().getSimpleName() + "-%d")
+          .build());
+        this.scheduler.scheduleWithFixedDelay(this::flush, window, window, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Add notification to outbox, when outbox is full the oldest notification is dropped.
+     * @param notification notification
+     */
+    public void add(MailNotification notification) {
+        queue.push(notification);
+    }
+
+    /**
+     * Count of notifications which is wait for sending.
+     * @return count of notifications
+     */
+    public int size() {
+        return queue.size();
+    }
+
+    void flush() {
+        try {
+            long now = System.currentTimeMillis();
+            Map<List<String>, List<MailNotification>> mails = new LinkedHashMap<>();
+            List<MailNotification> delayed = new ArrayList<>();
+            // we do not remove items until they are sent, so use snapshot of current items
+            List<MailNotification> items = new ArrayList<>();
+            queue.iterator().forEachRemaining(items::add);
+            if(items.isEmpty()) {
+                return;
+            }
+            for(MailNotification mn: items) {
+                Backoff backoff = backoffs.get(mn.getEmail());
+                if(backoff != null && backoff.nextTime > now) {
+                    delayed.add(mn);
+                    continue;
+                }
+                mails.computeIfAbsent(Arrays.asList(mn.getEmail(), mn.getTemplateUri()), k -> new ArrayList<>()).add(mn);
+            }
+            List<CompletableFuture<?>> results = new ArrayList<>();
+            mails.values().forEach(notifications -> results.add(send(notifications)));
+            try {
+                CompletableFuture.allOf(results.toArray(new CompletableFuture[results.size()]))
+                  .get(SEND_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // outbox is closed, so all items stay in queue
+                Thread.currentThread().interrupt();
+                return;
+            } catch (TimeoutException e) {
+                log.warn("Results of sending are not received in {} ms.", SEND_TIMEOUT);
+            }
+            // we add items to tail before removing from head, so crash between these steps produces duplicates only
+            delayed.forEach(queue::push);
+            for(MailNotification mn: items) {
+                // head item may be already dropped due to overflow
+                queue.pollIf(mn::equals);
+            }
+        } catch (Exception e) {
+            log.error("Can not flush mail outbox", e);
+        }
+    }
+
+    private CompletableFuture<?> send(List<MailNotification> notifications) {
+        CompletableFuture<?> result = new CompletableFuture<>();
+        MailNotification first = notifications.get(0);
+        String email = first.getEmail();
+        Severity severity = first.getSeverity();
+        Set<String> sources = new LinkedHashSet<>();
+        StringBuilder text = new StringBuilder();
+        int count = notifications.size();
+        for(int i = 0; i < count; ++i) {
+            MailNotification mn = notifications.get(i);
+            sources.add(mn.getEventSource());
+            if(mn.getSeverity().compareTo(severity) > 0) {
+                severity = mn.getSeverity();
+            }
+            if(i < MAX_EVENTS_IN_MAIL) {
+                if(i > 0) {
+                    text.append('\n');
+                }
+                text.append(mn.getText());
+            }
+        }
+        if(count > MAX_EVENTS_IN_MAIL) {
+            text.append("\n... and ").append(count - MAX_EVENTS_IN_MAIL).append(" more events.");
+        }
+        MailSourceImpl.Builder msb = MailSourceImpl.builder();
+        msb.templateUri(first.getTemplateUri())
+          .addVariable("to", email)
+          .addVariable("eventText", text.toString())
+          .addVariable("eventSource", StringUtils.collectionToDelimitedString(sources, ", "))
+          .addVariable("severity", severity)
+          .addVariable("count", count)
+          .addVariable("from", from);
+        try {
+            sendMailService.send(msb.build(), msr -> {
+                try {
+                    onResult(notifications, msr);
+                } finally {
+                    result.complete(null);
+                }
+            });
+        } catch (Exception e) {
+            // it usually error in template, so we can not fix it by retry
+            log.error("Can not send {} notifications to {}", count, email, e);
+            result.complete(null);
+        }
+        return result;
+    }
+
+    private void onResult(List<MailNotification> notifications, MailSendResult msr) {
+        String email = notifications.get(0).getEmail();
+        if(msr.getStatus() != MailStatus.UNKNOWN_FAIL) {
+            backoffs.remove(email);
+            log.info("Sent {} notifications to {} with result {} ", notifications.size(), email, msr);
+            return;
+        }
+        Backoff backoff = backoffs.compute(email, (k, old) -> {
+            int failures = old == null ? 1 : old.failures + 1;
+            long delay = window << Math.min(failures, MAX_BACKOFF_SHIFT);
+            return new Backoff(failures, System.currentTimeMillis() + delay);
+        });
+        log.error("Sent {} notifications to {} is failed ({} times) with error {} ",
+          notifications.size(), email, backoff.failures, msr.getError());
+        if(closed) {
+            return;
+        }
+        int dropped = 0;
+        for(MailNotification mn: notifications) {
+            int attempts = mn.getAttempts() + 1;
+            if(attempts >= maxAttempts) {
+                dropped++;
+                continue;
+            }
+            // original item is still in queue and will be removed by equality, so we must not modify it
+            MailNotification copy = new MailNotification();
+            copy.setEmail(mn.getEmail());
+            copy.setTemplateUri(mn.getTemplateUri());
+            copy.setEventSource(mn.getEventSource());
+            copy.setSeverity(mn.getSeverity());
+            copy.setText(mn.getText());
+            copy.setTime(mn.getTime());
+            copy.setAttempts(attempts);
+            queue.push(copy);
+        }
+        if(dropped > 0) {
+            log.error("Drop {} notifications to {} after {} attempts.", dropped, email, maxAttempts);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        closed = true;
+        scheduler.shutdownNow();
+        queue.close();
+    }
+}
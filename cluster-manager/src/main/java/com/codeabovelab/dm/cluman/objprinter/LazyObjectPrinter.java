@@ -20,7 +20,7 @@ import com.codeabovelab.dm.common.utils.pojo.PojoClass;
 import com.codeabovelab.dm.common.utils.pojo.Property;
 
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -28,6 +28,27 @@ import java.util.List;
  */
 class LazyObjectPrinter implements CharSequence {
 
+    /**
+     * Printable properties of class, sorted by name.
+     */
+    private static final ClassValue<List<Property>> PROPERTIES = new ClassValue<List<Property>>() {
+        @Override
+        protected List<Property> computeValue(Class<?> type) {
+            List<Property> props = new ArrayList<>();
+            for(Property prop: PojoClass.of(type).getProperties().values()) {
+                if(prop.getDeclaringClass() == Object.class) {
+                    continue;
+                }
+                ObjPrint opa = prop.getAnnotation(ObjPrint.class);
+                if(opa != null && opa.ignore()) {
+                    continue;
+                }
+                props.add(prop);
+            }
+            return Collections.unmodifiableList(props);
+        }
+    };
+
     private final Object obj;
     private final ObjectPrinterFactory printerFactory;
     private String res;
@@ -66,17 +87,7 @@ class LazyObjectPrinter implements CharSequence {
 
     private void print() {
         StringBuilder sb = new StringBuilder();
-        PojoClass pojoClass = new PojoClass(obj.getClass());
-        List<Property> props = new ArrayList<>(pojoClass.getProperties().values());
-        props.sort(Comparator.comparing(Property::getName));
-        for(Property prop: props) {
-            if(prop.getDeclaringClass() == Object.class) {
-                continue;
-            }
-            ObjPrint opa = prop.getAnnotation(ObjPrint.class);
-            if(opa != null && opa.ignore()) {
-                continue;
-            }
+        for(Property prop: PROPERTIES.get(obj.getClass())) {
             if(sb.length() > 0) {
                 sb.append("\n");
             }
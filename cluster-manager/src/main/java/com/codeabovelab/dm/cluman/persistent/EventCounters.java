@@ -0,0 +1,173 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.persistent;
+
+import com.codeabovelab.dm.cluman.model.EventWithTime;
+import com.codeabovelab.dm.cluman.model.Severity;
+import com.codeabovelab.dm.cluman.model.WithCluster;
+import com.codeabovelab.dm.cluman.model.WithSeverity;
+import lombok.Data;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Counters of events in rolling one-minute buckets, it keep last 24 hours. Events are counted by total,
+ * severity and cluster keys, so count of events since some time does not depend on size of history.
+ */
+public final class EventCounters {
+
+    /**
+     * Persisted state of counters.
+     */
+    @Data
+    public static class Snapshot {
+        private long since;
+        private long head;
+        private Map<String, int[]> counters;
+    }
+
+    public static final String TOTAL = "total";
+    public static final String SEVERITY = "severity:";
+    public static final String CLUSTER = "cluster:";
+    static final int BUCKETS = 24 * 60;
+    private static final long BUCKET = TimeUnit.MINUTES.toMillis(1);
+
+    private final Map<String, int[]> counters = new HashMap<>();
+    /**
+     * Time since which counters contain all events.
+     */
+    private final long since;
+    /**
+     * Number of newest bucket, since epoch.
+     */
+    private long head;
+    private volatile boolean dirty;
+
+    public EventCounters(long since) {
+        this.since = since;
+        this.head = since / BUCKET;
+    }
+
+    public EventCounters(Snapshot snapshot) {
+        this.since = snapshot.getSince();
+        this.head = snapshot.getHead();
+        Map<String, int[]> src = snapshot.getCounters();
+        if(src != null) {
+            src.forEach((k, v) -> {
+                if(v != null && v.length == BUCKETS) {
+                    counters.put(k, v.clone());
+                }
+            });
+        }
+    }
+
+    public void add(Object event) {
+        long time = event instanceof EventWithTime ? ((EventWithTime) event).getTimeInMilliseconds() : System.currentTimeMillis();
+        String severity = null;
+        if(event instanceof WithSeverity) {
+            Severity s = ((WithSeverity) event).getSeverity();
+            severity = s == null ? null : SEVERITY + s.name();
+        }
+        String cluster = null;
+        if(event instanceof WithCluster) {
+            String c = ((WithCluster) event).getCluster();
+            cluster = c == null ? null : CLUSTER + c;
+        }
+        long bucket = time / BUCKET;
+        synchronized (this) {
+            roll(bucket);
+            if(bucket <= head - BUCKETS) {
+                // too old
+                return;
+            }
+            int slot = (int) (bucket % BUCKETS);
+            inc(TOTAL, slot);
+            if(severity != null) {
+                inc(severity, slot);
+            }
+            if(cluster != null) {
+                inc(cluster, slot);
+            }
+            dirty = true;
+        }
+    }
+
+    private void inc(String key, int slot) {
+        counters.computeIfAbsent(key, k -> new int[BUCKETS])[slot]++;
+    }
+
+    private void roll(long bucket) {
+        if(bucket <= head) {
+            return;
+        }
+        long end = Math.min(bucket, head + BUCKETS);
+        for(long b = head + 1; b <= end; ++b) {
+            int slot = (int) (b % BUCKETS);
+            for(int[] arr : counters.values()) {
+                arr[slot] = 0;
+            }
+        }
+        head = bucket;
+    }
+
+    /**
+     * Count events since specified time. Precision of result is one minute.
+     * @param from time in milliseconds
+     * @return map of counts by keys (see {@link #TOTAL}, {@link #SEVERITY} and {@link #CLUSTER}) or null when
+     * counters does not cover specified time
+     */
+    public synchronized Map<String, Integer> count(long from) {
+        roll(System.currentTimeMillis() / BUCKET);
+        long first = from / BUCKET;
+        if(from < since || first <= head - BUCKETS) {
+            return null;
+        }
+        Map<String, Integer> res = new HashMap<>();
+        counters.forEach((k, arr) -> {
+            int sum = 0;
+            for(long b = first; b <= head; ++b) {
+                sum += arr[(int) (b % BUCKETS)];
+            }
+            res.put(k, sum);
+        });
+        res.putIfAbsent(TOTAL, 0);
+        return res;
+    }
+
+    /**
+     * Reset 'dirty' flag.
+     * @return true if counters was changed since last call
+     */
+    boolean flushDirty() {
+        boolean old = dirty;
+        dirty = false;
+        return old;
+    }
+
+    public synchronized Snapshot toSnapshot() {
+        Snapshot s = new Snapshot();
+        s.setSince(since);
+        s.setHead(head);
+        Map<String, int[]> copy = new HashMap<>();
+        counters.forEach((k, v) -> copy.put(k, Arrays.copyOf(v, v.length)));
+        s.setCounters(copy);
+        return s;
+    }
+}
@@ -16,6 +16,7 @@
 
 package com.codeabovelab.dm.cluman.persistent;
 
+import com.codeabovelab.dm.cluman.model.EventWithTime;
 import com.codeabovelab.dm.common.fc.FbJacksonAdapter;
 import com.codeabovelab.dm.common.fc.FbQueue;
 import com.codeabovelab.dm.common.fc.FbStorage;
@@ -23,16 +24,24 @@ import com.codeabovelab.dm.common.mb.*;
 import com.codeabovelab.dm.common.utils.Closeables;
 import com.codeabovelab.dm.common.utils.Key;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.AllArgsConstructor;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Iterator;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
 
@@ -40,7 +49,6 @@ import java.util.function.Predicate;
  */
 @Slf4j
 @Component
-@AllArgsConstructor(onConstructor = @__(@Autowired))
 public class PersistentBusFactory implements InitializingBean, DisposableBean {
     /**
      * Key of bus extension
@@ -51,10 +59,170 @@ public class PersistentBusFactory implements InitializingBean, DisposableBean {
 
     public class PersistentBus<T> implements AutoCloseable {
 
+        /**
+         * Wrapper of bus listener, it replays history by pages on background executor and passes live events
+         * only when replay has reached the tail of queue. Each event has offset, therefore events which is published
+         * while replay is in progress are read from queue, and listener does not receive duplicates.
+         */
+        private final class Subscriber implements WrappedConsumer<T>, Runnable {
+            private final Consumer<T> listener;
+            /**
+             * Offset of first event which is passed to listener from bus, while replay is in progress
+             * it is {@link Long#MAX_VALUE}.
+             */
+            private volatile long liveFrom = Long.MAX_VALUE;
+            private volatile boolean stopped;
+            // fields below are used by replay task only
+            private Predicate<T> filter;
+            private long since;
+            private long historyEnd;
+            private long position;
+            private Iterator<T> iter;
+
+            Subscriber(Consumer<T> listener) {
+                this.listener = listener;
+            }
+
+            @Override
+            public void accept(T t) {
+                long from = liveFrom;
+                if(from == Long.MAX_VALUE) {
+                    // it will be read from queue
+                    return;
+                }
+                long pushed = pushedOffset.get()[0];
+                if(pushed != NO_OFFSET && pushed < from) {
+                    // it is already passed by replay
+                    return;
+                }
+                listener.accept(t);
+            }
+
+            void start() {
+                SmartConsumer<T> sc = SmartConsumer.of(listener);
+                int historyCount = sc.getHistoryCount();
+                if(historyCount == 0) {
+                    liveFrom = Long.MIN_VALUE;
+                    return;
+                }
+                this.filter = sc.historyFilter();
+                this.since = sc.getHistorySince();
+                synchronized (pushLock) {
+                    this.historyEnd = offset;
+                    long from = historyCount == Integer.MAX_VALUE ? Long.MIN_VALUE : historyEnd - historyCount;
+                    seek(Math.max(from, sc.getHistoryOffset()));
+                }
+                schedule();
+            }
+
+            /**
+             * Open iterator from specified offset to tail of queue, must be invoked under push lock.
+             * @param from offset of first event
+             */
+            private void seek(long from) {
+                long head = offset - queue.size();
+                if(from < head) {
+                    if(iter != null) {
+                        log.warn("Subscriber {} of {} is too slow, {} events has been lost.", listener, getId(), head - from);
+                    }
+                    from = head;
+                }
+                this.position = Math.min(from, offset);
+                this.iter = queue.iterator((int) (offset - position));
+            }
+
+            private void schedule() {
+                try {
+                    replayExecutor.execute(this);
+                } catch (RejectedExecutionException e) {
+                    log.warn("Can not up history to {}, due to error: {}", listener, e.toString());
+                    goLive();
+                }
+            }
+
+            private void goLive() {
+                synchronized (pushLock) {
+                    this.iter = null;
+                    this.liveFrom = offset;
+                }
+            }
+
+            @Override
+            public void run() {
+                try {
+                    for(int i = 0; i < REPLAY_PAGE_SIZE; ++i) {
+                        if(stopped) {
+                            return;
+                        }
+                        if(!iter.hasNext()) {
+                            synchronized (pushLock) {
+                                if(position >= offset) {
+                                    // replay has reached the tail, from this point listener receives events from bus
+                                    this.iter = null;
+                                    this.liveFrom = position;
+                                    return;
+                                }
+                                // catch up events which is published while replay
+                                seek(position);
+                            }
+                            continue;
+                        }
+                        T next = iter.next();
+                        if(position++ >= historyEnd || isAcceptable(next)) {
+                            listener.accept(next);
+                        }
+                    }
+                } catch (Exception e) {
+                    log.error("Can not up history to new consumer, due to error.", e);
+                    goLive();
+                    return;
+                }
+                schedule();
+            }
+
+            private boolean isAcceptable(T event) {
+                if(since != Long.MIN_VALUE && event instanceof EventWithTime &&
+                  ((EventWithTime) event).getTimeInMilliseconds() < since) {
+                    return false;
+                }
+                return filter.test(event);
+            }
+
+            void stop() {
+                this.stopped = true;
+            }
+
+            @Override
+            public Consumer<T> unwrap() {
+                return listener;
+            }
+
+            @Override
+            public void close() throws Exception {
+                stop();
+                Closeables.closeIfCloseable(listener);
+            }
+
+            @Override
+            public String toString() {
+                return "Subscriber{" + listener + "}";
+            }
+        }
+
         private final Consumer<T> queueListener;
         private boolean closed;
         private final FbQueue<T> queue;
+        private final EventCounters counters;
         private final MessageBusImpl<T, MessageSubscriptionsWrapper<T>> bus;
+        private final Object pushLock = new Object();
+        /**
+         * Offset of next event, guarded by {@link #pushLock}.
+         */
+        private long offset;
+        /**
+         * Offset of event which is currently published by thread, it allow subscribers to identify live events.
+         */
+        private final ThreadLocal<long[]> pushedOffset = ThreadLocal.withInitial(() -> new long[]{NO_OFFSET});
 
         public PersistentBus(Class<T> type, String id, int size) {
             this.queue = FbQueue.builder(new FbJacksonAdapter<>(objectMapper, type))
@@ -62,36 +230,85 @@ public class PersistentBusFactory implements InitializingBean, DisposableBean {
               .storage(fbStorage)
               .maxSize(size)
               .build();
-            this.queueListener = t -> queue.push(t);
+            this.counters = loadCounters();
+            this.offset = queue.size();
+            this.queueListener = t -> {
+                long[] pushed = pushedOffset.get();
+                pushed[0] = NO_OFFSET;
+                synchronized (pushLock) {
+                    queue.push(t);
+                    pushed[0] = offset++;
+                }
+                counters.add(t);
+            };
             this.bus = MessageBusImpl
               .builder(type, MessageSubscriptionsWrapper::new)
               .id(id)
-              .onSubscribe(this::flusher)
+              .listenerWrapper(l -> l == queueListener ? l : new Subscriber(l))
+              .onSubscribe(this::onSubscribe)
+              .onUnsubscribe(this::onUnsubscribe)
               .build();
             this.bus.getOrCreateExtension(EXT_KEY, (k, b) -> this);
             this.bus.subscribe(queueListener);
         }
 
-        private void flusher(MessageBus<T> mb, Consumer<T> l) {
-            if(WrappedConsumer.unwrap(l) == queueListener) {
-                return;
+        @SuppressWarnings("unchecked")
+        private void onSubscribe(MessageBus<T> mb, Consumer<T> l) {
+            if(l instanceof PersistentBus.Subscriber) {
+                ((Subscriber) l).start();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void onUnsubscribe(MessageBus<T> mb, Consumer<T> l) {
+            if(l instanceof PersistentBus.Subscriber) {
+                ((Subscriber) l).stop();
+            }
+        }
+
+        String getId() {
+            return bus.getId();
+        }
+
+        /**
+         * Offset of next published event. Offsets are growing while bus is alive, so consumer
+         * can resume from it with {@link SmartConsumer#getHistoryOffset()}.
+         * @return offset
+         */
+        public long getOffset() {
+            synchronized (pushLock) {
+                return offset;
             }
-            SmartConsumer<T> sc = SmartConsumer.of(l);
-            int historyCount = sc.getHistoryCount();
-            if(historyCount == 0) {
+        }
+
+        private File getCountersFile() {
+            return new File(queue.getQueueDir(), COUNTERS_FILE);
+        }
+
+        private EventCounters loadCounters() {
+            File file = getCountersFile();
+            if(file.exists()) {
+                try {
+                    return new EventCounters(objectMapper.readValue(file, EventCounters.Snapshot.class));
+                } catch (Exception e) {
+                    log.warn("Can not load counters from \"{}\", due to error: {}", file, e.toString());
+                }
+            }
+            // counters does not known anything about events which is already in queue
+            return new EventCounters(queue.isEmpty() ? 0 : System.currentTimeMillis());
+        }
+
+        void saveCounters() {
+            if(!counters.flushDirty()) {
                 return;
             }
-            Predicate<T> filter = sc.historyFilter();
+            File file = getCountersFile();
+            File tmp = new File(file.getPath() + ".tmp");
             try {
-                Iterator<T> iter = queue.iterator(historyCount);
-                while (iter.hasNext()) {
-                    T next = iter.next();
-                    if(filter.test(next)) {
-                        l.accept(next);
-                    }
-                }
+                objectMapper.writeValue(tmp, counters.toSnapshot());
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
             } catch (Exception e) {
-                log.error("Can not up history to new consumer, due to error.", e);
+                log.error("Can not save counters to \"{}\"", file, e);
             }
         }
 
@@ -103,6 +320,7 @@ public class PersistentBusFactory implements InitializingBean, DisposableBean {
             }
             closed = true;
             this.bus.close();
+            saveCounters();
             this.queue.close();
         }
 
@@ -113,11 +331,38 @@ public class PersistentBusFactory implements InitializingBean, DisposableBean {
         public FbQueue<T> getQueue() {
             return queue;
         }
+
+        /**
+         * Counters of events, which are updated on publishing and persisted with queue.
+         * @return counters
+         */
+        public EventCounters getCounters() {
+            return counters;
+        }
     }
 
+    private static final String COUNTERS_FILE = "counters.json";
+    private static final int REPLAY_PAGE_SIZE = 256;
+    private static final long NO_OFFSET = -1;
     private final ObjectMapper objectMapper;
     private final FbStorage fbStorage;
     private final ConcurrentMap<String, PersistentBus<?>> map = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduledService;
+    private final ExecutorService replayExecutor;
+
+    @Autowired
+    public PersistentBusFactory(ObjectMapper objectMapper, FbStorage fbStorage) {
+        this.objectMapper = objectMapper;
+        this.fbStorage = fbStorage;
+        this.scheduledService = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat(getClass().getSimpleName() + "-%d")
+          .build());
+        this.replayExecutor = Executors.newFixedThreadPool(2, new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat(getClass().getSimpleName() + "-replay-%d")
+          .build());
+    }
 
     @SuppressWarnings("unchecked")
     public <T> MessageBus<T> create(Class<T> type, String id, int size) {
@@ -131,11 +376,15 @@ public class PersistentBusFactory implements InitializingBean, DisposableBean {
 
     @Override
     public void destroy() throws Exception {
+        scheduledService.shutdownNow();
+        replayExecutor.shutdownNow();
         map.values().forEach(Closeables::close);
     }
 
     @Override
     public void afterPropertiesSet() throws Exception {
-
+        scheduledService.scheduleWithFixedDelay(() -> {
+            map.values().forEach(PersistentBus::saveCounters);
+        }, 1, 1, TimeUnit.MINUTES);
     }
 }
@@ -26,6 +26,8 @@ import com.codeabovelab.dm.cluman.ds.DockerServiceRegistry;
 import com.codeabovelab.dm.cluman.ds.clusters.RealCluster;
 import com.codeabovelab.dm.cluman.ds.clusters.SwarmNodesGroupConfig;
 import com.codeabovelab.dm.cluman.ds.container.ContainerStorage;
+import com.codeabovelab.dm.cluman.ds.nodes.MetricsHistory;
+import com.codeabovelab.dm.cluman.ds.nodes.MetricsRange;
 import com.codeabovelab.dm.cluman.ds.nodes.NodeStorage;
 import com.codeabovelab.dm.cluman.job.JobInstance;
 import com.codeabovelab.dm.cluman.model.*;
@@ -54,6 +56,7 @@ import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
@@ -191,6 +194,18 @@ public class ClusterApi {
         return info.getNodeList();
     }
 
+    @ApiOperation("History of metrics aggregated over cluster nodes, 'from' and 'to' are in milliseconds, by default it return last hour")
+    @RequestMapping(value = "/clusters/{cluster}/metrics", method = GET)
+    public MetricsRange getMetrics(@PathVariable("cluster") String cluster,
+                                   @RequestParam(value = "metric") MetricsHistory.Metric metric,
+                                   @RequestParam(value = "resolution", defaultValue = "MINUTE") MetricsHistory.Resolution resolution,
+                                   @RequestParam(value = "from", required = false) Long from,
+                                   @RequestParam(value = "to", required = false) Long to) {
+        long end = to == null ? System.currentTimeMillis() : to;
+        long start = from == null ? end - TimeUnit.HOURS.toMillis(1) : from;
+        return nodeRegistry.getClusterMetrics(cluster, metric, resolution, start, end);
+    }
+
     @RequestMapping(value = "/clusters/{cluster}/nodes", method = GET)
     public List<String> listNodes(@PathVariable("cluster") String cluster) {
         DockerServiceInfo info = dockerServiceRegistry.getService(cluster).getInfo();
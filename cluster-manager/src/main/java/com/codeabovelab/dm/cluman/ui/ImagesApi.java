@@ -32,7 +32,9 @@ import com.codeabovelab.dm.cluman.cluster.registry.RegistryService;
 import com.codeabovelab.dm.cluman.cluster.registry.data.ImageCatalog;
 import com.codeabovelab.dm.cluman.cluster.registry.data.SearchResult;
 import com.codeabovelab.dm.cluman.cluster.registry.data.Tags;
+import com.codeabovelab.dm.cluman.cluster.registry.TagDetailsResolver;
 import com.codeabovelab.dm.cluman.ds.DockerServiceRegistry;
+import com.codeabovelab.dm.cluman.ds.clusters.ClusterImagesIndex;
 import com.codeabovelab.dm.cluman.ds.clusters.SwarmNodesGroupConfig;
 import com.codeabovelab.dm.cluman.model.*;
 import com.codeabovelab.dm.cluman.source.ContainerSourceFactory;
@@ -40,6 +42,7 @@ import com.codeabovelab.dm.cluman.ui.model.*;
 import com.codeabovelab.dm.cluman.utils.ContainerUtils;
 import com.codeabovelab.dm.cluman.validate.ExtendedAssert;
 import com.codeabovelab.dm.common.cache.DefineCache;
+import com.codeabovelab.dm.platform.configuration.CacheConfiguration;
 import com.google.common.base.Splitter;
 import io.swagger.annotations.ApiOperation;
 import lombok.Data;
@@ -69,6 +72,8 @@ public class ImagesApi {
     private final DiscoveryStorage discoveryStorage;
     private final RegistryRepository registryRepository;
     private final FilterFactory filterFactory;
+    private final TagDetailsResolver tagDetailsResolver;
+    private final ClusterImagesIndex clusterImagesIndex;
 
     @RequestMapping(value = "/clusters/{cluster}/list", method = RequestMethod.GET)
     public List<ImageItem> getImages(@PathVariable("cluster") String cluster) {
@@ -228,13 +233,16 @@ public class ImagesApi {
         return filter(tgs, name, registry, imageFilter);
     }
 
-    @ApiOperation("get tags catalog (contains additional information), filter expression is SpEL cluster image filter")
+    @ApiOperation("get tags catalog (contains additional information), filter expression is SpEL cluster image filter," +
+      " when 'size' is specified then only tags of page are returned")
     @RequestMapping(value = "/tags-detailed", method = GET)
     @Cacheable("UiImageCatalog")
-    @DefineCache(expireAfterWrite = 60_000)
+    @DefineCache(expireAfterWrite = 60_000, cacheManager = CacheConfiguration.LAYERED_CACHE_MANAGER)
     public List<UiTagCatalog> listTagsDetailed(@RequestParam("imageName") String imageName,
                                                @RequestParam(value = "filter", required = false) String filter,
-                                               @RequestParam(value = "cluster", required = false) String cluster) {
+                                               @RequestParam(value = "cluster", required = false) String cluster,
+                                               @RequestParam(value = "page", required = false, defaultValue = "0") int page,
+                                               @RequestParam(value = "size", required = false, defaultValue = "0") int size) {
 
         Filter imageFilter = calculateImageFilter(filter, cluster);
         String name = ContainerUtils.getImageNameWithoutPrefix(imageName);
@@ -242,25 +250,25 @@ public class ImagesApi {
         RegistryService registry = registryRepository.getRegistryByImageName(imageName);
         Tags tgs = registry.getTags(name);
         List<String> tags = filter(tgs, name, registry, imageFilter);
-        return tags.stream().map(t -> {
-            try {
-                ImageDescriptor image = registry.getImage(name, t);
-                return new UiTagCatalog(registry.getConfig().getName(), name, null, t, image != null ? image.getId() : null,
-                        image != null ? image.getCreated() : null,
-                        image != null ? image.getContainerConfig().getLabels() : null);
-            } catch (Exception e) {
-                log.error("can't download image {} / {} : {}, cause: {}", registry, name, t, e.getMessage());
-                return null;
-            }
-
-        }).filter(Objects::nonNull).collect(Collectors.toList());
-
+        if (size > 0) {
+            // we load details of visible tags only
+            int from = Math.min(page * size, tags.size());
+            tags = tags.subList(from, Math.min(from + size, tags.size()));
+        }
+        String registryName = registry.getConfig().getName();
+        Map<String, ImageDescriptor> images = tagDetailsResolver.resolve(registry, name, tags);
+        return images.entrySet().stream().map(e -> {
+            ImageDescriptor image = e.getValue();
+            return new UiTagCatalog(registryName, name, null, e.getKey(), image != null ? image.getId() : null,
+                    image != null ? image.getCreated() : null,
+                    image != null ? image.getContainerConfig().getLabels() : null);
+        }).collect(Collectors.toList());
     }
 
     @ApiOperation("get images catalogs, filter expression is SpEL cluster image filter")
     @RequestMapping(value = "/", method = GET)
     @Cacheable("UiImageCatalog")
-    @DefineCache(expireAfterWrite = 60_000)
+    @DefineCache(expireAfterWrite = 60_000, cacheManager = CacheConfiguration.LAYERED_CACHE_MANAGER)
     public List<UiImageCatalog> listImageCatalogs(@RequestParam(value = "filter", required = false) String filterStr,
                                                   @RequestParam(value = "cluster", required = false) String cluster) {
         final Filter filter = calculateImageFilter(filterStr, cluster);
@@ -317,8 +325,7 @@ public class ImagesApi {
 
     private void processGroup(Filter filter, Map<String, UiImageCatalog> catalogs, NodesGroup nodesGroup) {
         ImageObject io = new ImageObject();
-        GetImagesArg getImagesArg = GetImagesArg.ALL;
-        List<ImageItem> images = nodesGroup.getDocker().getImages(getImagesArg);
+        List<ImageItem> images = clusterImagesIndex.getImages(nodesGroup);
         final String clusterName = nodesGroup.getName();
         io.setCluster(clusterName);
         //note that in some cases not all nodes of cluster have same images set, but we ignore it at this time
@@ -20,6 +20,8 @@ package com.codeabovelab.dm.cluman.ui;
 import com.codeabovelab.dm.cluman.cluster.docker.management.DockerService;
 import com.codeabovelab.dm.cluman.cluster.docker.management.argument.GetContainersArg;
 import com.codeabovelab.dm.cluman.ds.container.ContainerStorage;
+import com.codeabovelab.dm.cluman.ds.nodes.MetricsHistory;
+import com.codeabovelab.dm.cluman.ds.nodes.MetricsRange;
 import com.codeabovelab.dm.cluman.ds.nodes.NodeStorage;
 import com.codeabovelab.dm.cluman.ds.swarm.DockerServices;
 import com.codeabovelab.dm.cluman.model.DiscoveryStorage;
@@ -36,6 +38,7 @@ import org.springframework.web.bind.annotation.*;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static org.springframework.http.MediaType.APPLICATION_JSON_VALUE;
@@ -69,6 +72,20 @@ public class NodesApi {
         return nodeStorage.getNodeInfo(name);
     }
 
+    @ApiOperation("History of node metrics, 'from' and 'to' are in milliseconds, by default it return last hour")
+    @RequestMapping(value = "/{name}/metrics", method = RequestMethod.GET)
+    public MetricsRange getMetrics(@PathVariable("name") String name,
+                                   @RequestParam(value = "metric") MetricsHistory.Metric metric,
+                                   @RequestParam(value = "resolution", defaultValue = "RAW") MetricsHistory.Resolution resolution,
+                                   @RequestParam(value = "from", required = false) Long from,
+                                   @RequestParam(value = "to", required = false) Long to) {
+        long end = to == null ? System.currentTimeMillis() : to;
+        long start = from == null ? end - TimeUnit.HOURS.toMillis(1) : from;
+        MetricsRange range = nodeStorage.getNodeMetrics(name, metric, resolution, start, end);
+        ExtendedAssert.notFound(range, "Can not find node: " + name);
+        return range;
+    }
+
     @RequestMapping(value = "/{name}/containers", method = RequestMethod.GET)
     public List<UiContainer> getContainers(@PathVariable("name") String name) {
         DockerService ds = dockerServices.getNodeService(name);
@@ -16,50 +16,299 @@
 
 package com.codeabovelab.dm.cluman.ui.health;
 
-import com.codeabovelab.dm.cluman.cluster.docker.management.DockerUtils;
-import com.codeabovelab.dm.cluman.cluster.docker.model.ContainerDetails;
+import com.codeabovelab.dm.cluman.cluster.docker.management.DockerService;
+import com.codeabovelab.dm.cluman.cluster.docker.model.*;
 import com.codeabovelab.dm.cluman.ds.DockerServiceRegistry;
+import com.codeabovelab.dm.cluman.ds.container.ContainerRegistration;
+import com.codeabovelab.dm.cluman.ds.container.ContainerStorage;
+import com.codeabovelab.dm.cluman.model.NodeRegistry;
+import com.codeabovelab.dm.common.healthcheck.HealthCheckResultData;
+import com.codeabovelab.dm.common.healthcheck.HealthCheckResultDataImpl;
 import com.codeabovelab.dm.common.healthcheck.ServiceHealthCheckResult;
+import com.codeabovelab.dm.common.healthcheck.ServiceHealthCheckResultImpl;
+import com.codeabovelab.dm.platform.http.async.NettyRequestFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
 
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.*;
 import java.util.function.Consumer;
 
 /**
- * Service which doe health check of container.
+ * Service which doe health check of container. <p/>
+ * Containers with probe (see {@link ProbeSpec}) are probed periodically with jittered interval on non blocking
+ * {@link HealthProbeEngine}, last result of each container is cached, so {@link #getResult(String)} and
+ * {@link #checkAll(Consumer)} does not do any io.
  */
 @Component
-public class HealthCheckService {
+public class HealthCheckService implements DisposableBean {
 
-    private final DockerServiceRegistry dockerServiceRegistry;
+    private static final Logger LOG = LoggerFactory.getLogger(HealthCheckService.class);
+    private static final String ANY_ADDRESS = "0.0.0.0";
 
+    private final DockerServiceRegistry dockerServiceRegistry;
+    private final NodeRegistry nodeRegistry;
+    private final ContainerStorage containerStorage;
+    private final HealthProbeEngine engine;
+    private final ConcurrentMap<String, ProbedContainer> containers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService discoveryExecutor;
+    private final long defaultTimeout;
+    private final long defaultInterval;
+    private final long retryDelay;
 
     @Autowired
-    public HealthCheckService(DockerServiceRegistry dockerServiceRegistry) {
+    public HealthCheckService(DockerServiceRegistry dockerServiceRegistry,
+                              NodeRegistry nodeRegistry,
+                              ContainerStorage containerStorage,
+                              @Value("${dm.healthcheck.timeout:5000}") long defaultTimeout,
+                              @Value("${dm.healthcheck.interval:30000}") long defaultInterval,
+                              @Value("${dm.healthcheck.retryDelay:1000}") long retryDelay,
+                              @Value("${dm.healthcheck.discoveryInterval:60000}") long discoveryInterval) {
         this.dockerServiceRegistry = dockerServiceRegistry;
+        this.nodeRegistry = nodeRegistry;
+        this.containerStorage = containerStorage;
+        this.defaultTimeout = defaultTimeout;
+        this.defaultInterval = defaultInterval;
+        this.retryDelay = retryDelay;
+        this.engine = new HealthProbeEngine(NettyRequestFactory.getSharedEventLoopGroup());
+        this.discoveryExecutor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("health-discovery-"));
+        this.discoveryExecutor.scheduleWithFixedDelay(this::discover, discoveryInterval, discoveryInterval, TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * Pass last results of all probed containers to callback, it does not do any io.
+     * @param callback consumer of results
+     */
     public void checkAll(Consumer<ServiceHealthCheckResult> callback) {
-        //TODO we need to implement some hatcheck here
-        throw new UnsupportedOperationException("we need to implement some hatcheck here");
+        for(ProbedContainer pc: containers.values()) {
+            ServiceHealthCheckResult result = pc.getResult();
+            if(result != null) {
+                callback.accept(result);
+            }
+        }
     }
 
     /**
-     * Check single container health, may return null.
-     * @param id
-     * @param timeout
+     * Last known result of container probe.
+     * @param id container id
+     * @return result or null when container has no probe or it still not probed
+     */
+    public ServiceHealthCheckResult getResult(String id) {
+        ProbedContainer pc = containers.get(id);
+        return pc == null? null : pc.getResult();
+    }
+
+    /**
+     * Check single container health, it wait for healthy result until timeout, therefore it can be used
+     * for just started containers. Container without probe is healthy when it is running.
+     * @param cluster cluster of container
+     * @param id container id
+     * @param timeout time in milliseconds
      * @return null or ServiceHealthCheckResult
-     * @throws InterruptedException
      */
     public ServiceHealthCheckResult checkContainer(String cluster, String id, long timeout) {
         Assert.hasText(id, "id is null or empty");
-        ContainerDetails container = dockerServiceRegistry.getService(cluster).getContainer(id);
-        if(container == null) {
-            throw new RuntimeException("No containers with id: " + id);
+        ProbedContainer pc = containers.get(id);
+        if(pc == null) {
+            ContainerDetails container = dockerServiceRegistry.getService(cluster).getContainer(id);
+            if(container == null) {
+                throw new RuntimeException("No containers with id: " + id);
+            }
+            ProbeSpec spec = ProbeSpec.fromLabels(container.getLabels(), defaultTimeout, defaultInterval);
+            if(spec == null) {
+                return checkState(container);
+            }
+            pc = register(container, spec);
+        }
+        ServiceHealthCheckResult result = pc.getResult();
+        if(result != null && result.isHealthy()) {
+            return result;
+        }
+        long deadline = System.currentTimeMillis() + timeout;
+        while(true) {
+            long remain = deadline - System.currentTimeMillis();
+            if(remain <= 0) {
+                return result;
+            }
+            try {
+                result = pc.probe().get(remain, TimeUnit.MILLISECONDS);
+                if(result.isHealthy()) {
+                    return result;
+                }
+                remain = deadline - System.currentTimeMillis();
+                if(remain > 0) {
+                    Thread.sleep(Math.min(retryDelay, remain));
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return result;
+            } catch (ExecutionException | TimeoutException e) {
+                return result;
+            }
+        }
+    }
+
+    private ServiceHealthCheckResult checkState(ContainerDetails container) {
+        ContainerState state = container.getState();
+        boolean running = state != null && state.isRunning();
+        HealthCheckResultData data = HealthCheckResultDataImpl.builder()
+          .id(container.getId())
+          .healthy(running)
+          .message("Container has no probe, running: " + running)
+          .build();
+        return ServiceHealthCheckResultImpl.builder()
+          .healthy(running)
+          .results(Collections.singletonList(data))
+          .build();
+    }
+
+    private ProbedContainer register(ContainerDetails container, ProbeSpec spec) {
+        InetSocketAddress address = resolveAddress(container, spec.getPort());
+        ProbedContainer pc = new ProbedContainer(container.getId(), spec, address);
+        ProbedContainer old = containers.putIfAbsent(pc.id, pc);
+        if(old != null) {
+            return old;
+        }
+        LOG.info("Register health probe {} of container {} at {}", spec, pc.id, address);
+        pc.schedule(ThreadLocalRandom.current().nextLong(spec.getInterval()));
+        return pc;
+    }
+
+    static InetSocketAddress resolveAddress(ContainerDetails container, int port) {
+        NetworkSettings ns = container.getNetworkSettings();
+        Ports ports = ns == null? null : ns.getPorts();
+        Ports.Binding[] bindings = ports == null? null : ports.getBindings().get(ExposedPort.tcp(port));
+        if(bindings != null && bindings.length > 0 && bindings[0].getHostPort() != null) {
+            Ports.Binding binding = bindings[0];
+            String host = binding.getHostIp();
+            if(!StringUtils.hasText(host) || ANY_ADDRESS.equals(host)) {
+                Node node = container.getNode();
+                host = node == null? null : node.getIp();
+            }
+            if(StringUtils.hasText(host)) {
+                return InetSocketAddress.createUnresolved(host, binding.getHostPort());
+            }
+        }
+        String ip = ns == null? null : ns.getIpAddress();
+        Assert.hasText(ip, "Can not resolve address of port " + port + " in container " + container.getId());
+        return InetSocketAddress.createUnresolved(ip, port);
+    }
+
+    /**
+     * Register new containers which has probe and forget removed containers.
+     */
+    private void discover() {
+        try {
+            Set<String> actual = new HashSet<>();
+            for(ContainerRegistration cr: containerStorage.getContainers()) {
+                String id = cr.getId();
+                actual.add(id);
+                if(containers.containsKey(id) ||
+                  !cr.getContainer().getLabels().containsKey(ProbeSpec.LABEL_TYPE)) {
+                    continue;
+                }
+                try {
+                    String node = cr.getNode();
+                    DockerService service = node == null? null : nodeRegistry.getNodeService(node);
+                    ContainerDetails details = service == null? null : service.getContainer(id);
+                    ProbeSpec spec = details == null? null :
+                      ProbeSpec.fromLabels(details.getLabels(), defaultTimeout, defaultInterval);
+                    if(spec != null) {
+                        register(details, spec);
+                    }
+                } catch (Exception e) {
+                    LOG.error("Can not register health probe of container {}", id, e);
+                }
+            }
+            for(ProbedContainer pc: containers.values()) {
+                if(!actual.contains(pc.id) && containers.remove(pc.id, pc)) {
+                    pc.cancel();
+                }
+            }
+        } catch (Exception e) {
+            LOG.error("Error on discovery of health probes", e);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        discoveryExecutor.shutdownNow();
+        engine.close();
+        containers.values().forEach(ProbedContainer::cancel);
+    }
+
+    private final class ProbedContainer {
+        private final String id;
+        private final ProbeSpec spec;
+        private final InetSocketAddress address;
+        private volatile ServiceHealthCheckResult result;
+        private volatile CompletableFuture<ServiceHealthCheckResult> current;
+        private volatile Future<?> scheduled;
+        private volatile boolean cancelled;
+
+        ProbedContainer(String id, ProbeSpec spec, InetSocketAddress address) {
+            this.id = id;
+            this.spec = spec;
+            this.address = address;
+        }
+
+        ServiceHealthCheckResult getResult() {
+            return result;
+        }
+
+        /**
+         * Run probe or return future of probe which is run now.
+         * @return future of result
+         */
+        synchronized CompletableFuture<ServiceHealthCheckResult> probe() {
+            CompletableFuture<ServiceHealthCheckResult> future = this.current;
+            if(future != null) {
+                return future;
+            }
+            future = engine.probe(id, spec, address).thenApply(data -> {
+                ServiceHealthCheckResult res = ServiceHealthCheckResultImpl.builder()
+                  .healthy(data.isHealthy())
+                  .results(Collections.singletonList(data))
+                  .build();
+                synchronized (this) {
+                    this.result = res;
+                    this.current = null;
+                }
+                return res;
+            });
+            if(!future.isDone()) {
+                this.current = future;
+            }
+            return future;
+        }
+
+        void schedule(long delay) {
+            if(cancelled) {
+                return;
+            }
+            scheduled = engine.schedule(() -> probe().whenComplete((r, e) -> schedule(nextDelay())), delay);
+        }
+
+        private long nextDelay() {
+            // jitter spreads probes of containers which are registered at same time
+            long interval = spec.getInterval();
+            return interval - interval / 10 + ThreadLocalRandom.current().nextLong(interval / 5 + 1);
+        }
+
+        void cancel() {
+            cancelled = true;
+            Future<?> scheduled = this.scheduled;
+            if(scheduled != null) {
+                scheduled.cancel(false);
+            }
         }
-        final String hostname = DockerUtils.getFullHostName(container.getConfig());
-        Assert.hasText(hostname, "container.config.hostname is null or empty, it strange");
-        throw new UnsupportedOperationException("we need to implement some hatcheck here");
     }
 }
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ui.health;
+
+import com.codeabovelab.dm.common.healthcheck.HealthCheckResultData;
+import com.codeabovelab.dm.common.healthcheck.HealthCheckResultDataImpl;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.*;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.*;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.springframework.util.Assert;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Non blocking executor of http and tcp probes. All probes run on given event loop (usually it shared with
+ * http clients), therefore thousands of probes can be run concurrently without own threads. Each probe has own
+ * timeout, after it probe is completed as unhealthy and its connection is closed.
+ */
+public class HealthProbeEngine implements AutoCloseable {
+
+    private final EventLoopGroup eventLoopGroup;
+    private final Bootstrap bootstrap;
+    private volatile boolean closed;
+
+    /**
+     * Create engine.
+     * @param eventLoopGroup event loop, it is not shutdown by engine
+     */
+    public HealthProbeEngine(EventLoopGroup eventLoopGroup) {
+        Assert.notNull(eventLoopGroup, "eventLoopGroup is null");
+        this.eventLoopGroup = eventLoopGroup;
+        this.bootstrap = new Bootstrap()
+          .group(eventLoopGroup)
+          .channel(NioSocketChannel.class)
+          .option(ChannelOption.SO_KEEPALIVE, false);
+    }
+
+    /**
+     * Run probe.
+     * @param id id of result data, usually container id
+     * @param spec probe
+     * @param address address of probe, it can be unresolved
+     * @return future which is never completed exceptionally
+     */
+    public CompletableFuture<HealthCheckResultData> probe(String id, ProbeSpec spec, InetSocketAddress address) {
+        Assert.notNull(spec, "spec is null");
+        Assert.notNull(address, "address is null");
+        Probe probe = new Probe(id, spec, address);
+        probe.start();
+        return probe.future;
+    }
+
+    /**
+     * Schedule task on event loop of engine, task must not block.
+     * @param task task
+     * @param delay delay in milliseconds
+     * @return future for cancel task
+     */
+    public ScheduledFuture<?> schedule(Runnable task, long delay) {
+        return eventLoopGroup.schedule(() -> {
+            // event loop is not owned by engine, so it is still run after close
+            if(!closed) {
+                task.run();
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stop running of scheduled tasks, started probes are completed by their timeouts.
+     */
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    private final class Probe {
+        private final String id;
+        private final ProbeSpec spec;
+        private final InetSocketAddress address;
+        private final CompletableFuture<HealthCheckResultData> future = new CompletableFuture<>();
+        private volatile Channel channel;
+
+        Probe(String id, ProbeSpec spec, InetSocketAddress address) {
+            this.id = id;
+            this.spec = spec;
+            this.address = address;
+        }
+
+        void start() {
+            Bootstrap b = bootstrap.clone()
+              .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) Math.min(spec.getTimeout(), Integer.MAX_VALUE))
+              .handler(new ChannelInitializer<Channel>() {
+                  @Override
+                  protected void initChannel(Channel ch) throws Exception {
+                      if(spec.getType() == ProbeSpec.Type.HTTP) {
+                          ch.pipeline().addLast(new HttpClientCodec(), new HttpResponseHandler());
+                      }
+                  }
+              });
+            ChannelFuture cf = b.connect(address);
+            this.channel = cf.channel();
+            ScheduledFuture<?> timeout = cf.channel().eventLoop().schedule(() -> {
+                complete(false, "Timeout after " + spec.getTimeout() + "ms", null);
+            }, spec.getTimeout(), TimeUnit.MILLISECONDS);
+            future.whenComplete((r, e) -> timeout.cancel(false));
+            cf.addListener((ChannelFutureListener) f -> {
+                if(!f.isSuccess()) {
+                    complete(false, "Can not connect to " + address, f.cause());
+                    return;
+                }
+                if(spec.getType() == ProbeSpec.Type.TCP) {
+                    complete(true, "Connected to " + address, null);
+                    return;
+                }
+                String host = address.getHostString() + ":" + address.getPort();
+                FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, spec.getPath());
+                request.headers().set(HttpHeaderNames.HOST, host);
+                request.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
+                f.channel().writeAndFlush(request).addListener((ChannelFutureListener) wf -> {
+                    if(!wf.isSuccess()) {
+                        complete(false, "Can not send request to " + host, wf.cause());
+                    }
+                });
+                f.channel().closeFuture().addListener((ChannelFutureListener) c -> complete(false, "Connection closed without response", null));
+            });
+        }
+
+        void complete(boolean healthy, String message, Throwable e) {
+            HealthCheckResultDataImpl.Builder b = HealthCheckResultDataImpl.builder()
+              .id(id)
+              .healthy(healthy)
+              .message(message);
+            if(e != null) {
+                b.throwable(e.toString());
+            }
+            if(future.complete(b.build())) {
+                Channel channel = this.channel;
+                if(channel != null) {
+                    channel.close();
+                }
+            }
+        }
+
+        private final class HttpResponseHandler extends SimpleChannelInboundHandler<HttpObject> {
+            @Override
+            protected void channelRead0(ChannelHandlerContext ctx, HttpObject msg) throws Exception {
+                if(msg instanceof HttpResponse) {
+                    HttpResponseStatus status = ((HttpResponse) msg).getStatus();
+                    int code = status.code();
+                    complete(code >= 200 && code < 400, "HTTP " + status, null);
+                }
+            }
+
+            @Override
+            public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+                complete(false, "Error on reading response", cause);
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ui.health;
+
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import java.util.Map;
+
+/**
+ * Description of container health probe. It is defined by container labels: <p/>
+ * <code>healthcheck.type</code> - 'http' or 'tcp', container without this label has no probe, <br/>
+ * <code>healthcheck.port</code> - private (container) tcp port, <br/>
+ * <code>healthcheck.path</code> - path of http request, default '/', <br/>
+ * <code>healthcheck.timeout</code> - timeout of single probe in milliseconds, <br/>
+ * <code>healthcheck.interval</code> - interval between probes in milliseconds.
+ */
+public final class ProbeSpec {
+
+    public enum Type {
+        HTTP, TCP
+    }
+
+    public static final String LABEL_PREFIX = "healthcheck.";
+    public static final String LABEL_TYPE = LABEL_PREFIX + "type";
+    public static final String LABEL_PORT = LABEL_PREFIX + "port";
+    public static final String LABEL_PATH = LABEL_PREFIX + "path";
+    public static final String LABEL_TIMEOUT = LABEL_PREFIX + "timeout";
+    public static final String LABEL_INTERVAL = LABEL_PREFIX + "interval";
+
+    private final Type type;
+    private final int port;
+    private final String path;
+    private final long timeout;
+    private final long interval;
+
+    public ProbeSpec(Type type, int port, String path, long timeout, long interval) {
+        Assert.notNull(type, "type is null");
+        Assert.isTrue(port > 0 && port < 65536, "Invalid port: " + port);
+        Assert.isTrue(timeout > 0, "timeout must be positive");
+        Assert.isTrue(interval > 0, "interval must be positive");
+        this.type = type;
+        this.port = port;
+        this.path = StringUtils.hasText(path)? path : "/";
+        this.timeout = timeout;
+        this.interval = interval;
+    }
+
+    /**
+     * Parse probe from container labels.
+     * @param labels labels of container, can be null
+     * @param defaultTimeout timeout which is used when label is absent
+     * @param defaultInterval interval which is used when label is absent
+     * @return probe or null when container does not has probe
+     * @throws IllegalArgumentException on invalid labels
+     */
+    public static ProbeSpec fromLabels(Map<String, String> labels, long defaultTimeout, long defaultInterval) {
+        if(labels == null) {
+            return null;
+        }
+        String typeStr = labels.get(LABEL_TYPE);
+        if(!StringUtils.hasText(typeStr)) {
+            return null;
+        }
+        Type type = Type.valueOf(typeStr.trim().toUpperCase());
+        String portStr = labels.get(LABEL_PORT);
+        Assert.hasText(portStr, "Label '" + LABEL_PORT + "' is required");
+        return new ProbeSpec(type,
+          Integer.parseInt(portStr.trim()),
+          labels.get(LABEL_PATH),
+          getLong(labels, LABEL_TIMEOUT, defaultTimeout),
+          getLong(labels, LABEL_INTERVAL, defaultInterval));
+    }
+
+    private static long getLong(Map<String, String> labels, String key, long def) {
+        String str = labels.get(key);
+        if(!StringUtils.hasText(str)) {
+            return def;
+        }
+        return Long.parseLong(str.trim());
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public long getTimeout() {
+        return timeout;
+    }
+
+    public long getInterval() {
+        return interval;
+    }
+
+    @Override
+    public String toString() {
+        return "ProbeSpec{" +
+          "type=" + type +
+          ", port=" + port +
+          ", path='" + path + '\'' +
+          ", timeout=" + timeout +
+          ", interval=" + interval +
+          '}';
+    }
+}
@@ -16,12 +16,14 @@
 
 package com.codeabovelab.dm.cluman.ui.health;
 
+import com.codeabovelab.dm.cluman.validate.ExtendedAssert;
 import com.codeabovelab.dm.common.healthcheck.ServiceHealthCheckResult;
 import com.codeabovelab.dm.common.healthcheck.ServiceHealthCheckResultImpl;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.util.ArrayList;
@@ -42,9 +44,9 @@ public class UiHealthCheckController {
     }
 
     @RequestMapping(value = "/clusters/{cluster}/containers/{id}/check", method = RequestMethod.GET)
-    public ServiceHealthCheckResult checkContainer(@PathVariable("cluster") String cluster, @PathVariable("id") String id) throws Exception {
-        //TODO use timeout from parameters
-        ServiceHealthCheckResult result = service.checkContainer(cluster, id, 10_000L);
+    public ServiceHealthCheckResult checkContainer(@PathVariable("cluster") String cluster, @PathVariable("id") String id,
+                                                   @RequestParam(value = "timeout", defaultValue = "10000") long timeout) throws Exception {
+        ServiceHealthCheckResult result = service.checkContainer(cluster, id, timeout);
         if(result == null) {
             ServiceHealthCheckResultImpl.Builder b = new ServiceHealthCheckResultImpl.Builder();
             b.setHealthy(false);
@@ -53,6 +55,16 @@ public class UiHealthCheckController {
         return result;
     }
 
+    /**
+     * Last cached result of container probe, it does not run probe.
+     */
+    @RequestMapping(value = "/clusters/{cluster}/containers/{id}/health", method = RequestMethod.GET)
+    public ServiceHealthCheckResult getContainerHealth(@PathVariable("cluster") String cluster, @PathVariable("id") String id) {
+        ServiceHealthCheckResult result = service.getResult(id);
+        ExtendedAssert.notFound(result, "No health result of container: " + id);
+        return result;
+    }
+
     @RequestMapping(value = "/healthcheck/check", method = RequestMethod.GET)
     public List<ServiceHealthCheckResult> check() throws Exception {
         List<ServiceHealthCheckResult> list = new ArrayList<>();
@@ -19,6 +19,7 @@ package com.codeabovelab.dm.cluman.ui.msg;
 import com.codeabovelab.dm.cluman.cluster.filter.Filter;
 import com.codeabovelab.dm.cluman.cluster.filter.FilterFactory;
 import com.codeabovelab.dm.cluman.model.EventWithTime;
+import com.codeabovelab.dm.cluman.persistent.EventCounters;
 import com.codeabovelab.dm.cluman.persistent.PersistentBusFactory;
 import com.codeabovelab.dm.cluman.ui.model.UiError;
 import com.codeabovelab.dm.cluman.validate.ExtendedAssert;
@@ -40,7 +41,7 @@ import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.bind.annotation.*;
 
 import java.time.LocalDateTime;
-import java.time.ZoneOffset;
+import java.time.ZoneId;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -108,7 +109,10 @@ public class EventController {
     }
 
     @ApiOperation("Count of elements in specified events source since specified time (24 hours by default)." +
-      " Note that not all sources have persisted store, these sources do not support getting count.")
+      " Note that not all sources have persisted store, these sources do not support getting count." +
+      " Request without filters is served from counters with one minute precision, they count all published events," +
+      " include events which are already dropped from bounded queue. Request with filters count only events" +
+      " which are still in queue. 'from' is local date time in time zone of server.")
     @RequestMapping(value = "/{source:.*}/count", method = RequestMethod.GET)
     public UiCountResult countOfLastEvents(@PathVariable("source") String source,
                                            @RequestParam(name = "filter", required = false) List<String> filtersSrc,
@@ -125,7 +129,19 @@ public class EventController {
         if(from == null) {
             from = LocalDateTime.now().minusDays(1);
         }
-        long fromMillis = from.toEpochSecond(ZoneOffset.UTC);
+        long fromMillis = from.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        UiCountResult res = new UiCountResult();
+        res.setSource(source);
+        res.setFrom(from);
+        // counters can not evaluate filters, therefore in this case we need to read queue
+        Map<String, Integer> counts = collectors.isEmpty() ? pb.getCounters().count(fromMillis) : null;
+        if(counts != null) {
+            res.setCount(counts.get(EventCounters.TOTAL));
+            res.setSeverities(extract(counts, EventCounters.SEVERITY));
+            res.setClusters(extract(counts, EventCounters.CLUSTER));
+            res.setFiltered(Collections.emptyList());
+            return res;
+        }
         FbQueue<?> q = pb.getQueue();
         Iterator<?> iter = q.iterator();
         int i = 0;
@@ -141,11 +157,18 @@ public class EventController {
             collectors.forEach(fc -> fc.collect(next));
             i++;
         }
-        UiCountResult res = new UiCountResult();
         res.setFiltered(collectors.stream().map(FilterCollector::toUi).collect(Collectors.toList()));
-        res.setSource(source);
         res.setCount(i);
-        res.setFrom(from);
+        return res;
+    }
+
+    private static Map<String, Integer> extract(Map<String, Integer> counts, String prefix) {
+        Map<String, Integer> res = new TreeMap<>();
+        counts.forEach((k, v) -> {
+            if(k.startsWith(prefix) && v > 0) {
+                res.put(k.substring(prefix.length()), v);
+            }
+        });
         return res;
     }
 }
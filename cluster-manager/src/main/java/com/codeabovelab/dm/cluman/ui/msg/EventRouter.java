@@ -30,8 +30,7 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.ApplicationListener;
 import org.springframework.messaging.Message;
 import org.springframework.messaging.MessageChannel;
-import org.springframework.messaging.converter.MessageConverter;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
 import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
 import org.springframework.messaging.simp.broker.DefaultSubscriptionRegistry;
 import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
@@ -66,7 +65,10 @@ class EventRouter implements ApplicationListener<AbstractSubProtocolEvent> {
 
     private class BusData {
         private final Subscriptions<?> bus;
-        private final Queue<Object> last = new ArrayBlockingQueue<>(100);
+        /**
+         * Serialized events, we keep it for sending to new subscribers.
+         */
+        private final Queue<byte[]> last = new ArrayBlockingQueue<>(100);
 
         BusData(Subscriptions<?> bus) {
             this.bus = bus;
@@ -78,13 +80,20 @@ class EventRouter implements ApplicationListener<AbstractSubProtocolEvent> {
 
         private void onEvent(Object o) {
             log.debug("added new event {}", o);
-            while(!last.offer(o)) {
+            byte[] payload;
+            try {
+                payload = fanout.toPayload(o);
+            } catch (Exception e) {
+                log.error("Can not serialize {}", o, e);
+                return;
+            }
+            while(!last.offer(payload)) {
                 last.poll();
             }
-            send(this.bus.getId(), o);
+            send(this.bus.getId(), payload);
         }
 
-        public List<Object> getEvents() {
+        public List<byte[]> getEvents() {
             return new ArrayList<>(last);
         }
 
@@ -93,17 +102,17 @@ class EventRouter implements ApplicationListener<AbstractSubProtocolEvent> {
         }
     }
 
-    private final SimpMessagingTemplate simpMessagingTemplate;
+    private final StompFanout fanout;
     private final ConcurrentMap<String, BusData> buses = new ConcurrentHashMap<>();
     private final MessageChannel clientChannel;
     private PathMatcher pathMatcher;
 
     @Autowired
-    public EventRouter(SimpMessagingTemplate simpMessagingTemplate,
+    public EventRouter(StompFanout fanout,
                        @Qualifier("clientOutboundChannel") MessageChannel clientChannel,
                        @Qualifier(EventsUtils.BUS_ERRORS)  Subscriptions<?> errorsSubs) {
         this.clientChannel = clientChannel;
-        this.simpMessagingTemplate = simpMessagingTemplate;
+        this.fanout = fanout;
         //default value
         this.pathMatcher = new AntPathMatcher();
         this.acceptBus(errorsSubs);
@@ -131,6 +140,9 @@ class EventRouter implements ApplicationListener<AbstractSubProtocolEvent> {
         if(ev instanceof SessionSubscribeEvent) {
             sendHistoryToNewSubscriber(ev);
         } else if(ev instanceof SessionConnectEvent || ev instanceof SessionDisconnectEvent) {
+            if(ev instanceof SessionDisconnectEvent) {
+                fanout.close(((SessionDisconnectEvent) ev).getSessionId());
+            }
             Authentication user = (Authentication)ev.getUser();
             Object details = user.getDetails();
             String sessionId = null;
@@ -156,18 +168,28 @@ class EventRouter implements ApplicationListener<AbstractSubProtocolEvent> {
             // we must send only to appropriate paths
             return;
         }
-        MessageConverter messageConverter = this.simpMessagingTemplate.getMessageConverter();
-
+        // client may ask to receive history in one frame
+        boolean batch = Boolean.parseBoolean(ha.getFirstNativeHeader(StompFanout.HEADER_BATCH));
         for(BusData data: buses.values()) {
             String dest = getDestination(data.getId());
             if(!this.pathMatcher.match(pattern, dest)) {
                 continue;
             }
-            for(Object obj: data.getEvents()) {
+            List<byte[]> events = data.getEvents();
+            if(events.isEmpty()) {
+                continue;
+            }
+            if(batch) {
+                StompHeaderAccessor mha = Stomp.createHeaders(ha.getSessionId(), ha.getSubscriptionId());
+                mha.setDestination(dest);
+                mha.setNativeHeader(StompFanout.HEADER_BATCH, Integer.toString(events.size()));
+                clientChannel.send(StompFanout.toMessage(StompFanout.toBatch(events), mha));
+                continue;
+            }
+            for(byte[] payload: events) {
                 StompHeaderAccessor mha = Stomp.createHeaders(ha.getSessionId(), ha.getSubscriptionId());
                 mha.setDestination(dest);
-                Message<?> message = messageConverter.toMessage(obj, mha.getMessageHeaders());
-                clientChannel.send(message);
+                clientChannel.send(StompFanout.toMessage(payload, mha));
             }
         }
     }
@@ -180,9 +202,12 @@ class EventRouter implements ApplicationListener<AbstractSubProtocolEvent> {
         });
     }
 
-    private void send(String bus, Object event) {
+    private void send(String bus, byte[] payload) {
         try {
-            this.simpMessagingTemplate.convertAndSend(getDestination(bus), event);
+            // broker share payload between all subscribers of destination
+            SimpMessageHeaderAccessor sha = SimpMessageHeaderAccessor.create();
+            sha.setLeaveMutable(true);
+            this.fanout.getTemplate().send(getDestination(bus), StompFanout.toMessage(payload, sha));
         } catch (Exception e) {
             log.error("Send fail", e);
         }
@@ -37,6 +37,7 @@ import com.codeabovelab.dm.common.utils.Closeables;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
@@ -65,17 +66,28 @@ class EventSources {
     private volatile long lastUpdate;
     private final Map<String, Subscriptions<?>> systemSubs;
     private final Collection<AutoCloseable> close = new ArrayList<>();
+    private final ScheduledExecutorService statsScheduler;
+    private final long statsInterval;
+    private final int statsThreshold;
 
     @SuppressWarnings("unchecked")
     @Autowired
     public EventSources(DiscoveryStorage clusterStorage,
                         NodeStorage nodeStorage,
                         DockerServices dockerServices,
-                        Map<String, Subscriptions<?>> systemSubs) {
+                        Map<String, Subscriptions<?>> systemSubs,
+                        @Value("${dm.events.stats.interval:1000}") long statsInterval,
+                        @Value("${dm.events.stats.threshold:1000}") int statsThreshold) {
         this.clusterStorage = clusterStorage;
         this.nodeStorage = nodeStorage;
         this.dockerServices = dockerServices;
         this.systemSubs = new HashMap<>(systemSubs);
+        this.statsInterval = statsInterval;
+        this.statsThreshold = statsThreshold;
+        this.statsScheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat(getClass().getSimpleName() + "-stats-%d")
+          .build());
         addStats(this.systemSubs.get(DockerLogEvent.BUS), DockerLogEvent.BUS + "-stats", this::getDockerLogEventKey);
         addStats(this.systemSubs.get(EventsUtils.BUS_ERRORS), EventsUtils.BUS_ERRORS + "-stats", (e) -> {
             // so, this bus can has any event type therefore we may add other key factories here
@@ -97,7 +109,8 @@ class EventSources {
     }
 
     private <T> void addStats(Subscriptions<T> subscriptions, String busId, Function<T, Object> keyFactory) {
-        EventStatsCollector<T> statsCollector = new EventStatsCollector<>(busId, keyFactory);
+        EventStatsCollector<T> statsCollector = new EventStatsCollector<>(busId, keyFactory,
+          statsScheduler, statsInterval, statsThreshold);
         subscriptions.subscribe(statsCollector);
         this.systemSubs.put(statsCollector.getBusId(), statsCollector.getSubscriptions());
         this.close.add(() -> {
@@ -116,6 +129,7 @@ class EventSources {
     public void destroy() {
         executor.shutdownNow();
         close.forEach(Closeables::close);
+        statsScheduler.shutdownNow();
     }
 
 
@@ -20,55 +20,113 @@ import com.codeabovelab.dm.common.mb.MessageBus;
 import com.codeabovelab.dm.common.mb.MessageBusImpl;
 import com.codeabovelab.dm.common.mb.MessageSubscriptionsWrapper;
 import com.codeabovelab.dm.common.mb.Subscriptions;
+import org.springframework.util.Assert;
 
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 import java.util.function.Function;
 
 /**
+ * Collect count of events by keys and publish it as {@link EventStats}. In coalescing mode changed keys are published
+ * not often than once per interval, or when count of not published events reach threshold, so traffic of stats bus
+ * does not depend on rate of events.
  */
 public class EventStatsCollector<E> implements Consumer<E>, AutoCloseable {
 
     private class Bag {
-        private final Object lock = new Object();
         private final Object key;
-        private int count = 0;
-        private E last;
+        private final LongAdder count = new LongAdder();
+        private final AtomicBoolean dirty = new AtomicBoolean();
+        private final AtomicLong published = new AtomicLong();
+        private volatile E last;
 
         Bag(Object key) {
             this.key = key;
         }
 
         void accept(E e) {
-            EventStats<E> stats;
-            synchronized (lock) {
-                count++;
-                last = e;
-                stats = makeEvent();
+            count.increment();
+            last = e;
+            if(interval <= 0) {
+                bus.accept(makeEvent());
+                return;
+            }
+            dirty.set(true);
+            if(threshold > 0) {
+                long current = count.sum();
+                long old = published.get();
+                if(current - old >= threshold && published.compareAndSet(old, current)) {
+                    publish();
+                }
             }
-            bus.accept(stats);
         }
 
-        private EventStats<E> makeEvent() {
-            synchronized (lock) {
-                return new EventStats<>(key, last, count);
+        void publish() {
+            dirty.set(false);
+            bus.accept(makeEvent());
+        }
+
+        void flush() {
+            if(dirty.get()) {
+                published.set(count.sum());
+                publish();
             }
         }
+
+        private EventStats<E> makeEvent() {
+            return new EventStats<>(key, last, count.intValue());
+        }
     }
 
     private final ConcurrentMap<Object, Bag> bags = new ConcurrentHashMap<>();
     private final MessageBus<EventStats<E>> bus;
     private final Function<E, Object> keyFactory;
+    private final long interval;
+    private final int threshold;
+    private final ScheduledFuture<?> flusher;
+
+    /**
+     * Create collector which publish stats on each event.
+     * @param busId id of stats bus
+     * @param keyFactory function which make key from event
+     */
+    public EventStatsCollector(String busId, Function<E, Object> keyFactory) {
+        this(busId, keyFactory, null, 0, 0);
+    }
 
+    /**
+     * Create collector in coalescing mode.
+     * @param busId id of stats bus
+     * @param keyFactory function which make key from event
+     * @param scheduler scheduler for periodic publishing, can be null when interval is zero
+     * @param interval min interval between publishing of changed key in milliseconds, zero disable coalescing
+     * @param threshold count of not published events of key which cause publishing before end of interval,
+     *                  zero disable it
+     */
     @SuppressWarnings("unchecked")
-    public EventStatsCollector(String busId, Function<E, Object> keyFactory) {
+    public EventStatsCollector(String busId, Function<E, Object> keyFactory,
+                               ScheduledExecutorService scheduler, long interval, int threshold) {
         this.keyFactory = keyFactory;
+        this.interval = interval;
+        this.threshold = threshold;
         Class<EventStats<E>> type = (Class) EventStats.class;
         this.bus = MessageBusImpl.builder(type, MessageSubscriptionsWrapper::new)
           .id(busId)
           .onSubscribe(this::onSubscribe)
           .build();
+        if(interval > 0) {
+            Assert.notNull(scheduler, "scheduler is null");
+            this.flusher = scheduler.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+        } else {
+            this.flusher = null;
+        }
     }
 
     private void onSubscribe(MessageBus<EventStats<E>> messageBus, Consumer<EventStats<E>> consumer) {
@@ -77,6 +135,10 @@ public class EventStatsCollector<E> implements Consumer<E>, AutoCloseable {
         });
     }
 
+    private void flush() {
+        bags.forEach((k, b) -> b.flush());
+    }
+
     @Override
     public void accept(E e) {
         Object key = keyFactory.apply(e);
@@ -98,6 +160,9 @@ public class EventStatsCollector<E> implements Consumer<E>, AutoCloseable {
 
     @Override
     public void close() throws Exception {
+        if(flusher != null) {
+            flusher.cancel(false);
+        }
         this.bus.close();
     }
 }
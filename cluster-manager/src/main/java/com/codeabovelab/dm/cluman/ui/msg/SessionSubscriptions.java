@@ -16,7 +16,6 @@
 
 package com.codeabovelab.dm.cluman.ui.msg;
 
-import com.codeabovelab.dm.cluman.model.EventWithTime;
 import com.codeabovelab.dm.common.mb.SmartConsumer;
 import com.codeabovelab.dm.common.mb.Subscriptions;
 import com.codeabovelab.dm.common.utils.Closeables;
@@ -30,7 +29,6 @@ import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.function.Predicate;
 
 /**
  * Bean which hold subscriptions of session
@@ -85,9 +83,11 @@ public class SessionSubscriptions implements AutoCloseable {
         private final AtomicBoolean closed = new AtomicBoolean();
         private final long historySince;
         private final int historyCount;
+        private final boolean batch;
 
         ConsumerImpl(UiAddSubscription uas) {
             this.id = uas.getSource();
+            this.batch = uas.isBatch();
             this.historyCount = uas.getHistoryCount();
             Date historySince = uas.getHistorySince();
             this.historySince = historySince == null? Long.MIN_VALUE : historySince.getTime();
@@ -95,7 +95,7 @@ public class SessionSubscriptions implements AutoCloseable {
 
         @Override
         public void accept(T e) {
-            stomp.sendToSession(id, e);
+            stomp.sendToSessionAsync(id, e, batch);
         }
 
         @Override
@@ -108,13 +108,8 @@ public class SessionSubscriptions implements AutoCloseable {
         }
 
         @Override
-        public Predicate<T> historyFilter() {
-            return (event) -> {
-                if(!(event instanceof EventWithTime)) {
-                    return true;
-                }
-                return ((EventWithTime)event).getTimeInMilliseconds() >= historySince;
-            };
+        public long getHistorySince() {
+            return historySince;
         }
 
         @Override
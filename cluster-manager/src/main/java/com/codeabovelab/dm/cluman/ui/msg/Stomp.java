@@ -40,14 +40,18 @@ public class Stomp {
     private final String sessionId;
     private final SimpMessagingTemplate template;
     private final MessageChannel clientChannel;
+    private final StompFanout.Outbox outbox;
 
     @Autowired
     public Stomp(@Qualifier("clientOutboundChannel") MessageChannel clientChannel,
-                 SimpMessagingTemplate template) {
+                 SimpMessagingTemplate template,
+                 StompFanout fanout) {
         SimpAttributes sa = SimpAttributesContextHolder.currentAttributes();
         this.sessionId = sa.getSessionId();
         this.template = template;
         this.clientChannel = clientChannel;
+        // it is closed by EventRouter when session is disconnected
+        this.outbox = fanout.open(sessionId);
     }
 
     public String getSessionId() {
@@ -76,6 +80,25 @@ public class Stomp {
         this.template.convertAndSendToUser(sessionId, "/queue/" + dest, msg, sha.getMessageHeaders());
     }
 
+    /**
+     * Queue event for sending to queue of current session. It does not block caller, when session does not
+     * keep up with events, the oldest pending event is dropped.
+     * @param dest destination
+     * @param event event, it serialized once for all sessions
+     * @param batch allow to send pending events in one frame, as JSON array with 'batch' header
+     */
+    public void sendToSessionAsync(String dest, Object event, boolean batch) {
+        outbox.add(dest, event, batch);
+    }
+
+    /**
+     * Count of events which was dropped due to overflow of session queue.
+     * @return count of events
+     */
+    public long getDropped() {
+        return outbox.getDropped();
+    }
+
     public static StompHeaderAccessor createHeaders(String sessionId, String subscriptionId) {
         StompHeaderAccessor mha = StompHeaderAccessor.create(StompCommand.MESSAGE);
         mha.setLeaveMutable(true);
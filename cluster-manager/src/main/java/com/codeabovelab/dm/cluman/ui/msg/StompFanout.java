@@ -0,0 +1,339 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ui.msg;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serialize events into STOMP payload once, and reuse it for all sessions and history replays. Also hold
+ * bounded outbound queues of sessions, which is removed when session is disconnected.
+ */
+@Slf4j
+@Component
+class StompFanout implements DisposableBean {
+
+    /**
+     * Header which is mark frame with JSON array of events.
+     */
+    static final String HEADER_BATCH = "batch";
+    /**
+     * Max count of events which is waiting for sending to session.
+     */
+    static final int OUTBOX_SIZE = 1024;
+    /**
+     * When count of pending events is greater than this value, we send it in batches.
+     */
+    static final int BATCH_THRESHOLD = 16;
+    static final int MAX_BATCH = 256;
+
+    private static final class Pending {
+        private final String dest;
+        private final Object event;
+        private final boolean batch;
+
+        Pending(String dest, Object event, boolean batch) {
+            this.dest = dest;
+            this.event = event;
+            this.batch = batch;
+        }
+    }
+
+    /**
+     * Outbound queue of one session. Events are serialized and sent by shared executor, when session does not
+     * keep up with events, the oldest pending event is dropped.
+     */
+    final class Outbox {
+        private final String sessionId;
+        /**
+         * Guarded by itself.
+         */
+        private final Deque<Pending> queue = new ArrayDeque<>();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private final AtomicLong dropped = new AtomicLong();
+        private volatile boolean closed;
+
+        private Outbox(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        /**
+         * Queue event for sending to queue of session. It does not block caller.
+         * @param dest destination
+         * @param event event, it serialized once for all sessions
+         * @param batch allow to send pending events in one frame, as JSON array with 'batch' header
+         */
+        void add(String dest, Object event, boolean batch) {
+            if(closed) {
+                return;
+            }
+            synchronized (queue) {
+                if(queue.size() >= OUTBOX_SIZE) {
+                    queue.pollFirst();
+                    dropped.incrementAndGet();
+                    totalDropped.incrementAndGet();
+                }
+                queue.addLast(new Pending(dest, event, batch));
+            }
+            if(draining.compareAndSet(false, true)) {
+                executor.execute(this::drain);
+            }
+        }
+
+        /**
+         * Count of events which was dropped due to overflow of queue.
+         * @return count of events
+         */
+        long getDropped() {
+            return dropped.get();
+        }
+
+        private void close() {
+            closed = true;
+            synchronized (queue) {
+                queue.clear();
+            }
+        }
+
+        private void drain() {
+            while(true) {
+                Pending first;
+                List<Pending> batch = null;
+                synchronized (queue) {
+                    first = queue.pollFirst();
+                    if(first == null) {
+                        // it must be under lock, otherwise we may lose event which was added concurrently
+                        draining.set(false);
+                        return;
+                    }
+                    if(first.batch && queue.size() >= BATCH_THRESHOLD) {
+                        batch = new ArrayList<>();
+                        batch.add(first);
+                        while(batch.size() < MAX_BATCH) {
+                            Pending next = queue.peekFirst();
+                            if(next == null || !next.batch || !next.dest.equals(first.dest)) {
+                                break;
+                            }
+                            batch.add(queue.pollFirst());
+                        }
+                    }
+                }
+                send(first, batch);
+            }
+        }
+
+        private void send(Pending first, List<Pending> batch) {
+            try {
+                StompHeaderAccessor sha = StompHeaderAccessor.create(StompCommand.MESSAGE);
+                sha.setLeaveMutable(true);
+                sha.setSessionId(sessionId);
+                byte[] payload;
+                if(batch != null) {
+                    List<byte[]> payloads = new ArrayList<>(batch.size());
+                    for(Pending pending : batch) {
+                        byte[] item = serialize(pending);
+                        if(item != null) {
+                            payloads.add(item);
+                        }
+                    }
+                    if(payloads.isEmpty()) {
+                        return;
+                    }
+                    sha.setNativeHeader(HEADER_BATCH, Integer.toString(payloads.size()));
+                    payload = toBatch(payloads);
+                } else {
+                    payload = serialize(first);
+                    if(payload == null) {
+                        return;
+                    }
+                }
+                String dest = template.getUserDestinationPrefix() + sessionId + "/queue/" + first.dest;
+                template.send(dest, toMessage(payload, sha));
+            } catch (Exception e) {
+                log.error("Can not send to session {}", sessionId, e);
+            }
+        }
+
+        private byte[] serialize(Pending pending) {
+            try {
+                return toPayload(pending.event);
+            } catch (Exception e) {
+                // one bad event must not break delivery of others
+                log.error("Can not serialize {} for session {}", pending.event, sessionId, e);
+                return null;
+            }
+        }
+    }
+
+    private final SimpMessagingTemplate template;
+    /**
+     * Events are compared by identity, it allow to share serialized data between session subscriptions
+     * of same bus.
+     */
+    private final Cache<Object, byte[]> payloads = CacheBuilder.newBuilder()
+      .weakKeys()
+      .maximumSize(1024)
+      .build();
+    private final ExecutorService executor;
+    private final ConcurrentMap<String, Outbox> outboxes = new ConcurrentHashMap<>();
+    private final AtomicLong totalDropped = new AtomicLong();
+
+    @Autowired
+    StompFanout(SimpMessagingTemplate template) {
+        this.template = template;
+        this.executor = Executors.newFixedThreadPool(2, new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat(getClass().getSimpleName() + "-%d")
+          .build());
+    }
+
+    SimpMessagingTemplate getTemplate() {
+        return template;
+    }
+
+    @Autowired(required = false)
+    void setMetricRegistry(MetricRegistry registry) {
+        registry.register("stomp.outbox.sessions", (Gauge<Integer>) outboxes::size);
+        registry.register("stomp.outbox.dropped", (Gauge<Long>) this::getDropped);
+    }
+
+    /**
+     * Create outbound queue for session, it must be closed by {@link #close(String)} when session is disconnected.
+     * @param sessionId id of session
+     * @return outbox
+     */
+    Outbox open(String sessionId) {
+        Outbox outbox = new Outbox(sessionId);
+        Outbox old = outboxes.put(sessionId, outbox);
+        if(old != null) {
+            old.close();
+        }
+        return outbox;
+    }
+
+    /**
+     * Close and remove outbound queue of session, pending events are discarded.
+     * @param sessionId id of session
+     */
+    void close(String sessionId) {
+        Outbox outbox = outboxes.remove(sessionId);
+        if(outbox != null) {
+            outbox.close();
+        }
+    }
+
+    /**
+     * @return count of sessions which has outbound queue
+     */
+    int getSessions() {
+        return outboxes.size();
+    }
+
+    /**
+     * Count of events which was dropped due to overflow of session queues, since start.
+     * @return count of events
+     */
+    long getDropped() {
+        return totalDropped.get();
+    }
+
+    /**
+     * Serialized event.
+     * @param event event
+     * @return JSON payload, do not modify it
+     */
+    byte[] toPayload(Object event) {
+        byte[] payload = payloads.getIfPresent(event);
+        if(payload != null) {
+            return payload;
+        }
+        SimpMessageHeaderAccessor sha = SimpMessageHeaderAccessor.create();
+        sha.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        MessageConverter converter = template.getMessageConverter();
+        Message<?> message = converter.toMessage(event, sha.getMessageHeaders());
+        if(message == null) {
+            throw new IllegalArgumentException("Can not convert " + event.getClass() + " to message.");
+        }
+        Object src = message.getPayload();
+        payload = src instanceof byte[] ? (byte[]) src : src.toString().getBytes(StandardCharsets.UTF_8);
+        payloads.put(event, payload);
+        return payload;
+    }
+
+    /**
+     * Concatenate serialized events into JSON array.
+     * @param payloads serialized events
+     * @return JSON array
+     */
+    static byte[] toBatch(Collection<byte[]> payloads) {
+        int size = 2;
+        for(byte[] payload : payloads) {
+            size += payload.length + 1;
+        }
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(size);
+        baos.write('[');
+        boolean first = true;
+        for(byte[] payload : payloads) {
+            if(!first) {
+                baos.write(',');
+            }
+            first = false;
+            baos.write(payload, 0, payload.length);
+        }
+        baos.write(']');
+        return baos.toByteArray();
+    }
+
+    static Message<byte[]> toMessage(byte[] payload, SimpMessageHeaderAccessor sha) {
+        sha.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        MessageHeaders headers = sha.getMessageHeaders();
+        return MessageBuilder.createMessage(payload, headers);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        outboxes.values().forEach(Outbox::close);
+        outboxes.clear();
+        executor.shutdownNow();
+    }
+}
@@ -31,6 +31,10 @@ public class UiAddSubscription {
     private String source;
     private int historyCount;
     private Date historySince;
+    /**
+     * Allow to receive many pending events in one frame, as JSON array with 'batch' header.
+     */
+    private boolean batch;
 
     @JsonCreator
     public static UiAddSubscription fromString(String source) {
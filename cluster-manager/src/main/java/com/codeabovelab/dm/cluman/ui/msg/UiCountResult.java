@@ -20,6 +20,7 @@ import lombok.Data;
 
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -35,4 +36,12 @@ public class UiCountResult {
     private int count;
     private LocalDateTime from;
     private List<FilteredResult> filtered;
+    /**
+     * Count of events by severity, it present only when result is calculated from counters.
+     */
+    private Map<String, Integer> severities;
+    /**
+     * Count of events by cluster, it present only when result is calculated from counters.
+     */
+    private Map<String, Integer> clusters;
 }
@@ -20,11 +20,14 @@ import com.codeabovelab.dm.cluman.validate.ExtendedAssert;
 import com.codeabovelab.dm.common.kv.KvUtils;
 import com.codeabovelab.dm.common.kv.mapping.KvMap;
 import com.codeabovelab.dm.common.kv.mapping.KvMapAdapter;
+import com.codeabovelab.dm.common.kv.mapping.KvMapEvent;
+import com.codeabovelab.dm.common.kv.mapping.KvMapLocalEvent;
 import com.codeabovelab.dm.common.kv.mapping.KvMapperFactory;
 import com.codeabovelab.dm.common.security.ExtendedUserDetails;
 import com.codeabovelab.dm.common.security.ExtendedUserDetailsImpl;
 import com.codeabovelab.dm.common.security.UserIdentifiers;
 import com.codeabovelab.dm.common.security.UserIdentifiersDetailsService;
+import com.codeabovelab.dm.common.security.token.SignedTokenServiceBackend;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.core.Ordered;
@@ -35,6 +38,7 @@ import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
@@ -49,6 +53,7 @@ public class UsersStorage implements UserIdentifiersDetailsService {
     private final KvMap<UserRegistration> map;
     private final String prefix;
     private final AccessDecisionManager adm;
+    private volatile SignedTokenServiceBackend tokenBackend;
 
     @Autowired
     public UsersStorage(KvMapperFactory mapperFactory, AccessDecisionManager accessDecisionManager) {
@@ -59,9 +64,20 @@ public class UsersStorage implements UserIdentifiersDetailsService {
           .mapper(mapperFactory)
           .path(prefix)
           .adapter(new KvMapAdapterImpl())
+          .listener(this::onStorageEvent)
+          .localListener(this::onLocalEvent)
           .build();
     }
 
+    /**
+     * Backend which cache verified tokens, we must drop tokens of user when it changed or removed.
+     * @param tokenBackend backend
+     */
+    @Autowired(required = false)
+    public void setTokenBackend(SignedTokenServiceBackend tokenBackend) {
+        this.tokenBackend = tokenBackend;
+    }
+
     @PostConstruct
     public void init() {
         load();
@@ -125,6 +141,22 @@ public class UsersStorage implements UserIdentifiersDetailsService {
         return ur.getDetails();
     }
 
+    private void onStorageEvent(KvMapEvent<UserRegistration> e) {
+        // it also handle changes which is made by other instances of application
+        invalidateTokens(e.getKey());
+    }
+
+    private void onLocalEvent(KvMapLocalEvent<UserRegistration> e) {
+        invalidateTokens(e.getKey());
+    }
+
+    private void invalidateTokens(String name) {
+        SignedTokenServiceBackend tokenBackend = this.tokenBackend;
+        if(tokenBackend != null && name != null) {
+            tokenBackend.invalidateUserTokens(Collections.singleton(name));
+        }
+    }
+
     KvMap<UserRegistration> getMap() {
         return map;
     }
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.cluster.registry;
+
+import com.codeabovelab.dm.cluman.cluster.registry.model.PrivateRegistryConfig;
+import com.codeabovelab.dm.cluman.model.ImageDescriptor;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.*;
+
+public class TagDetailsResolverTest {
+
+    private static final long DELAY = 100;
+    private final TagDetailsResolver resolver = new TagDetailsResolver(8, 10_000);
+    private final AtomicInteger requests = new AtomicInteger();
+
+    @After
+    public void after() throws Exception {
+        resolver.destroy();
+    }
+
+    @Test
+    public void test() throws Exception {
+        RegistryService registry = stubRegistry();
+        List<String> tags = new ArrayList<>();
+        for(int i = 0; i < 32; ++i) {
+            tags.add("1." + i);
+        }
+        tags.add("missing");
+        long begin = System.currentTimeMillis();
+        CompletableFuture<Map<String, ImageDescriptor>> other = CompletableFuture.supplyAsync(() ->
+          resolver.resolve(registry, "image", tags));
+        Map<String, ImageDescriptor> res = resolver.resolve(registry, "image", tags);
+        long time = System.currentTimeMillis() - begin;
+        assertEquals(tags, new ArrayList<>(res.keySet()));
+        assertNull(res.get("missing"));
+        assertNotNull(res.get("1.0"));
+        assertEquals(res.keySet(), other.get().keySet());
+        // 33 requests on 8 threads, sequential loading take 3.3 seconds
+        assertTrue("Too slow: " + time, time < tags.size() * DELAY / 2);
+        // concurrent callers share requests, but second caller may come after end of some requests
+        assertTrue("Too many requests: " + requests.get(), requests.get() < tags.size() * 2);
+    }
+
+    private RegistryService stubRegistry() {
+        RegistryService registry = mock(RegistryService.class);
+        PrivateRegistryConfig config = new PrivateRegistryConfig();
+        config.setName("stub");
+        when(registry.getConfig()).thenReturn(config);
+        when(registry.getImage(eq("image"), anyString())).thenAnswer(invocation -> {
+            requests.incrementAndGet();
+            Thread.sleep(DELAY);
+            String tag = (String) invocation.getArguments()[1];
+            if("missing".equals(tag)) {
+                return null;
+            }
+            return mock(ImageDescriptor.class);
+        });
+        return registry;
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ds.clusters;
+
+import com.codeabovelab.dm.cluman.cluster.filter.Filter;
+import com.codeabovelab.dm.cluman.ds.nodes.NodeHealthEvent;
+import com.codeabovelab.dm.cluman.ds.nodes.MetricsHistory;
+import com.codeabovelab.dm.cluman.ds.nodes.NodeRegistration;
+import com.codeabovelab.dm.cluman.ds.nodes.NodeStorage;
+import com.codeabovelab.dm.cluman.ds.swarm.DockerServices;
+import com.codeabovelab.dm.cluman.model.NodeEvent;
+import com.codeabovelab.dm.cluman.model.NodeInfo;
+import com.codeabovelab.dm.cluman.model.NodeInfoImpl;
+import com.codeabovelab.dm.cluman.model.StandardActions;
+import com.codeabovelab.dm.common.kv.mapping.KvMap;
+import com.codeabovelab.dm.common.mb.Subscriptions;
+import com.google.common.collect.ImmutableMap;
+import org.junit.Before;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.acls.model.ObjectIdentity;
+
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.*;
+
+public class NodeMembershipIndexTest {
+
+    private static final int NODES = 5000;
+    private static final int GROUPS = 40;
+    private final Logger log = LoggerFactory.getLogger(getClass());
+    private final Map<String, Registration> nodes = new TreeMap<>();
+    private final List<NodesGroupImpl> groups = new ArrayList<>();
+    private NodeStorage nodeStorage;
+    private NodeMembershipIndex index;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void before() {
+        nodeStorage = mock(NodeStorage.class);
+        when(nodeStorage.getNodes(any(Predicate.class))).thenAnswer(i -> {
+            Predicate<Object> predicate = (Predicate<Object>) i.getArguments()[0];
+            return nodes.values().stream().filter(predicate).map(Registration::getNodeInfo).collect(Collectors.toList());
+        });
+        when(nodeStorage.getNodeRegistration(anyString())).thenAnswer(i -> nodes.get((String) i.getArguments()[0]));
+        index = new NodeMembershipIndex(nodeStorage);
+        DiscoveryStorageImpl storage = mock(DiscoveryStorageImpl.class);
+        when(storage.getKvMap()).thenReturn(mock(KvMap.class));
+        for(int i = 0; i < NODES; ++i) {
+            String name = "node-" + i;
+            nodes.put(name, new Registration(name, "zone-" + (i % GROUPS)));
+        }
+        for(int i = 0; i < GROUPS; ++i) {
+            String zone = "zone-" + i;
+            Filter filter = (o) -> zone.equals(((NodeRegistration) o).getNodeInfo().getLabels().get("zone"));
+            groups.add(NodesGroupImpl.builder()
+              .storage(storage)
+              .config(new DefaultNodesGroupConfig("group-" + i, null))
+              .predicate(filter)
+              .dockerServices(mock(DockerServices.class))
+              .build());
+        }
+    }
+
+    @Test
+    public void testUpdate() {
+        NodesGroupImpl first = groups.get(0);
+        NodesGroupImpl second = groups.get(1);
+        assertEquals(scan(first), index.getNodes(first));
+        assertEquals(scan(second), index.getNodes(second));
+        assertTrue(index.getNodes(first).contains("node-0"));
+
+        nodes.get("node-0").setZone("zone-1");
+        index.onNodeEvent(event("node-0", StandardActions.UPDATE));
+        assertFalse(index.getNodes(first).contains("node-0"));
+        assertTrue(index.getNodes(second).contains("node-0"));
+        assertEquals(scan(second), index.getNodes(second));
+
+        nodes.remove("node-1");
+        index.onNodeEvent(event("node-1", StandardActions.DELETE));
+        assertFalse(index.getNodes(second).contains("node-1"));
+
+        nodes.put("node-new", new Registration("node-new", "zone-0"));
+        index.onNodeEvent(event("node-new", StandardActions.CREATE));
+        assertTrue(index.getNodes(first).contains("node-new"));
+
+        index.invalidate(first.getName());
+        assertEquals(scan(first), index.getNodes(first));
+    }
+
+    @Test
+    public void benchmark() {
+        final int rounds = 20;
+        long start = System.nanoTime();
+        int scanned = 0;
+        for(int r = 0; r < rounds; ++r) {
+            for(NodesGroupImpl group : groups) {
+                scanned += scan(group).size();
+            }
+        }
+        long scanTime = System.nanoTime() - start;
+        // first access build index
+        for(NodesGroupImpl group : groups) {
+            index.getNodes(group);
+        }
+        start = System.nanoTime();
+        int indexed = 0;
+        for(int r = 0; r < rounds; ++r) {
+            // one node changed per round, as usual
+            String node = "node-" + r;
+            nodes.get(node).setZone("zone-" + (r + 1) % GROUPS);
+            index.onNodeEvent(event(node, StandardActions.UPDATE));
+            nodes.get(node).setZone("zone-" + r % GROUPS);
+            index.onNodeEvent(event(node, StandardActions.UPDATE));
+            for(NodesGroupImpl group : groups) {
+                indexed += index.getNodes(group).size();
+            }
+        }
+        long indexTime = System.nanoTime() - start;
+        assertEquals(scanned, indexed);
+        log.info("{} nodes in {} groups, {} rounds: scan {} ms, index {} ms", NODES, GROUPS, rounds,
+          scanTime / 1_000_000, indexTime / 1_000_000);
+    }
+
+    private Set<String> scan(NodesGroupImpl group) {
+        return nodeStorage.getNodes(group::isMember).stream().map(NodeInfo::getName).collect(Collectors.toSet());
+    }
+
+    private NodeEvent event(String node, String action) {
+        return NodeEvent.builder().action(action).node(NodeInfoImpl.builder().name(node).build()).build();
+    }
+
+    private static class Registration implements NodeRegistration {
+        private final String name;
+        private volatile NodeInfo nodeInfo;
+
+        Registration(String name, String zone) {
+            this.name = name;
+            setZone(zone);
+        }
+
+        void setZone(String zone) {
+            this.nodeInfo = NodeInfoImpl.builder().name(name).labels(ImmutableMap.of("zone", zone)).build();
+        }
+
+        @Override
+        public NodeInfo getNodeInfo() {
+            return nodeInfo;
+        }
+
+        @Override
+        public Subscriptions<NodeHealthEvent> getHealthSubscriptions() {
+            return null;
+        }
+
+        @Override
+        public MetricsHistory getMetricsHistory() {
+            return null;
+        }
+
+        @Override
+        public ObjectIdentity getOid() {
+            return null;
+        }
+    }
+}
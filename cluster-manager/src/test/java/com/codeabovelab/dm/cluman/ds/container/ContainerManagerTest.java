@@ -0,0 +1,146 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.codeabovelab.dm.cluman.ds.container;
+
+import com.codeabovelab.dm.cluman.DockerServiceMock;
+import com.codeabovelab.dm.cluman.cluster.docker.management.argument.GetContainersArg;
+import com.codeabovelab.dm.cluman.cluster.docker.management.result.ResultCode;
+import com.codeabovelab.dm.cluman.cluster.docker.management.result.ServiceCallResult;
+import com.codeabovelab.dm.cluman.cluster.docker.model.CreateContainerCmd;
+import com.codeabovelab.dm.cluman.cluster.docker.model.CreateContainerResponse;
+import com.codeabovelab.dm.cluman.cluster.docker.model.HostConfig;
+import com.codeabovelab.dm.cluman.configs.container.ConfigProvider;
+import com.codeabovelab.dm.cluman.ds.swarm.NetworkManager;
+import com.codeabovelab.dm.cluman.model.DiscoveryStorage;
+import com.codeabovelab.dm.cluman.model.DockerServiceInfo;
+import com.codeabovelab.dm.cluman.model.NodeRegistry;
+import com.codeabovelab.dm.cluman.security.TempAuth;
+import com.codeabovelab.dm.cluman.source.ContainerSourceFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.access.AccessDeniedException;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.anyObject;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ContainerManagerTest {
+
+    private static final String CLUSTER = "testcluster";
+
+    /**
+     * Check credentials like secured wrapper of docker service.
+     */
+    private static class SecuredDockerServiceMock extends DockerServiceMock {
+
+        SecuredDockerServiceMock() {
+            super(DockerServiceInfo.builder().name(CLUSTER).build());
+        }
+
+        @Override
+        public CreateContainerResponse createContainer(CreateContainerCmd cmd) {
+            checkCredentials();
+            return super.createContainer(cmd);
+        }
+
+        @Override
+        public ServiceCallResult startContainer(String id) {
+            checkCredentials();
+            return super.startContainer(id);
+        }
+
+        private void checkCredentials() {
+            if(SecurityContextHolder.getContext().getAuthentication() == null) {
+                throw new AccessDeniedException("No credentials in context.");
+            }
+        }
+    }
+
+    private final SecuredDockerServiceMock docker = new SecuredDockerServiceMock();
+    /**
+     * When true, names of containers are not visible to name service, like when node is unreachable.
+     */
+    private final AtomicBoolean hideNames = new AtomicBoolean();
+    private ContainerManager containerManager;
+
+    @Before
+    public void before() {
+        DiscoveryStorage discoveryStorage = mock(DiscoveryStorage.class);
+        when(discoveryStorage.getService(CLUSTER)).thenReturn(docker);
+        ContainerStorage containerStorage = mock(ContainerStorage.class);
+        when(containerStorage.updateAndGetContainer(anyObject(), anyString())).thenReturn(mock(ContainerRegistration.class));
+        containerManager = new ContainerManager(discoveryStorage,
+          mock(NodeRegistry.class),
+          mock(ConfigProvider.class),
+          new ContainersNameService(new ContainerNamesSupplier()
+            .andThen(names -> hideNames.get() ? Collections.<String>emptyList() : names)),
+          containerStorage,
+          mock(NetworkManager.class),
+          new ContainerSourceFactory(new ObjectMapper()));
+    }
+
+    @After
+    public void after() {
+        containerManager.shutdown();
+    }
+
+    @Test
+    public void testScale() {
+        try (TempAuth ta = TempAuth.asSystem()) {
+            String id = createSource();
+            ServiceCallResult res = containerManager.scale(CLUSTER, 3, id);
+            assertEquals(res.getMessage(), ResultCode.OK, res.getCode());
+        }
+        assertEquals(4, docker.getContainers(new GetContainersArg(true)).size());
+    }
+
+    @Test
+    public void testScaleWithTakenName() {
+        try (TempAuth ta = TempAuth.asSystem()) {
+            String id = createSource();
+            // name service reserves name of source container, so creation must be retried with other name
+            hideNames.set(true);
+            ServiceCallResult res = containerManager.scale(CLUSTER, 2, id);
+            assertEquals(res.getMessage(), ResultCode.OK, res.getCode());
+        }
+        assertEquals(3, docker.getContainers(new GetContainersArg(true)).size());
+    }
+
+    private String createSource() {
+        CreateContainerCmd cmd = new CreateContainerCmd();
+        cmd.setName("app");
+        cmd.setImage("app:1");
+        cmd.setLabels(new HashMap<>());
+        cmd.setHostConfig(HostConfig.builder()
+          .blkioWeight(1)
+          .cpuShares(1)
+          .cpuPeriod(1)
+          .cpuQuota(1)
+          .build());
+        return docker.createContainer(cmd).getId();
+    }
+}
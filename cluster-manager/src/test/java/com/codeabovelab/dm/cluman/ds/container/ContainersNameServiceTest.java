@@ -0,0 +1,44 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ds.container;
+
+import com.codeabovelab.dm.cluman.cluster.docker.management.argument.CalcNameArg;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class ContainersNameServiceTest {
+
+    @Test
+    public void testCalculateNames() {
+        ContainersNameService service = new ContainersNameService(ds -> Arrays.asList("app", "app-3", "other-7"));
+        CalcNameArg arg = CalcNameArg.builder().imageName("app").allocate(true).build();
+        assertEquals(Arrays.asList("app-4", "app-5", "app-6"), service.calculateNames(arg, 3));
+        // allocated names are not given again
+        assertEquals("app-7", service.calculateName(arg));
+    }
+
+    @Test
+    public void testFirstNames() {
+        ContainersNameService service = new ContainersNameService(ds -> Collections.emptyList());
+        CalcNameArg arg = CalcNameArg.builder().imageName("app").allocate(true).build();
+        assertEquals(Arrays.asList("app", "app-1"), service.calculateNames(arg, 2));
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ds.kv.etcd;
+
+import com.codeabovelab.dm.common.kv.KvNode;
+import com.codeabovelab.dm.common.kv.KvStorageEvent;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class KvMirrorTest {
+
+    @Test
+    public void testResync() {
+        KvMirror mirror = new KvMirror();
+        Map<String, KvNode> snapshot = new HashMap<>();
+        snapshot.put("/a", KvNode.dir(1));
+        snapshot.put("/a/one", KvNode.leaf(2, "1"));
+        snapshot.put("/a/two", KvNode.leaf(3, "2"));
+        snapshot.put("/b", KvNode.dir(4));
+        snapshot.put("/b/three", KvNode.leaf(5, "3"));
+        mirror.reset(snapshot, 5);
+        mirror.apply("/a/four", KvNode.leaf(6, "4"), KvStorageEvent.Crud.CREATE, 6);
+        // delete of dir must remove its children
+        mirror.apply("/b", null, KvStorageEvent.Crud.DELETE, 7);
+        assertEquals(4, mirror.size());
+
+        // changes which is skipped by watch
+        Map<String, KvNode> next = new HashMap<>();
+        next.put("/a", KvNode.dir(1));
+        next.put("/a/one", KvNode.leaf(7, "one"));
+        next.put("/a/four", KvNode.leaf(6, "4"));
+        next.put("/c", KvNode.dir(8));
+        next.put("/c/five", KvNode.leaf(9, "5"));
+        List<KvStorageEvent> events = mirror.resync(next, 9);
+        assertEquals(4, events.size());
+        assertEvent(events.get(0), "/a/two", KvStorageEvent.Crud.DELETE);
+        assertEvent(events.get(1), "/a/one", KvStorageEvent.Crud.UPDATE);
+        assertEquals("one", events.get(1).getValue());
+        // parent before children
+        assertEvent(events.get(2), "/c", KvStorageEvent.Crud.CREATE);
+        assertEvent(events.get(3), "/c/five", KvStorageEvent.Crud.CREATE);
+
+        assertTrue(mirror.resync(next, 9).isEmpty());
+    }
+
+    @Test
+    public void testRead() {
+        KvMirror mirror = new KvMirror();
+        Map<String, KvNode> state = new HashMap<>();
+        state.put("/a", KvNode.dir(1));
+        state.put("/a/one", KvNode.leaf(2, "1"));
+        state.put("/a/sub", KvNode.dir(3));
+        state.put("/a/sub/two", KvNode.leaf(4, "2"));
+        state.put("/ab", KvNode.leaf(5, "3"));
+        mirror.reset(state, 5);
+        assertEquals(KvNode.leaf(2, "1"), mirror.get("/a/one"));
+        assertNull(mirror.get("/a/none"));
+        // only direct children, without siblings with same prefix
+        assertEquals(Arrays.asList("/a/one", "/a/sub"), mirror.list("/a"));
+        Map<String, String> map = mirror.map("/a");
+        assertEquals(2, map.size());
+        assertEquals("1", map.get("/a/one"));
+        assertNull(map.get("/a/sub"));
+        assertEquals(Arrays.asList("/a", "/ab"), mirror.list(""));
+        assertNull(mirror.list("/none"));
+        assertNull(mirror.map("/none"));
+        mirror.apply("/a", null, KvStorageEvent.Crud.DELETE, 6);
+        assertNull(mirror.list("/a"));
+        assertEquals(6, mirror.getIndex());
+    }
+
+    @Test
+    public void testSnapshot() throws Exception {
+        KvMirror mirror = new KvMirror();
+        Map<String, KvNode> state = new HashMap<>();
+        state.put("/a", KvNode.dir(1));
+        state.put("/a/one", KvNode.leaf(2, "1"));
+        state.put("/a/empty", KvNode.leaf(3, null));
+        mirror.reset(state, 3);
+        mirror.apply("/a/two", KvNode.leaf(4, "2"), KvStorageEvent.Crud.CREATE, 4);
+
+        Path file = Files.createTempDirectory("kv-snapshot").resolve("kv").resolve("snapshot");
+        KvSnapshotStore store = new KvSnapshotStore(file);
+        assertNull(store.load());
+        store.save(mirror.snapshot().withClusterId("cluster"));
+        KvSnapshot snapshot = store.load();
+        assertEquals(4, snapshot.getIndex());
+        assertEquals("cluster", snapshot.getClusterId());
+        assertEquals(mirror.snapshot().getNodes(), snapshot.getNodes());
+        if(file.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            // snapshot contains secrets
+            assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(file)));
+            assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(file.getParent())));
+        }
+
+        KvMirror restored = new KvMirror();
+        restored.reset(snapshot.getNodes(), snapshot.getIndex());
+        assertTrue(restored.resync(mirror.snapshot().getNodes(), 4).isEmpty());
+        Files.delete(file);
+        Files.delete(file.getParent());
+        Files.delete(file.getParent().getParent());
+    }
+
+    @Test
+    public void testPartition() {
+        KvEventDispatcher dispatcher = new KvEventDispatcher("test", 16, 3, e -> {});
+        try {
+            int partition = dispatcher.partition("/cluman/nodes/one");
+            assertEquals(partition, dispatcher.partition("/cluman/nodes/one/health"));
+            assertEquals(partition, dispatcher.partition("/cluman/nodes/one/labels/two"));
+        } finally {
+            dispatcher.close();
+        }
+    }
+
+    private static void assertEvent(KvStorageEvent e, String key, KvStorageEvent.Crud action) {
+        assertEquals(key, e.getKey());
+        assertEquals(action, e.getAction());
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ds.nodes;
+
+import com.codeabovelab.dm.cluman.model.NodeMetrics;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MetricsHistoryTest {
+
+    private static final long MINUTE = MetricsHistory.Resolution.MINUTE.getStep();
+
+    @Test
+    public void testRollup() {
+        MetricsHistory history = new MetricsHistory(4, 3, 2);
+        // 3 samples per minute during 5 minutes
+        for(int i = 0; i < 15; ++i) {
+            history.add(i * MINUTE / 3, metrics(i));
+        }
+        MetricsRange raw = query(history, MetricsHistory.Resolution.RAW, 0, Long.MAX_VALUE);
+        // only last samples are kept
+        assertArrayEquals(new long[]{11 * MINUTE / 3, 4 * MINUTE, 13 * MINUTE / 3, 14 * MINUTE / 3}, raw.getTime());
+        assertArrayEquals(new float[]{11, 12, 13, 14}, raw.getAvg(), 0f);
+
+        MetricsRange minute = query(history, MetricsHistory.Resolution.MINUTE, 0, Long.MAX_VALUE);
+        // three completed buckets and current
+        assertArrayEquals(new long[]{MINUTE, 2 * MINUTE, 3 * MINUTE, 4 * MINUTE}, minute.getTime());
+        assertArrayEquals(new float[]{3, 6, 9, 12}, minute.getMin(), 0f);
+        assertArrayEquals(new float[]{5, 8, 11, 14}, minute.getMax(), 0f);
+        assertArrayEquals(new float[]{4, 7, 10, 13}, minute.getAvg(), 0f);
+
+        MetricsRange range = query(history, MetricsHistory.Resolution.MINUTE, 2 * MINUTE, 3 * MINUTE);
+        assertArrayEquals(new long[]{2 * MINUTE, 3 * MINUTE}, range.getTime());
+
+        MetricsRange ten = query(history, MetricsHistory.Resolution.TEN_MINUTES, 0, Long.MAX_VALUE);
+        assertArrayEquals(new float[]{7}, ten.getAvg(), 0f);
+    }
+
+    @Test
+    public void testAligned() {
+        MetricsHistory first = new MetricsHistory();
+        MetricsHistory second = new MetricsHistory();
+        first.add(0, metrics(1));
+        first.add(MINUTE, metrics(3));
+        second.add(10, metrics(5));
+        second.add(2 * MINUTE, metrics(7));
+        MetricsRange.Builder b = MetricsRange.aligned(MetricsHistory.Metric.SYS_CPU_LOAD, MetricsHistory.Resolution.MINUTE,
+          0, 3 * MINUTE);
+        first.query(MetricsHistory.Metric.SYS_CPU_LOAD, MetricsHistory.Resolution.MINUTE, 0, 3 * MINUTE, b);
+        second.query(MetricsHistory.Metric.SYS_CPU_LOAD, MetricsHistory.Resolution.MINUTE, 0, 3 * MINUTE, b);
+        MetricsRange range = b.build();
+        assertArrayEquals(new long[]{0, MINUTE, 2 * MINUTE}, range.getTime());
+        assertArrayEquals(new float[]{1, 3, 7}, range.getMin(), 0f);
+        assertArrayEquals(new float[]{5, 3, 7}, range.getMax(), 0f);
+        assertArrayEquals(new float[]{3, 3, 7}, range.getAvg(), 0f);
+        // absent metric must not produce samples
+        assertEquals(0, first.query(MetricsHistory.Metric.SYS_MEM_USED, MetricsHistory.Resolution.RAW, 0, Long.MAX_VALUE,
+          (time, min, max, avg) -> fail()));
+    }
+
+    private static MetricsRange query(MetricsHistory history, MetricsHistory.Resolution resolution, long from, long to) {
+        MetricsRange.Builder b = MetricsRange.builder(MetricsHistory.Metric.SYS_CPU_LOAD, resolution);
+        history.query(MetricsHistory.Metric.SYS_CPU_LOAD, resolution, from, to, b);
+        return b.build();
+    }
+
+    private static NodeMetrics metrics(float cpu) {
+        return NodeMetrics.builder().sysCpuLoad(cpu).build();
+    }
+}
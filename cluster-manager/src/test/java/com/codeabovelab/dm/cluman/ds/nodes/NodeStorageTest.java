@@ -0,0 +1,139 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ds.nodes;
+
+import com.codeabovelab.dm.cluman.cluster.docker.management.DockerServiceEvent;
+import com.codeabovelab.dm.cluman.model.NodeEvent;
+import com.codeabovelab.dm.cluman.model.NodeInfoImpl;
+import com.codeabovelab.dm.cluman.model.NodeUpdate;
+import com.codeabovelab.dm.cluman.model.StandardActions;
+import com.codeabovelab.dm.cluman.persistent.PersistentBusFactory;
+import com.codeabovelab.dm.cluman.security.AccessContextFactory;
+import com.codeabovelab.dm.cluman.security.AccessContextHolder;
+import com.codeabovelab.dm.cluman.security.TempAuth;
+import com.codeabovelab.dm.common.kv.InMemoryKeyValueStorage;
+import com.codeabovelab.dm.common.kv.KvStorageEvent;
+import com.codeabovelab.dm.common.kv.mapping.KvMapperFactory;
+import com.codeabovelab.dm.common.mb.MessageBus;
+import com.codeabovelab.dm.common.mb.MessageBuses;
+import com.codeabovelab.dm.common.security.acl.ExtPermissionGrantingStrategy;
+import com.codeabovelab.dm.common.security.acl.TenantSidRetrievalStrategy;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.acls.model.AclService;
+import org.springframework.security.crypto.encrypt.TextEncryptor;
+
+import javax.validation.Validator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class NodeStorageTest {
+
+    private static final String NODE = "node-one";
+    private final InMemoryKeyValueStorage storage = new InMemoryKeyValueStorage();
+    private final MessageBus<NodeEvent> nodeBus = MessageBuses.create(NodeEvent.BUS, NodeEvent.class);
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final AccessContextFactory acf = new AccessContextFactory(mock(AclService.class),
+      mock(ExtPermissionGrantingStrategy.class), new TenantSidRetrievalStrategy());
+    private NodeStorage nodeStorage;
+    private TempAuth auth;
+    private AccessContextHolder context;
+
+    @Before
+    @SuppressWarnings("unchecked")
+    public void before() {
+        PersistentBusFactory pbf = mock(PersistentBusFactory.class);
+        when(pbf.create(any(Class.class), anyString(), anyInt())).thenReturn(mock(MessageBus.class));
+        KvMapperFactory kvmf = new KvMapperFactory(new ObjectMapper(), storage, mock(TextEncryptor.class), mock(Validator.class));
+        nodeStorage = new NodeStorage(kvmf, nodeBus, MessageBuses.create(DockerServiceEvent.BUS, DockerServiceEvent.class),
+          pbf, executor);
+        nodeStorage.setMaxFlushInterval(500);
+        auth = TempAuth.asSystem();
+        context = acf.open();
+    }
+
+    @After
+    public void after() {
+        context.close();
+        auth.close();
+        nodeStorage.shutdown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testCoalescing() throws Exception {
+        AtomicInteger writes = new AtomicInteger();
+        storage.subscriptions().subscribe(e -> {
+            // registration of node is created with empty labels, so we count only updates
+            if(e.getKey().contains("/" + NODE + "/labels") && e.getAction() == KvStorageEvent.Crud.UPDATE) {
+                writes.incrementAndGet();
+            }
+        });
+        update("1");
+        // first change is saved immediately
+        assertEquals(1, writes.get());
+        for(int i = 2; i < 7; ++i) {
+            update(Integer.toString(i));
+        }
+        assertEquals(1, writes.get());
+        // interval and one tick of timer
+        Thread.sleep(2_500);
+        assertEquals(2, writes.get());
+        assertEquals("6", nodeStorage.getNodeInfo(NODE).getLabels().get("version"));
+        // update of metrics only is not saved
+        update("6");
+        Thread.sleep(1_500);
+        assertEquals(2, writes.get());
+    }
+
+    @Test
+    public void testExpiry() throws Exception {
+        CountDownLatch offline = new CountDownLatch(1);
+        nodeBus.subscribe(e -> {
+            if(StandardActions.OFFLINE.equals(e.getAction()) && NODE.equals(e.getNode().getName())) {
+                offline.countDown();
+            }
+        });
+        // min ttl is 10 seconds
+        update("1");
+        assertTrue(nodeStorage.getNodeInfo(NODE).isOn());
+        assertFalse(offline.await(8, TimeUnit.SECONDS));
+        assertTrue(offline.await(10, TimeUnit.SECONDS));
+        assertFalse(nodeStorage.getNodeInfo(NODE).isOn());
+    }
+
+    private void update(String version) {
+        nodeStorage.updateNode(NodeUpdate.builder().node(NodeInfoImpl.builder()
+          .name(NODE)
+          .address("10.0.0.1:2375")
+          .labels(ImmutableMap.of("version", version))
+          .build()).build(), 1);
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ds.swarm;
+
+import com.codeabovelab.dm.cluman.cluster.docker.management.DockerService;
+import com.codeabovelab.dm.cluman.model.DockerServiceInfo;
+import com.codeabovelab.dm.cluman.model.NodeInfoImpl;
+import com.codeabovelab.dm.cluman.model.NodeMetrics;
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class InfoRefresherTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final AtomicInteger fastCalls = new AtomicInteger();
+
+    @After
+    public void after() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void test() throws Exception {
+        DockerService fast = mock(DockerService.class);
+        when(fast.getId()).thenReturn("fast");
+        DockerServiceInfo info = DockerServiceInfo.builder().name("fast").build();
+        when(fast.getInfo()).thenAnswer(invocation -> {
+            fastCalls.incrementAndGet();
+            return info;
+        });
+        DockerService dead = mock(DockerService.class);
+        when(dead.getId()).thenReturn("dead");
+        when(dead.getInfo()).thenAnswer(invocation -> {
+            Thread.sleep(10_000);
+            return null;
+        });
+        List<DockerService> services = Arrays.asList(dead, fast);
+        try (InfoRefresher refresher = new InfoRefresher(() -> services, scheduler, 2, 100, 400, 200)) {
+            scheduler.submit(refresher::tick).get();
+            // dead service must not block refresh of other
+            Thread.sleep(50);
+            assertEquals(1, fastCalls.get());
+            for(int i = 0; i < 10; ++i) {
+                Thread.sleep(100);
+                scheduler.submit(refresher::tick).get();
+            }
+            // info is not changed, so interval grows up to max
+            assertEquals(400, refresher.getInterval("fast"));
+            assertTrue("Too many calls: " + fastCalls.get(), fastCalls.get() < 6);
+            // dead service is interrupted by deadline and backed off too
+            assertEquals(400, refresher.getInterval("dead"));
+        }
+    }
+
+    @Test
+    public void testMetricsChange() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        AtomicInteger containers = new AtomicInteger(1);
+        DockerService service = mock(DockerService.class);
+        when(service.getId()).thenReturn("service");
+        when(service.getInfo()).thenAnswer(invocation -> {
+            int num = calls.incrementAndGet();
+            // metrics are changed at each call
+            NodeMetrics metrics = NodeMetrics.builder()
+              .time(LocalDateTime.now().plusSeconds(num))
+              .sysCpuLoad((float) num)
+              .sysMemUsed((long) num)
+              .healthy(true)
+              .state(NodeMetrics.State.HEALTHY)
+              .build();
+            return DockerServiceInfo.builder()
+              .name("service")
+              .containers(containers.get())
+              .nodeCount(1)
+              .nodeList(Collections.singletonList(NodeInfoImpl.builder().name("node").on(true).health(metrics).build()))
+              .build();
+        });
+        List<DockerService> services = Collections.singletonList(service);
+        try (InfoRefresher refresher = new InfoRefresher(() -> services, scheduler, 1, 100, 400, 200)) {
+            for(int i = 0; i < 10; ++i) {
+                scheduler.submit(refresher::tick).get();
+                Thread.sleep(100);
+            }
+            assertEquals(400, refresher.getInterval("service"));
+            // real change reset interval
+            containers.incrementAndGet();
+            Thread.sleep(400);
+            scheduler.submit(refresher::tick).get();
+            Thread.sleep(100);
+            assertEquals(100, refresher.getInterval("service"));
+        }
+    }
+}
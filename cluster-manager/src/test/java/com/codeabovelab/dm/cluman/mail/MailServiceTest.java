@@ -1,6 +1,7 @@
 package com.codeabovelab.dm.cluman.mail;
 
 import com.codeabovelab.dm.cluman.cluster.registry.RegistryEvent;
+import com.codeabovelab.dm.common.fc.FbStorage;
 import com.codeabovelab.dm.common.kv.InMemoryKeyValueStorage;
 import com.codeabovelab.dm.common.kv.KeyValueStorage;
 import com.codeabovelab.dm.common.kv.mapping.KvMapperFactory;
@@ -10,6 +11,7 @@ import com.codeabovelab.dm.common.json.JacksonUtils;
 import com.codeabovelab.dm.common.mb.MessageBus;
 import com.codeabovelab.dm.common.mb.MessageBuses;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.AfterClass;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -26,19 +28,25 @@ import org.springframework.mail.SimpleMailMessage;
 import org.springframework.security.crypto.encrypt.TextEncryptor;
 import org.springframework.test.annotation.DirtiesContext;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.util.FileSystemUtils;
 
 import javax.validation.Validation;
 import javax.validation.Validator;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
 
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  */
 @RunWith(SpringJUnit4ClassRunner.class)
 @DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
-@SpringBootTest(classes = MailServiceTest.Config.class)
+@SpringBootTest(classes = MailServiceTest.Config.class, properties = "dm.mail.window=500")
 public class MailServiceTest {
 
     private static final String EVENT_SOURCE = "eventSource.test";
@@ -60,6 +68,15 @@ public class MailServiceTest {
             return new TestMailSender();
         }
 
+        @Bean
+        FbStorage fbStorage() throws IOException {
+            return FbStorage.builder()
+              .maxFiles(20)
+              .maxFileSize(1024 * 1024)
+              .path(storageDir().getAbsolutePath())
+              .build();
+        }
+
         @Bean
         ObjectMapper objectMapper() {
             return JacksonUtils.objectMapperBuilder();
@@ -92,6 +109,8 @@ public class MailServiceTest {
         }
     }
 
+    private static final List<File> STORAGE_DIRS = new CopyOnWriteArrayList<>();
+
     @Autowired
     private MailNotificationsService mailService;
 
@@ -102,6 +121,21 @@ public class MailServiceTest {
     @Autowired
     private MessageBus<WithSeverity> bus;
 
+    /**
+     * Each context has own storage, because persisted outbox of previous test may produce unexpected mails.
+     */
+    private static File storageDir() throws IOException {
+        File dir = Files.createTempDirectory(MailServiceTest.class.getSimpleName()).toFile();
+        STORAGE_DIRS.add(dir);
+        return dir;
+    }
+
+    @AfterClass
+    public static void afterClass() {
+        STORAGE_DIRS.forEach(FileSystemUtils::deleteRecursively);
+        STORAGE_DIRS.clear();
+    }
+
     @Test
     public void testAdding() {
         assertThat(mailService.list(), hasSize(0));
@@ -147,18 +181,23 @@ public class MailServiceTest {
         msb.addEmailRecipient(RECIPIENT_FIRST);
         mailService.put(msb.build());
 
-        bus.accept(RegistryEvent.builder()
-          .action("alarm")
-          .message("киррилица попала в реестр!")
-          .severity(Severity.ERROR)
-          .build());
+        for(int i = 0; i < 3; ++i) {
+            bus.accept(RegistryEvent.builder()
+              .action("alarm")
+              .message("киррилица попала в реестр! " + i)
+              .severity(Severity.ERROR)
+              .build());
+        }
 
         //TODO add sync mail receiving
         Thread.sleep(5000L);
 
+        // events are collected into single mail
+        assertThat(mailSender.getMailbox(RECIPIENT_FIRST), hasSize(1));
         SimpleMailMessage message = mailSender.getMailbox(RECIPIENT_FIRST).get(0);
         System.out.println(message);
         assertNotNull(message);
+        assertThat(message.getText(), containsString("реестр! 2"));
 
     }
 
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.persistent;
+
+import com.codeabovelab.dm.cluman.model.NodesGroupEvent;
+import com.codeabovelab.dm.cluman.model.Severity;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class EventCountersTest {
+
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    @Test
+    public void test() {
+        long now = System.currentTimeMillis();
+        EventCounters counters = new EventCounters(now - TimeUnit.HOURS.toMillis(2));
+        counters.add(event(now - 90 * MINUTE, Severity.ERROR, "one"));
+        counters.add(event(now - 30 * MINUTE, Severity.INFO, "one"));
+        counters.add(event(now - 10 * MINUTE, Severity.INFO, "two"));
+        counters.add(event(now, Severity.ERROR, null));
+
+        Map<String, Integer> all = counters.count(now - 100 * MINUTE);
+        assertEquals((Integer) 4, all.get(EventCounters.TOTAL));
+        assertEquals((Integer) 2, all.get(EventCounters.SEVERITY + Severity.ERROR));
+        assertEquals((Integer) 2, all.get(EventCounters.CLUSTER + "one"));
+
+        Map<String, Integer> last = counters.count(now - 20 * MINUTE);
+        assertEquals((Integer) 2, last.get(EventCounters.TOTAL));
+        assertEquals((Integer) 1, last.get(EventCounters.SEVERITY + Severity.INFO));
+        assertEquals((Integer) 0, last.get(EventCounters.CLUSTER + "one"));
+
+        // counters does not cover this time
+        assertNull(counters.count(now - TimeUnit.HOURS.toMillis(3)));
+
+        EventCounters restored = new EventCounters(counters.toSnapshot());
+        assertEquals(all, restored.count(now - 100 * MINUTE));
+    }
+
+    @Test
+    public void testRolling() {
+        long now = System.currentTimeMillis();
+        EventCounters counters = new EventCounters(0);
+        // it must be dropped from counters after 24 hours
+        counters.add(event(now - TimeUnit.HOURS.toMillis(25), Severity.INFO, "one"));
+        counters.add(event(now - TimeUnit.HOURS.toMillis(23), Severity.INFO, "one"));
+        counters.add(event(now, Severity.INFO, "one"));
+        assertEquals((Integer) 2, counters.count(now - TimeUnit.HOURS.toMillis(24) + MINUTE).get(EventCounters.TOTAL));
+        assertNull(counters.count(now - TimeUnit.HOURS.toMillis(25)));
+    }
+
+    private static NodesGroupEvent event(long time, Severity severity, String cluster) {
+        return new NodesGroupEvent.Builder()
+          .cluster(cluster)
+          .severity(severity)
+          .date(new Date(time))
+          .build();
+    }
+}
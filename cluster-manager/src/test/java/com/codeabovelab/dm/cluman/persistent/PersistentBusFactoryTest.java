@@ -0,0 +1,144 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.persistent;
+
+import com.codeabovelab.dm.common.fc.FbStorage;
+import com.codeabovelab.dm.common.mb.MessageBus;
+import com.codeabovelab.dm.common.mb.SmartConsumer;
+import com.codeabovelab.dm.common.utils.OSUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class PersistentBusFactoryTest {
+
+    private final String rootDir = OSUtils.getTempDir() + "/" + getClass().getName();
+    private PersistentBusFactory factory;
+
+    private static class Collector implements SmartConsumer<Integer> {
+        private final List<Integer> list = new ArrayList<>();
+        private final int historyCount;
+        private final long historyOffset;
+
+        Collector(int historyCount, long historyOffset) {
+            this.historyCount = historyCount;
+            this.historyOffset = historyOffset;
+        }
+
+        @Override
+        public synchronized void accept(Integer i) {
+            list.add(i);
+            notifyAll();
+        }
+
+        synchronized List<Integer> await(int size) throws InterruptedException {
+            long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(30);
+            while(list.size() < size && System.currentTimeMillis() < end) {
+                wait(100);
+            }
+            return new ArrayList<>(list);
+        }
+
+        @Override
+        public int getHistoryCount() {
+            return historyCount;
+        }
+
+        @Override
+        public long getHistoryOffset() {
+            return historyOffset;
+        }
+    }
+
+    @Before
+    public void before() throws Exception {
+        FbStorage storage = FbStorage.builder()
+          .maxFiles(20)
+          .maxFileSize(1024 * 1024)
+          .path(rootDir)
+          .build();
+        factory = new PersistentBusFactory(new ObjectMapper(), storage);
+    }
+
+    @After
+    public void after() throws Exception {
+        factory.destroy();
+        FileSystemUtils.deleteRecursively(new File(rootDir));
+    }
+
+    @Test
+    public void testReplayWithLiveEvents() throws Exception {
+        MessageBus<Integer> bus = factory.create(Integer.class, "testReplay", 10_000);
+        final int history = 3000;
+        final int total = 6000;
+        for(int i = 0; i < history; ++i) {
+            bus.accept(i);
+        }
+        Thread publisher = new Thread(() -> {
+            for(int i = history; i < total; ++i) {
+                bus.accept(i);
+            }
+        });
+        Collector collector = new Collector(Integer.MAX_VALUE, -1);
+        publisher.start();
+        bus.subscribe(collector);
+        publisher.join();
+        List<Integer> list = collector.await(total);
+        assertEquals(total, list.size());
+        for(int i = 0; i < total; ++i) {
+            assertEquals((Integer) i, list.get(i));
+        }
+    }
+
+    @Test
+    public void testOffset() throws Exception {
+        MessageBus<Integer> bus = factory.create(Integer.class, "testOffset", 1000);
+        for(int i = 0; i < 100; ++i) {
+            bus.accept(i);
+        }
+        PersistentBusFactory.PersistentBus<?> pb = bus.getExtension(PersistentBusFactory.EXT_KEY);
+        assertEquals(100, pb.getOffset());
+
+        Collector fromOffset = new Collector(Integer.MAX_VALUE, 90);
+        bus.subscribe(fromOffset);
+        Collector limited = new Collector(5, 0);
+        bus.subscribe(limited);
+        Collector noHistory = new Collector(0, -1);
+        bus.subscribe(noHistory);
+        assertEquals(10, fromOffset.await(10).size());
+        assertEquals(5, limited.await(5).size());
+        bus.accept(100);
+        List<Integer> list = fromOffset.await(11);
+        assertEquals((Integer) 90, list.get(0));
+        assertEquals((Integer) 100, list.get(10));
+        list = limited.await(6);
+        assertEquals((Integer) 95, list.get(0));
+        assertEquals((Integer) 100, list.get(5));
+        list = noHistory.await(1);
+        assertEquals(1, list.size());
+        assertEquals((Integer) 100, list.get(0));
+    }
+}
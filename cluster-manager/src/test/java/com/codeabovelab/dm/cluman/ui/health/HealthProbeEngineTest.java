@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ui.health;
+
+import com.codeabovelab.dm.common.healthcheck.HealthCheckResultData;
+import com.codeabovelab.dm.platform.http.async.NettyRequestFactory;
+import com.google.common.collect.ImmutableMap;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class HealthProbeEngineTest {
+
+    private HealthProbeEngine engine;
+    private HttpServer httpServer;
+    private ServerSocket silentServer;
+
+    @Before
+    public void before() throws Exception {
+        engine = new HealthProbeEngine(NettyRequestFactory.getSharedEventLoopGroup());
+        httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        httpServer.createContext("/health", exchange -> {
+            exchange.sendResponseHeaders(200, -1);
+            exchange.close();
+        });
+        httpServer.createContext("/fail", exchange -> {
+            exchange.sendResponseHeaders(503, -1);
+            exchange.close();
+        });
+        httpServer.start();
+        // accept connections, but never answer
+        silentServer = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    }
+
+    @After
+    public void after() throws Exception {
+        httpServer.stop(0);
+        silentServer.close();
+        engine.close();
+    }
+
+    @Test
+    public void testHttp() throws Exception {
+        int port = httpServer.getAddress().getPort();
+        assertTrue(probe(new ProbeSpec(ProbeSpec.Type.HTTP, port, "/health", 2000, 1000), port).isHealthy());
+        HealthCheckResultData fail = probe(new ProbeSpec(ProbeSpec.Type.HTTP, port, "/fail", 2000, 1000), port);
+        assertFalse(fail.isHealthy());
+        assertTrue(fail.getMessage(), fail.getMessage().contains("503"));
+    }
+
+    @Test
+    public void testTcp() throws Exception {
+        int port = silentServer.getLocalPort();
+        assertTrue(probe(new ProbeSpec(ProbeSpec.Type.TCP, port, null, 2000, 1000), port).isHealthy());
+        int closedPort;
+        try(ServerSocket ss = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            closedPort = ss.getLocalPort();
+        }
+        assertFalse(probe(new ProbeSpec(ProbeSpec.Type.TCP, closedPort, null, 2000, 1000), closedPort).isHealthy());
+    }
+
+    @Test
+    public void testTimeout() throws Exception {
+        int port = silentServer.getLocalPort();
+        List<CompletableFuture<HealthCheckResultData>> futures = new ArrayList<>();
+        long begin = System.currentTimeMillis();
+        for(int i = 0; i < 20; ++i) {
+            ProbeSpec spec = new ProbeSpec(ProbeSpec.Type.HTTP, port, "/", 300, 1000);
+            futures.add(engine.probe("c" + i, spec, new InetSocketAddress(InetAddress.getLoopbackAddress(), port)));
+        }
+        for(CompletableFuture<HealthCheckResultData> future: futures) {
+            HealthCheckResultData res = future.get(5, TimeUnit.SECONDS);
+            assertFalse(res.isHealthy());
+            assertTrue(res.getMessage(), res.getMessage().startsWith("Timeout"));
+        }
+        // probes are run concurrently
+        assertTrue(System.currentTimeMillis() - begin < 3000);
+    }
+
+    @Test
+    public void testSpec() {
+        assertNull(ProbeSpec.fromLabels(ImmutableMap.of("lock", "true"), 1000, 1000));
+        ProbeSpec spec = ProbeSpec.fromLabels(ImmutableMap.of(ProbeSpec.LABEL_TYPE, "http",
+          ProbeSpec.LABEL_PORT, "8080",
+          ProbeSpec.LABEL_INTERVAL, "5000"), 1000, 30000);
+        assertEquals(ProbeSpec.Type.HTTP, spec.getType());
+        assertEquals(8080, spec.getPort());
+        assertEquals("/", spec.getPath());
+        assertEquals(1000, spec.getTimeout());
+        assertEquals(5000, spec.getInterval());
+    }
+
+    private HealthCheckResultData probe(ProbeSpec spec, int port) throws Exception {
+        InetSocketAddress address = InetSocketAddress.createUnresolved("127.0.0.1", port);
+        return engine.probe("test", spec, address).get(5, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.cluman.ui.msg;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.*;
+
+public class EventStatsCollectorTest {
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @After
+    public void after() {
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void testCoalescing() throws Exception {
+        List<EventStats<String>> stats = new CopyOnWriteArrayList<>();
+        try(EventStatsCollector<String> collector = new EventStatsCollector<>("test", (e) -> e, scheduler, 50, 0)) {
+            collector.getSubscriptions().subscribe(stats::add);
+            for(int i = 0; i < 10_000; ++i) {
+                collector.accept(i % 2 == 0 ? "one" : "two");
+            }
+            Thread.sleep(200);
+        }
+        // only two keys was changed, so stats is published only few times, regardless of count of events
+        assertTrue(stats.size() >= 2 && stats.size() < 10);
+        Map<Object, EventStats<String>> last = new HashMap<>();
+        stats.forEach(es -> last.put(es.getKey(), es));
+        assertEquals(2, last.size());
+        for(EventStats<String> es : last.values()) {
+            assertEquals(5_000, es.getCount());
+            assertEquals(es.getKey(), es.getLastEvent());
+        }
+    }
+
+    @Test
+    public void testThreshold() throws Exception {
+        List<EventStats<String>> stats = new CopyOnWriteArrayList<>();
+        try(EventStatsCollector<String> collector = new EventStatsCollector<>("test", (e) -> e, scheduler, 60_000, 100)) {
+            collector.getSubscriptions().subscribe(stats::add);
+            for(int i = 0; i < 1_000; ++i) {
+                collector.accept("one");
+            }
+        }
+        assertEquals(10, stats.size());
+        assertEquals(1_000, stats.get(stats.size() - 1).getCount());
+    }
+}
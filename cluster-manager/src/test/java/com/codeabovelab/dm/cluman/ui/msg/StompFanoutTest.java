@@ -0,0 +1,189 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.codeabovelab.dm.cluman.ui.msg;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.ImmutableMap;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.AbstractMessageChannel;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class StompFanoutTest {
+
+    private static final String SESSION = "session-one";
+
+    /**
+     * Object which can not be serialized.
+     */
+    public static class Broken {
+        public String getValue() {
+            throw new IllegalStateException("test");
+        }
+    }
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final BlockingQueue<Integer> received = new LinkedBlockingQueue<>();
+    private final List<String> destinations = new CopyOnWriteArrayList<>();
+    private volatile CountDownLatch entered;
+    private volatile CountDownLatch release;
+    private final StompFanout fanout;
+
+    public StompFanoutTest() {
+        MessageChannel channel = new AbstractMessageChannel() {
+            @Override
+            protected boolean sendInternal(Message<?> message, long timeout) {
+                CountDownLatch release = StompFanoutTest.this.release;
+                if(release != null) {
+                    StompFanoutTest.this.release = null;
+                    entered.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                receive(message);
+                return true;
+            }
+        };
+        SimpMessagingTemplate template = new SimpMessagingTemplate(channel);
+        template.setMessageConverter(new MappingJackson2MessageConverter());
+        fanout = new StompFanout(template);
+    }
+
+    @After
+    public void after() throws Exception {
+        fanout.destroy();
+    }
+
+    @Test
+    public void testOrdering() throws Exception {
+        StompFanout.Outbox outbox = fanout.open(SESSION);
+        CountDownLatch release = block();
+        outbox.add("events", event(0), true);
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        for(int i = 1; i < 1000; ++i) {
+            outbox.add("events", event(i), true);
+        }
+        release.countDown();
+        for(int i = 0; i < 1000; ++i) {
+            assertEquals(Integer.valueOf(i), received.poll(5, TimeUnit.SECONDS));
+        }
+        // pending events is sent in batches
+        assertTrue(destinations.size() < 100);
+        assertEquals("/user/" + SESSION + "/queue/events", destinations.get(0));
+        assertEquals(0, outbox.getDropped());
+    }
+
+    @Test
+    public void testOverflow() throws Exception {
+        StompFanout.Outbox outbox = fanout.open(SESSION);
+        CountDownLatch release = block();
+        outbox.add("events", event(0), false);
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        for(int i = 1; i <= StompFanout.OUTBOX_SIZE + 10; ++i) {
+            outbox.add("events", event(i), false);
+        }
+        assertEquals(10, outbox.getDropped());
+        assertEquals(10, fanout.getDropped());
+        release.countDown();
+        assertEquals(Integer.valueOf(0), received.poll(5, TimeUnit.SECONDS));
+        // the oldest events is dropped
+        assertEquals(Integer.valueOf(11), received.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSerializationError() throws Exception {
+        StompFanout.Outbox outbox = fanout.open(SESSION);
+        outbox.add("events", event(0), false);
+        outbox.add("events", new Broken(), false);
+        outbox.add("events", event(1), false);
+        assertEquals(Integer.valueOf(0), received.poll(5, TimeUnit.SECONDS));
+        assertEquals(Integer.valueOf(1), received.poll(5, TimeUnit.SECONDS));
+
+        // broken event in batch
+        CountDownLatch release = block();
+        outbox.add("events", event(2), true);
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        for(int i = 3; i < 100; ++i) {
+            outbox.add("events", i == 50 ? new Broken() : event(i), true);
+        }
+        release.countDown();
+        for(int i = 2; i < 100; ++i) {
+            if(i != 50) {
+                assertEquals(Integer.valueOf(i), received.poll(5, TimeUnit.SECONDS));
+            }
+        }
+    }
+
+    @Test
+    public void testDisconnect() throws Exception {
+        StompFanout.Outbox outbox = fanout.open(SESSION);
+        assertEquals(1, fanout.getSessions());
+        CountDownLatch release = block();
+        outbox.add("events", event(0), false);
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        outbox.add("events", event(1), false);
+        fanout.close(SESSION);
+        assertEquals(0, fanout.getSessions());
+        release.countDown();
+        assertEquals(Integer.valueOf(0), received.poll(5, TimeUnit.SECONDS));
+        // pending and new events of closed session is discarded
+        outbox.add("events", event(2), false);
+        assertNull(received.poll(500, TimeUnit.MILLISECONDS));
+    }
+
+    private CountDownLatch block() {
+        CountDownLatch release = new CountDownLatch(1);
+        this.entered = new CountDownLatch(1);
+        this.release = release;
+        return release;
+    }
+
+    private static Object event(int num) {
+        return ImmutableMap.of("num", num);
+    }
+
+    private void receive(Message<?> message) {
+        destinations.add((String) message.getHeaders().get("simpDestination"));
+        try {
+            JsonNode node = objectMapper.readTree((byte[]) message.getPayload());
+            if(node.isArray()) {
+                node.forEach(item -> received.add(item.get("num").asInt()));
+            } else {
+                received.add(node.get("num").asInt());
+            }
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.codeabovelab.dm.cluman.users;
+
+import com.codeabovelab.dm.cluman.security.TempAuth;
+import com.codeabovelab.dm.common.kv.InMemoryKeyValueStorage;
+import com.codeabovelab.dm.common.kv.mapping.KvMapperFactory;
+import com.codeabovelab.dm.common.security.ExtendedUserDetailsImpl;
+import com.codeabovelab.dm.common.security.MultiTenancySupport;
+import com.codeabovelab.dm.common.security.token.SignedTokenServiceBackend;
+import com.codeabovelab.dm.common.security.token.TokenConfiguration;
+import com.codeabovelab.dm.common.security.token.TokenData;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.access.AccessDecisionManager;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.crypto.encrypt.TextEncryptor;
+
+import javax.validation.Validator;
+import java.security.SecureRandom;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+public class UsersStorageTest {
+
+    private static final String USER = "user";
+    private final SignedTokenServiceBackend tokenBackend = new SignedTokenServiceBackend();
+    private UsersStorage usersStorage;
+    private TempAuth auth;
+
+    @Before
+    public void before() {
+        KvMapperFactory kvmf = new KvMapperFactory(new ObjectMapper(), new InMemoryKeyValueStorage(),
+          mock(TextEncryptor.class), mock(Validator.class));
+        usersStorage = new UsersStorage(kvmf, mock(AccessDecisionManager.class));
+        usersStorage.setTokenBackend(tokenBackend);
+        tokenBackend.setSecureRandom(new SecureRandom());
+        tokenBackend.setServerSecret("secret");
+        tokenBackend.setServerInteger(13);
+        auth = TempAuth.open(new UsernamePasswordAuthenticationToken("admin", null, Collections.emptyList()));
+    }
+
+    @After
+    public void after() {
+        auth.close();
+    }
+
+    @Test
+    public void testInvalidateTokens() {
+        update(true);
+        TokenData token = tokenBackend.createToken(new TokenConfiguration("device", USER));
+        TokenData verified = tokenBackend.getToken(token.getKey());
+        assertSame(verified, tokenBackend.getToken(token.getKey()));
+
+        // lock of user must drop its verified tokens
+        update(false);
+        TokenData reverified = tokenBackend.getToken(token.getKey());
+        assertNotSame(verified, reverified);
+        assertSame(reverified, tokenBackend.getToken(token.getKey()));
+    }
+
+    private void update(boolean nonLocked) {
+        usersStorage.update(USER, ur -> ur.setDetails(ExtendedUserDetailsImpl.builder()
+          .username(USER)
+          .tenant(MultiTenancySupport.ROOT_TENANT)
+          .password("password")
+          .accountNonLocked(nonLocked)
+          .build()));
+    }
+}
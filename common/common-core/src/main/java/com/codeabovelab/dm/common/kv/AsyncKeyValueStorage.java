@@ -0,0 +1,56 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.common.kv;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non blocking variant of {@link KeyValueStorage}. Methods does not wait for response, so many requests may be
+ * sent at once and then joined. Implementation may limit count of simultaneously sent requests, in this case
+ * other requests wait in queue. <p/>
+ * Results and errors are same as in {@link KeyValueStorage}.
+ * @see KeyValueStorage#async()
+ */
+public interface AsyncKeyValueStorage {
+
+    /**
+     * @see KeyValueStorage#get(String)
+     */
+    CompletableFuture<KvNode> get(String key);
+
+    /**
+     * @see KeyValueStorage#set(String, String, WriteOptions)
+     */
+    CompletableFuture<KvNode> set(String key, String value, WriteOptions ops);
+
+    /**
+     * @see KeyValueStorage#delete(String, WriteOptions)
+     */
+    CompletableFuture<KvNode> delete(String key, WriteOptions ops);
+
+    /**
+     * @see KeyValueStorage#list(String)
+     */
+    CompletableFuture<List<String>> list(String key);
+
+    /**
+     * @see KeyValueStorage#map(String)
+     */
+    CompletableFuture<Map<String, String>> map(String key);
+}
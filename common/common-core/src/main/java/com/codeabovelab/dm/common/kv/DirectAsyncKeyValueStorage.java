@@ -0,0 +1,70 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.common.kv;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Adapter which execute requests of {@link AsyncKeyValueStorage} in caller thread through blocking methods of
+ * storage. It is suitable for storages which does not do any IO.
+ */
+final class DirectAsyncKeyValueStorage implements AsyncKeyValueStorage {
+
+    private final KeyValueStorage storage;
+
+    DirectAsyncKeyValueStorage(KeyValueStorage storage) {
+        this.storage = storage;
+    }
+
+    @Override
+    public CompletableFuture<KvNode> get(String key) {
+        return execute(() -> storage.get(key));
+    }
+
+    @Override
+    public CompletableFuture<KvNode> set(String key, String value, WriteOptions ops) {
+        return execute(() -> storage.set(key, value, ops));
+    }
+
+    @Override
+    public CompletableFuture<KvNode> delete(String key, WriteOptions ops) {
+        return execute(() -> storage.delete(key, ops));
+    }
+
+    @Override
+    public CompletableFuture<List<String>> list(String key) {
+        return execute(() -> storage.list(key));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, String>> map(String key) {
+        return execute(() -> storage.map(key));
+    }
+
+    private static <T> CompletableFuture<T> execute(Supplier<T> supplier) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            future.complete(supplier.get());
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+}
@@ -98,6 +98,7 @@ public class InMemoryKeyValueStorage implements KeyValueStorage {
     private final MessageBus<KvStorageEvent> bus;
     private final AtomicInteger counter = new AtomicInteger();
     private final Executor executor;
+    private final AsyncKeyValueStorage async = new DirectAsyncKeyValueStorage(this);
 
     public InMemoryKeyValueStorage() {
         this(builder());
@@ -167,6 +168,15 @@ public class InMemoryKeyValueStorage implements KeyValueStorage {
         return "dmp";
     }
 
+    /**
+     * Storage does not do any IO, so its async variant execute requests immediately.
+     * @return async storage
+     */
+    @Override
+    public AsyncKeyValueStorage async() {
+        return async;
+    }
+
     private class Node {
         private final String path;
         private final ConcurrentMap<String, Object> nodes = new ConcurrentHashMap<>();
@@ -101,4 +101,12 @@ public interface KeyValueStorage {
     ConditionalSubscriptions<KvStorageEvent, String> subscriptions();
 
     String getPrefix();
+
+    /**
+     * Non blocking variant of this storage. Default implementation execute requests in caller thread.
+     * @return async storage, never null
+     */
+    default AsyncKeyValueStorage async() {
+        return new DirectAsyncKeyValueStorage(this);
+    }
 }
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.common.kv;
+
+import org.springframework.util.Assert;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Limit count of simultaneously executed asynchronous requests. Requests above limit are queued and sent
+ * when one of executed requests is completed. Thread safe.
+ */
+public final class KvRequestWindow {
+
+    /**
+     * Tasks which is handed over in current thread, it is not null only while thread drains it.
+     */
+    private static final ThreadLocal<Deque<Runnable>> HANDOVER = new ThreadLocal<>();
+    private final int size;
+    private final Queue<Runnable> queue = new ArrayDeque<>();
+    private int inFlight;
+
+    /**
+     * @param size max count of simultaneously executed requests
+     */
+    public KvRequestWindow(int size) {
+        Assert.isTrue(size > 0, "size must be greater than zero");
+        this.size = size;
+    }
+
+    /**
+     * Execute request immediately, or when window has free space.
+     * @param request function which send request, it must not block
+     * @param <T> type of result
+     * @return future which is completed with result of request
+     */
+    public <T> CompletableFuture<T> submit(Supplier<CompletableFuture<T>> request) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable task = () -> {
+            CompletableFuture<T> cf;
+            try {
+                cf = request.get();
+            } catch (Exception e) {
+                cf = new CompletableFuture<>();
+                cf.completeExceptionally(e);
+            }
+            cf.whenComplete((r, e) -> {
+                onComplete();
+                if(e != null) {
+                    result.completeExceptionally(e);
+                } else {
+                    result.complete(r);
+                }
+            });
+        };
+        boolean run;
+        synchronized (queue) {
+            run = inFlight < size;
+            if(run) {
+                inFlight++;
+            } else {
+                queue.add(task);
+            }
+        }
+        if(run) {
+            task.run();
+        }
+        return result;
+    }
+
+    private void onComplete() {
+        Runnable next;
+        synchronized (queue) {
+            next = queue.poll();
+            if(next == null) {
+                inFlight--;
+            }
+        }
+        // slot of completed request is passed to next request
+        if(next != null) {
+            handOver(next);
+        }
+    }
+
+    /**
+     * Storage may complete request in caller thread, then running of next task from completion of previous
+     * produce recursion as deep as queue. Therefore we run them in loop at the top most completion of this thread.
+     */
+    private static void handOver(Runnable task) {
+        Deque<Runnable> tasks = HANDOVER.get();
+        if(tasks != null) {
+            tasks.add(task);
+            return;
+        }
+        tasks = new ArrayDeque<>();
+        HANDOVER.set(tasks);
+        try {
+            Runnable curr = task;
+            while(curr != null) {
+                curr.run();
+                curr = tasks.poll();
+            }
+        } finally {
+            HANDOVER.remove();
+        }
+    }
+
+    /**
+     * @return count of executed requests
+     */
+    public int getInFlight() {
+        synchronized (queue) {
+            return inFlight;
+        }
+    }
+
+    /**
+     * @return count of requests which wait in queue
+     */
+    public int getQueued() {
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+}
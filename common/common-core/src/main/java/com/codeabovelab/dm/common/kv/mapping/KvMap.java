@@ -248,7 +248,8 @@ public class KvMap<T> {
     }
 
     /**
-     * Load all data.
+     * Load keys of all entries by single list request. Values are loaded lazily at first access, properties of
+     * single value are loaded concurrently through {@link com.codeabovelab.dm.common.kv.AsyncKeyValueStorage}.
      */
     public void load() {
         this.mapper.list().forEach(this::getOrCreateHolder);
@@ -16,7 +16,7 @@
 
 package com.codeabovelab.dm.common.kv.mapping;
 
-import com.codeabovelab.dm.common.kv.KeyValueStorage;
+import com.codeabovelab.dm.common.kv.AsyncKeyValueStorage;
 import com.codeabovelab.dm.common.kv.KvNode;
 import com.codeabovelab.dm.common.kv.KvUtils;
 import com.fasterxml.jackson.annotation.JsonSubTypes;
@@ -27,7 +27,10 @@ import org.springframework.util.CollectionUtils;
 
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  */
@@ -72,39 +75,49 @@ class NodeMapping<T> extends AbstractMapping<T> {
             throw new IllegalArgumentException("The path '" + path +
               "' is mapped to object of type " + object.getClass() + " which has no properties.");
         }
-        //store type of object
-        KeyValueStorage storage = getStorage();
-        storage.set(KvUtils.join(path, PROP_TYPE), object.getClass().getName());
-        //store properties
+        AsyncKeyValueStorage storage = getStorage().async();
+        // type is written first, because readers resolve class of object by it, so properties
+        // must not appear before it
+        String typePath = KvUtils.join(path, PROP_TYPE);
+        join(typePath, storage.set(typePath, object.getClass().getName(), null));
+        // we send requests of all properties at once and then wait responses
+        Map<String, CompletableFuture<KvNode>> futures = new LinkedHashMap<>();
         for(KvProperty property: props) {
             String strval = property.get(object);
             String key = property.getKey();
             String proppath = KvUtils.join(path, key);
-            try {
-                KvNode res = storage.set(proppath, strval);
-                if(callback != null) {
-                    callback.call(key, res);
-                }
-            } catch (Exception e) {
-                throw new RuntimeException("Error at path: " + proppath, e);
+            futures.put(key, storage.set(proppath, strval, null));
+        }
+        for(Map.Entry<String, CompletableFuture<KvNode>> e : futures.entrySet()) {
+            String key = e.getKey();
+            KvNode res = join(KvUtils.join(path, key), e.getValue());
+            if(callback != null) {
+                callback.call(key, res);
             }
         }
     }
 
+    private static KvNode join(String path, CompletableFuture<KvNode> future) {
+        try {
+            return future.join();
+        } catch (Exception e) {
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            throw new RuntimeException("Error at path: " + path, cause);
+        }
+    }
+
     @Override
     void load(String path, T object) {
-        KeyValueStorage storage = getStorage();
+        AsyncKeyValueStorage storage = getStorage().async();
+        Map<KvProperty, CompletableFuture<KvNode>> futures = new LinkedHashMap<>();
         for(KvProperty property: getProps(object)) {
             String proppath = KvUtils.join(path, property.getKey());
-            String str = null;
-            try {
-                KvNode node = storage.get(proppath);
-                if(node != null) {
-                    str = node.getValue();
-                }
-            } catch (Exception e) {
-                throw new RuntimeException("Error at path: " + proppath, e);
-            }
+            futures.put(property, storage.get(proppath));
+        }
+        for(Map.Entry<KvProperty, CompletableFuture<KvNode>> e : futures.entrySet()) {
+            KvProperty property = e.getKey();
+            KvNode node = join(KvUtils.join(path, property.getKey()), e.getValue());
+            String str = node == null ? null : node.getValue();
             property.set(object, str);
         }
     }
@@ -17,6 +17,7 @@
 package com.codeabovelab.dm.common.meter;
 
 import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpression;
 import org.springframework.util.Assert;
 
 import java.util.concurrent.TimeUnit;
@@ -29,6 +30,10 @@ public class ExpressionLimitChecker implements LimitChecker {
     private final long period;
     private final TimeUnit timeUnit;
     private final Expression expression;
+    /**
+     * Result of compilation, null when it is not tried yet.
+     */
+    private volatile Boolean compiled;
 
     public ExpressionLimitChecker(Expression expression, long period, TimeUnit timeUnit) {
         Assert.notNull(expression);
@@ -40,7 +45,11 @@ public class ExpressionLimitChecker implements LimitChecker {
 
     @Override
     public LimitExcess check(LimitCheckContext context) {
-        Object value = expression.getValue(new MetricExpressionRoot(context.getMetric()));
+        Object value = expression.getValue(context.getExpressionRoot());
+        if(compiled == null) {
+            // compiler need types which is resolved at first evaluation
+            compile();
+        }
         if(value == null || value instanceof Boolean && !((Boolean) value)) {
             return null;
         }
@@ -51,6 +60,23 @@ public class ExpressionLimitChecker implements LimitChecker {
           .build();
     }
 
+    private void compile() {
+        boolean res = false;
+        if(expression instanceof SpelExpression) {
+            res = ((SpelExpression) expression).compileExpression();
+        }
+        compiled = res;
+    }
+
+    /**
+     * Is expression compiled to bytecode. Not all expressions can be compiled, in this case
+     * it is interpreted.
+     * @return true if compiled
+     */
+    public boolean isCompiled() {
+        return Boolean.TRUE.equals(compiled);
+    }
+
     @Override
     public long getPeriod() {
         return timeUnit.toMillis(this.period);
@@ -20,6 +20,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.env.Environment;
 import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.util.Assert;
 
@@ -28,7 +30,9 @@ import org.springframework.util.Assert;
  */
 final class ExpressionLimitCheckerFactory {
     private static final Logger LOG = LoggerFactory.getLogger(ExpressionLimitCheckerFactory.class);
-    private final SpelExpressionParser parser = new SpelExpressionParser();
+    // in mixed mode compiled expression fall back to interpreter on failure
+    private final SpelExpressionParser parser = new SpelExpressionParser(new SpelParserConfiguration(SpelCompilerMode.MIXED,
+      ExpressionLimitCheckerFactory.class.getClassLoader()));
     private final Environment environment;
 
     public ExpressionLimitCheckerFactory(Environment environment) {
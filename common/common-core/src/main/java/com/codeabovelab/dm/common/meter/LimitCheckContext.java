@@ -24,6 +24,7 @@ import com.codahale.metrics.Metric;
 public final class LimitCheckContext {
     private final Metric metric;
     private final String metricId;
+    private MetricExpressionRoot expressionRoot;
 
     public LimitCheckContext(Metric metric, String metricId) {
         this.metric = metric;
@@ -37,4 +38,15 @@ public final class LimitCheckContext {
     public String getMetricId() {
         return metricId;
     }
+
+    /**
+     * Root for expressions, it shared between all checkers of one check.
+     * @return root, never null
+     */
+    public MetricExpressionRoot getExpressionRoot() {
+        if(expressionRoot == null) {
+            expressionRoot = new MetricExpressionRoot(metric);
+        }
+        return expressionRoot;
+    }
 }
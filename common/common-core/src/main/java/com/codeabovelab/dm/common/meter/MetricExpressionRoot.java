@@ -19,10 +19,12 @@ package com.codeabovelab.dm.common.meter;
 import com.codahale.metrics.*;
 
 /**
- * root of metric expression
+ * root of metric expression. <p/>
+ * It must be public, otherwise compiled expression can not access to it.
  */
-class MetricExpressionRoot {
+public class MetricExpressionRoot {
     private final Metric metric;
+    private Snapshot snapshot;
 
     MetricExpressionRoot(Metric metric) {
         this.metric = metric;
@@ -48,6 +50,18 @@ class MetricExpressionRoot {
         return getIfInstance(Histogram.class);
     }
 
+    /**
+     * Snapshot of {@link Sampling} metric, it is read once per check, so expression like
+     * 'snapshot.max > 10 and snapshot.mean > 5' does not copy reservoir twice.
+     * @return snapshot or null when metric does not support it
+     */
+    public Snapshot getSnapshot() {
+        if(this.snapshot == null && this.metric instanceof Sampling) {
+            this.snapshot = ((Sampling) this.metric).getSnapshot();
+        }
+        return this.snapshot;
+    }
+
     private <T> T getIfInstance(Class<T> type) {
         if(type.isInstance(this.metric)) {
             return type.cast(this.metric);
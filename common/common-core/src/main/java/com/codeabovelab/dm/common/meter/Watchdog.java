@@ -17,7 +17,11 @@
 package com.codeabovelab.dm.common.meter;
 
 import com.codahale.metrics.Metric;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
 import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Component;
 
@@ -27,20 +31,28 @@ import java.util.List;
 import java.util.concurrent.*;
 
 /**
- * monitor which periodically analyze state of Meters and raise alarm if it's limits exceeded
+ * monitor which periodically analyze state of Meters and raise alarm if it's limits exceeded <p/>
+ * Tasks are executed on small pool, therefore one slow check does not delay others. Task which is executed
+ * longer than 'meter.watchdog.hangTimeout' is reported as hung by {@link #health()}.
  */
 @Component
-public class Watchdog /*TODO implements HealthIndicator*/ {
+public class Watchdog implements HealthIndicator, DisposableBean {
     private final ConcurrentMap<Metric, WatchdogTask> tasks = new ConcurrentHashMap<>();
     final ScheduledExecutorService scheduledExecutorService;
     private final List<LimitExcessListener> listeners;
+    private final long hangTimeout;
 
     @Autowired
-    Watchdog(List<LimitExcessListener> listeners) {
+    Watchdog(List<LimitExcessListener> listeners,
+             @Value("${meter.watchdog.threads:2}") int threads,
+             @Value("${meter.watchdog.hangTimeout:60000}") long hangTimeout) {
         this.listeners = Collections.unmodifiableList(new ArrayList<>(listeners));
+        this.hangTimeout = hangTimeout;
         //we need executor which cannot blocked by unknown task
-        // also in health() we need to check for hangs tasks and report it
-        this.scheduledExecutorService = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("watchdog-"));
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(threads, new CustomizableThreadFactory("watchdog-"));
+        // tasks are rescheduled on each change of checkers, so we do not want to keep cancelled tasks
+        executor.setRemoveOnCancelPolicy(true);
+        this.scheduledExecutorService = executor;
     }
 
     /**
@@ -76,6 +88,29 @@ public class Watchdog /*TODO implements HealthIndicator*/ {
         task.cancel();
     }
 
+    /**
+     * Report hung tasks.
+     * @return {@link org.springframework.boot.actuate.health.Status#DOWN} when any task is executed longer than timeout
+     */
+    @Override
+    public Health health() {
+        long now = System.currentTimeMillis();
+        List<String> hung = new ArrayList<>();
+        for(WatchdogTask task: tasks.values()) {
+            long start = task.getRunStartTime();
+            if(start > 0 && now - start > hangTimeout) {
+                hung.add(task.getName());
+            }
+        }
+        Health.Builder builder = hung.isEmpty() ? Health.up() : Health.down().withDetail("hung", hung);
+        return builder.withDetail("tasks", tasks.size()).build();
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        this.scheduledExecutorService.shutdownNow();
+    }
+
     void fireLimitExcess(LimitExcessEvent event) {
         for(LimitExcessListener limitExcessListener: this.listeners) {
             limitExcessListener.listen(event);
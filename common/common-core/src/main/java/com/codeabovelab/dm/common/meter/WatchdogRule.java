@@ -31,7 +31,10 @@ public @interface WatchdogRule {
     /**
      * spring el expression witch use current meters (it can be used on proxied method or injected meter) as root objects.
      * If is annotated on method, and method annotated with many meters (for example timer and histogram) then for
-     * reference to specified meter we can use short class name of meter.
+     * reference to specified meter we can use short class name of meter. <p/>
+     * Expression is compiled when possible, for it operands of comparison must have same type, for example
+     * 'snapshot.max > 1000L' instead of 'snapshot.max > 1000'. Use 'snapshot' instead of 'timer.snapshot', because
+     * it read once per check.
      * @return
      */
     String expression();
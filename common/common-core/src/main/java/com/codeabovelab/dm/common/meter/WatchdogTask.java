@@ -43,6 +43,7 @@ public final class WatchdogTask {
     private final Runnable task = new WatchdogTaskRunnable(this);
     private final Watchdog watchdog;
     private volatile WatchdogTaskState state;
+    private volatile long runStartTime;
 
     WatchdogTask(Watchdog watchdog, Metric metric, String name) {
         this.watchdog = watchdog;
@@ -116,6 +117,18 @@ public final class WatchdogTask {
         return metric;
     }
 
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Start time of current check.
+     * @return time in milliseconds or 0 if task is not executed now
+     */
+    public long getRunStartTime() {
+        return runStartTime;
+    }
+
     /**
      * True if no limit checkers
      * @return
@@ -134,6 +147,15 @@ public final class WatchdogTask {
 
         @Override
         public void run() {
+            watchdogTask.runStartTime = System.currentTimeMillis();
+            try {
+                check();
+            } finally {
+                watchdogTask.runStartTime = 0;
+            }
+        }
+
+        private void check() {
             List<LimitExcess> excesses = new ArrayList<>();
             LimitCheckContext limitCheckContext = new LimitCheckContext(watchdogTask.metric, watchdogTask.name);
             for(LimitChecker limitChecker: watchdogTask.limitCheckers) {
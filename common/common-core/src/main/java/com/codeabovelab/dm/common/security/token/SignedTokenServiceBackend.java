@@ -16,6 +16,8 @@
 
 package com.codeabovelab.dm.common.security.token;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.apache.commons.codec.binary.Base32;
 import org.springframework.security.crypto.codec.Utf8;
 import org.springframework.util.Assert;
@@ -26,9 +28,13 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
 
 /**
- * A token service backend which use spring token service
+ * A token service backend which use spring token service. <p/>
+ * Already verified tokens are cached, so repeated validation of token does not decode and sign it again. Cache is
+ * cleared when secret, server integer or digest algorithm is changed.
  */
 public class SignedTokenServiceBackend implements TokenService {
     static final String TYPE = "sit";
@@ -37,7 +43,11 @@ public class SignedTokenServiceBackend implements TokenService {
     private String serverSecret;
     private Integer serverInteger;
     private SecureRandom secureRandom;
-    private String digestAlgorithm = "sha1";
+    private volatile String digestAlgorithm = "sha1";
+    private volatile ThreadLocal<MessageDigest> digests = createDigests();
+    private long cacheSize = 10_000;
+    private long cacheExpireAfter = TimeUnit.MINUTES.toMillis(10);
+    private volatile Cache<String, TokenData> verified = createCache();
 
     @Override
     public TokenData createToken(TokenConfiguration config) {
@@ -79,13 +89,27 @@ public class SignedTokenServiceBackend implements TokenService {
     }
 
     private byte[] sign(byte[] s) {
-        try {
-            MessageDigest instance = MessageDigest.getInstance(digestAlgorithm);
-            byte[] digest = instance.digest(s);
-            return digest;
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("Invalid algorithm: " + digestAlgorithm, e);
-        }
+        MessageDigest instance = digests.get();
+        // digest() resets instance, so it can be reused
+        return instance.digest(s);
+    }
+
+    private ThreadLocal<MessageDigest> createDigests() {
+        final String algorithm = this.digestAlgorithm;
+        return ThreadLocal.withInitial(() -> {
+            try {
+                return MessageDigest.getInstance(algorithm);
+            } catch (NoSuchAlgorithmException e) {
+                throw new RuntimeException("Invalid algorithm: " + algorithm, e);
+            }
+        });
+    }
+
+    private Cache<String, TokenData> createCache() {
+        return CacheBuilder.newBuilder()
+          .maximumSize(cacheSize)
+          .expireAfterWrite(cacheExpireAfter, TimeUnit.MILLISECONDS)
+          .build();
     }
 
     static String pack(String ... strs) {
@@ -109,6 +133,18 @@ public class SignedTokenServiceBackend implements TokenService {
         if (key.isEmpty()) {
             return null;
         }
+        // cache must be read once, because it can be replaced concurrently
+        Cache<String, TokenData> verified = this.verified;
+        TokenData cached = verified.getIfPresent(key);
+        if (cached != null) {
+            return cached;
+        }
+        TokenData token = verify(key);
+        verified.put(key, token);
+        return token;
+    }
+
+    private TokenData verify(String key) {
         byte[] decodedKey = base32.decode(key);
         byte[] currentSignature;
         final long creationTime;
@@ -167,6 +203,21 @@ public class SignedTokenServiceBackend implements TokenService {
         throw new UnsupportedOperationException("This operation is unsupported for this implementation.");
     }
 
+    /**
+     * Forget verified tokens of specified users, their tokens will be verified again at next access.
+     * @param userNames names of users
+     */
+    public void invalidateUserTokens(Collection<String> userNames) {
+        verified.asMap().values().removeIf(td -> userNames.contains(td.getUserName()));
+    }
+
+    /**
+     * Forget all verified tokens.
+     */
+    public void invalidateAll() {
+        verified.invalidateAll();
+    }
+
     /**
      * @return a pseudo random number
      */
@@ -185,6 +236,7 @@ public class SignedTokenServiceBackend implements TokenService {
      */
     public void setServerSecret(String serverSecret) {
         this.serverSecret = serverSecret;
+        invalidateAll();
     }
 
     public void setSecureRandom(SecureRandom secureRandom) {
@@ -201,6 +253,33 @@ public class SignedTokenServiceBackend implements TokenService {
 
     public void setServerInteger(Integer serverInteger) {
         this.serverInteger = serverInteger;
+        invalidateAll();
+    }
+
+    public long getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Max count of cached verified tokens. Default 10000.
+     * @param cacheSize
+     */
+    public void setCacheSize(long cacheSize) {
+        this.cacheSize = cacheSize;
+        this.verified = createCache();
+    }
+
+    public long getCacheExpireAfter() {
+        return cacheExpireAfter;
+    }
+
+    /**
+     * Time in milliseconds after that verified token is verified again. Default 10 minutes.
+     * @param cacheExpireAfter
+     */
+    public void setCacheExpireAfter(long cacheExpireAfter) {
+        this.cacheExpireAfter = cacheExpireAfter;
+        this.verified = createCache();
     }
 
     /**
@@ -219,5 +298,7 @@ public class SignedTokenServiceBackend implements TokenService {
      */
     public void setDigestAlgorithm(String digestAlgorithm) {
         this.digestAlgorithm = digestAlgorithm;
+        this.digests = createDigests();
+        invalidateAll();
     }
 }
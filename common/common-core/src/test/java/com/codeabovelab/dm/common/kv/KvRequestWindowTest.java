@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.common.kv;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.*;
+
+public class KvRequestWindowTest {
+
+    @Test
+    public void test() {
+        KvRequestWindow window = new KvRequestWindow(2);
+        List<CompletableFuture<Integer>> requests = new ArrayList<>();
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for(int i = 0; i < 5; ++i) {
+            results.add(window.submit(() -> {
+                CompletableFuture<Integer> cf = new CompletableFuture<>();
+                requests.add(cf);
+                return cf;
+            }));
+        }
+        // only two requests is sent
+        assertEquals(2, requests.size());
+        assertEquals(2, window.getInFlight());
+        assertEquals(3, window.getQueued());
+
+        requests.get(0).complete(0);
+        assertEquals(0, (int) results.get(0).join());
+        assertEquals(3, requests.size());
+        requests.get(1).completeExceptionally(new IllegalStateException());
+        assertTrue(results.get(1).isCompletedExceptionally());
+        for(int i = 2; i < 5; ++i) {
+            requests.get(i).complete(i);
+        }
+        for(int i = 2; i < 5; ++i) {
+            assertEquals(i, (int) results.get(i).join());
+        }
+        assertEquals(0, window.getInFlight());
+        assertEquals(0, window.getQueued());
+    }
+
+    @Test(timeout = 30_000)
+    public void testSynchronousCompletion() {
+        KvRequestWindow window = new KvRequestWindow(1);
+        CompletableFuture<Integer> first = new CompletableFuture<>();
+        window.submit(() -> first);
+        // storage may complete request in caller thread, it must not produce recursion as deep as queue
+        final int count = 100_000;
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        for(int i = 0; i < count; ++i) {
+            final int val = i;
+            results.add(window.submit(() -> CompletableFuture.completedFuture(val)));
+        }
+        assertEquals(count, window.getQueued());
+        first.complete(-1);
+        for(int i = 0; i < count; ++i) {
+            assertEquals(i, (int) results.get(i).join());
+        }
+        assertEquals(0, window.getInFlight());
+        assertEquals(0, window.getQueued());
+    }
+}
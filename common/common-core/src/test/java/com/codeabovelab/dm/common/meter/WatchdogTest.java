@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.common.meter;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.UniformReservoir;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ */
+public class WatchdogTest {
+
+    private final Watchdog watchdog = new Watchdog(Collections.emptyList(), 2, 200);
+    private final ExpressionLimitCheckerFactory factory = new ExpressionLimitCheckerFactory(new StandardEnvironment());
+    private final CountDownLatch hang = new CountDownLatch(1);
+
+    @After
+    public void after() throws Exception {
+        hang.countDown();
+        watchdog.destroy();
+    }
+
+    @Test
+    public void testCompiled() throws Exception {
+        Histogram histogram = new Histogram(new UniformReservoir());
+        for(int i = 0; i < 100; ++i) {
+            histogram.update(i);
+        }
+        ExpressionLimitChecker checker = create("snapshot.max > 90L and snapshot.mean > 10.0");
+        LimitCheckContext context = new LimitCheckContext(histogram, "histogram");
+        assertNotNull(checker.check(context));
+        assertTrue(checker.isCompiled());
+        // compiled expression must give same result
+        assertNotNull(checker.check(context));
+        assertNull(checker.check(new LimitCheckContext(new Histogram(new UniformReservoir()), "empty")));
+    }
+
+    @Test
+    public void testHung() throws Exception {
+        Counter slow = new Counter();
+        watchdog.registerTask(slow, "slow").addLimitChecker(new LimitChecker() {
+            @Override
+            public LimitExcess check(LimitCheckContext context) {
+                try {
+                    hang.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            }
+
+            @Override
+            public long getPeriod() {
+                return 10;
+            }
+        });
+        Counter counter = new Counter();
+        counter.inc(10);
+        WatchdogTask task = watchdog.registerTask(counter, "counter");
+        task.addLimitChecker(create("counter.count > 5"));
+
+        long end = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+        while(System.currentTimeMillis() < end && (task.getState().getExcesses().isEmpty()
+          || watchdog.health().getStatus() != Status.DOWN)) {
+            Thread.sleep(50);
+        }
+        // slow task does not block others
+        assertFalse(task.getState().getExcesses().isEmpty());
+        assertEquals(Status.DOWN, watchdog.health().getStatus());
+        assertEquals(Collections.singletonList("slow"), watchdog.health().getDetails().get("hung"));
+        hang.countDown();
+    }
+
+    private ExpressionLimitChecker create(String expression) {
+        return factory.create(new ExpressionLimitCheckerSource()
+          .metricName("test")
+          .expression(expression)
+          .period(10)
+          .timeUnit(TimeUnit.MILLISECONDS));
+    }
+}
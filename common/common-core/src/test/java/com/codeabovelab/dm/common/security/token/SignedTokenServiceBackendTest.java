@@ -0,0 +1,58 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.common.security.token;
+
+import org.junit.Test;
+
+import java.security.SecureRandom;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class SignedTokenServiceBackendTest {
+
+    @Test
+    public void test() {
+        SignedTokenServiceBackend backend = createBackend("secret");
+        TokenData token = backend.createToken(new TokenConfiguration("device", "user"));
+        TokenData verified = backend.getToken(token.getKey());
+        assertEquals("user", verified.getUserName());
+        assertEquals("device", verified.getDeviceHash());
+        assertEquals(token.getCreationTime(), verified.getCreationTime());
+        // cached token
+        assertSame(verified, backend.getToken(token.getKey()));
+        backend.invalidateUserTokens(Collections.singleton("user"));
+        assertNotSame(verified, backend.getToken(token.getKey()));
+
+        // change of secret invalidate cache, so token is verified again
+        backend.setServerSecret("other");
+        try {
+            backend.getToken(token.getKey());
+            fail("Token must not be valid after change of secret");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private SignedTokenServiceBackend createBackend(String secret) {
+        SignedTokenServiceBackend backend = new SignedTokenServiceBackend();
+        backend.setSecureRandom(new SecureRandom());
+        backend.setServerSecret(secret);
+        backend.setServerInteger(13);
+        return backend;
+    }
+}
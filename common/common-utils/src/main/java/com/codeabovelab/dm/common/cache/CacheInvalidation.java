@@ -0,0 +1,97 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.common.cache;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import org.springframework.util.Assert;
+
+import java.util.Objects;
+
+/**
+ * Event which is mean that key (or whole cache when key is null) must be evicted from local caches.
+ */
+public final class CacheInvalidation {
+
+    public static final String BUS = "bus.cache.invalidation";
+
+    private final String cache;
+    private final Object key;
+    private final String origin;
+
+    @JsonCreator
+    public CacheInvalidation(@JsonProperty("cache") String cache,
+                             @JsonProperty("key") Object key,
+                             @JsonProperty("origin") String origin) {
+        Assert.hasText(cache, "cache is null or empty");
+        this.cache = cache;
+        this.key = key;
+        this.origin = origin;
+    }
+
+    /**
+     * Name of cache.
+     * @return non null string
+     */
+    public String getCache() {
+        return cache;
+    }
+
+    /**
+     * Key of evicted entry.
+     * @return key or null when whole cache must be cleared
+     */
+    public Object getKey() {
+        return key;
+    }
+
+    /**
+     * Id of cache manager instance which is produce this event, it used for skip own events.
+     * @return id or null
+     */
+    public String getOrigin() {
+        return origin;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CacheInvalidation)) {
+            return false;
+        }
+        CacheInvalidation that = (CacheInvalidation) o;
+        return Objects.equals(cache, that.cache) &&
+          Objects.equals(key, that.key) &&
+          Objects.equals(origin, that.origin);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(cache, key, origin);
+    }
+
+    @Override
+    public String toString() {
+        return "CacheInvalidation{" +
+          "cache='" + cache + '\'' +
+          ", key=" + key +
+          ", origin='" + origin + '\'' +
+          '}';
+    }
+}
@@ -22,12 +22,15 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.BeanFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.Cache;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
 import org.springframework.expression.spel.standard.SpelExpression;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.stereotype.Component;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
+import java.util.Collection;
 import java.util.Map;
 import java.util.WeakHashMap;
 import java.util.function.Consumer;
@@ -45,7 +48,8 @@ public class MessageBusCacheInvalidator implements CacheInvalidator {
      */
     public final static String BUS_KEY = "bus";
     /**
-     * SpEL expression which return id of cache key which must been invalidated. If absent then all cache will be invalidated.
+     * SpEL expression which return id of cache key (or collection of keys) which must been invalidated.
+     * If absent then all cache will be invalidated. If expression return null then event is ignored.
      */
     public final static String EXP_KEY = "expression";
 
@@ -56,7 +60,8 @@ public class MessageBusCacheInvalidator implements CacheInvalidator {
     @Autowired
     public MessageBusCacheInvalidator(BeanFactory beanFactory) {
         this.beanFactory = beanFactory;
-        this.parser = new SpelExpressionParser();
+        // expressions are evaluated on each event, so we allow compilation of them into bytecode
+        this.parser = new SpelExpressionParser(new SpelParserConfiguration(SpelCompilerMode.MIXED, getClass().getClassLoader()));
     }
 
     @Override
@@ -101,18 +106,24 @@ public class MessageBusCacheInvalidator implements CacheInvalidator {
 
         @Override
         public void accept(Object o) {
-            Object key = null;
-            if(this.expr != null) {
-                try {
-                    key = this.expr.getValue(o);
-                } catch (Exception e) {
-                    log.error("Error on '{}' event and expression '{}' in cache invalidator.", o, e);
-                }
+            if(this.expr == null) {
+                this.cache.clear();
+                return;
             }
-            if(key != null) {
-                this.cache.evict(key);
-            } else {
+            Object key;
+            try {
+                key = this.expr.getValue(o);
+            } catch (Exception e) {
+                log.error("Error on '{}' event and expression '{}' in cache invalidator, clear whole cache.", o, expr.getExpressionString(), e);
                 this.cache.clear();
+                return;
+            }
+            if(key instanceof Collection) {
+                for(Object item: (Collection<?>)key) {
+                    this.cache.evict(item);
+                }
+            } else if(key != null) {
+                this.cache.evict(key);
             }
         }
     }
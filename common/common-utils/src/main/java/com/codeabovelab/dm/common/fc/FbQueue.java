@@ -28,6 +28,7 @@ import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
@@ -139,6 +140,14 @@ public final class FbQueue<E> extends AbstractQueue<E> implements FileBased {
         return id;
     }
 
+    /**
+     * Directory with files of queue, it also may be used for storing additional data related to queue.
+     * @return directory, newer null.
+     */
+    public File getQueueDir() {
+        return queueDir;
+    }
+
     /**
      * Size limit of queue.
      * @return
@@ -311,6 +320,24 @@ public final class FbQueue<E> extends AbstractQueue<E> implements FileBased {
         });
     }
 
+    /**
+     * Remove head element only when it match predicate. It allow to remove element after it was processed,
+     * without loss of element when processing is failed.
+     * @param predicate predicate which is called under lock, so it must be fast
+     * @return removed element or null
+     */
+    public E pollIf(Predicate<E> predicate) {
+        return onHead((fh) -> {
+            E val = fh.peek();
+            if(val == null || !predicate.test(val)) {
+                return null;
+            }
+            fh.poll();
+            deallocate(fh);
+            return val;
+        });
+    }
+
     private <T> T onHead(Function<QFileHandle<E>, T> consumer) {
         synchronized (lock) {
             QFileHandle<E> fh;
@@ -16,7 +16,7 @@
 
 package com.codeabovelab.dm.common.json;
 
-import com.codeabovelab.dm.common.utils.pojo.PojoUtils;
+import com.codeabovelab.dm.common.utils.pojo.PojoClass;
 import com.codeabovelab.dm.common.utils.pojo.Property;
 import com.fasterxml.jackson.core.Version;
 import com.fasterxml.jackson.databind.AnnotationIntrospector;
@@ -149,7 +149,7 @@ public class JtModule extends Module {
     private Property getKeyProp(JtToMap ann, Ctx pc) {
         String key = ann.key();
         Assert.hasText(key, "key must has text");
-        return PojoUtils.load(pc.getType().getContentType().getRawClass()).get(key);
+        return PojoClass.of(pc.getType().getContentType().getRawClass()).getPropertyOrNull(key);
     }
 
     private class DeserializationConverterImpl implements Converter<Map<String, Object>, List<Object>> {
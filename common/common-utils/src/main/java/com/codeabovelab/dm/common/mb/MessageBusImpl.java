@@ -29,6 +29,7 @@ import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.UnaryOperator;
 
 /**
  */
@@ -42,6 +43,7 @@ public final class MessageBusImpl<M, S extends Subscriptions<M>> implements Mess
         protected final Function<Subscriptions<M>, S> subscriptionsFactory;
         protected SubscribeListener<M> onUnsubscribe;
         protected SubscribeListener<M> onSubscribe;
+        protected UnaryOperator<Consumer<M>> listenerWrapper;
 
         Builder(Class<M> type, Function<Subscriptions<M>, S> subscriptionsFactory) {
             this.type = type;
@@ -68,6 +70,17 @@ public final class MessageBusImpl<M, S extends Subscriptions<M>> implements Mess
             return this;
         }
 
+        /**
+         * Function which is applied to each listener before it added to bus. Result must be a
+         * {@link WrappedConsumer} of passed listener or listener itself.
+         * @param listenerWrapper function or null
+         * @return this
+         */
+        public Builder<M, S> listenerWrapper(UnaryOperator<Consumer<M>> listenerWrapper) {
+            setListenerWrapper(listenerWrapper);
+            return this;
+        }
+
         public MessageBusImpl<M, S> build() {
             return new MessageBusImpl<>(this);
         }
@@ -80,6 +93,7 @@ public final class MessageBusImpl<M, S extends Subscriptions<M>> implements Mess
     private final S subscriptions;
     private final SubscribeListener<M> onUnsubscribe;
     private final SubscribeListener<M> onSubscribe;
+    private final UnaryOperator<Consumer<M>> listenerWrapper;
     private final ConcurrentMap<Key<?>, Object> extensions = new ConcurrentHashMap<>();
 
     private MessageBusImpl(Builder<M, S> b) {
@@ -93,6 +107,7 @@ public final class MessageBusImpl<M, S extends Subscriptions<M>> implements Mess
         this.subscriptions = b.subscriptionsFactory.apply(this);
         this.onUnsubscribe = b.onUnsubscribe;
         this.onSubscribe = b.onSubscribe;
+        this.listenerWrapper = b.listenerWrapper;
     }
 
     @SuppressWarnings("unchecked")
@@ -136,18 +151,22 @@ public final class MessageBusImpl<M, S extends Subscriptions<M>> implements Mess
     @Override
     public void subscribe(Consumer<M> listener) {
         Assert.notNull(listener, "listener is null");
+        Consumer<M> wrapped = null;
         while(true) {
             final List<Consumer<M>> srcList = listenersRef.get();
             if(contains(srcList, listener)) {
                 return;
             }
+            if(wrapped == null) {
+                wrapped = listenerWrapper == null ? listener : listenerWrapper.apply(listener);
+            }
             List<Consumer<M>> tmp = new ArrayList<>(srcList.size() + 1);
             tmp.addAll(srcList);
-            tmp.add(listener);
+            tmp.add(wrapped);
             List<Consumer<M>> dstList = Collections.unmodifiableList(tmp);
             if(listenersRef.compareAndSet(srcList, dstList)) {
                 if(onSubscribe != null) {
-                    onSubscribe.event(this, listener);
+                    onSubscribe.event(this, wrapped);
                 }
                 return;
             }
@@ -189,11 +208,11 @@ public final class MessageBusImpl<M, S extends Subscriptions<M>> implements Mess
                 return;
             }
             List<Consumer<M>> tmp = new ArrayList<>(srcList);
-            tmp.remove(i);
+            Consumer<M> removed = tmp.remove(i);
             List<Consumer<M>> dstList = Collections.unmodifiableList(tmp);
             if(listenersRef.compareAndSet(srcList, dstList)) {
                 if(onUnsubscribe != null) {
-                    onUnsubscribe.event(this, listener);
+                    onUnsubscribe.event(this, removed);
                 }
                 return;
             }
@@ -69,4 +69,22 @@ public interface SmartConsumer<T> extends Consumer<T> {
     default Predicate<T> historyFilter() {
         return Predicates.truePredicate();
     }
+
+    /**
+     * Time of oldest history entry which is passed into consumer. Implementation may ignore it
+     * when entries does not have time.
+     * @return time in milliseconds, {@link Long#MIN_VALUE} for any (default)
+     */
+    default long getHistorySince() {
+        return Long.MIN_VALUE;
+    }
+
+    /**
+     * Offset of first history entry which is passed into consumer, it allow to resume consuming after
+     * resubscription without duplicates. Offset is applied together with {@link #getHistoryCount()}.
+     * @return offset or negative value for any (default)
+     */
+    default long getHistoryOffset() {
+        return -1;
+    }
 }
@@ -16,17 +16,42 @@
 
 package com.codeabovelab.dm.common.utils;
 
+import com.codeabovelab.dm.common.utils.pojo.Accessors;
 import com.codeabovelab.dm.common.utils.pojo.PojoClass;
 import com.codeabovelab.dm.common.utils.pojo.Property;
 import org.apache.commons.beanutils.ConvertUtilsBean2;
 import org.apache.commons.beanutils.PropertyUtilsBean;
 
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
 
 public class PojoBeanUtils {
 
     private static final PropertyUtilsBean propertyUtilsBean = new PropertyUtilsBean();
     private static final ConvertUtilsBean2 convertUtilsBean = new ConvertUtilsBean2();
+    /**
+     * Setters of lombok-style builders, mapped by property name. Name may have overloaded setters.
+     */
+    private static final ClassValue<Map<String, List<BiConsumer<Object, Object>>>> builderSetters =
+      new ClassValue<Map<String, List<BiConsumer<Object, Object>>>>() {
+        @Override
+        protected Map<String, List<BiConsumer<Object, Object>>> computeValue(Class<?> builderClass) {
+            Map<String, List<BiConsumer<Object, Object>>> setters = new HashMap<>();
+            for(Method method: builderClass.getMethods()) {
+                boolean isBuilderSetter = method.getReturnType().equals(builderClass) &&
+                  method.getParameterCount() == 1;
+                if(isBuilderSetter) {
+                    setters.computeIfAbsent(method.getName(), k -> new ArrayList<>()).add(Accessors.setter(method));
+                }
+            }
+            return Collections.unmodifiableMap(setters);
+        }
+    };
 
     public static Object getValue(Object bean, String name) {
         try {
@@ -48,17 +73,11 @@ public class PojoBeanUtils {
      * @return dst object
      */
     public static <T> T copyToBuilder(Object src, T dst) {
-        PojoClass srcpojo = new PojoClass(src.getClass());
-        Class<?> builderClass = dst.getClass();
-        Method[] methods = builderClass.getMethods();
-        for(Method method: methods) {
-            boolean isBuilderSetter = method.getReturnType().equals(builderClass) &&
-              method.getParameterCount() == 1;
-            if(!isBuilderSetter) {
-                continue;
-            }
-            String propertyName = method.getName();
-            Property property = srcpojo.getProperties().get(propertyName);
+        PojoClass srcpojo = PojoClass.of(src.getClass());
+        Map<String, List<BiConsumer<Object, Object>>> setters = builderSetters.get(dst.getClass());
+        for(Map.Entry<String, List<BiConsumer<Object, Object>>> entry: setters.entrySet()) {
+            String propertyName = entry.getKey();
+            Property property = srcpojo.getPropertyOrNull(propertyName);
             if(property == null) {
                 continue;
             }
@@ -66,10 +85,12 @@ public class PojoBeanUtils {
             if(val == null) {
                 continue;
             }
-            try {
-                method.invoke(dst, val);
-            } catch (Exception e) {
-                //nothing
+            for(BiConsumer<Object, Object> setter: entry.getValue()) {
+                try {
+                    setter.accept(dst, val);
+                } catch (Exception e) {
+                    //nothing
+                }
             }
         }
         return dst;
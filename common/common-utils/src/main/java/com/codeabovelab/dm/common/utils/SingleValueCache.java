@@ -18,20 +18,29 @@ package com.codeabovelab.dm.common.utils;
 
 import org.springframework.util.Assert;
 
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Supplier;
 
 /**
- * Provide cache of single value.
- *
+ * Provide cache of single value. <p/>
+ * By default value is loaded on caller thread, concurrent callers wait (without spinning) until load is end. When
+ * {@link Builder#refreshExecutor(Executor)} is specified cache works in 'stale-while-revalidate' mode: only one
+ * background load is run at time, and callers receive previous value until it end. In this mode value may be
+ * refreshed ahead of expiration, see {@link Builder#refreshAfterWrite(TimeUnit, long)}.
  */
 public class SingleValueCache<T> implements Supplier<T> {
 
     public static class Builder<T> {
         private final Supplier<T> supplier;
         private long timeAfterWrite;
+        private long refreshAfterWrite = -1;
+        private long loadTimeout;
+        private long refreshTimeout;
+        private Executor refreshExecutor;
 
         Builder(Supplier<T> supplier) {
             this.supplier = supplier;
@@ -59,20 +68,129 @@ public class SingleValueCache<T> implements Supplier<T> {
             this.timeAfterWrite = timeAfterWrite;
         }
 
+        public long getRefreshAfterWrite() {
+            return refreshAfterWrite;
+        }
+
+        /**
+         * Time after write when background refresh of value is started. It must be less than
+         * {@link #getTimeAfterWrite()}, otherwise refresh is started only after expiration.
+         * Has effect only with {@link #refreshExecutor(Executor)}.
+         * @param unit time unit
+         * @param time time
+         * @return this
+         */
+        public Builder<T> refreshAfterWrite(TimeUnit unit, long time) {
+            setRefreshAfterWrite(unit.toMillis(time));
+            return this;
+        }
+
+        public void setRefreshAfterWrite(long refreshAfterWrite) {
+            this.refreshAfterWrite = refreshAfterWrite;
+        }
+
+        public long getLoadTimeout() {
+            return loadTimeout;
+        }
+
+        /**
+         * Max time which caller will wait for value when cache has not any value to serve. Zero or negative value
+         * mean infinite waiting. Has effect only with {@link #refreshExecutor(Executor)}.
+         * @param unit time unit
+         * @param time time
+         * @return this
+         */
+        public Builder<T> loadTimeout(TimeUnit unit, long time) {
+            setLoadTimeout(unit.toMillis(time));
+            return this;
+        }
+
+        public void setLoadTimeout(long loadTimeout) {
+            this.loadTimeout = loadTimeout;
+        }
+
+        public long getRefreshTimeout() {
+            return refreshTimeout;
+        }
+
+        /**
+         * Max time of background load. When it exceeded, load is considered as failed and next call start new load,
+         * so hung supplier does not block refresh forever. By default it equal to {@link #getLoadTimeout()},
+         * zero or negative value mean infinite load. Has effect only with {@link #refreshExecutor(Executor)}.
+         * @param unit time unit
+         * @param time time
+         * @return this
+         */
+        public Builder<T> refreshTimeout(TimeUnit unit, long time) {
+            setRefreshTimeout(unit.toMillis(time));
+            return this;
+        }
+
+        public void setRefreshTimeout(long refreshTimeout) {
+            this.refreshTimeout = refreshTimeout;
+        }
+
+        public Executor getRefreshExecutor() {
+            return refreshExecutor;
+        }
+
+        /**
+         * Executor for background load of value, it turn on 'stale-while-revalidate' mode.
+         * @param refreshExecutor executor or null
+         * @return this
+         */
+        public Builder<T> refreshExecutor(Executor refreshExecutor) {
+            setRefreshExecutor(refreshExecutor);
+            return this;
+        }
+
+        public void setRefreshExecutor(Executor refreshExecutor) {
+            this.refreshExecutor = refreshExecutor;
+        }
+
         public SingleValueCache<T> build() {
             return new SingleValueCache<>(this);
         }
     }
+
+    private static final class Entry<T> {
+        private final T value;
+        private final long writeTime;
+
+        Entry(T value, long writeTime) {
+            this.value = value;
+            this.writeTime = writeTime;
+        }
+    }
+
+    private static final class Loading<T> {
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final long startTime = System.currentTimeMillis();
+    }
+
     private final Supplier<T> supplier;
-    private volatile T value;
+    private volatile Entry<T> entry;
     private volatile T oldValue;
-    private volatile long writeTime;
+    private volatile Throwable lastError;
+    private volatile long lastLoadTime = -1;
+    private final AtomicLong loads = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicReference<Loading<T>> loading = new AtomicReference<>();
     private final Lock lock = new ReentrantLock();
     private final long taw;
+    private final long raw;
+    private final long loadTimeout;
+    private final long refreshTimeout;
+    private final Executor executor;
 
     private SingleValueCache(Builder<T> builder) {
         this.supplier = builder.supplier;
         this.taw = builder.timeAfterWrite;
+        this.executor = builder.refreshExecutor;
+        long raw = builder.refreshAfterWrite;
+        this.raw = (this.executor == null || raw < 0 || raw > this.taw) ? this.taw : raw;
+        this.loadTimeout = builder.loadTimeout;
+        this.refreshTimeout = builder.refreshTimeout > 0 ? builder.refreshTimeout : this.loadTimeout;
     }
 
     public static <T> Builder<T> builder(Supplier<T> supplier) {
@@ -81,15 +199,44 @@ public class SingleValueCache<T> implements Supplier<T> {
 
     @Override
     public T get() {
-        while(true) {
-            if(lock.tryLock()) {
-                try {
-                    return loadIfNeed();
-                } finally {
-                    lock.unlock();
+        Entry<T> e = this.entry;
+        if(e != null) {
+            long age = System.currentTimeMillis() - e.writeTime;
+            if(age <= raw) {
+                return e.value;
+            }
+            if(executor != null) {
+                // read error before start, otherwise load which failed fast will make us wait for the next one
+                Throwable error = this.lastError;
+                CompletableFuture<T> future = startLoad(false);
+                // we serve stale value until background load is failed
+                if(age <= taw || error == null) {
+                    return e.value;
                 }
+                return await(future);
             }
         }
+        if(executor == null) {
+            return loadSync();
+        }
+        return await(startLoad(false));
+    }
+
+    /**
+     * Load new value regardless of age of current. In 'stale-while-revalidate' mode it only start background load
+     * (when it not already started) and does not wait for its end.
+     */
+    public void refresh() {
+        if(executor != null) {
+            startLoad(true);
+            return;
+        }
+        lock.lock();
+        try {
+            load();
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -97,23 +244,148 @@ public class SingleValueCache<T> implements Supplier<T> {
      * @return previous value or null
      */
     public T getOldValue() {
+        return oldValue;
+    }
+
+    /**
+     * Duration of last successful load.
+     * @return time in milliseconds or -1 when value never been loaded
+     */
+    public long getLastLoadTime() {
+        return lastLoadTime;
+    }
+
+    /**
+     * Age of current value.
+     * @return time in milliseconds since value was written or -1 when cache has no value
+     */
+    public long getStaleness() {
+        Entry<T> e = this.entry;
+        return e == null ? -1 : System.currentTimeMillis() - e.writeTime;
+    }
+
+    /**
+     * @return count of supplier invocations
+     */
+    public long getLoadCount() {
+        return loads.get();
+    }
+
+    /**
+     * @return count of failed supplier invocations
+     */
+    public long getFailureCount() {
+        return failures.get();
+    }
+
+    /**
+     * @return true when background load is in progress
+     */
+    public boolean isLoading() {
+        return loading.get() != null;
+    }
+
+    private T loadSync() {
         lock.lock();
         try {
-            return oldValue;
+            Entry<T> e = this.entry;
+            if(e != null && e.writeTime + taw >= System.currentTimeMillis()) {
+                return e.value;
+            }
+            return load();
         } finally {
             lock.unlock();
         }
     }
 
-    private T loadIfNeed() {
-        long time = System.currentTimeMillis();
-        if(value != null && writeTime + taw >= time) {
+    private CompletableFuture<T> startLoad(boolean force) {
+        while(true) {
+            Loading<T> current = loading.get();
+            if(current != null) {
+                if(refreshTimeout <= 0 || System.currentTimeMillis() - current.startTime <= refreshTimeout) {
+                    return current.future;
+                }
+                // supplier is hung, we abandon its load and start new one
+                if(loading.compareAndSet(current, null)) {
+                    onRefreshTimeout(current);
+                }
+                continue;
+            }
+            Loading<T> ours = new Loading<>();
+            if(!loading.compareAndSet(null, ours)) {
+                continue;
+            }
+            final CompletableFuture<T> ourFuture = ours.future;
+            try {
+                executor.execute(() -> {
+                    try {
+                        Entry<T> e = this.entry;
+                        if(!force && e != null && e.writeTime + raw >= System.currentTimeMillis()) {
+                            // value was refreshed while task was in queue
+                            ourFuture.complete(e.value);
+                        } else {
+                            ourFuture.complete(load());
+                        }
+                    } catch (Throwable t) {
+                        ourFuture.completeExceptionally(t);
+                    } finally {
+                        loading.compareAndSet(ours, null);
+                    }
+                });
+            } catch (RejectedExecutionException ex) {
+                loading.compareAndSet(ours, null);
+                ourFuture.completeExceptionally(ex);
+            }
+            return ourFuture;
+        }
+    }
+
+    private void onRefreshTimeout(Loading<T> timedOut) {
+        IllegalStateException ex = new IllegalStateException("Supplier '" + supplier + "' does not return value in "
+          + refreshTimeout + "ms.");
+        failures.incrementAndGet();
+        lastError = ex;
+        timedOut.future.completeExceptionally(ex);
+    }
+
+    private T await(CompletableFuture<T> future) {
+        try {
+            if(loadTimeout > 0) {
+                return future.get(loadTimeout, TimeUnit.MILLISECONDS);
+            }
+            return future.get();
+        } catch (ExecutionException e) {
+            throw Throwables.asRuntime(e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Supplier '" + supplier + "' does not return value in " + loadTimeout + "ms.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw Throwables.asRuntime(e);
+        }
+    }
+
+    private T load() {
+        long begin = System.currentTimeMillis();
+        Entry<T> e = this.entry;
+        oldValue = e == null ? null : e.value;
+        loads.incrementAndGet();
+        T value;
+        try {
+            value = supplier.get();
+            Assert.notNull(value, "Supplier '" + supplier + "' return null value");
+        } catch (RuntimeException | Error ex) {
+            failures.incrementAndGet();
+            lastError = ex;
+            throw ex;
+        }
+        lastError = null;
+        Entry<T> current = this.entry;
+        if(current != null && current.writeTime > begin) {
+            // abandoned load ended after newer load, so we must not overwrite its value
             return value;
         }
-        writeTime = time;
-        oldValue = value;
-        value = supplier.get();
-        Assert.notNull(value, "Supplier '" + supplier + "' return null value");
+        this.entry = new Entry<>(value, begin);
+        lastLoadTime = System.currentTimeMillis() - begin;
         return value;
     }
 }
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.common.utils.pojo;
+
+import org.springframework.util.ClassUtils;
+import org.springframework.util.ReflectionUtils;
+
+import java.lang.invoke.*;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Factory of fast accessors for getter and setter methods. <p/>
+ * Public methods of public classes, which are visible from this class loader, are bound through
+ * {@link LambdaMetafactory}, so JIT can inline them like usual call. Other methods are called through
+ * {@link MethodHandle}, and {@link Method#invoke(Object, Object...)} is used only when method can not be
+ * represented as accessor (for example static method).
+ */
+public final class Accessors {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private Accessors() {
+    }
+
+    /**
+     * Make function which call specified getter on its argument.
+     * @param method getter without arguments
+     * @return function, never null
+     */
+    @SuppressWarnings("unchecked")
+    public static Function<Object, Object> getter(Method method) {
+        if(method.getParameterCount() != 0 || Modifier.isStatic(method.getModifiers())) {
+            return owner -> invoke(method, owner);
+        }
+        Class<?> owner = method.getDeclaringClass();
+        if(isBindable(method)) {
+            try {
+                MethodHandle handle = LOOKUP.unreflect(method);
+                MethodType type = MethodType.methodType(ClassUtils.resolvePrimitiveIfNecessary(method.getReturnType()), owner);
+                CallSite site = LambdaMetafactory.metafactory(LOOKUP, "apply", MethodType.methodType(Function.class),
+                  MethodType.methodType(Object.class, Object.class), handle, type);
+                return (Function<Object, Object>) site.getTarget().invoke();
+            } catch (Throwable e) {
+                // fall back to method handle
+            }
+        }
+        try {
+            MethodHandle handle = unreflect(method).asType(MethodType.methodType(Object.class, Object.class));
+            return o -> {
+                try {
+                    return handle.invokeExact(o);
+                } catch (Throwable e) {
+                    throw rethrow(e);
+                }
+            };
+        } catch (Exception e) {
+            return o -> invoke(method, o);
+        }
+    }
+
+    /**
+     * Make consumer which call specified setter on its first argument with second argument. Result of setter is
+     * ignored, so it also can be used for builder methods.
+     * @param method setter with single argument
+     * @return consumer, never null
+     */
+    @SuppressWarnings("unchecked")
+    public static BiConsumer<Object, Object> setter(Method method) {
+        if(method.getParameterCount() != 1 || Modifier.isStatic(method.getModifiers())) {
+            return (owner, value) -> invoke(method, owner, value);
+        }
+        Class<?> owner = method.getDeclaringClass();
+        if(isBindable(method)) {
+            try {
+                MethodHandle handle = LOOKUP.unreflect(method);
+                MethodType type = MethodType.methodType(void.class, owner,
+                  ClassUtils.resolvePrimitiveIfNecessary(method.getParameterTypes()[0]));
+                CallSite site = LambdaMetafactory.metafactory(LOOKUP, "accept", MethodType.methodType(BiConsumer.class),
+                  MethodType.methodType(void.class, Object.class, Object.class), handle, type);
+                return (BiConsumer<Object, Object>) site.getTarget().invoke();
+            } catch (Throwable e) {
+                // fall back to method handle
+            }
+        }
+        try {
+            MethodHandle handle = unreflect(method).asType(MethodType.methodType(void.class, Object.class, Object.class));
+            return (o, v) -> {
+                try {
+                    handle.invokeExact(o, v);
+                } catch (Throwable e) {
+                    throw rethrow(e);
+                }
+            };
+        } catch (Exception e) {
+            return (o, v) -> invoke(method, o, v);
+        }
+    }
+
+    private static boolean isBindable(Method method) {
+        Class<?> owner = method.getDeclaringClass();
+        // generated class is defined in loader of this class, so it must see owner
+        return Modifier.isPublic(method.getModifiers()) && Modifier.isPublic(owner.getModifiers()) &&
+          ClassUtils.isVisible(owner, Accessors.class.getClassLoader());
+    }
+
+    private static MethodHandle unreflect(Method method) throws IllegalAccessException {
+        ReflectionUtils.makeAccessible(method);
+        return LOOKUP.unreflect(method);
+    }
+
+    private static Object invoke(Method method, Object owner, Object... args) {
+        try {
+            return method.invoke(owner, args);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable e) {
+        if(e instanceof RuntimeException) {
+            return (RuntimeException) e;
+        }
+        if(e instanceof Error) {
+            throw (Error) e;
+        }
+        return new RuntimeException(e);
+    }
+}
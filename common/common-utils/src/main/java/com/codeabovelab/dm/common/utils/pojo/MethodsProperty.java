@@ -21,6 +21,8 @@ import org.springframework.core.annotation.AnnotationUtils;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
 import java.lang.reflect.Type;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 /**
  * property represented by getter and setter methods
@@ -65,6 +67,11 @@ public final class MethodsProperty implements Property {
     private final String name;
     private final Method getter;
     private final Method setter;
+    /**
+     * Accessors are created at first usage, because most of properties is never accessed.
+     */
+    private volatile Function<Object, Object> getterAccessor;
+    private volatile BiConsumer<Object, Object> setterAccessor;
 
     MethodsProperty(Builder b) {
         this.name = b.name;
@@ -109,10 +116,14 @@ public final class MethodsProperty implements Property {
 
     @Override
     public Object get(Object owner) {
+        Function<Object, Object> accessor = this.getterAccessor;
+        if(accessor == null) {
+            accessor = this.getterAccessor = Accessors.getter(this.getter);
+        }
         try {
-            return this.getter.invoke(owner);
-        } catch(ReflectiveOperationException e) {
-            throw new RuntimeException("call " + this.getter + " on " + owner);
+            return accessor.apply(owner);
+        } catch(RuntimeException e) {
+            throw new RuntimeException("call " + this.getter + " on " + owner, e);
         }
     }
 
@@ -123,13 +134,31 @@ public final class MethodsProperty implements Property {
 
     @Override
     public void set(Object owner, Object value) {
+        BiConsumer<Object, Object> accessor = this.setterAccessor;
+        if(accessor == null) {
+            accessor = this.setterAccessor = Accessors.setter(this.setter);
+        }
         try {
-            this.setter.invoke(owner, value);
-        } catch(ReflectiveOperationException | IllegalArgumentException e) {
-            throw new RuntimeException("Call " + this.setter + " on " + owner + " with arg " + value);
+            accessor.accept(owner, value);
+        } catch(RuntimeException e) {
+            throw new RuntimeException("Call " + this.setter + " on " + owner + " with arg " + value, e);
         }
     }
 
+    /**
+     * @return getter method or null
+     */
+    public Method getGetter() {
+        return getter;
+    }
+
+    /**
+     * @return setter method or null
+     */
+    public Method getSetter() {
+        return setter;
+    }
+
     @Override
     public Class<?> getDeclaringClass() {
         //note that method can be declared in different classes, and we use more specific class
@@ -22,8 +22,19 @@ import java.util.Set;
 /**
  * representation of java pojo class with it`s properties
  * <p/>
+ * Instances are immutable, so use {@link #of(Class)} which share them between all users.
  */
 public final class PojoClass {
+    /**
+     * ClassValue does not prevent unloading of classes, unlike usual map.
+     */
+    private static final ClassValue<PojoClass> CACHE = new ClassValue<PojoClass>() {
+        @Override
+        protected PojoClass computeValue(Class<?> type) {
+            return new PojoClass(type);
+        }
+    };
+
     private final Class<?> type;
     private final Map<String, Property> properties;
 
@@ -32,6 +43,15 @@ public final class PojoClass {
         this.properties = PojoUtils.load(this.type);
     }
 
+    /**
+     * Shared instance for specified type.
+     * @param type type of pojo
+     * @return pojo class, never null
+     */
+    public static PojoClass of(Class<?> type) {
+        return CACHE.get(type);
+    }
+
     /**
      * type of pojo
      *
@@ -76,7 +96,7 @@ public final class PojoClass {
     }
 
     /**
-     * unmodifiable map of properties
+     * unmodifiable map of properties, sorted by name
      *
      * @return
      */
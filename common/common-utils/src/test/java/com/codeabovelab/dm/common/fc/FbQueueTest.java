@@ -146,6 +146,19 @@ public class FbQueueTest {
         Assert.assertEquals(0, queue.size());
     }
 
+    @Test
+    public void testPollIf() throws Exception {
+        FbQueue<String> queue = makeQueue("testPollIf", 100);
+        queue.push("<0>");
+        queue.push("<1>");
+        Assert.assertNull(queue.pollIf("<1>"::equals));
+        Assert.assertEquals(2, queue.size());
+        Assert.assertEquals("<0>", queue.pollIf("<0>"::equals));
+        Assert.assertEquals("<1>", queue.pollIf("<1>"::equals));
+        Assert.assertNull(queue.pollIf("<1>"::equals));
+        Assert.assertEquals(0, queue.size());
+    }
+
     @Test
     public void testPersistence() throws Exception {
         //it also test how slide queue window through files
@@ -0,0 +1,161 @@
+package com.codeabovelab.dm.common.utils;
+
+import org.junit.Test;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class SingleValueCacheTest {
+
+    @Test
+    public void testSync() throws Exception {
+        AtomicInteger counter = new AtomicInteger();
+        SingleValueCache<Integer> cache = SingleValueCache.builder(() -> {
+            sleep(100);
+            return counter.incrementAndGet();
+        }).timeAfterWrite(TimeUnit.SECONDS, 10).build();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            Future<Integer> first = executor.submit(cache::get);
+            Future<Integer> second = executor.submit(cache::get);
+            assertEquals((Integer) 1, first.get());
+            assertEquals((Integer) 1, second.get());
+            assertEquals(1, cache.getLoadCount());
+            cache.refresh();
+            assertEquals((Integer) 2, cache.get());
+            assertEquals((Integer) 1, cache.getOldValue());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testStaleWhileRevalidate() throws Exception {
+        AtomicInteger counter = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            SingleValueCache<Integer> cache = SingleValueCache.builder(() -> {
+                int val = counter.incrementAndGet();
+                if(val > 1) {
+                    try {
+                        latch.await();
+                    } catch (InterruptedException e) {
+                        throw Throwables.asRuntime(e);
+                    }
+                }
+                return val;
+            }).timeAfterWrite(TimeUnit.MILLISECONDS, 200)
+              .refreshAfterWrite(TimeUnit.MILLISECONDS, 50)
+              .refreshExecutor(executor)
+              .loadTimeout(TimeUnit.SECONDS, 5)
+              .build();
+            // first call wait for value
+            assertEquals((Integer) 1, cache.get());
+            sleep(100);
+            // value must be refreshed in background, but we still get old value
+            assertEquals((Integer) 1, cache.get());
+            assertTrue(cache.isLoading());
+            sleep(200);
+            // expired value is served until load is not failed
+            assertEquals((Integer) 1, cache.get());
+            assertEquals(2, cache.getLoadCount());
+            latch.countDown();
+            while(cache.isLoading()) {
+                sleep(10);
+            }
+            assertEquals((Integer) 2, cache.get());
+            assertTrue(cache.getStaleness() >= 0);
+            assertTrue(cache.getLastLoadTime() >= 0);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        AtomicInteger counter = new AtomicInteger();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            SingleValueCache<Integer> cache = SingleValueCache.builder(() -> {
+                int val = counter.incrementAndGet();
+                if(val > 1) {
+                    throw new IllegalStateException("fail as planned");
+                }
+                return val;
+            }).timeAfterWrite(TimeUnit.MILLISECONDS, 50)
+              .refreshExecutor(executor)
+              .build();
+            assertEquals((Integer) 1, cache.get());
+            sleep(100);
+            // first call after expiration start load and receive stale value
+            assertEquals((Integer) 1, cache.get());
+            while(cache.isLoading()) {
+                sleep(10);
+            }
+            try {
+                cache.get();
+                fail("Expect exception");
+            } catch (IllegalStateException e) {
+                // as expected
+            }
+            assertEquals(2, cache.getFailureCount());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testHungRefresh() throws Exception {
+        AtomicInteger counter = new AtomicInteger();
+        CountDownLatch latch = new CountDownLatch(1);
+        ExecutorService executor = Executors.newCachedThreadPool();
+        try {
+            SingleValueCache<Integer> cache = SingleValueCache.builder(() -> {
+                int val = counter.incrementAndGet();
+                if(val == 2) {
+                    // supplier is hung
+                    try {
+                        latch.await();
+                    } catch (InterruptedException e) {
+                        throw Throwables.asRuntime(e);
+                    }
+                }
+                return val;
+            }).timeAfterWrite(TimeUnit.SECONDS, 10)
+              .refreshAfterWrite(TimeUnit.MILLISECONDS, 50)
+              .refreshExecutor(executor)
+              .refreshTimeout(TimeUnit.MILLISECONDS, 100)
+              .build();
+            assertEquals((Integer) 1, cache.get());
+            sleep(100);
+            // start of hung refresh
+            assertEquals((Integer) 1, cache.get());
+            assertTrue(cache.isLoading());
+            sleep(200);
+            // refresh is timed out, so new refresh is started
+            assertEquals((Integer) 1, cache.get());
+            assertEquals(1, cache.getFailureCount());
+            while(cache.isLoading()) {
+                sleep(10);
+            }
+            assertEquals((Integer) 3, cache.get());
+            // late value of hung load must not overwrite newer value
+            latch.countDown();
+            sleep(100);
+            assertEquals((Integer) 3, cache.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw Throwables.asRuntime(e);
+        }
+    }
+}
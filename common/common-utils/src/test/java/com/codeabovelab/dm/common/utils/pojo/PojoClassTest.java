@@ -0,0 +1,99 @@
+package com.codeabovelab.dm.common.utils.pojo;
+
+import com.codeabovelab.dm.common.utils.PojoBeanUtils;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class PojoClassTest {
+
+    public static class Bean {
+        private String name;
+        private int count;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public Bean setCount(int count) {
+            this.count = count;
+            return this;
+        }
+    }
+
+    static class HiddenBean extends Bean {
+        private boolean flag;
+
+        public boolean isFlag() {
+            return flag;
+        }
+
+        public void setFlag(boolean flag) {
+            this.flag = flag;
+        }
+    }
+
+    public static class BeanBuilder {
+        private String name;
+        private int count;
+
+        public BeanBuilder name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        public BeanBuilder count(int count) {
+            this.count = count;
+            return this;
+        }
+    }
+
+    @Test
+    public void testCache() {
+        PojoClass pc = PojoClass.of(Bean.class);
+        assertSame(pc, PojoClass.of(Bean.class));
+        List<String> names = new ArrayList<>(pc.getPropertyNames());
+        assertEquals(Arrays.asList("class", "count", "name"), names);
+    }
+
+    @Test
+    public void testAccessors() {
+        HiddenBean bean = new HiddenBean();
+        PojoClass pc = PojoClass.of(HiddenBean.class);
+        pc.getProperty("name").set(bean, "test");
+        pc.getProperty("count").set(bean, 3);
+        pc.getProperty("flag").set(bean, true);
+        assertEquals("test", pc.getProperty("name").get(bean));
+        assertEquals(3, pc.getProperty("count").get(bean));
+        assertEquals(true, pc.getProperty("flag").get(bean));
+        assertEquals(HiddenBean.class, pc.getProperty("class").get(bean));
+        try {
+            pc.getProperty("count").set(bean, "wrong");
+            fail("Set of wrong type");
+        } catch (RuntimeException e) {
+            //as expected
+        }
+    }
+
+    @Test
+    public void testCopyToBuilder() {
+        Bean bean = new Bean();
+        bean.setName("test");
+        bean.setCount(3);
+        BeanBuilder builder = PojoBeanUtils.copyToBuilder(bean, new BeanBuilder());
+        assertEquals("test", builder.name);
+        assertEquals(3, builder.count);
+    }
+}
@@ -19,9 +19,13 @@ package com.codeabovelab.dm.gateway.proxy.common;
 import org.apache.http.HttpHost;
 import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
+import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.util.EntityUtils;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
 
 public class AsyncProxyClient implements ProxyClient {
 
@@ -36,6 +40,35 @@ public class AsyncProxyClient implements ProxyClient {
         return proxyClient.execute(target, request, null).get();
     }
 
+    @Override
+    public CompletableFuture<HttpResponse> submit(HttpHost target, HttpRequest request) {
+        CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+        Future<HttpResponse> future = proxyClient.execute(target, request, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                if(!result.complete(response)) {
+                    EntityUtils.consumeQuietly(response.getEntity());
+                }
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                result.completeExceptionally(ex);
+            }
+
+            @Override
+            public void cancelled() {
+                result.cancel(false);
+            }
+        });
+        result.whenComplete((r, e) -> {
+            if(result.isCancelled()) {
+                future.cancel(true);
+            }
+        });
+        return result;
+    }
+
     @Override
     public void start() {
         proxyClient.start();
@@ -31,12 +31,21 @@ import javax.servlet.ServletException;
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.HttpCookie;
 import java.util.ArrayList;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 /**
  * Java HTTP proxy which is based on
@@ -73,18 +82,281 @@ public class HttpProxy implements AutoCloseable {
         LOG.error(msg, e);
     }
 
-    @SuppressWarnings("deprecation")
     public void service(HttpProxyContext proxyContext) throws Exception {
+        HttpRequest proxyRequest = createRequest(proxyContext);
+        HttpResponse proxyResponse = null;
+        try {
+            proxyResponse = proxyClient.execute(proxyContext.getTargetHost(), proxyRequest);
+            writeResponse(proxyContext, proxyResponse);
+        } finally {
+            // make sure the entire entity was consumed, so the connection is released
+            if (proxyResponse != null) {
+                consumeQuietly(proxyResponse.getEntity());
+            }
+            //Note: Don't need to close servlet outputStream:
+            // http://stackoverflow.com/questions/1159168/should-one-call-close-on-httpservletresponse-getoutputstream-getwriter
+        }
+    }
+
+    /**
+     * Listener of single attempt of request, it allow to account result of each target separately.
+     */
+    public interface AttemptListener {
+        /**
+         * Invoked once when response is received or request is failed.
+         * @param success false when request is failed with error or 5xx status
+         */
+        void onEnd(boolean success);
+
+        /**
+         * Invoked instead of {@link #onEnd(boolean)} when attempt is aborted, because other attempt is won.
+         */
+        void onCancel();
+    }
+
+    /**
+     * Same as {@link #service(HttpProxyContext, long, Supplier, Function)} without listener.
+     */
+    public void service(HttpProxyContext proxyContext, long hedgeDelay, Supplier<HttpProxyContext> hedge) throws Exception {
+        service(proxyContext, hedgeDelay, hedge, null);
+    }
+
+    /**
+     * Serve request with hedging: when response is not received in 'hedgeDelay', or primary request is failed,
+     * then copy of request is sent to host from 'hedge' context. First response without server error (5xx) is
+     * used and other request is aborted. When all requests are failed, then result of last finished request
+     * (5xx response, otherwise error) is used. <p/>
+     * Only {@link #isHedgeable(HttpServletRequest) hedgeable} requests are hedged, other is served as usual.
+     * @param proxyContext context of primary request
+     * @param hedgeDelay delay in milliseconds before hedge request
+     * @param hedge supplier of context for hedge request, it called only when hedge is need and may return null
+     *              when hedge is not allowed
+     * @param listeners factory of listener for each attempt (include primary), it and its result may be null
+     * @throws Exception
+     */
+    public void service(HttpProxyContext proxyContext, long hedgeDelay, Supplier<HttpProxyContext> hedge,
+                        Function<HttpProxyContext, AttemptListener> listeners) throws Exception {
+        if(!isHedgeable(proxyContext.getRequest())) {
+            AttemptListener listener = listeners == null ? null : listeners.apply(proxyContext);
+            boolean success = false;
+            try {
+                service(proxyContext);
+                success = proxyContext.getResponse().getStatus() < HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+            } finally {
+                if(listener != null) {
+                    listener.onEnd(success);
+                }
+            }
+            return;
+        }
+        Hedging hedging = new Hedging(listeners);
+        try {
+            Attempt primary = hedging.start(proxyContext);
+            boolean needHedge;
+            try {
+                needHedge = isServerError(primary.future.get(hedgeDelay, TimeUnit.MILLISECONDS));
+            } catch (TimeoutException | ExecutionException e) {
+                needHedge = true;
+            }
+            if(needHedge) {
+                HttpProxyContext hedgeContext = hedge.get();
+                if(hedgeContext != null) {
+                    LOG.debug("hedge request {} to {}", proxyContext.getUid(), hedgeContext.getTarget());
+                    hedging.start(hedgeContext);
+                }
+            }
+            // winner can be chosen only after all attempts are started
+            hedging.close();
+            Attempt attempt;
+            try {
+                attempt = hedging.winner.get();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof Exception ? (Exception) cause : e;
+            }
+            HttpResponse proxyResponse = attempt.future.join();
+            try {
+                writeResponse(attempt.context, proxyResponse);
+            } finally {
+                consumeQuietly(proxyResponse.getEntity());
+            }
+        } finally {
+            hedging.cancel();
+        }
+    }
+
+    private static boolean isServerError(HttpResponse response) {
+        return response.getStatusLine().getStatusCode() >= HttpServletResponse.SC_INTERNAL_SERVER_ERROR;
+    }
+
+    /**
+     * State of hedged request. Winner is response without server error, or result of last attempt when all
+     * other attempts are failed and no more attempts will be started.
+     */
+    private final class Hedging {
+        private final CompletableFuture<Attempt> winner = new CompletableFuture<>();
+        private final Function<HttpProxyContext, AttemptListener> listeners;
+        /**
+         * Guarded by this.
+         */
+        private final List<Attempt> attempts = new ArrayList<>(2);
+        private int pending;
+        private boolean closed;
+        private Attempt lastFailed;
+        private Throwable lastError;
+
+        Hedging(Function<HttpProxyContext, AttemptListener> listeners) {
+            this.listeners = listeners;
+        }
+
+        Attempt start(HttpProxyContext context) throws IOException {
+            HttpRequest request = createRequest(context);
+            AttemptListener listener = listeners == null ? null : listeners.apply(context);
+            CompletableFuture<HttpResponse> future;
+            try {
+                future = proxyClient.submit(context.getTargetHost(), request);
+            } catch (RuntimeException e) {
+                if(listener != null) {
+                    listener.onEnd(false);
+                }
+                throw e;
+            }
+            Attempt attempt = new Attempt(context, future, listener);
+            synchronized (this) {
+                attempts.add(attempt);
+                pending++;
+            }
+            attempt.future.whenComplete((response, e) -> onComplete(attempt, response, e));
+            return attempt;
+        }
+
+        private void onComplete(Attempt attempt, HttpResponse response, Throwable e) {
+            boolean success = e == null && !isServerError(response);
+            if(attempt.listener != null) {
+                if(e instanceof CancellationException) {
+                    attempt.listener.onCancel();
+                } else {
+                    attempt.listener.onEnd(success);
+                }
+            }
+            if(success) {
+                synchronized (this) {
+                    pending--;
+                }
+                if(!winner.complete(attempt)) {
+                    attempt.abort();
+                }
+                return;
+            }
+            Attempt released;
+            synchronized (this) {
+                pending--;
+                released = lastFailed;
+                lastFailed = attempt;
+                lastError = e;
+                tryComplete();
+            }
+            if(released != null) {
+                released.abort();
+            }
+        }
+
+        /**
+         * Invoked when no more attempts will be started.
+         */
+        synchronized void close() {
+            closed = true;
+            tryComplete();
+        }
+
+        private void tryComplete() {
+            if(!closed || pending > 0 || lastFailed == null) {
+                return;
+            }
+            if(lastError != null) {
+                winner.completeExceptionally(lastError);
+            } else {
+                winner.complete(lastFailed);
+            }
+        }
+
+        /**
+         * Abort all attempts except winner.
+         */
+        void cancel() {
+            List<Attempt> list;
+            synchronized (this) {
+                list = new ArrayList<>(attempts);
+            }
+            Attempt won = winner.isCompletedExceptionally() ? null : winner.getNow(null);
+            for(Attempt attempt : list) {
+                if(attempt != won) {
+                    // it has no effect on completed future
+                    attempt.future.cancel(true);
+                    attempt.abort();
+                }
+            }
+        }
+    }
+
+    /**
+     * Attempt of hedged request.
+     */
+    private final class Attempt {
+        private final HttpProxyContext context;
+        private final CompletableFuture<HttpResponse> future;
+        private final AttemptListener listener;
+        private final AtomicBoolean aborted = new AtomicBoolean();
+
+        Attempt(HttpProxyContext context, CompletableFuture<HttpResponse> future, AttemptListener listener) {
+            this.context = context;
+            this.future = future;
+            this.listener = listener;
+        }
+
+        /**
+         * Release response of attempt which is lost, without reading of its entity.
+         */
+        void abort() {
+            if(!future.isDone() || future.isCompletedExceptionally() || !aborted.compareAndSet(false, true)) {
+                return;
+            }
+            HttpResponse response = future.join();
+            if(response instanceof Closeable) {
+                // close of unread response abort connection instead of downloading of rest of entity
+                Closeables.close((AutoCloseable) response);
+            } else {
+                // entity of response from async client is already buffered, so it does not read from network
+                consumeQuietly(response.getEntity());
+            }
+        }
+    }
+
+    /**
+     * Request can be hedged when it is idempotent and has no body, because body stream can be read only once.
+     * @param request request
+     * @return true if request can be sent twice
+     */
+    public static boolean isHedgeable(HttpServletRequest request) {
+        String method = request.getMethod();
+        boolean idempotent = "GET".equals(method) || "HEAD".equals(method) || "OPTIONS".equals(method);
+        return idempotent && !hasBody(request);
+    }
+
+    private static boolean hasBody(HttpServletRequest servletRequest) {
+        //spec: RFC 2616, sec 4.3: either of these two headers signal that there is a message body.
+        return servletRequest.getHeader(HttpHeaders.CONTENT_LENGTH) != null ||
+                servletRequest.getHeader(HttpHeaders.TRANSFER_ENCODING) != null;
+    }
+
+    private HttpRequest createRequest(HttpProxyContext proxyContext) throws IOException {
         final HttpServletRequest servletRequest = proxyContext.getRequest();
-        final HttpServletResponse servletResponse = proxyContext.getResponse();
         // Make the Request
         //note: we won't transfer the protocol version because I'm not sure it would truly be compatible
         String method = servletRequest.getMethod();
         String proxyRequestUri = rewriteUrlFromRequest(proxyContext);
         HttpRequest proxyRequest;
-        //spec: RFC 2616, sec 4.3: either of these two headers signal that there is a message body.
-        if (servletRequest.getHeader(HttpHeaders.CONTENT_LENGTH) != null ||
-                servletRequest.getHeader(HttpHeaders.TRANSFER_ENCODING) != null) {
+        if (hasBody(servletRequest)) {
             HttpEntityEnclosingRequest requestWithBody = new BasicHttpEntityEnclosingRequest(method, proxyRequestUri);
             requestWithBody.setEntity(createEntity(servletRequest));
             proxyRequest = requestWithBody;
@@ -96,42 +368,34 @@ public class HttpProxy implements AutoCloseable {
 
         setXForwardedForHeader(servletRequest, proxyRequest);
         setXUUIDHeader(proxyRequest, proxyContext);
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("proxy " + method + " uri: " + servletRequest.getRequestURI() + " -- " + proxyRequest.getRequestLine().getUri());
+        }
+        return proxyRequest;
+    }
 
-        HttpResponse proxyResponse = null;
-        try {
-            // Execute the request
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("proxy " + method + " uri: " + servletRequest.getRequestURI() + " -- " + proxyRequest.getRequestLine().getUri());
-            }
-            proxyResponse = proxyClient.execute(proxyContext.getTargetHost(), proxyRequest);
-
-            // Process the response
-            int statusCode = proxyResponse.getStatusLine().getStatusCode();
-
-            if (doResponseRedirectOrNotModifiedLogic(proxyContext, proxyResponse, statusCode)) {
-                //the response is already "committed" now without any body to send
-                //TODO copy response headers?
-                return;
-            }
+    @SuppressWarnings("deprecation")
+    private void writeResponse(HttpProxyContext proxyContext, HttpResponse proxyResponse) throws ServletException, IOException {
+        final HttpServletRequest servletRequest = proxyContext.getRequest();
+        final HttpServletResponse servletResponse = proxyContext.getResponse();
+        // Process the response
+        int statusCode = proxyResponse.getStatusLine().getStatusCode();
 
-            // Pass the response code. This method with the "reason phrase" is deprecated but it's the only way to pass the
-            //  reason along too.
-            //noinspection deprecation
-            servletResponse.setStatus(statusCode, proxyResponse.getStatusLine().getReasonPhrase());
+        if (doResponseRedirectOrNotModifiedLogic(proxyContext, proxyResponse, statusCode)) {
+            //the response is already "committed" now without any body to send
+            //TODO copy response headers?
+            return;
+        }
 
-            copyResponseHeaders(proxyResponse, servletRequest, servletResponse);
+        // Pass the response code. This method with the "reason phrase" is deprecated but it's the only way to pass the
+        //  reason along too.
+        //noinspection deprecation
+        servletResponse.setStatus(statusCode, proxyResponse.getStatusLine().getReasonPhrase());
 
-            // Send the content to the client
-            copyResponseEntity(proxyResponse, servletResponse);
+        copyResponseHeaders(proxyResponse, servletRequest, servletResponse);
 
-        } finally {
-            // make sure the entire entity was consumed, so the connection is released
-            if (proxyResponse != null) {
-                consumeQuietly(proxyResponse.getEntity());
-            }
-            //Note: Don't need to close servlet outputStream:
-            // http://stackoverflow.com/questions/1159168/should-one-call-close-on-httpservletresponse-getoutputstream-getwriter
-        }
+        // Send the content to the client
+        copyResponseEntity(proxyResponse, servletResponse);
     }
 
     private HttpEntity createEntity(HttpServletRequest servletRequest) throws IOException {
@@ -21,11 +21,21 @@ import org.apache.http.HttpRequest;
 import org.apache.http.HttpResponse;
 
 import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
 
 
 public interface ProxyClient extends Closeable {
 
     HttpResponse execute(final HttpHost target, final HttpRequest request) throws Exception;
 
+    /**
+     * Execute request without blocking of caller. Cancellation of returned future aborts request, response
+     * which is received after cancellation is released by client.
+     * @param target target host
+     * @param request request
+     * @return future of response
+     */
+    CompletableFuture<HttpResponse> submit(final HttpHost target, final HttpRequest request);
+
     void start();
 }
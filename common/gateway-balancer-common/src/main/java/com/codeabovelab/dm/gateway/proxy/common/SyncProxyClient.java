@@ -18,14 +18,27 @@ package com.codeabovelab.dm.gateway.proxy.common;
 
 import org.apache.http.HttpHost;
 import org.apache.http.HttpRequest;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.http.HttpResponse;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class SyncProxyClient implements ProxyClient {
 
     private final CloseableHttpClient proxyClient;
+    /**
+     * Blocking client need thread for each submitted request.
+     */
+    private final ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+      .setDaemon(true)
+      .setNameFormat(getClass().getSimpleName() + "-%d")
+      .build());
 
     public SyncProxyClient(CloseableHttpClient proxyClient) {
         this.proxyClient = proxyClient;
@@ -36,12 +49,34 @@ public class SyncProxyClient implements ProxyClient {
         return proxyClient.execute(target, request);
     }
 
+    @Override
+    public CompletableFuture<HttpResponse> submit(HttpHost target, HttpRequest request) {
+        CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+        Future<?> future = executor.submit(() -> {
+            try {
+                HttpResponse response = proxyClient.execute(target, request);
+                if(!result.complete(response)) {
+                    EntityUtils.consumeQuietly(response.getEntity());
+                }
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        });
+        result.whenComplete((r, e) -> {
+            if(result.isCancelled()) {
+                future.cancel(true);
+            }
+        });
+        return result;
+    }
+
     @Override
     public void start() {
     }
 
     @Override
     public void close() throws IOException {
+        executor.shutdownNow();
         proxyClient.close();
     }
 }
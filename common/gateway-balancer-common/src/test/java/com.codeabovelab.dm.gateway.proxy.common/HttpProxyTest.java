@@ -1,14 +1,89 @@
 package com.codeabovelab.dm.gateway.proxy.common;
 
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpVersion;
+import org.apache.http.entity.StringEntity;
+import org.apache.http.message.BasicHttpResponse;
 import org.junit.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 
-import static org.junit.Assert.assertNotNull;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
 
 /**
  * Created by pronto on 1/18/16.
  */
 public class HttpProxyTest {
 
+    private static final String PRIMARY = "primary";
+    private static final String HEDGE = "hedge";
+
+    /**
+     * Response which is record that it was closed without reading.
+     */
+    private static class TestResponse extends BasicHttpResponse implements Closeable {
+        private volatile boolean closed;
+
+        TestResponse(int status, String body) {
+            super(HttpVersion.HTTP_1_1, status, "test");
+            setEntity(new StringEntity(body, "UTF-8"));
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    /**
+     * Client which return futures of responses by name of target host, tests complete them.
+     */
+    private static class TestProxyClient implements ProxyClient {
+        private final Map<String, CompletableFuture<HttpResponse>> futures = new ConcurrentHashMap<>();
+
+        CompletableFuture<HttpResponse> get(String host) {
+            return futures.computeIfAbsent(host, h -> new CompletableFuture<>());
+        }
+
+        @Override
+        public HttpResponse execute(HttpHost target, HttpRequest request) throws Exception {
+            return get(target.getHostName()).get();
+        }
+
+        @Override
+        public CompletableFuture<HttpResponse> submit(HttpHost target, HttpRequest request) {
+            return get(target.getHostName());
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private final TestProxyClient client = new TestProxyClient();
+    private final HttpProxy proxy = new HttpProxy(client);
+    private final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/path");
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+    private final AtomicInteger hedges = new AtomicInteger();
+    /**
+     * Results of attempts reported to listeners, by name of target host.
+     */
+    private final Map<String, String> results = new ConcurrentHashMap<>();
+
     @Test
     public void testCookies() {
 
@@ -19,4 +94,108 @@ public class HttpProxyTest {
         assertNotNull(realCookie);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void testPrimaryWins() throws Exception {
+        client.get(PRIMARY).complete(new TestResponse(200, PRIMARY));
+        service(1000);
+        assertEquals(0, hedges.get());
+        assertEquals(PRIMARY, response.getContentAsString());
+    }
+
+    @Test
+    public void testHedgeWins() throws Exception {
+        TestResponse hedge = new TestResponse(200, HEDGE);
+        client.get(HEDGE).complete(hedge);
+        service(50);
+        assertEquals(1, hedges.get());
+        assertEquals(HEDGE, response.getContentAsString());
+        assertFalse(hedge.closed);
+        // slow request is aborted
+        assertTrue(client.get(PRIMARY).isCancelled());
+        // each server is charged only for its own result
+        assertEquals("cancel", results.get(PRIMARY));
+        assertEquals("true", results.get(HEDGE));
+    }
+
+    @Test
+    public void testPrimaryFailsBeforeHedge() throws Exception {
+        client.get(PRIMARY).completeExceptionally(new IOException(PRIMARY));
+        client.get(HEDGE).complete(new TestResponse(200, HEDGE));
+        long begin = System.currentTimeMillis();
+        service(10_000);
+        // hedge is sent without waiting of delay
+        assertTrue(System.currentTimeMillis() - begin < 5_000);
+        assertEquals(HEDGE, response.getContentAsString());
+    }
+
+    @Test
+    public void testServerErrorDoesNotWin() throws Exception {
+        TestResponse primary = new TestResponse(503, PRIMARY);
+        client.get(PRIMARY).complete(primary);
+        client.get(HEDGE).complete(new TestResponse(200, HEDGE));
+        service(10_000);
+        assertEquals(200, response.getStatus());
+        assertEquals(HEDGE, response.getContentAsString());
+        // response of loser is aborted, not read
+        assertTrue(primary.closed);
+        assertEquals("false", results.get(PRIMARY));
+        assertEquals("true", results.get(HEDGE));
+    }
+
+    @Test
+    public void testNotHedgeable() throws Exception {
+        request.setMethod("POST");
+        client.get(PRIMARY).complete(new TestResponse(503, PRIMARY));
+        service(0);
+        assertEquals(0, hedges.get());
+        assertEquals(503, response.getStatus());
+        assertEquals("false", results.get(PRIMARY));
+    }
+
+    @Test
+    public void testBothFail() throws Exception {
+        client.get(PRIMARY).complete(new TestResponse(503, PRIMARY));
+        client.get(HEDGE).complete(new TestResponse(502, HEDGE));
+        service(10_000);
+        // result of last attempt is used
+        assertEquals(502, response.getStatus());
+        assertEquals(HEDGE, response.getContentAsString());
+    }
+
+    @Test
+    public void testBothFailWithError() throws Exception {
+        client.get(PRIMARY).completeExceptionally(new IOException(PRIMARY));
+        client.get(HEDGE).completeExceptionally(new IOException(HEDGE));
+        try {
+            service(10_000);
+            fail("Error expected");
+        } catch (IOException e) {
+            assertEquals(HEDGE, e.getMessage());
+        }
+    }
+
+    private void service(long hedgeDelay) throws Exception {
+        proxy.service(context(PRIMARY), hedgeDelay, () -> {
+            hedges.incrementAndGet();
+            return context(HEDGE);
+        }, ctx -> {
+            String host = ctx.getTargetHost().getHostName();
+            return new HttpProxy.AttemptListener() {
+                @Override
+                public void onEnd(boolean success) {
+                    assertNull(results.put(host, Boolean.toString(success)));
+                }
+
+                @Override
+                public void onCancel() {
+                    assertNull(results.put(host, "cancel"));
+                }
+            };
+        });
+    }
+
+    private HttpProxyContext context(String host) {
+        return new HttpProxyContext(request, response, URI.create("http://" + host + ":8080/path"), "uid");
+    }
+
+}
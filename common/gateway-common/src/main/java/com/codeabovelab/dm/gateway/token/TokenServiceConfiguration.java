@@ -17,7 +17,6 @@
 package com.codeabovelab.dm.gateway.token;
 
 import com.codeabovelab.dm.common.security.token.SignedTokenServiceBackend;
-import com.codeabovelab.dm.common.security.token.TokenService;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -34,7 +33,7 @@ public class TokenServiceConfiguration {
     private String macAlgorithm;
 
     @Bean
-    TokenService tokenServiceBackend() {
+    SignedTokenServiceBackend tokenServiceBackend() {
         SignedTokenServiceBackend backend = new SignedTokenServiceBackend();
         backend.setSecureRandom(new SecureRandom());
         backend.setServerSecret(serverSecret);
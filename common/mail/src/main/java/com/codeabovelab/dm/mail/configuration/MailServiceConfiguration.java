@@ -18,6 +18,7 @@ package com.codeabovelab.dm.mail.configuration;
 
 import com.codeabovelab.dm.mail.service.MailSenderBackend;
 import com.codeabovelab.dm.mail.service.MailSenderService;
+import com.codeabovelab.dm.mail.service.PooledSmtpMailSenderBackend;
 import com.codeabovelab.dm.mail.service.SpringMailSenderBackend;
 import com.codeabovelab.dm.mail.template.MailSourceProcessorService;
 import org.springframework.beans.factory.annotation.Value;
@@ -26,6 +27,7 @@ import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Import;
 import org.springframework.mail.MailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
 import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 
 import java.util.concurrent.ArrayBlockingQueue;
@@ -46,6 +48,15 @@ public class MailServiceConfiguration {
     @Value("${mail.senderQueueCapacity:10}")
     private int queueCapacity;
 
+    @Value("${mail.smtp.pool.size:2}")
+    private int poolSize;
+
+    @Value("${mail.smtp.pool.idleTimeout:60000}")
+    private long poolIdleTimeout;
+
+    @Value("${mail.smtp.pool.waitTimeout:30000}")
+    private long poolWaitTimeout;
+
     @Bean
     ExecutorService mailSenderExecutor() {
         return new ThreadPoolExecutor(2, 2,
@@ -56,6 +67,10 @@ public class MailServiceConfiguration {
 
     @Bean
     MailSenderBackend mailSenderBackend(MailSender mailSender) {
+        if(mailSender instanceof JavaMailSenderImpl) {
+            // reuse of SMTP connections, default backend is used as fallback
+            return new PooledSmtpMailSenderBackend((JavaMailSenderImpl) mailSender, poolSize, poolIdleTimeout, poolWaitTimeout);
+        }
         return new SpringMailSenderBackend(mailSender);
     }
 
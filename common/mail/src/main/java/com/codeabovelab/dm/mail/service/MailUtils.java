@@ -17,7 +17,10 @@
 package com.codeabovelab.dm.mail.service;
 
 import com.codeabovelab.dm.mail.dto.MailBody;
+import com.codeabovelab.dm.mail.dto.MailHead;
+import com.codeabovelab.dm.mail.dto.MailMessage;
 import org.apache.commons.io.IOUtils;
+import org.springframework.mail.SimpleMailMessage;
 import org.springframework.util.MimeType;
 
 import java.io.IOException;
@@ -52,4 +55,28 @@ public class MailUtils {
             throw new MailBadMessageException(e);
         }
     }
+
+    /**
+     * Convert message to spring mail message, body is converted to plain text.
+     * @param message
+     * @return
+     */
+    public static SimpleMailMessage toSimpleMailMessage(MailMessage message) throws MailBadMessageException {
+        SimpleMailMessage smm = new SimpleMailMessage();
+        MailBody body = message.getBody();
+        smm.setText(toPlainText(body));
+        MailHead head = message.getHead();
+        smm.setFrom(head.getFrom());
+        smm.setReplyTo(head.getReplyTo());
+        smm.setSubject(head.getSubject());
+        smm.setTo(asArray(head.getTo()));
+        smm.setCc(asArray(head.getCc()));
+        smm.setBcc(asArray(head.getBcc()));
+        smm.setSentDate(head.getSentDate());
+        return smm;
+    }
+
+    private static String[] asArray(List<String> to) {
+        return to.toArray(new String[to.size()]);
+    }
 }
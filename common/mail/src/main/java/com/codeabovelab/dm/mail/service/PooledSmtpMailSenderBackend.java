@@ -0,0 +1,174 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.mail.service;
+
+import com.codeabovelab.dm.mail.dto.MailMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.mail.SimpleMailMessage;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.mail.javamail.MimeMailMessage;
+
+import javax.mail.AuthenticationFailedException;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.internet.MimeMessage;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Backend which keeps small pool of connected SMTP transports, it uses session and server settings of
+ * {@link JavaMailSenderImpl}. Unlike {@link JavaMailSenderImpl#send(SimpleMailMessage)} it does not open new
+ * connection for each message. Idle connections are closed after 'idleTimeout'.
+ */
+public class PooledSmtpMailSenderBackend implements MailSenderBackend, DisposableBean {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PooledSmtpMailSenderBackend.class);
+
+    private static final class PooledTransport {
+        private final Transport transport;
+        private long lastUsed;
+
+        PooledTransport(Transport transport) {
+            this.transport = transport;
+        }
+    }
+
+    private final JavaMailSenderImpl mailSender;
+    private final BlockingQueue<PooledTransport> idle = new LinkedBlockingQueue<>();
+    private final Semaphore permits;
+    private final long idleTimeout;
+    private final long waitTimeout;
+    private volatile boolean closed;
+
+    /**
+     * @param mailSender source of session and server settings
+     * @param poolSize max count of concurrent connections
+     * @param idleTimeout time in milliseconds after that unused connection is closed
+     * @param waitTimeout time in milliseconds which sender wait for free connection
+     */
+    public PooledSmtpMailSenderBackend(JavaMailSenderImpl mailSender, int poolSize, long idleTimeout, long waitTimeout) {
+        this.mailSender = mailSender;
+        this.permits = new Semaphore(poolSize);
+        this.idleTimeout = idleTimeout;
+        this.waitTimeout = waitTimeout;
+    }
+
+    @Override
+    public void send(MailMessage message) throws MailSenderException {
+        SimpleMailMessage smm = MailUtils.toSimpleMailMessage(message);
+        LOG.debug("message to send {}", smm);
+        acquire();
+        PooledTransport pt = null;
+        try {
+            MimeMessage mime = mailSender.createMimeMessage();
+            smm.copyTo(new MimeMailMessage(mime));
+            mime.saveChanges();
+            pt = pollIdle();
+            if(pt == null) {
+                pt = new PooledTransport(connect());
+            }
+            pt.transport.sendMessage(mime, mime.getAllRecipients());
+            pt.lastUsed = System.currentTimeMillis();
+            if(!closed) {
+                idle.offer(pt);
+                pt = null;
+            }
+        } catch (SendFailedException e) {
+            throw new MailBadMessageException(e);
+        } catch (AuthenticationFailedException e) {
+            throw new MailServerFaultException(e);
+        } catch (MessagingException e) {
+            throw new MailIOException(e);
+        } finally {
+            if(pt != null) {
+                // connection state is unknown after error
+                close(pt);
+            }
+            permits.release();
+        }
+    }
+
+    private void acquire() {
+        try {
+            if(!permits.tryAcquire(waitTimeout, TimeUnit.MILLISECONDS)) {
+                throw new MailIOException("Timeout on waiting of free connection.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MailIOException(e);
+        }
+    }
+
+    private PooledTransport pollIdle() {
+        PooledTransport pt;
+        while((pt = idle.poll()) != null) {
+            // server may close connection, isConnected() check it by NOOP command
+            if(System.currentTimeMillis() - pt.lastUsed < idleTimeout && pt.transport.isConnected()) {
+                return pt;
+            }
+            close(pt);
+        }
+        return null;
+    }
+
+    private Transport connect() throws MessagingException {
+        String username = mailSender.getUsername();
+        String password = mailSender.getPassword();
+        if("".equals(username)) {
+            // Spring Boot configuration may contain empty values
+            username = null;
+            if("".equals(password)) {
+                password = null;
+            }
+        }
+        Session session = mailSender.getSession();
+        // resolve protocol like JavaMailSenderImpl.getTransport() does
+        String protocol = mailSender.getProtocol();
+        if(protocol == null) {
+            protocol = session.getProperty("mail.transport.protocol");
+            if(protocol == null) {
+                protocol = JavaMailSenderImpl.DEFAULT_PROTOCOL;
+            }
+        }
+        Transport transport = session.getTransport(protocol);
+        transport.connect(mailSender.getHost(), mailSender.getPort(), username, password);
+        return transport;
+    }
+
+    private void close(PooledTransport pt) {
+        try {
+            pt.transport.close();
+        } catch (MessagingException e) {
+            LOG.debug("Error on close transport", e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        closed = true;
+        PooledTransport pt;
+        while((pt = idle.poll()) != null) {
+            close(pt);
+        }
+    }
+}
@@ -16,8 +16,6 @@
 
 package com.codeabovelab.dm.mail.service;
 
-import com.codeabovelab.dm.mail.dto.MailBody;
-import com.codeabovelab.dm.mail.dto.MailHead;
 import com.codeabovelab.dm.mail.dto.MailMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -27,8 +25,6 @@ import org.springframework.mail.MailSender;
 import org.springframework.mail.SimpleMailMessage;
 import org.springframework.stereotype.Component;
 
-import java.util.List;
-
 /**
  * Default backend which used spring MailSender.
  */
@@ -47,22 +43,8 @@ public class SpringMailSenderBackend implements MailSenderBackend {
 
     @Override
     public void send(MailMessage message) throws MailSenderException {
-        SimpleMailMessage smm = new SimpleMailMessage();
-        MailBody body = message.getBody();
-        smm.setText(MailUtils.toPlainText(body));
-        MailHead head = message.getHead();
-        smm.setFrom(head.getFrom());
-        smm.setReplyTo(head.getReplyTo());
-        smm.setSubject(head.getSubject());
-        smm.setTo(asArray(head.getTo()));
-        smm.setCc(asArray(head.getCc()));
-        smm.setBcc(asArray(head.getBcc()));
-        smm.setSentDate(head.getSentDate());
+        SimpleMailMessage smm = MailUtils.toSimpleMailMessage(message);
         LOG.info("message to send {}", smm);
         mailSender.send(smm);
     }
-
-    private String[] asArray(List<String> to) {
-        return to.toArray(new String[to.size()]);
-    }
 }
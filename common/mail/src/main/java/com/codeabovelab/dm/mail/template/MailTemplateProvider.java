@@ -35,4 +35,10 @@ public interface MailTemplateProvider {
      * @return
      */
     MailTemplate getTemplate(String uri);
+
+    /**
+     * Drop cached templates, so next {@link #getTemplate(String)} return fresh instance and engines parse it again.
+     */
+    default void invalidate() {
+    }
 }
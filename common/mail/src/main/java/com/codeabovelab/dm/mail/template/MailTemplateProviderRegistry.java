@@ -45,6 +45,8 @@ public class MailTemplateProviderRegistry implements MailTemplateProvider {
             }
         }
         this.providers = Collections.unmodifiableMap(map);
+        // templates which is loaded before registration may be outdated
+        invalidate();
     }
 
     @Override
@@ -61,4 +63,9 @@ public class MailTemplateProviderRegistry implements MailTemplateProvider {
         }
         return provider.getTemplate(uri);
     }
+
+    @Override
+    public void invalidate() {
+        new HashSet<>(providers.values()).forEach(MailTemplateProvider::invalidate);
+    }
 }
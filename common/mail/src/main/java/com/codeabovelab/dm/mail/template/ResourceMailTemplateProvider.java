@@ -27,17 +27,25 @@ import org.apache.commons.io.IOUtils;
 import org.springframework.util.Assert;
 import org.springframework.util.MimeType;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.net.URISyntaxException;
+import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Simple implementation for {@link com.codeabovelab.dm.mail.template.MailTemplateProvider } which retrieves
- * template from class path resource.
+ * template from class path resource. <p/>
+ * Loaded templates are cached, provider return same template instance until version of its resources is not
+ * changed, so engines may cache compiled templates by instance. Version is checked no more often than
+ * {@link Config#getCheckInterval()}.
  */
 public class ResourceMailTemplateProvider implements MailTemplateProvider {
 
@@ -46,6 +54,7 @@ public class ResourceMailTemplateProvider implements MailTemplateProvider {
         private String prefix = "templates";
         private String suffix;
         private MimeType mimeType;
+        private long checkInterval = 10_000L;
 
         public String getPrefix() {
             return prefix;
@@ -85,6 +94,36 @@ public class ResourceMailTemplateProvider implements MailTemplateProvider {
         public void setMimeType(MimeType mimeType) {
             this.mimeType = mimeType;
         }
+
+        public long getCheckInterval() {
+            return checkInterval;
+        }
+
+        /**
+         * Interval in milliseconds between checks of template resources modification.
+         * @param checkInterval interval, zero mean that check is performed on each access
+         * @return this
+         */
+        public Config checkInterval(long checkInterval) {
+            setCheckInterval(checkInterval);
+            return this;
+        }
+
+        public void setCheckInterval(long checkInterval) {
+            this.checkInterval = checkInterval;
+        }
+    }
+
+    private static final class Entry {
+        private final MailTemplate template;
+        private final String version;
+        private volatile long checked;
+
+        Entry(MailTemplate template, String version, long checked) {
+            this.template = template;
+            this.version = version;
+            this.checked = checked;
+        }
     }
 
     private static final String PROTOCOL = "res";
@@ -92,7 +131,9 @@ public class ResourceMailTemplateProvider implements MailTemplateProvider {
     private final String prefix;
     private final String suffix;
     private final MimeType mimeType;
+    private final long checkInterval;
     private final ObjectMapper objectMapper;
+    private final ConcurrentMap<String, Entry> cache = new ConcurrentHashMap<>();
     private final Resources.Loader<InputStream, MailPartTemplate> templatePartLoader = new Resources.Loader<InputStream, MailPartTemplate>() {
         @Override
         public MailPartTemplate apply(InputStream is) throws Exception {
@@ -115,6 +156,7 @@ public class ResourceMailTemplateProvider implements MailTemplateProvider {
         this.prefix = config.prefix;
         this.suffix = config.suffix;
         this.mimeType = config.mimeType;
+        this.checkInterval = config.checkInterval;
         this.objectMapper = objectMapper;
         Assert.notNull(this.objectMapper, "'objectMapper' is null");
         Assert.hasText(this.prefix, "'prefix' must contains text");
@@ -130,10 +172,34 @@ public class ResourceMailTemplateProvider implements MailTemplateProvider {
 
     @Override
     public MailTemplate getTemplate(String uri) {
+        Entry entry = cache.get(uri);
+        long now = System.currentTimeMillis();
+        if(entry != null && now - entry.checked < checkInterval) {
+            return entry.template;
+        }
         String path = StringUtils.after(uri, ':');
         final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
         // possibly we need to escape some chars like '..' ?
         final String templateName = this.prefix + "/" + path;
+        String version = getVersion(classLoader, templateName + ".json") + "|" + getVersion(classLoader, templateName + suffix);
+        if(entry != null && entry.version.equals(version)) {
+            entry.checked = now;
+            return entry.template;
+        }
+        MailTemplate template = load(classLoader, templateName);
+        cache.put(uri, new Entry(template, version, now));
+        return template;
+    }
+
+    /**
+     * Drop all cached templates.
+     */
+    @Override
+    public void invalidate() {
+        cache.clear();
+    }
+
+    private MailTemplate load(ClassLoader classLoader, String templateName) {
         MailTemplateImpl.Builder builder = Resources.load(classLoader, templateName + ".json", descriptorLoader);
         //in future we may implement MailPartTemplate which contains reference to another resource
         MailPartTemplate bodySource = builder.getBodySource();
@@ -143,4 +209,20 @@ public class ResourceMailTemplateProvider implements MailTemplateProvider {
         }
         return builder.build();
     }
+
+    private static String getVersion(ClassLoader classLoader, String name) {
+        URL url = classLoader.getResource(name);
+        if(url == null) {
+            return null;
+        }
+        if("file".equals(url.getProtocol())) {
+            try {
+                return url + "@" + new File(url.toURI()).lastModified();
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                // use only url
+            }
+        }
+        // resources in archives can not be modified at runtime
+        return url.toString();
+    }
 }
@@ -17,19 +17,28 @@
 package com.codeabovelab.dm.mail.template;
 
 import com.codeabovelab.dm.mail.dto.*;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableSet;
 import org.springframework.context.expression.MapAccessor;
 import org.springframework.expression.*;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
 import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 import org.springframework.stereotype.Component;
 
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.UnaryOperator;
 
 /**
  * Template engine based on Spring Expression Language. <p/>
  * For expression use follow syntax: '${spel}'. Also see: http://docs.spring.io/spring/docs/current/spring-framework-reference/html/expressions.html
+ * <p/>
+ * Parsed expressions are cached by template instance (providers return same instance for unchanged template),
+ * frequently used expressions are compiled by SpEL compiler.
  */
 @Component
 public class SpelMailTemplateEngine implements MailTemplateEngine {
@@ -50,7 +59,32 @@ public class SpelMailTemplateEngine implements MailTemplateEngine {
         }
     };
     private static final Set<String> SET = ImmutableSet.of("spel");
-    private final SpelExpressionParser parser = new SpelExpressionParser();
+    private final SpelExpressionParser parser = new SpelExpressionParser(
+      new SpelParserConfiguration(SpelCompilerMode.MIXED, getClass().getClassLoader()));
+    /**
+     * Weak keys are compared by identity, and entry is removed with unused template.
+     */
+    private final Cache<MailTemplate, CompiledTemplate> templates = CacheBuilder.newBuilder().weakKeys().build();
+
+    /**
+     * Parsed expressions of one template.
+     */
+    private final class CompiledTemplate {
+        private final Expression body;
+        /**
+         * Head parts are known only at processing of head, therefore we parse them lazily.
+         */
+        private final ConcurrentMap<String, Expression> head = new ConcurrentHashMap<>();
+
+        CompiledTemplate(MailTemplate template) {
+            String data = template.getBodySource().getData();
+            this.body = data == null ? null : parse(data);
+        }
+
+        Expression get(String src) {
+            return head.computeIfAbsent(src, SpelMailTemplateEngine.this::parse);
+        }
+    }
 
     @Override
     public Set<String> getProvidedEngines() {
@@ -59,22 +93,37 @@ public class SpelMailTemplateEngine implements MailTemplateEngine {
 
     @Override
     public MailMessage create(MailTemplate mailTemplate, MailSource source) {
+        CompiledTemplate compiled = getCompiled(mailTemplate);
         MailMessageImpl.Builder b = MailMessageImpl.builder();
         final StandardEvaluationContext ctx = new StandardEvaluationContext(source.getVariables());
         ctx.addPropertyAccessor(new MapAccessor());
-        UnaryOperator<Object> processor = (o) -> MailTemplateUtils.process((s) -> evaluate(ctx, s), o);
+        UnaryOperator<Object> processor = (o) -> MailTemplateUtils.process((s) -> evaluate(ctx, compiled, s), o);
         b.setHead(MailHeadImpl.builder().from(mailTemplate.getHeadSource(), processor).build());
         MailPartTemplate bs = mailTemplate.getBodySource();
-        String bodyText = (String) evaluate(ctx, bs.getData());
+        String bodyText = compiled.body == null ? null : String.valueOf(compiled.body.getValue(ctx));
         b.setBody(new MailTextBody(bodyText, bs.getMime()));
         return b.build();
     }
 
-    private Object evaluate(StandardEvaluationContext ctx, Object src) {
+    private CompiledTemplate getCompiled(MailTemplate mailTemplate) {
+        CompiledTemplate compiled = templates.getIfPresent(mailTemplate);
+        if(compiled == null) {
+            // concurrent callers may parse template twice, it is not a problem
+            compiled = new CompiledTemplate(mailTemplate);
+            templates.put(mailTemplate, compiled);
+        }
+        return compiled;
+    }
+
+    private Expression parse(String src) {
+        return parser.parseExpression(src, PC);
+    }
+
+    private Object evaluate(StandardEvaluationContext ctx, CompiledTemplate compiled, Object src) {
         if(src == null || !(src instanceof CharSequence)) {
             return src;
         }
-        Expression expression = parser.parseExpression(src.toString(), PC);
+        Expression expression = compiled.get(src.toString());
         Object value = expression.getValue(ctx);
         return String.valueOf(value);
     }
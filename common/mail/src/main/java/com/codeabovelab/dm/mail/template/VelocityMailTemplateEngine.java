@@ -17,21 +17,34 @@
 package com.codeabovelab.dm.mail.template;
 
 import com.codeabovelab.dm.mail.dto.*;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.apache.commons.io.output.StringBuilderWriter;
+import org.apache.velocity.Template;
 import org.apache.velocity.VelocityContext;
 import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.app.event.EventCartridge;
+import org.apache.velocity.app.event.ReferenceInsertionEventHandler;
+import org.apache.velocity.exception.ParseErrorException;
+import org.apache.velocity.runtime.RuntimeServices;
+import org.apache.velocity.runtime.parser.ParseException;
+import org.apache.velocity.util.RuntimeServicesAware;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
 import org.springframework.stereotype.Component;
+import org.springframework.util.Assert;
 import org.springframework.util.MimeType;
 
-import java.io.IOException;
-import java.io.Reader;
 import java.io.StringReader;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.function.Function;
 
 /**
+ * Template engine based on Velocity. <p/>
+ * Parsed templates are cached by template instance (providers return same instance for unchanged template),
+ * so each message only merges already parsed nodes with its context.
  */
 @ConditionalOnBean(type = "org.apache.velocity.app.VelocityEngine")
 @Component
@@ -41,14 +54,67 @@ public class VelocityMailTemplateEngine implements MailTemplateEngine {
      * Id of this engine
      */
     public static final String ENGINE_ID = "velocity";
-    private final VelocityEngine velocityEngine;
     private static final Set<String> SET = Collections.singleton(ENGINE_ID);
+    private final RuntimeServices runtimeServices;
+    /**
+     * Weak keys are compared by identity, and entry is removed with unused template.
+     */
+    private final Cache<MailTemplate, CompiledTemplate> templates = CacheBuilder.newBuilder().weakKeys().build();
+
+    /**
+     * Parsed parts of one template.
+     */
+    private final class CompiledTemplate {
+        private final String name;
+        private final Template body;
+        /**
+         * Head parts are known only at processing of head, therefore we parse them lazily.
+         */
+        private final ConcurrentMap<String, Template> head = new ConcurrentHashMap<>();
+
+        CompiledTemplate(MailTemplate template, String name) {
+            this.name = name;
+            String data = template.getBodySource().getData();
+            this.body = data == null ? null : parse(name, data);
+        }
+
+        Template get(String src) {
+            return head.computeIfAbsent(src, s -> parse(name, s));
+        }
+    }
+
+    /**
+     * Velocity 1.7 does not expose runtime of engine, but give it to aware event handlers.
+     */
+    private static final class RuntimeServicesHolder implements ReferenceInsertionEventHandler, RuntimeServicesAware {
+        private RuntimeServices runtimeServices;
 
+        @Override
+        public void setRuntimeServices(RuntimeServices rs) {
+            this.runtimeServices = rs;
+        }
 
+        @Override
+        public Object referenceInsert(String reference, Object value) {
+            return value;
+        }
+    }
 
     @Autowired
     public VelocityMailTemplateEngine(VelocityEngine velocityEngine) {
-        this.velocityEngine = velocityEngine;
+        this.runtimeServices = getRuntimeServices(velocityEngine);
+    }
+
+    private static RuntimeServices getRuntimeServices(VelocityEngine velocityEngine) {
+        RuntimeServicesHolder holder = new RuntimeServicesHolder();
+        EventCartridge cartridge = new EventCartridge();
+        cartridge.addEventHandler(holder);
+        VelocityContext context = new VelocityContext();
+        cartridge.attachToContext(context);
+        context.put("ref", "");
+        velocityEngine.evaluate(context, new StringBuilderWriter(), VelocityMailTemplateEngine.class.getName(), "$ref");
+        Assert.notNull(holder.runtimeServices, "Can not obtain runtime services of velocity engine.");
+        return holder.runtimeServices;
     }
 
     @Override
@@ -60,44 +126,68 @@ public class VelocityMailTemplateEngine implements MailTemplateEngine {
     public MailMessage create(MailTemplate mailTemplate, MailSource source) {
         MailPartTemplate bodySource = mailTemplate.getBodySource();
         final MimeType mime = bodySource.getMime();
+        CompiledTemplate compiled = getCompiled(mailTemplate, source);
+        // context is filled once and shared between body and head parts
+        VelocityContext context = createContext(source);
         MailMessageImpl.Builder msgBuilder = MailMessageImpl.builder();
-        try(Reader reader = new StringReader(bodySource.getData())) {
-            String text = evaluate(source, reader);
-            msgBuilder.setBody(new MailTextBody(text, mime));
-        } catch (IOException e) {
-            throw new RuntimeException("On " + source.getTemplateUri());
-        }
+        String text = compiled.body == null ? null : merge(context, compiled.body);
+        msgBuilder.setBody(new MailTextBody(text, mime));
         MailHeadImpl.Builder headBuilder = MailHeadImpl.builder();
-        headBuilder.from(mailTemplate.getHeadSource(), new Interceptor(source));
+        headBuilder.from(mailTemplate.getHeadSource(), new Interceptor(context, compiled));
         msgBuilder.setHead(headBuilder.build());
         return msgBuilder.build();
     }
 
-    private String evaluate(MailSource source, Reader reader) {
-        StringBuilderWriter writer = new StringBuilderWriter();
-        VelocityContext context = new VelocityContext();
-        final Map<String, Object> variables = source.getVariables();
-        fillContext(context, variables);
-        String templateUri = source.getTemplateUri();
-        if(templateUri == null) {
-            // velocity does not allow null template name
-            templateUri = "<unknown template>";
+    private CompiledTemplate getCompiled(MailTemplate mailTemplate, MailSource source) {
+        CompiledTemplate compiled = templates.getIfPresent(mailTemplate);
+        if(compiled == null) {
+            String templateUri = source.getTemplateUri();
+            if(templateUri == null) {
+                // velocity does not allow null template name
+                templateUri = "<unknown template>";
+            }
+            // concurrent callers may parse template twice, it is not a problem
+            compiled = new CompiledTemplate(mailTemplate, templateUri);
+            templates.put(mailTemplate, compiled);
         }
-        velocityEngine.evaluate(context, writer, templateUri, reader);
+        return compiled;
+    }
+
+    private Template parse(String name, String src) {
+        Template template = new Template();
+        template.setRuntimeServices(runtimeServices);
+        template.setName(name);
+        try {
+            template.setData(runtimeServices.parse(new StringReader(src), name));
+        } catch (ParseException e) {
+            throw new ParseErrorException(e, name);
+        }
+        template.initDocument();
+        return template;
+    }
+
+    private String merge(VelocityContext context, Template template) {
+        StringBuilderWriter writer = new StringBuilderWriter();
+        template.merge(context, writer);
         return writer.toString();
     }
 
-    private void fillContext(VelocityContext context, Map<String, Object> variables) {
+    private VelocityContext createContext(MailSource source) {
+        VelocityContext context = new VelocityContext();
+        final Map<String, Object> variables = source.getVariables();
         for(Map.Entry<String, Object> e: variables.entrySet()) {
             context.put(e.getKey(), e.getValue());
         }
+        return context;
     }
 
     private class Interceptor implements Function<Object, Object> {
-        private final MailSource source;
+        private final VelocityContext context;
+        private final CompiledTemplate compiled;
 
-        public Interceptor(MailSource source) {
-            this.source = source;
+        public Interceptor(VelocityContext context, CompiledTemplate compiled) {
+            this.context = context;
+            this.compiled = compiled;
         }
 
         @Override
@@ -108,7 +198,7 @@ public class VelocityMailTemplateEngine implements MailTemplateEngine {
 
 
         private String evalHeadAttr(Object item) {
-            return evaluate(this.source, new StringReader((String) item));
+            return merge(this.context, compiled.get((String) item));
         }
     }
 }
@@ -0,0 +1,123 @@
+package com.codeabovelab.dm.mail.handler;
+
+import com.codeabovelab.dm.mail.dto.MailHeadImpl;
+import com.codeabovelab.dm.mail.dto.MailMessageImpl;
+import com.codeabovelab.dm.mail.dto.MailTextBody;
+import com.codeabovelab.dm.mail.service.PooledSmtpMailSenderBackend;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Test of pooled backend with simple in-process SMTP server.
+ */
+public class PooledSmtpMailSenderBackendTest {
+
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger messages = new AtomicInteger();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private ServerSocket serverSocket;
+
+    @Before
+    public void before() throws Exception {
+        serverSocket = new ServerSocket(0);
+        executor.submit(() -> {
+            while(!serverSocket.isClosed()) {
+                Socket socket = serverSocket.accept();
+                connections.incrementAndGet();
+                executor.submit(() -> {
+                    serve(socket);
+                    return null;
+                });
+            }
+            return null;
+        });
+    }
+
+    @After
+    public void after() throws Exception {
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    private void serve(Socket socket) throws IOException {
+        try(Socket s = socket) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(s.getInputStream(), StandardCharsets.US_ASCII));
+            Writer writer = new OutputStreamWriter(s.getOutputStream(), StandardCharsets.US_ASCII);
+            reply(writer, "220 localhost");
+            String line;
+            while((line = reader.readLine()) != null) {
+                String cmd = line.length() < 4 ? line : line.substring(0, 4).toUpperCase();
+                switch (cmd) {
+                    case "DATA":
+                        reply(writer, "354 end with .");
+                        while(!".".equals(reader.readLine())) {
+                            // skip message
+                        }
+                        messages.incrementAndGet();
+                        reply(writer, "250 ok");
+                        break;
+                    case "QUIT":
+                        reply(writer, "221 bye");
+                        return;
+                    default:
+                        // EHLO, HELO, MAIL, RCPT, RSET, NOOP
+                        reply(writer, "250 ok");
+                }
+            }
+        }
+    }
+
+    private static void reply(Writer writer, String line) throws IOException {
+        writer.write(line);
+        writer.write("\r\n");
+        writer.flush();
+    }
+
+    @Test
+    public void test() throws Exception {
+        JavaMailSenderImpl sender = new JavaMailSenderImpl();
+        sender.setHost("localhost");
+        sender.setPort(serverSocket.getLocalPort());
+        final int poolSize = 2;
+        PooledSmtpMailSenderBackend backend = new PooledSmtpMailSenderBackend(sender, poolSize, 60_000, 10_000);
+        final int count = 20;
+        ExecutorService clients = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for(int i = 0; i < count; ++i) {
+                final int num = i;
+                futures.add(clients.submit(() -> {
+                    MailMessageImpl.Builder b = MailMessageImpl.builder();
+                    b.setHead(MailHeadImpl.builder()
+                      .from("test@test.te")
+                      .subject("test " + num)
+                      .to(Arrays.asList("user@test.te")));
+                    b.setBody(new MailTextBody("testtesttest"));
+                    backend.send(b.build());
+                }));
+            }
+            for(Future<?> future: futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            clients.shutdownNow();
+            backend.destroy();
+        }
+        assertEquals(count, messages.get());
+        assertTrue("Too many connections: " + connections.get(), connections.get() <= poolSize);
+    }
+}
@@ -4,9 +4,11 @@ import com.codeabovelab.dm.mail.configuration.MailServiceConfiguration;
 import com.codeabovelab.dm.mail.dto.MailHead;
 import com.codeabovelab.dm.mail.dto.MailMessage;
 import com.codeabovelab.dm.mail.dto.MailSourceImpl;
+import com.codeabovelab.dm.mail.dto.MailTemplate;
 import com.codeabovelab.dm.mail.dto.MailTextBody;
 import com.codeabovelab.dm.mail.service.MailSenderService;
 import com.codeabovelab.dm.mail.template.MailSourceProcessorService;
+import com.codeabovelab.dm.mail.template.MailTemplateProvider;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -44,6 +46,9 @@ public class TemplateTest {
     @Autowired
     MailSourceProcessorService sourceProcessorService;
 
+    @Autowired
+    MailTemplateProvider templateProvider;
+
 
     @Test
     public void testTemplate() {
@@ -66,6 +71,23 @@ public class TemplateTest {
 
     }
 
+    @Test
+    public void testCachedTemplate() {
+        MailTemplate template = templateProvider.getTemplate("res:welcome");
+        assertThat(templateProvider.getTemplate("res:welcome"), sameInstance(template));
+        // more than threshold of SpEL compiler, so later messages are made by compiled expressions
+        for(int i = 0; i < 150; ++i) {
+            final String name = "Tester" + i;
+            MailSourceImpl source = MailSourceImpl.builder()
+              .templateUri("res:welcome")
+              .addVariable("user", new UserObject(name, "Testerov", "Testerovich", "test@test.te"))
+              .build();
+            MailMessage message = sourceProcessorService.process(source);
+            assertThat(((MailTextBody) message.getBody()).getText(), containsString(name + "!"));
+            assertThat(message.getHead().getSubject(), containsString(name + "!"));
+        }
+    }
+
     public static class UserObject {
         private String name;
         private String surname;
@@ -0,0 +1,58 @@
+package com.codeabovelab.dm.mail.template;
+
+import com.codeabovelab.dm.mail.dto.*;
+import org.apache.velocity.app.VelocityEngine;
+import org.apache.velocity.exception.ParseErrorException;
+import org.junit.Test;
+import org.springframework.util.MimeTypeUtils;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+/**
+ */
+public class VelocityMailTemplateEngineTest {
+
+    private final VelocityMailTemplateEngine engine = createEngine();
+
+    private static VelocityMailTemplateEngine createEngine() {
+        VelocityEngine velocityEngine = new VelocityEngine();
+        velocityEngine.init();
+        return new VelocityMailTemplateEngine(velocityEngine);
+    }
+
+    @Test
+    public void testCreate() {
+        MailTemplate template = template("Hello, $name!");
+        // parsed template is reused, so each message must be merged with own context
+        for(int i = 0; i < 3; ++i) {
+            String name = "Tester" + i;
+            MailMessage message = engine.create(template, MailSourceImpl.builder()
+              .templateUri("res:test")
+              .addVariable("name", name)
+              .addVariable("email", name + "@test.te")
+              .build());
+            assertEquals("Hello, " + name + "!", ((MailTextBody) message.getBody()).getText());
+            assertEquals("Welcome, " + name, message.getHead().getSubject());
+            assertEquals(Collections.singletonList(name + "@test.te"), message.getHead().getTo());
+        }
+    }
+
+    @Test(expected = ParseErrorException.class)
+    public void testParseError() {
+        engine.create(template("#if($name"), MailSourceImpl.builder().templateUri("res:test").build());
+    }
+
+    private static MailTemplate template(String body) {
+        return MailTemplateImpl.builder()
+          .templateEngine(VelocityMailTemplateEngine.ENGINE_ID)
+          .headSource(MailHeadImpl.builder()
+            .from("src@src.src")
+            .subject("Welcome, $name")
+            .to(Collections.singletonList("$email"))
+            .build())
+          .bodySource(new MailPartTemplateText(MimeTypeUtils.TEXT_PLAIN, body))
+          .build();
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.platform.cache;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of single cache. All methods are thread safe and does not block.
+ */
+public final class CacheStatistics {
+    private final String name;
+    private final LongAdder localHits = new LongAdder();
+    private final LongAdder sharedHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder loadTime = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder remoteInvalidations = new LongAdder();
+
+    CacheStatistics(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    void onLocalHit() {
+        localHits.increment();
+    }
+
+    void onSharedHit() {
+        sharedHits.increment();
+    }
+
+    void onMiss() {
+        misses.increment();
+    }
+
+    void onLoad(long nanos) {
+        loads.increment();
+        loadTime.add(nanos);
+    }
+
+    void onEvict() {
+        evictions.increment();
+    }
+
+    void onRemoteInvalidation() {
+        remoteInvalidations.increment();
+    }
+
+    /**
+     * @return count of hits in local (L1) cache
+     */
+    public long getLocalHits() {
+        return localHits.sum();
+    }
+
+    /**
+     * @return count of hits in shared (L2) cache
+     */
+    public long getSharedHits() {
+        return sharedHits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * @return count of values which is loaded after miss
+     */
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    /**
+     * @return average load time in milliseconds
+     */
+    public double getAverageLoadTime() {
+        long count = loads.sum();
+        if(count == 0) {
+            return 0;
+        }
+        return ((double) TimeUnit.NANOSECONDS.toMicros(loadTime.sum()) / count) / 1000d;
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return count of invalidations received from other instances
+     */
+    public long getRemoteInvalidations() {
+        return remoteInvalidations.sum();
+    }
+
+    /**
+     * @return ratio of hits (in any layer) to all requests
+     */
+    public double getHitRatio() {
+        long hits = getLocalHits() + getSharedHits();
+        long all = hits + getMisses();
+        return all == 0 ? 0 : (double) hits / all;
+    }
+
+    /**
+     * Register gauges of this statistics in specified registry.
+     * @param registry registry
+     * @param prefix prefix of metrics names
+     */
+    void register(MetricRegistry registry, String prefix) {
+        String base = MetricRegistry.name(prefix, name);
+        register(registry, base, "localHits", this::getLocalHits);
+        register(registry, base, "sharedHits", this::getSharedHits);
+        register(registry, base, "misses", this::getMisses);
+        register(registry, base, "loads", this::getLoads);
+        register(registry, base, "averageLoadTime", this::getAverageLoadTime);
+        register(registry, base, "hitRatio", this::getHitRatio);
+        register(registry, base, "evictions", this::getEvictions);
+        register(registry, base, "remoteInvalidations", this::getRemoteInvalidations);
+    }
+
+    private static <T> void register(MetricRegistry registry, String base, String name, Gauge<T> gauge) {
+        String fullName = MetricRegistry.name(base, name);
+        // cache may be recreated with same name, so we replace old gauge
+        registry.remove(fullName);
+        registry.register(fullName, gauge);
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStatistics{" +
+          "name='" + name + '\'' +
+          ", localHits=" + getLocalHits() +
+          ", sharedHits=" + getSharedHits() +
+          ", misses=" + getMisses() +
+          ", loads=" + getLoads() +
+          ", averageLoadTime=" + getAverageLoadTime() +
+          '}';
+    }
+}
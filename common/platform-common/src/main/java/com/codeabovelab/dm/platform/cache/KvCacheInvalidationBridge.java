@@ -0,0 +1,252 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.platform.cache;
+
+import com.codeabovelab.dm.common.cache.CacheInvalidation;
+import com.codeabovelab.dm.common.kv.KeyValueStorage;
+import com.codeabovelab.dm.common.kv.KvStorageEvent;
+import com.codeabovelab.dm.common.kv.KvUtils;
+import com.codeabovelab.dm.common.kv.WriteOptions;
+import com.codeabovelab.dm.common.mb.MessageBus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+
+/**
+ * Bridge which transfer invalidation events of {@link LayeredCacheManager} between instances through key value storage.
+ * Evictions are collected during {@link #DEFAULT_DELAY} and then written to '$prefix/cache-invalidation/$cacheName'
+ * key as single batch per cache, so event storm does not produce storm of writes. All instances listen this directory.
+ */
+public class KvCacheInvalidationBridge implements AutoCloseable {
+
+    /**
+     * Batch of invalidated keys of single cache.
+     */
+    static final class Batch {
+        private String cache;
+        private String origin;
+        /**
+         * Keys encoded with its type, see {@link #encodeKey(Object)}. Null mean that whole cache must be cleared.
+         */
+        private List<String> keys;
+
+        public String getCache() {
+            return cache;
+        }
+
+        public void setCache(String cache) {
+            this.cache = cache;
+        }
+
+        public String getOrigin() {
+            return origin;
+        }
+
+        public void setOrigin(String origin) {
+            this.origin = origin;
+        }
+
+        public List<String> getKeys() {
+            return keys;
+        }
+
+        public void setKeys(List<String> keys) {
+            this.keys = keys;
+        }
+    }
+
+    /**
+     * Marker of whole cache invalidation.
+     */
+    private static final Set<String> ALL = Collections.emptySet();
+    static final long DEFAULT_DELAY = 100;
+    static final int MAX_KEYS = 256;
+    private static final Logger LOG = LoggerFactory.getLogger(KvCacheInvalidationBridge.class);
+    private static final long TTL = 60;
+    private final KeyValueStorage storage;
+    private final MessageBus<CacheInvalidation> bus;
+    private final ObjectMapper objectMapper;
+    private final String origin;
+    private final String prefix;
+    private final Consumer<CacheInvalidation> localListener = this::onLocal;
+    private final Consumer<KvStorageEvent> remoteListener = this::onRemote;
+    /**
+     * Pending keys of caches, {@link #ALL} mean that whole cache must be cleared.
+     */
+    private final ConcurrentMap<String, Set<String>> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor;
+    private final long delay;
+
+    /**
+     * @param storage storage
+     * @param bus invalidation bus
+     * @param objectMapper mapper
+     * @param origin id of local cache manager, only its events will be sent to other instances
+     */
+    public KvCacheInvalidationBridge(KeyValueStorage storage,
+                                     MessageBus<CacheInvalidation> bus,
+                                     ObjectMapper objectMapper,
+                                     String origin) {
+        this(storage, bus, objectMapper, origin, DEFAULT_DELAY);
+    }
+
+    KvCacheInvalidationBridge(KeyValueStorage storage,
+                              MessageBus<CacheInvalidation> bus,
+                              ObjectMapper objectMapper,
+                              String origin,
+                              long delay) {
+        Assert.notNull(storage, "storage is null");
+        Assert.notNull(bus, "bus is null");
+        Assert.notNull(objectMapper, "objectMapper is null");
+        Assert.hasText(origin, "origin is null or empty");
+        this.storage = storage;
+        this.bus = bus;
+        this.objectMapper = objectMapper;
+        this.origin = origin;
+        this.delay = delay;
+        this.prefix = KvUtils.join(storage.getPrefix(), "cache-invalidation");
+        this.executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+          .setDaemon(true)
+          .setNameFormat(getClass().getSimpleName() + "-%d")
+          .build());
+        this.bus.subscribe(localListener);
+        this.storage.subscriptions().subscribeOnKey(remoteListener, this.prefix + "*");
+    }
+
+    private void onLocal(CacheInvalidation ci) {
+        if(!origin.equals(ci.getOrigin())) {
+            // it is remote event, or event from different cache manager
+            return;
+        }
+        // we can not serialize complex keys, therefore remote instances clear whole cache
+        final String finalKey = ci.getKey() == null ? null : encodeKey(ci.getKey());
+        boolean[] scheduled = new boolean[1];
+        pending.compute(ci.getCache(), (name, keys) -> {
+            if(keys == null) {
+                scheduled[0] = true;
+                keys = new HashSet<>();
+            }
+            if(keys == ALL) {
+                return keys;
+            }
+            if(finalKey == null || keys.size() >= MAX_KEYS) {
+                // too many keys is cheaper to clear whole cache
+                return ALL;
+            }
+            keys.add(finalKey);
+            return keys;
+        });
+        if(scheduled[0]) {
+            try {
+                executor.schedule(() -> flush(ci.getCache()), delay, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                // bridge is closed
+                pending.remove(ci.getCache());
+            }
+        }
+    }
+
+    /**
+     * Json does not save type of numbers (Long may be read as Integer), and cache does not find entry with key of
+     * other type, therefore we add type to key.
+     * @param key key
+     * @return encoded key or null when key type is not supported
+     */
+    static String encodeKey(Object key) {
+        if(key instanceof String) {
+            return "s:" + key;
+        }
+        if(key instanceof Integer) {
+            return "i:" + key;
+        }
+        if(key instanceof Long) {
+            return "l:" + key;
+        }
+        return null;
+    }
+
+    static Object decodeKey(String encoded) {
+        String value = encoded.substring(2);
+        switch (encoded.substring(0, 2)) {
+            case "s:":
+                return value;
+            case "i:":
+                return Integer.valueOf(value);
+            case "l:":
+                return Long.valueOf(value);
+            default:
+                throw new IllegalArgumentException("Unsupported key: " + encoded);
+        }
+    }
+
+    private void flush(String cache) {
+        Set<String> keys = pending.remove(cache);
+        if(keys == null) {
+            return;
+        }
+        Batch batch = new Batch();
+        batch.setCache(cache);
+        batch.setOrigin(origin);
+        batch.setKeys(keys == ALL ? null : new ArrayList<>(keys));
+        try {
+            String value = objectMapper.writeValueAsString(batch);
+            storage.set(KvUtils.join(prefix, cache), value, WriteOptions.builder().ttl(TTL).build());
+        } catch (Exception e) {
+            LOG.error("Can not send invalidation of {} keys of '{}' cache to other instances.",
+              keys == ALL ? "all" : keys.size(), cache, e);
+        }
+    }
+
+    private void onRemote(KvStorageEvent e) {
+        KvStorageEvent.Crud action = e.getAction();
+        String value = e.getValue();
+        if((action != KvStorageEvent.Crud.CREATE && action != KvStorageEvent.Crud.UPDATE) || value == null) {
+            return;
+        }
+        try {
+            Batch batch = objectMapper.readValue(value, Batch.class);
+            if(origin.equals(batch.getOrigin())) {
+                return;
+            }
+            List<String> keys = batch.getKeys();
+            if(keys == null) {
+                bus.accept(new CacheInvalidation(batch.getCache(), null, batch.getOrigin()));
+                return;
+            }
+            for(String key: keys) {
+                bus.accept(new CacheInvalidation(batch.getCache(), decodeKey(key), batch.getOrigin()));
+            }
+        } catch (Exception ex) {
+            LOG.error("Can not process cache invalidation event: {}", e, ex);
+        }
+    }
+
+    @Override
+    public void close() {
+        this.bus.unsubscribe(localListener);
+        this.storage.subscriptions().unsubscribe(remoteListener);
+        this.executor.shutdownNow();
+        // send rest of invalidations
+        new ArrayList<>(pending.keySet()).forEach(this::flush);
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.platform.cache;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codeabovelab.dm.common.cache.CacheConfig;
+import com.codeabovelab.dm.common.cache.CacheInvalidation;
+import com.codeabovelab.dm.common.cache.ConfigurableCacheManager;
+import com.codeabovelab.dm.common.mb.MessageBus;
+import com.codeabovelab.dm.common.utils.Uuids;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.util.Assert;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Two tier cache manager: in-process (L1) caches in front of shared (L2) caches. <p/>
+ * Evictions are sent to invalidation bus with key, therefore L1 caches of other instances, which is share same L2,
+ * drop only changed entries. Note that bus must be bridged between instances by external code. <p/>
+ * When shared manager is absent it works as single tier in-process cache with key level invalidation.
+ */
+public class LayeredCacheManager implements ConfigurableCacheManager {
+
+    public static final String METRICS_PREFIX = "cache";
+    private static final Logger LOG = LoggerFactory.getLogger(LayeredCacheManager.class);
+
+    private final ConfigurableCacheManager local;
+    private final ConfigurableCacheManager shared;
+    private final MessageBus<CacheInvalidation> bus;
+    private final MetricRegistry metricRegistry;
+    private final String origin;
+    private final ConcurrentMap<String, LayeredCache> caches = new ConcurrentHashMap<>();
+
+    /**
+     * @param local manager of in-process caches
+     * @param shared manager of shared caches, may be null
+     * @param bus bus for invalidation events, may be null
+     * @param metricRegistry registry for cache statistics, may be null
+     */
+    public LayeredCacheManager(ConfigurableCacheManager local,
+                               ConfigurableCacheManager shared,
+                               MessageBus<CacheInvalidation> bus,
+                               MetricRegistry metricRegistry) {
+        Assert.notNull(local, "local is null");
+        this.local = local;
+        this.shared = shared;
+        this.bus = bus;
+        this.metricRegistry = metricRegistry;
+        this.origin = Uuids.longUid();
+        if(this.bus != null) {
+            this.bus.subscribe(this::onInvalidation);
+        }
+    }
+
+    @Override
+    public CacheConfig getDefaultConfiguration() {
+        return local.getDefaultConfiguration();
+    }
+
+    @Override
+    public Cache getCache(CacheConfig config) {
+        return getCache(config.getName(), (m) -> m.getCache(config));
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        return getCache(name, (m) -> m.getCache(name));
+    }
+
+    private LayeredCache getCache(String name, Function<ConfigurableCacheManager, Cache> factory) {
+        return caches.computeIfAbsent(name, (n) -> {
+            LayeredCache cache = new LayeredCache(factory.apply(local), shared == null ? null : factory.apply(shared));
+            if(metricRegistry != null) {
+                cache.statistics.register(metricRegistry, METRICS_PREFIX);
+            }
+            return cache;
+        });
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return new HashSet<>(caches.keySet());
+    }
+
+    /**
+     * Statistics of specified cache.
+     * @param name name of cache
+     * @return statistics or null when cache is not exists
+     */
+    public CacheStatistics getStatistics(String name) {
+        LayeredCache cache = caches.get(name);
+        return cache == null ? null : cache.statistics;
+    }
+
+    /**
+     * Id of this manager in invalidation events.
+     * @return non null string
+     */
+    public String getOrigin() {
+        return origin;
+    }
+
+    private void onInvalidation(CacheInvalidation ci) {
+        if(origin.equals(ci.getOrigin())) {
+            return;
+        }
+        LayeredCache cache = caches.get(ci.getCache());
+        if(cache == null) {
+            return;
+        }
+        cache.statistics.onRemoteInvalidation();
+        Object key = ci.getKey();
+        if(key == null) {
+            cache.local.clear();
+        } else {
+            cache.local.evict(key);
+        }
+    }
+
+    private void publish(String name, Object key) {
+        if(bus == null) {
+            return;
+        }
+        try {
+            bus.accept(new CacheInvalidation(name, key, origin));
+        } catch (Exception e) {
+            LOG.error("Can not publish invalidation of '{}' key in '{}' cache.", key, name, e);
+        }
+    }
+
+    private final class LayeredCache implements Cache {
+        private final Cache local;
+        private final Cache shared;
+        private final CacheStatistics statistics;
+        // time of miss, it used for compute time of value loaded by caller, it is cleared on next put or hit
+        private final ThreadLocal<Long> missTime = new ThreadLocal<>();
+
+        LayeredCache(Cache local, Cache shared) {
+            if(shared != null) {
+                Assert.isTrue(Objects.equals(local.getName(), shared.getName()),
+                  "Different names of caches: local=" + local.getName() + " shared=" + shared.getName());
+            }
+            this.local = local;
+            this.shared = shared;
+            this.statistics = new CacheStatistics(local.getName());
+        }
+
+        @Override
+        public String getName() {
+            return local.getName();
+        }
+
+        @Override
+        public Object getNativeCache() {
+            return this;
+        }
+
+        @Override
+        public ValueWrapper get(Object key) {
+            ValueWrapper wrapper = lookup(key);
+            if(wrapper != null) {
+                missTime.remove();
+                return wrapper;
+            }
+            // spring call put() after load of missed value
+            missTime.set(System.nanoTime());
+            return null;
+        }
+
+        private ValueWrapper lookup(Object key) {
+            ValueWrapper wrapper = local.get(key);
+            if(wrapper != null) {
+                statistics.onLocalHit();
+                return wrapper;
+            }
+            if(shared != null) {
+                wrapper = shared.get(key);
+                if(wrapper != null) {
+                    statistics.onSharedHit();
+                    local.put(key, wrapper.get());
+                    return wrapper;
+                }
+            }
+            statistics.onMiss();
+            return null;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public <T> T get(Object key, Class<T> type) {
+            ValueWrapper wrapper = get(key);
+            if(wrapper == null) {
+                return null;
+            }
+            Object value = wrapper.get();
+            if(type == null) {
+                return (T) value;
+            }
+            return type.cast(value);
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public <T> T get(Object key, Callable<T> valueLoader) {
+            ValueWrapper wrapper = lookup(key);
+            if(wrapper != null) {
+                return (T) wrapper.get();
+            }
+            long begin = System.nanoTime();
+            T value;
+            try {
+                value = valueLoader.call();
+            } catch (Exception e) {
+                throw new ValueRetrievalException(key, valueLoader, e);
+            }
+            statistics.onLoad(System.nanoTime() - begin);
+            store(key, value);
+            return value;
+        }
+
+        @Override
+        public void put(Object key, Object value) {
+            Long begin = missTime.get();
+            if(begin != null) {
+                missTime.remove();
+                statistics.onLoad(System.nanoTime() - begin);
+            }
+            store(key, value);
+        }
+
+        private void store(Object key, Object value) {
+            if(shared != null) {
+                shared.put(key, value);
+            }
+            local.put(key, value);
+        }
+
+        @Override
+        public ValueWrapper putIfAbsent(Object key, Object value) {
+            if(shared == null) {
+                return local.putIfAbsent(key, value);
+            }
+            ValueWrapper old = shared.putIfAbsent(key, value);
+            if(old == null) {
+                local.put(key, value);
+            } else {
+                local.put(key, old.get());
+            }
+            return old;
+        }
+
+        @Override
+        public void evict(Object key) {
+            statistics.onEvict();
+            if(shared != null) {
+                shared.evict(key);
+            }
+            local.evict(key);
+            publish(getName(), key);
+        }
+
+        @Override
+        public void clear() {
+            if(shared != null) {
+                shared.clear();
+            }
+            local.clear();
+            publish(getName(), null);
+        }
+
+        @Override
+        public String toString() {
+            return "LayeredCache{" +
+              "name=" + getName() +
+              '}';
+        }
+    }
+}
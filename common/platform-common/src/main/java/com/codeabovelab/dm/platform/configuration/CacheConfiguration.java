@@ -16,10 +16,14 @@
 
 package com.codeabovelab.dm.platform.configuration;
 
-import com.codeabovelab.dm.common.cache.CacheConfig;
-import com.codeabovelab.dm.common.cache.CacheManagerProperties;
-import com.codeabovelab.dm.common.cache.DmCachingConfigurer;
+import com.codahale.metrics.MetricRegistry;
+import com.codeabovelab.dm.common.cache.*;
+import com.codeabovelab.dm.common.mb.MessageBus;
+import com.codeabovelab.dm.common.mb.MessageBuses;
 import com.codeabovelab.dm.platform.cache.ConfigurableGuavaCacheManager;
+import com.codeabovelab.dm.platform.cache.LayeredCacheManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
@@ -33,10 +37,13 @@ import org.springframework.context.annotation.Primary;
 @EnableCaching
 @Configuration
 @ComponentScan(basePackageClasses = {DmCachingConfigurer.class})
-@EnableConfigurationProperties({CacheConfiguration.LocalCacheManagerProperties.class, CacheConfiguration.DistributedCacheManagerProperties.class})
+@EnableConfigurationProperties({CacheConfiguration.LocalCacheManagerProperties.class,
+  CacheConfiguration.DistributedCacheManagerProperties.class,
+  CacheConfiguration.LayeredCacheManagerProperties.class})
 public class CacheConfiguration {
 
     public static final String DISTRIBUTED_CACHE_MANAGER = "distributedCacheManager";
+    public static final String LAYERED_CACHE_MANAGER = "layeredCacheManager";
 
     @ConfigurationProperties("cache.localCacheManager")
     static class LocalCacheManagerProperties extends CacheManagerProperties {  }
@@ -44,12 +51,22 @@ public class CacheConfiguration {
     @ConfigurationProperties("cache.distributedCacheManager")
     static class DistributedCacheManagerProperties extends CacheManagerProperties { }
 
+    @ConfigurationProperties("cache.layeredCacheManager")
+    static class LayeredCacheManagerProperties extends CacheManagerProperties { }
+
     /**
      * default expiration time (by default cache is disabled)
      */
     @Value("${default.cache.expiration:0}") //milliseconds
     private Long defaultExpiration;
 
+    @Autowired(required = false)
+    @Qualifier(DISTRIBUTED_CACHE_MANAGER)
+    private CacheManager distributedCacheManager;
+
+    @Autowired(required = false)
+    private MetricRegistry metricRegistry;
+
     /**
      * Redis cache
      * @param properties
@@ -80,6 +97,35 @@ public class CacheConfiguration {
         return cacheManager;
     }
 
+    @Bean(name = CacheInvalidation.BUS)
+    public MessageBus<CacheInvalidation> cacheInvalidationBus() {
+        return MessageBuses.create(CacheInvalidation.BUS, CacheInvalidation.class);
+    }
+
+    /**
+     * Two tier cache: local (guava) in front of distributed cache. When distributed cache manager is absent
+     * then only local layer is used, and consistency between instances is provided by invalidation bus. <p/>
+     * Note that redis bean of {@link #DISTRIBUTED_CACHE_MANAGER} is disabled now, so without custom bean of this
+     * name cached values are not shared: each instance loads its own values and only invalidations are sent
+     * to other instances.
+     * @param properties
+     * @param bus
+     * @return
+     */
+    @Bean(name = LAYERED_CACHE_MANAGER)
+    public LayeredCacheManager layeredCacheManager(LayeredCacheManagerProperties properties,
+                                                   @Qualifier(CacheInvalidation.BUS) MessageBus<CacheInvalidation> bus) {
+        CacheConfig defaultConfig = configureDefault(properties).build();
+        ConfigurableCacheManager shared = null;
+        if(distributedCacheManager instanceof ConfigurableCacheManager) {
+            shared = (ConfigurableCacheManager) distributedCacheManager;
+        }
+        LayeredCacheManager cacheManager = new LayeredCacheManager(new ConfigurableGuavaCacheManager(defaultConfig),
+          shared, bus, metricRegistry);
+        properties.configureCaches(cacheManager);
+        return cacheManager;
+    }
+
     private CacheConfig.Builder configureDefault(CacheManagerProperties properties) {
         CacheConfig.Builder builder = CacheConfig.builder();
         builder.from(properties);
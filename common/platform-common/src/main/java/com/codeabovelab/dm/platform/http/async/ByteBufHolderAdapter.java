@@ -38,6 +38,11 @@ class ByteBufHolderAdapter implements ChunkedInputStream.Adapter<ByteBufHolder>
         chunk.release();
     }
 
+    @Override
+    public int size(ByteBufHolder chunk) {
+        return chunk.content().readableBytes();
+    }
+
     @Override
     public int readByte(ByteBufHolder chunk) {
         ByteBuf buf = chunk.content();
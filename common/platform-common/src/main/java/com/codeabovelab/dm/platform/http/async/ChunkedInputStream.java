@@ -22,13 +22,17 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Input stream which wrap queue of chunks. You can add chunks in any time through {@link #add(Object)},
- * when no more chunks expected you may invoke {@link #end()} which mark that end of stream, but not close it.
+ * when no more chunks expected you may invoke {@link #end()} which mark that end of stream, but not close it. <p/>
+ * Stream may be bounded by count of buffered bytes: when it greater than high watermark the producer is suspended
+ * through {@link FlowListener#onSuspend()}, and resumed when consumer read it below low watermark.
  */
 public class ChunkedInputStream<T> extends InputStream {
 
@@ -57,6 +61,40 @@ public class ChunkedInputStream<T> extends InputStream {
          * @throws IOException
          */
         int readBytes(T chunk, byte[] arr, int off, int len);
+
+        /**
+         * Size of chunk, it used for count of buffered bytes, so must be invoked before any read.
+         * @param chunk
+         * @return count of bytes in chunk
+         */
+        default int size(T chunk) {
+            return 0;
+        }
+    }
+
+    /**
+     * Listener which control producer of chunks. Note that it may be invoked from producer and from consumer threads.
+     */
+    public interface FlowListener {
+        /**
+         * Invoked when buffered bytes reach high watermark, producer must stop adding of chunks.
+         */
+        void onSuspend();
+
+        /**
+         * Invoked when buffered bytes dropped below low watermark, or stream is closed.
+         */
+        void onResume();
+    }
+
+    private static final class Chunk<T> {
+        private final T value;
+        private final int size;
+
+        Chunk(T value, int size) {
+            this.value = value;
+            this.size = size;
+        }
     }
 
     public static final int EOF = -1;
@@ -65,16 +103,53 @@ public class ChunkedInputStream<T> extends InputStream {
     private final BlockingQueue<Object> queue = new LinkedBlockingQueue<>();
     private volatile boolean closed;
     private volatile boolean end;
-    private final AtomicReference<T> currentRef = new AtomicReference<>();
+    private final AtomicReference<Chunk<T>> currentRef = new AtomicReference<>();
+    private final long lowWatermark;
+    private final long highWatermark;
+    private final FlowListener flowListener;
+    private final StreamStatistics statistics;
+    private final AtomicLong buffered = new AtomicLong();
+    /**
+     * guard change of 'suspended' flag together with call of flow listener, otherwise resume which happened between
+     * them is lost and producer stay suspended forever. Listener must not block.
+     */
+    private final Object flowLock = new Object();
+    private volatile boolean suspended;
+    private volatile long suspendTime;
+    private final AtomicLong stallTime = new AtomicLong();
     /**
      * we can use lock only for 'read' methods, other uses may produce deadlocks
      */
     private final Lock lock = new ReentrantLock();
 
 
+    /**
+     * Create unbounded stream.
+     * @param adapter adapter of chunks
+     */
     public ChunkedInputStream(Adapter<T> adapter) {
+        this(adapter, 0, 0, null, null);
+    }
+
+    /**
+     * Create stream which suspend producer when count of buffered bytes reach high watermark.
+     * @param adapter adapter of chunks, it must provide {@link Adapter#size(Object)}
+     * @param lowWatermark count of buffered bytes below that producer will be resumed
+     * @param highWatermark count of buffered bytes above that producer will be suspended, zero for unbounded stream
+     * @param flowListener listener which suspend and resume producer, may be null when highWatermark is zero
+     * @param statistics shared statistics or null
+     */
+    public ChunkedInputStream(Adapter<T> adapter, long lowWatermark, long highWatermark,
+                              FlowListener flowListener, StreamStatistics statistics) {
         Assert.notNull(adapter, "adapter is null");
+        Assert.isTrue(lowWatermark >= 0 && lowWatermark <= highWatermark, "Invalid watermarks: low=" + lowWatermark
+          + ", high=" + highWatermark);
+        Assert.isTrue(highWatermark == 0 || flowListener != null, "flowListener is null");
         this.adapter = adapter;
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        this.flowListener = flowListener;
+        this.statistics = statistics;
     }
 
     public void add(T chunk) {
@@ -83,7 +158,82 @@ public class ChunkedInputStream<T> extends InputStream {
         }
         Assert.notNull(chunk);
         this.adapter.onAdd(chunk);
-        queue.add(chunk);
+        int size = this.adapter.size(chunk);
+        queue.add(new Chunk<>(chunk, size));
+        long curr = onBuffered(size);
+        if(highWatermark > 0 && curr > highWatermark && !suspended) {
+            suspend();
+            // consumer may read all data before we set flag
+            resumeIfNeed();
+        }
+    }
+
+    private void suspend() {
+        synchronized (flowLock) {
+            if(suspended || closed || buffered.get() <= highWatermark) {
+                return;
+            }
+            suspended = true;
+            suspendTime = System.nanoTime();
+            if(statistics != null) {
+                statistics.onSuspend();
+            }
+            flowListener.onSuspend();
+        }
+    }
+
+    private long onBuffered(int delta) {
+        if(delta == 0) {
+            return buffered.get();
+        }
+        if(statistics != null) {
+            statistics.onBuffered(delta);
+        }
+        return buffered.addAndGet(delta);
+    }
+
+    private void resumeIfNeed() {
+        if(suspended) {
+            resume();
+        }
+    }
+
+    private void resume() {
+        synchronized (flowLock) {
+            // check under lock, because buffer may be filled again before we acquire it
+            if(!suspended || !(closed || buffered.get() <= lowWatermark)) {
+                return;
+            }
+            suspended = false;
+            long nanos = System.nanoTime() - suspendTime;
+            stallTime.addAndGet(nanos);
+            if(statistics != null) {
+                statistics.onResume(nanos);
+            }
+            flowListener.onResume();
+        }
+    }
+
+    /**
+     * @return count of bytes which is added but not read yet
+     */
+    public long getBufferedBytes() {
+        return buffered.get();
+    }
+
+    /**
+     * @return summary time in milliseconds during that producer of this stream was suspended
+     */
+    public long getStallTime() {
+        long nanos = stallTime.get();
+        if(suspended) {
+            nanos += System.nanoTime() - suspendTime;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    public boolean isSuspended() {
+        return suspended;
     }
 
     /**
@@ -165,26 +315,28 @@ public class ChunkedInputStream<T> extends InputStream {
         if(end) {
             return null;
         }
-        T curr = this.currentRef.get();
+        Chunk<T> curr = this.currentRef.get();
         if(curr == null) {
             Object obj = queue.take();
             if(obj == END) {
                 this.end = true;
                 return null;
             }
-            curr = (T) obj;
+            curr = (Chunk<T>) obj;
             this.currentRef.set(curr);
         }
-        return curr;
+        return curr.value;
     }
 
     /**
      * releaseCurrent can be called out of lock
      */
     private void releaseCurrent() {
-        T old = this.currentRef.getAndSet(null);
+        Chunk<T> old = this.currentRef.getAndSet(null);
         if(old != null) {
-            adapter.onRemove(old);
+            adapter.onRemove(old.value);
+            onBuffered(-old.size);
+            resumeIfNeed();
         }
     }
 
@@ -198,12 +350,16 @@ public class ChunkedInputStream<T> extends InputStream {
         this.closed = true;
         super.close();
         releaseCurrent();
-        for(Object chunk: queue) {
-            if(chunk == END) {
+        for(Object obj: queue) {
+            if(obj == END) {
                 continue;
             }
-            adapter.onRemove((T) chunk);
+            Chunk<T> chunk = (Chunk<T>) obj;
+            adapter.onRemove(chunk.value);
+            onBuffered(-chunk.size);
         }
         queue.clear();
+        // producer must not stay suspended after close, because it can not detect end of connection
+        resumeIfNeed();
     }
 }
@@ -16,11 +16,13 @@
 
 package com.codeabovelab.dm.platform.http.async;
 
-import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.ByteBufOutputStream;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.*;
+import io.netty.channel.pool.ChannelPool;
 import io.netty.handler.codec.http.*;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import io.netty.util.concurrent.FutureListener;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.client.AsyncClientHttpRequest;
@@ -36,6 +38,7 @@ import java.net.URI;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 /**
  * We create our implementation based on {@link org.springframework.http.client.Netty4ClientHttpRequest }
@@ -44,7 +47,7 @@ import java.util.concurrent.ExecutionException;
 class NettyRequest implements ClientHttpRequest, AsyncClientHttpRequest {
     private final HttpHeaders headers = new HttpHeaders();
 
-    private final Bootstrap bootstrap;
+    private final ChannelPool pool;
 
     private final URI uri;
 
@@ -52,10 +55,13 @@ class NettyRequest implements ClientHttpRequest, AsyncClientHttpRequest {
 
     private final ByteBufOutputStream body;
 
+    private final NettyRequestFactory factory;
+
     private boolean executed = false;
 
-    NettyRequest(Bootstrap bootstrap, URI uri, HttpMethod method) {
-        this.bootstrap = bootstrap;
+    NettyRequest(NettyRequestFactory factory, ChannelPool pool, URI uri, HttpMethod method) {
+        this.factory = factory;
+        this.pool = pool;
         this.uri = uri;
         this.method = method;
         this.body = new ByteBufOutputStream(Unpooled.buffer(1024));
@@ -106,19 +112,35 @@ class NettyRequest implements ClientHttpRequest, AsyncClientHttpRequest {
     protected ListenableFuture<ClientHttpResponse> executeInternal(final HttpHeaders headers) throws IOException {
         final SettableListenableFuture<ClientHttpResponse> responseFuture = new SettableListenableFuture<>();
 
-        ChannelFutureListener connectionListener = future -> {
+        FutureListener<Channel> acquireListener = future -> {
             if (future.isSuccess()) {
-                Channel channel = future.channel();
-                channel.pipeline().addLast(new NettyResponseHandler(responseFuture));
+                Channel channel = future.getNow();
+                if (responseFuture.isDone()) {
+                    // request was cancelled while we wait for channel
+                    pool.release(channel);
+                    return;
+                }
+                NettyResponseHandler handler = new NettyResponseHandler(responseFuture, pool, channel, factory);
+                ChannelPipeline pipeline = channel.pipeline();
+                int readTimeout = factory.getReadTimeout();
+                if (readTimeout > 0) {
+                    pipeline.addLast(NettyResponseHandler.READ_TIMEOUT, new ReadTimeoutHandler(readTimeout, TimeUnit.MILLISECONDS));
+                }
+                pipeline.addLast(NettyResponseHandler.NAME, handler);
                 FullHttpRequest nettyRequest = createFullHttpRequest(headers);
-                channel.writeAndFlush(nettyRequest);
+                channel.writeAndFlush(nettyRequest).addListener((ChannelFutureListener) writeFuture -> {
+                    if (!writeFuture.isSuccess()) {
+                        // handler also receive this exception and release channel
+                        writeFuture.channel().pipeline().fireExceptionCaught(writeFuture.cause());
+                    }
+                });
             }
             else {
                 responseFuture.setException(future.cause());
             }
         };
 
-        this.bootstrap.connect(this.uri.getHost(), getPort(this.uri)).addListener(connectionListener);
+        this.pool.acquire().addListener(acquireListener);
 
         return responseFuture;
     }
@@ -140,7 +162,7 @@ class NettyRequest implements ClientHttpRequest, AsyncClientHttpRequest {
         }
     }
 
-    private static int getPort(URI uri) {
+    static int getPort(URI uri) {
         int port = uri.getPort();
         if (port == -1) {
             if ("http".equalsIgnoreCase(uri.getScheme())) {
@@ -161,7 +183,11 @@ class NettyRequest implements ClientHttpRequest, AsyncClientHttpRequest {
 
         io.netty.handler.codec.http.HttpHeaders nettyHeaders = nettyRequest.headers();
         nettyHeaders.set(HttpHeaders.HOST, this.uri.getHost());
-        nettyHeaders.set(HttpHeaders.CONNECTION, "close");
+        nettyHeaders.set(HttpHeaders.CONNECTION, factory.isKeepAlive()? HttpHeaderValues.KEEP_ALIVE : HttpHeaderValues.CLOSE);
+        if (!headers.containsKey(HttpHeaders.CONTENT_LENGTH)) {
+            // without length server can not find end of request on persistent connection
+            nettyHeaders.set(HttpHeaders.CONTENT_LENGTH, this.body.buffer().readableBytes());
+        }
 
         for (Map.Entry<String, List<String>> entry : headers.entrySet()) {
             nettyHeaders.add(entry.getKey(), entry.getValue());
@@ -17,16 +17,17 @@
 package com.codeabovelab.dm.platform.http.async;
 
 import io.netty.bootstrap.Bootstrap;
-import io.netty.channel.ChannelInitializer;
-import io.netty.channel.ChannelPipeline;
-import io.netty.channel.EventLoopGroup;
+import io.netty.channel.*;
 import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.pool.*;
 import io.netty.channel.socket.SocketChannelConfig;
 import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.http.HttpClientCodec;
 import io.netty.handler.ssl.SslContext;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
 import io.netty.handler.timeout.ReadTimeoutHandler;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.http.HttpMethod;
@@ -34,20 +35,32 @@ import org.springframework.http.client.*;
 import org.springframework.util.Assert;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.URI;
 import java.util.concurrent.TimeUnit;
 
 /**
  * We create our factory implementation based on {@link org.springframework.http.client.Netty4ClientHttpRequestFactory }
- * due to need consume of endless stream with "TransferEncoding: chunked", which default implementation does not allow.
+ * due to need consume of endless stream with "TransferEncoding: chunked", which default implementation does not allow. <p/>
+ * Connections are kept alive in per host pools, which limit count of connections and close idle connections.
+ * Usually one factory must be shared between many clients.
  */
 public class NettyRequestFactory implements ClientHttpRequestFactory,
   AsyncClientHttpRequestFactory, InitializingBean, DisposableBean {
 
-    private final EventLoopGroup eventLoopGroup;
+    /**
+     * Event loop which is shared by all factories created without explicit group, it never shutdown,
+     * therefore use daemon threads.
+     */
+    private static final class SharedEventLoopGroup {
+        private static final EventLoopGroup INSTANCE = new NioEventLoopGroup(Runtime.getRuntime().availableProcessors() * 2,
+          new DefaultThreadFactory("netty-http-client", true));
+    }
 
-    private final boolean defaultEventLoopGroup;
+    private static final String HANDLER_IDLE = "idle";
+    private static final String HANDLER_IDLE_CLOSER = "idleCloser";
 
+    private final EventLoopGroup eventLoopGroup;
 
     private SslContext sslContext;
 
@@ -55,17 +68,32 @@ public class NettyRequestFactory implements ClientHttpRequestFactory,
 
     private int readTimeout = -1;
 
+    private boolean keepAlive = true;
+
+    private int maxConnectionsPerHost = 64;
+
+    private int maxPendingAcquires = 1024;
+
+    private long acquireTimeout = 30_000;
+
+    private long idleTimeout = 60_000;
+
+    private long lowWatermark = 256 * 1024;
+
+    private long highWatermark = 1024 * 1024;
+
+    private final StreamStatistics statistics = new StreamStatistics();
+
     private volatile Bootstrap bootstrap;
 
+    private volatile ChannelPoolMap<InetSocketAddress, ChannelPool> pools;
+
 
     /**
-     * Create a new {@code Netty4ClientHttpRequestFactory} with a default
-     * {@link NioEventLoopGroup}.
+     * Create a new {@code NettyRequestFactory} with a process wide shared {@link NioEventLoopGroup}.
      */
     public NettyRequestFactory() {
-        int ioWorkerCount = Runtime.getRuntime().availableProcessors() * 2;
-        this.eventLoopGroup = new NioEventLoopGroup(ioWorkerCount);
-        this.defaultEventLoopGroup = true;
+        this.eventLoopGroup = SharedEventLoopGroup.INSTANCE;
     }
 
     /**
@@ -78,7 +106,15 @@ public class NettyRequestFactory implements ClientHttpRequestFactory,
     public NettyRequestFactory(EventLoopGroup eventLoopGroup) {
         Assert.notNull(eventLoopGroup, "EventLoopGroup must not be null");
         this.eventLoopGroup = eventLoopGroup;
-        this.defaultEventLoopGroup = false;
+    }
+
+    /**
+     * Process wide event loop, other non blocking clients may use it instead of creating own threads.
+     * It must not be shutdown.
+     * @return shared event loop
+     */
+    public static EventLoopGroup getSharedEventLoopGroup() {
+        return SharedEventLoopGroup.INSTANCE;
     }
 
     public int getConnectTimeout() {
@@ -98,6 +134,10 @@ public class NettyRequestFactory implements ClientHttpRequestFactory,
         this.sslContext = sslContext;
     }
 
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
     /**
      * Set the underlying URLConnection's read timeout (in milliseconds).
      * A timeout value of 0 specifies an infinite timeout.
@@ -107,31 +147,133 @@ public class NettyRequestFactory implements ClientHttpRequestFactory,
         this.readTimeout = readTimeout;
     }
 
+    public boolean isKeepAlive() {
+        return keepAlive;
+    }
+
+    /**
+     * Reuse connections for subsequent requests. Default true.
+     * @param keepAlive
+     */
+    public void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    public int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    /**
+     * Max count of simultaneously opened connections to one host, requests above this limit wait for free connection.
+     * Note that streaming requests (logs, events and etc.) hold connection until end of stream. Default 64.
+     * @param maxConnectionsPerHost
+     */
+    public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    public int getMaxPendingAcquires() {
+        return maxPendingAcquires;
+    }
+
+    /**
+     * Max count of requests which wait for free connection to one host. Default 1024.
+     * @param maxPendingAcquires
+     */
+    public void setMaxPendingAcquires(int maxPendingAcquires) {
+        this.maxPendingAcquires = maxPendingAcquires;
+    }
+
+    public long getAcquireTimeout() {
+        return acquireTimeout;
+    }
+
+    /**
+     * Time in milliseconds which request may wait for free connection. Default 30 seconds.
+     * @param acquireTimeout
+     */
+    public void setAcquireTimeout(long acquireTimeout) {
+        this.acquireTimeout = acquireTimeout;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Time in milliseconds after that unused connection is closed. Default 60 seconds.
+     * @param idleTimeout
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public long getLowWatermark() {
+        return lowWatermark;
+    }
+
+    /**
+     * Count of buffered bytes of response below that reading from connection is resumed. Default 256 KiB.
+     * @param lowWatermark
+     */
+    public void setLowWatermark(long lowWatermark) {
+        this.lowWatermark = lowWatermark;
+    }
+
+    public long getHighWatermark() {
+        return highWatermark;
+    }
+
+    /**
+     * Count of buffered bytes of response above that reading from connection is suspended until consumer read
+     * buffered data. Zero disable limit. Default 1 MiB.
+     * @param highWatermark
+     */
+    public void setHighWatermark(long highWatermark) {
+        this.highWatermark = highWatermark;
+    }
+
+    /**
+     * Read side statistics of all responses created by this factory.
+     * @return statistics
+     */
+    public StreamStatistics getStatistics() {
+        return statistics;
+    }
+
     private Bootstrap getBootstrap() {
         if (this.bootstrap == null) {
             Bootstrap bootstrap = new Bootstrap();
-            bootstrap.group(this.eventLoopGroup).channel(NioSocketChannel.class)
-              .handler(new ChannelInitializer<SocketChannel>() {
-                  @Override
-                  protected void initChannel(SocketChannel channel) throws Exception {
-                      configureChannel(channel.config());
-                      ChannelPipeline pipeline = channel.pipeline();
-                      if (sslContext != null) {
-                          pipeline.addLast(sslContext.newHandler(channel.alloc()));
-                      }
-                      pipeline.addLast(new HttpClientCodec());
-                      //pipeline.addLast(new HttpObjectAggregator(maxResponseSize));
-                      if (readTimeout > 0) {
-                          pipeline.addLast(new ReadTimeoutHandler(readTimeout,
-                            TimeUnit.MILLISECONDS));
-                      }
-                  }
-              });
+            bootstrap.group(this.eventLoopGroup).channel(NioSocketChannel.class);
             this.bootstrap = bootstrap;
         }
         return this.bootstrap;
     }
 
+    private ChannelPoolMap<InetSocketAddress, ChannelPool> getPools() {
+        if(this.pools == null) {
+            synchronized (this) {
+                if(this.pools == null) {
+                    Bootstrap bootstrap = getBootstrap();
+                    this.pools = new AbstractChannelPoolMap<InetSocketAddress, ChannelPool>() {
+                        @Override
+                        protected ChannelPool newPool(InetSocketAddress key) {
+                            return new FixedChannelPool(bootstrap.clone().remoteAddress(key),
+                              new PoolHandler(),
+                              ChannelHealthChecker.ACTIVE,
+                              FixedChannelPool.AcquireTimeoutAction.FAIL,
+                              acquireTimeout,
+                              maxConnectionsPerHost,
+                              maxPendingAcquires,
+                              true);
+                        }
+                    };
+                }
+            }
+        }
+        return this.pools;
+    }
+
     /**
      * Template method for changing properties on the given {@link SocketChannelConfig}.
      * <p>The default implementation sets the connect timeout based on the set property.
@@ -145,7 +287,7 @@ public class NettyRequestFactory implements ClientHttpRequestFactory,
 
     @Override
     public void afterPropertiesSet() {
-        getBootstrap();
+        getPools();
     }
 
 
@@ -160,17 +302,64 @@ public class NettyRequestFactory implements ClientHttpRequestFactory,
     }
 
     private NettyRequest createRequestInternal(URI uri, HttpMethod httpMethod) {
-        return new NettyRequest(getBootstrap(), uri, httpMethod);
+        // unresolved address does not block caller on name resolution, it will be resolved by netty
+        InetSocketAddress address = InetSocketAddress.createUnresolved(uri.getHost(), NettyRequest.getPort(uri));
+        ChannelPool pool = getPools().get(address);
+        return new NettyRequest(this, pool, uri, httpMethod);
     }
 
 
     @Override
-    public void destroy() throws InterruptedException {
-        if (this.defaultEventLoopGroup) {
-            // Clean up the EventLoopGroup if we created it in the constructor
-            this.eventLoopGroup.shutdownGracefully().sync();
+    public void destroy() {
+        ChannelPoolMap<InetSocketAddress, ChannelPool> pools = this.pools;
+        if(pools instanceof AbstractChannelPoolMap) {
+            ((AbstractChannelPoolMap) pools).close();
         }
     }
 
-}
+    private final class PoolHandler extends AbstractChannelPoolHandler {
 
+        @Override
+        public void channelCreated(Channel channel) throws Exception {
+            configureChannel((SocketChannelConfig) channel.config());
+            ChannelPipeline pipeline = channel.pipeline();
+            if (sslContext != null) {
+                pipeline.addLast(sslContext.newHandler(channel.alloc()));
+            }
+            pipeline.addLast(new HttpClientCodec());
+            //pipeline.addLast(new HttpObjectAggregator(maxResponseSize));
+        }
+
+        @Override
+        public void channelAcquired(Channel channel) throws Exception {
+            ChannelPipeline pipeline = channel.pipeline();
+            if(pipeline.get(HANDLER_IDLE) != null) {
+                pipeline.remove(HANDLER_IDLE);
+                pipeline.remove(HANDLER_IDLE_CLOSER);
+            }
+        }
+
+        @Override
+        public void channelReleased(Channel channel) throws Exception {
+            if(idleTimeout <= 0 || !channel.isActive()) {
+                return;
+            }
+            ChannelPipeline pipeline = channel.pipeline();
+            if(pipeline.get(HANDLER_IDLE) != null) {
+                return;
+            }
+            pipeline.addLast(HANDLER_IDLE, new IdleStateHandler(0, 0, idleTimeout, TimeUnit.MILLISECONDS));
+            pipeline.addLast(HANDLER_IDLE_CLOSER, new ChannelInboundHandlerAdapter() {
+                @Override
+                public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+                    if(evt instanceof IdleStateEvent) {
+                        // closed channel will be removed from pool by health checker
+                        ctx.close();
+                        return;
+                    }
+                    super.userEventTriggered(ctx, evt);
+                }
+            });
+        }
+    }
+}
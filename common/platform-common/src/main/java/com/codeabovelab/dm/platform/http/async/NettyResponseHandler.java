@@ -16,45 +16,140 @@
 
 package com.codeabovelab.dm.platform.http.async;
 
-import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
 import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.pool.ChannelPool;
 import io.netty.handler.codec.http.*;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.client.ClientHttpResponse;
 import org.springframework.util.concurrent.SettableListenableFuture;
 
 import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
+ * Handler of one request-response exchange on pooled channel. It return channel into pool after response
+ * was fully read and closed, or close channel when it can not be reused.
  */
+@Slf4j
 class NettyResponseHandler extends SimpleChannelInboundHandler<HttpObject> {
 
+    static final String NAME = "responseHandler";
+    static final String READ_TIMEOUT = "readTimeout";
+
     private final SettableListenableFuture<ClientHttpResponse> responseFuture;
-    private final ChunkedInputStream<ByteBufHolder> in = new ChunkedInputStream<>(ByteBufHolderAdapter.INSTANCE);
+    private final ChunkedInputStream<ByteBufHolder> in;
+    private final ChannelPool pool;
+    private final Channel channel;
+    private final AtomicBoolean released = new AtomicBoolean();
+    private final boolean keepAlive;
+    private volatile boolean complete;
+    private volatile boolean reusable;
 
-    NettyResponseHandler(SettableListenableFuture<ClientHttpResponse> responseFuture) throws IOException {
+    NettyResponseHandler(SettableListenableFuture<ClientHttpResponse> responseFuture, ChannelPool pool, Channel channel,
+                         NettyRequestFactory factory) {
         this.responseFuture = responseFuture;
+        this.pool = pool;
+        this.channel = channel;
+        this.keepAlive = factory.isKeepAlive();
+        this.in = new ChunkedInputStream<>(ByteBufHolderAdapter.INSTANCE,
+          factory.getLowWatermark(),
+          factory.getHighWatermark(),
+          new ChunkedInputStream.FlowListener() {
+              @Override
+              public void onSuspend() {
+                  channel.config().setAutoRead(false);
+              }
+
+              @Override
+              public void onResume() {
+                  channel.config().setAutoRead(true);
+              }
+          },
+          factory.getStatistics());
     }
 
     @Override
     protected void channelRead0(ChannelHandlerContext context, HttpObject response) throws Exception {
         if(response instanceof HttpResponse) {
-            this.responseFuture.set(new NettyResponse(context, (HttpResponse) response, in));
-        } else if(response instanceof HttpContent) {
+            HttpResponse httpResponse = (HttpResponse) response;
+            // server may not answer 'Connection: close' on our request, but it closes connection anyway
+            this.reusable = keepAlive && HttpUtil.isKeepAlive(httpResponse);
+            if(!this.responseFuture.set(new NettyResponse(this, httpResponse, in))) {
+                // future was cancelled or failed, nobody will close the response, so do it now
+                close();
+            }
+        }
+        if(response instanceof HttpContent) {
             HttpContent cont = (HttpContent) response;
-            in.add(cont);
+            boolean closed = in.isClosed();
+            if(!closed) {
+                in.add(cont);
+            }
             if(response instanceof LastHttpContent) {
+                this.complete = true;
                 in.end();
+                if(closed) {
+                    // response was closed before end of stream, so we can release channel only now
+                    release();
+                }
             }
-        } else {
+        } else if(!(response instanceof HttpResponse)) {
             throw new RuntimeException("Unknown message: " + response);
         }
     }
 
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        this.responseFuture.setException(new ClosedChannelException());
+        in.end();
+        release();
+        super.channelInactive(ctx);
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext context, Throwable cause) throws Exception {
         this.responseFuture.setException(cause);
+        this.reusable = false;
+        in.end();
+        context.close();
+        release();
     }
 
+    /**
+     * Invoked when response is closed by its consumer.
+     */
+    void close() {
+        try {
+            in.close();
+        } catch (IOException e) {
+            log.error("Can not close response stream.", e);
+        }
+        if(!complete) {
+            // we can not read remains of endless stream, therefore connection can not be reused
+            this.reusable = false;
+        }
+        release();
+    }
+
+    private void release() {
+        if(!released.compareAndSet(false, true)) {
+            return;
+        }
+        if(complete && reusable && channel.isActive()) {
+            ChannelPipeline pipeline = channel.pipeline();
+            if(pipeline.get(READ_TIMEOUT) != null) {
+                pipeline.remove(READ_TIMEOUT);
+            }
+            pipeline.remove(this);
+            channel.config().setAutoRead(true);
+        } else {
+            channel.close();
+        }
+        pool.release(channel);
+    }
 }
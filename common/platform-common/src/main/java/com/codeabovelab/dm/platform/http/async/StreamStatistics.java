@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.platform.http.async;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Read side counters of {@link ChunkedInputStream chunked streams}, usually shared between all streams of one
+ * factory. All methods are thread safe and does not block.
+ */
+public final class StreamStatistics {
+    private final LongAdder bufferedBytes = new LongAdder();
+    private final LongAdder stalledStreams = new LongAdder();
+    private final LongAdder stalls = new LongAdder();
+    private final LongAdder stallTime = new LongAdder();
+
+    void onBuffered(long delta) {
+        bufferedBytes.add(delta);
+    }
+
+    void onSuspend() {
+        stalls.increment();
+        stalledStreams.increment();
+    }
+
+    void onResume(long nanos) {
+        stalledStreams.decrement();
+        stallTime.add(nanos);
+    }
+
+    /**
+     * @return count of bytes which is received but not read by consumers yet
+     */
+    public long getBufferedBytes() {
+        return bufferedBytes.sum();
+    }
+
+    /**
+     * @return count of streams which producer is suspended now
+     */
+    public long getStalledStreams() {
+        return stalledStreams.sum();
+    }
+
+    /**
+     * @return count of producer suspends due to reach of high watermark
+     */
+    public long getStalls() {
+        return stalls.sum();
+    }
+
+    /**
+     * @return summary time in milliseconds during that producers was suspended, excluding still suspended streams
+     */
+    public long getStallTime() {
+        return TimeUnit.NANOSECONDS.toMillis(stallTime.sum());
+    }
+
+    /**
+     * Register gauges of this statistics in specified registry.
+     * @param registry registry
+     * @param prefix prefix of metrics names
+     */
+    public void register(MetricRegistry registry, String prefix) {
+        register(registry, prefix, "bufferedBytes", this::getBufferedBytes);
+        register(registry, prefix, "stalledStreams", this::getStalledStreams);
+        register(registry, prefix, "stalls", this::getStalls);
+        register(registry, prefix, "stallTime", this::getStallTime);
+    }
+
+    private static <T> void register(MetricRegistry registry, String base, String name, Gauge<T> gauge) {
+        String fullName = MetricRegistry.name(base, name);
+        registry.remove(fullName);
+        registry.register(fullName, gauge);
+    }
+
+    @Override
+    public String toString() {
+        return "StreamStatistics{" +
+          "bufferedBytes=" + getBufferedBytes() +
+          ", stalledStreams=" + getStalledStreams() +
+          ", stalls=" + getStalls() +
+          ", stallTime=" + getStallTime() +
+          '}';
+    }
+}
@@ -0,0 +1,90 @@
+package com.codeabovelab.dm.platform.cache;
+
+import com.codeabovelab.dm.common.cache.CacheConfig;
+import com.codeabovelab.dm.common.cache.CacheInvalidation;
+import com.codeabovelab.dm.common.kv.InMemoryKeyValueStorage;
+import com.codeabovelab.dm.common.kv.KvStorageEvent;
+import com.codeabovelab.dm.common.mb.MessageBus;
+import com.codeabovelab.dm.common.mb.MessageBuses;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.cache.Cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.Assert.*;
+
+public class KvCacheInvalidationBridgeTest {
+
+    private static final String NAME = "test";
+    private final CacheConfig config = CacheConfig.builder().expireAfterWrite(60_000).build();
+    private final InMemoryKeyValueStorage storage = new InMemoryKeyValueStorage();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<KvCacheInvalidationBridge> bridges = new ArrayList<>();
+
+    @After
+    public void after() {
+        bridges.forEach(KvCacheInvalidationBridge::close);
+    }
+
+    private LayeredCacheManager createInstance() {
+        MessageBus<CacheInvalidation> bus = MessageBuses.create(CacheInvalidation.BUS, CacheInvalidation.class);
+        LayeredCacheManager manager = new LayeredCacheManager(new ConfigurableGuavaCacheManager(config), null, bus, null);
+        bridges.add(new KvCacheInvalidationBridge(storage, bus, objectMapper, manager.getOrigin(), 50));
+        return manager;
+    }
+
+    @Test
+    public void test() throws Exception {
+        AtomicInteger writes = new AtomicInteger();
+        Consumer<KvStorageEvent> counter = e -> {
+            if(e.getAction() == KvStorageEvent.Crud.CREATE || e.getAction() == KvStorageEvent.Crud.UPDATE) {
+                writes.incrementAndGet();
+            }
+        };
+        storage.subscriptions().subscribeOnKey(counter, "/" + storage.getPrefix() + "/cache-invalidation/*");
+        LayeredCacheManager first = createInstance();
+        LayeredCacheManager second = createInstance();
+        Cache firstCache = first.getCache(NAME);
+        Cache secondCache = second.getCache(NAME);
+        for(int i = 0; i < 10; ++i) {
+            firstCache.put(i, i);
+            secondCache.put(i, i);
+        }
+        for(int i = 0; i < 5; ++i) {
+            firstCache.evict(i);
+        }
+        Thread.sleep(300);
+        // evictions are coalesced into single write
+        assertEquals(1, writes.get());
+        assertEquals(5, second.getStatistics(NAME).getRemoteInvalidations());
+        for(int i = 0; i < 5; ++i) {
+            assertNull(secondCache.get(i));
+        }
+        for(int i = 5; i < 10; ++i) {
+            assertEquals(i, secondCache.get(i).get());
+        }
+        // remote invalidations are not sent back
+        assertEquals(0, first.getStatistics(NAME).getRemoteInvalidations());
+    }
+
+    @Test
+    public void testKeyTypes() throws Exception {
+        LayeredCacheManager first = createInstance();
+        LayeredCacheManager second = createInstance();
+        Cache secondCache = second.getCache(NAME);
+        secondCache.put(1L, "long");
+        secondCache.put(1, "int");
+        secondCache.put("1", "string");
+        first.getCache(NAME).evict(1L);
+        Thread.sleep(300);
+        // only entry with key of same type is evicted
+        assertNull(secondCache.get(1L));
+        assertEquals("int", secondCache.get(1).get());
+        assertEquals("string", secondCache.get("1").get());
+    }
+}
@@ -0,0 +1,86 @@
+package com.codeabovelab.dm.platform.cache;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codeabovelab.dm.common.cache.CacheConfig;
+import com.codeabovelab.dm.common.cache.CacheInvalidation;
+import com.codeabovelab.dm.common.mb.MessageBus;
+import com.codeabovelab.dm.common.mb.MessageBuses;
+import org.junit.Test;
+import org.springframework.cache.Cache;
+
+import static org.junit.Assert.*;
+
+public class LayeredCacheManagerTest {
+
+    private static final String NAME = "test";
+    private final CacheConfig config = CacheConfig.builder().expireAfterWrite(60_000).build();
+
+    @Test
+    public void testFill() {
+        ConfigurableGuavaCacheManager shared = new ConfigurableGuavaCacheManager(config);
+        MetricRegistry registry = new MetricRegistry();
+        LayeredCacheManager first = new LayeredCacheManager(new ConfigurableGuavaCacheManager(config), shared, null, registry);
+        LayeredCacheManager second = new LayeredCacheManager(new ConfigurableGuavaCacheManager(config), shared, null, null);
+        Cache firstCache = first.getCache(NAME);
+        Cache secondCache = second.getCache(NAME);
+
+        assertNull(firstCache.get("one"));
+        firstCache.put("one", 1);
+        // value is absent in local cache of second instance, but present in shared
+        assertEquals(1, secondCache.get("one").get());
+        assertEquals(1, second.getStatistics(NAME).getSharedHits());
+        // now it filled in local cache
+        assertEquals(1, secondCache.get("one").get());
+        assertEquals(1, second.getStatistics(NAME).getLocalHits());
+
+        assertEquals((Integer) 2, firstCache.get("two", () -> 2));
+        assertEquals(2, secondCache.get("two").get());
+
+        CacheStatistics stats = first.getStatistics(NAME);
+        assertEquals(2, stats.getMisses());
+        assertEquals(2, stats.getLoads());
+        assertEquals(2L, registry.getGauges().get("cache.test.misses").getValue());
+    }
+
+    @Test
+    public void testFailedLoad() {
+        LayeredCacheManager manager = new LayeredCacheManager(new ConfigurableGuavaCacheManager(config), null, null, null);
+        Cache cache = manager.getCache(NAME);
+        try {
+            cache.get("one", () -> {
+                throw new IllegalStateException("fail as planned");
+            });
+            fail("Expect exception");
+        } catch (Cache.ValueRetrievalException e) {
+            // as expected
+        }
+        // put without preceding miss is not a load
+        cache.put("one", 1);
+        assertEquals(0, manager.getStatistics(NAME).getLoads());
+        assertEquals(1, cache.get("one").get());
+    }
+
+    @Test
+    public void testInvalidation() {
+        // bus emulate bridge between instances, there no shared layer
+        MessageBus<CacheInvalidation> bus = MessageBuses.create(CacheInvalidation.BUS, CacheInvalidation.class);
+        LayeredCacheManager first = new LayeredCacheManager(new ConfigurableGuavaCacheManager(config), null, bus, null);
+        LayeredCacheManager second = new LayeredCacheManager(new ConfigurableGuavaCacheManager(config), null, bus, null);
+        Cache firstCache = first.getCache(NAME);
+        Cache secondCache = second.getCache(NAME);
+        firstCache.put("one", 1);
+        secondCache.put("one", 1);
+        secondCache.put("two", 2);
+
+        firstCache.evict("one");
+        assertNull(secondCache.get("one"));
+        assertEquals(1, second.getStatistics(NAME).getRemoteInvalidations());
+        // only one key is invalidated
+        assertEquals(2, secondCache.get("two").get());
+
+        firstCache.clear();
+        assertNull(secondCache.get("two"));
+        // own events are ignored
+        assertEquals(0, first.getStatistics(NAME).getRemoteInvalidations());
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.platform.http.async;
+
+import io.netty.buffer.ByteBufHolder;
+import io.netty.buffer.DefaultByteBufHolder;
+import io.netty.buffer.Unpooled;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class ChunkedInputStreamTest {
+
+    @Test
+    public void testWatermarks() throws Exception {
+        AtomicInteger suspends = new AtomicInteger();
+        AtomicInteger resumes = new AtomicInteger();
+        StreamStatistics statistics = new StreamStatistics();
+        ChunkedInputStream<ByteBufHolder> in = new ChunkedInputStream<>(ByteBufHolderAdapter.INSTANCE, 10, 20,
+          new ChunkedInputStream.FlowListener() {
+              @Override
+              public void onSuspend() {
+                  suspends.incrementAndGet();
+              }
+
+              @Override
+              public void onResume() {
+                  resumes.incrementAndGet();
+              }
+          }, statistics);
+        for(int i = 0; i < 3; ++i) {
+            in.add(chunk(10));
+        }
+        in.end();
+        assertTrue(in.isSuspended());
+        assertEquals(30, in.getBufferedBytes());
+        assertEquals(30, statistics.getBufferedBytes());
+        assertEquals(1, statistics.getStalledStreams());
+
+        byte[] buf = new byte[10];
+        assertEquals(10, in.read(buf, 0, buf.length));
+        assertEquals(10, in.read(buf, 0, buf.length));
+        // we still above low watermark, because chunk is released only at next read
+        assertTrue(in.isSuspended());
+        assertEquals(20, in.getBufferedBytes());
+        assertEquals(10, in.read(buf, 0, buf.length));
+        assertFalse(in.isSuspended());
+        assertEquals(1, suspends.get());
+        assertEquals(1, resumes.get());
+        assertEquals(0, statistics.getStalledStreams());
+
+        in.close();
+        assertEquals(0, in.getBufferedBytes());
+        assertEquals(0, statistics.getBufferedBytes());
+    }
+
+    @Test(timeout = 30_000)
+    public void testConcurrentFlow() throws Exception {
+        final int chunks = 20_000;
+        final int size = 10;
+        // imitates 'autoRead' flag of channel
+        AtomicInteger paused = new AtomicInteger();
+        AtomicInteger suspends = new AtomicInteger();
+        AtomicInteger resumes = new AtomicInteger();
+        ChunkedInputStream<ByteBufHolder> in = new ChunkedInputStream<>(ByteBufHolderAdapter.INSTANCE, 50, 100,
+          new ChunkedInputStream.FlowListener() {
+              @Override
+              public void onSuspend() {
+                  suspends.incrementAndGet();
+                  assertEquals(1, paused.incrementAndGet());
+              }
+
+              @Override
+              public void onResume() {
+                  resumes.incrementAndGet();
+                  assertEquals(0, paused.decrementAndGet());
+              }
+          }, null);
+        Thread producer = new Thread(() -> {
+            for(int i = 0; i < chunks; ++i) {
+                while(paused.get() > 0) {
+                    // lost resume cause endless loop here
+                    Thread.yield();
+                }
+                in.add(chunk(size));
+            }
+            in.end();
+        });
+        producer.start();
+        byte[] buf = new byte[7];
+        long read = 0;
+        int res;
+        while((res = in.read(buf, 0, buf.length)) != ChunkedInputStream.EOF) {
+            read += res;
+        }
+        producer.join(TimeUnit.SECONDS.toMillis(10));
+        assertEquals((long) chunks * size, read);
+        assertFalse(in.isSuspended());
+        assertEquals(0, paused.get());
+        assertEquals(suspends.get(), resumes.get());
+        assertTrue(suspends.get() > 0);
+    }
+
+    private static ByteBufHolder chunk(int size) {
+        return new DefaultByteBufHolder(Unpooled.wrappedBuffer(new byte[size]));
+    }
+}
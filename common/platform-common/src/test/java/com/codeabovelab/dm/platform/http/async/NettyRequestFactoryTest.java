@@ -0,0 +1,160 @@
+/*
+ * Copyright 2016 Code Above Lab LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.codeabovelab.dm.platform.http.async;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.util.StreamUtils;
+import org.springframework.util.concurrent.ListenableFuture;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class NettyRequestFactoryTest {
+
+    private static final Logger log = LoggerFactory.getLogger(NettyRequestFactoryTest.class);
+    private static final String NODELAY = "sun.net.httpserver.nodelay";
+    private String oldNodelay;
+    private HttpServer server;
+    private final CountDownLatch slowStarted = new CountDownLatch(1);
+    private final CountDownLatch slowLatch = new CountDownLatch(1);
+    private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+    private NettyRequestFactory factory;
+
+    @Before
+    public void before() throws Exception {
+        // without it stub server delays small responses on persistent connections
+        oldNodelay = System.setProperty(NODELAY, "true");
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            byte[] body = "ok".getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.createContext("/slow", exchange -> {
+            slowStarted.countDown();
+            try {
+                slowLatch.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(200, 0);
+            exchange.getResponseBody().write("slow".getBytes(StandardCharsets.UTF_8));
+            exchange.close();
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        factory = new NettyRequestFactory();
+        factory.afterPropertiesSet();
+    }
+
+    @After
+    public void after() {
+        factory.destroy();
+        server.stop(0);
+        if(oldNodelay == null) {
+            System.clearProperty(NODELAY);
+        } else {
+            System.setProperty(NODELAY, oldNodelay);
+        }
+    }
+
+    @Test
+    public void testKeepAlive() throws Exception {
+        URI uri = URI.create("http://localhost:" + server.getAddress().getPort() + "/test");
+        for(int i = 0; i < 5; ++i) {
+            try(ClientHttpResponse response = factory.createRequest(uri, HttpMethod.GET).execute()) {
+                assertEquals(200, response.getRawStatusCode());
+                assertEquals("ok", StreamUtils.copyToString(response.getBody(), StandardCharsets.UTF_8));
+            }
+        }
+        // all requests must be done through one connection
+        assertEquals(1, clientPorts.size());
+    }
+
+    @Test
+    public void testCancelledRequestReleaseChannel() throws Exception {
+        factory.setMaxConnectionsPerHost(1);
+        factory.setAcquireTimeout(5_000);
+        String base = "http://localhost:" + server.getAddress().getPort();
+        ListenableFuture<ClientHttpResponse> future = factory.createAsyncRequest(URI.create(base + "/slow"), HttpMethod.GET)
+          .executeAsync();
+        // cancel when request is already sent, so response will be received on cancelled future
+        assertTrue(slowStarted.await(5, TimeUnit.SECONDS));
+        future.cancel(false);
+        slowLatch.countDown();
+        // the only connection must be returned into pool, otherwise this request fails on acquire timeout
+        try(ClientHttpResponse response = factory.createRequest(URI.create(base + "/test"), HttpMethod.GET).execute()) {
+            assertEquals("ok", StreamUtils.copyToString(response.getBody(), StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    @Ignore("benchmark, run it manually")
+    public void benchmark() throws Exception {
+        URI uri = URI.create("http://localhost:" + server.getAddress().getPort() + "/test");
+        final int requests = 500;
+        NettyRequestFactory noKeepAlive = new NettyRequestFactory();
+        noKeepAlive.setKeepAlive(false);
+        noKeepAlive.afterPropertiesSet();
+        try {
+            // warm up
+            run(factory, uri, 50);
+
+            run(noKeepAlive, uri, 50);
+
+            clientPorts.clear();
+            long pooled = run(factory, uri, requests);
+            assertEquals(1, clientPorts.size());
+            clientPorts.clear();
+            long perRequest = run(noKeepAlive, uri, requests);
+            assertEquals(requests, clientPorts.size());
+            log.info("{} requests: pooled {} ms, connection per request {} ms", requests,
+              pooled / 1_000_000, perRequest / 1_000_000);
+        } finally {
+            noKeepAlive.destroy();
+        }
+    }
+
+    private static long run(NettyRequestFactory factory, URI uri, int requests) throws Exception {
+        long start = System.nanoTime();
+        for(int i = 0; i < requests; ++i) {
+            try(ClientHttpResponse response = factory.createRequest(uri, HttpMethod.GET).execute()) {
+                assertEquals("ok", StreamUtils.copyToString(response.getBody(), StandardCharsets.UTF_8));
+            }
+        }
+        return System.nanoTime() - start;
+    }
+}